@@ -60,6 +60,7 @@ public class SVNAdmin extends AbstractSVNLauncher {
         AbstractSVNCommand.registerCommand(new SVNAdminSetUUIDCommand());
         AbstractSVNCommand.registerCommand(new SVNAdminHotCopyCommand());
         AbstractSVNCommand.registerCommand(new SVNAdminPackCommand());
+        AbstractSVNCommand.registerCommand(new SVNAdminBuildPathIndexCommand());
     }
 
     protected void registerOptions() {
@@ -87,5 +88,8 @@ public class SVNAdmin extends AbstractSVNLauncher {
         SVNCommandLine.registerOption(SVNAdminOption.WAIT);
         SVNCommandLine.registerOption(SVNAdminOption.PRE_14_COMPATIBLE);
         SVNCommandLine.registerOption(SVNAdminOption.PRE_15_COMPATIBLE);
+        SVNCommandLine.registerOption(SVNAdminOption.JOBS);
+        SVNCommandLine.registerOption(SVNAdminOption.BULK_LOAD);
+        SVNCommandLine.registerOption(SVNAdminOption.FLUSH_INTERVAL);
     }
 }
@@ -66,11 +66,15 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
     private boolean myIsWait;
     private SVNRevision myStartRevision;
     private SVNRevision myEndRevision;
+    private int myJobs;
+    private boolean myIsBulkLoad;
+    private int myFlushInterval;
 
     protected SVNAdminCommandEnvironment(String programName, PrintStream out, PrintStream err, InputStream in) {
         super(programName, out, err, in);
         myStartRevision = SVNRevision.UNDEFINED;
         myEndRevision = SVNRevision.UNDEFINED;
+        myJobs = 1;
     }
 
     protected ISVNAuthenticationManager createClientAuthenticationManager() {
@@ -123,6 +127,32 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
             myIsPre17Compatible = true;
         } else if (option == SVNAdminOption.WITH_17_COMPATIBLE) {
             myIsWith17Compatible = true;
+        } else if (option == SVNAdminOption.JOBS) {
+            String jobsStr = optionValue.getValue();
+            try {
+                myJobs = Integer.parseInt(jobsStr);
+            } catch (NumberFormatException nfe) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CL_ARG_PARSING_ERROR, "Non-numeric jobs argument given");
+                SVNErrorManager.error(err, SVNLogType.CLIENT);
+            }
+            if (myJobs <= 0) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.INCORRECT_PARAMS, "Argument to --jobs must be positive");
+                SVNErrorManager.error(err, SVNLogType.CLIENT);
+            }
+        } else if (option == SVNAdminOption.BULK_LOAD) {
+            myIsBulkLoad = true;
+        } else if (option == SVNAdminOption.FLUSH_INTERVAL) {
+            String intervalStr = optionValue.getValue();
+            try {
+                myFlushInterval = Integer.parseInt(intervalStr);
+            } catch (NumberFormatException nfe) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CL_ARG_PARSING_ERROR, "Non-numeric flush interval argument given");
+                SVNErrorManager.error(err, SVNLogType.CLIENT);
+            }
+            if (myFlushInterval < 0) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.INCORRECT_PARAMS, "Argument to --flush-interval must not be negative");
+                SVNErrorManager.error(err, SVNLogType.CLIENT);
+            }
         }  else if (option == SVNAdminOption.PARENT_DIR) {
             myParentDir = optionValue.getValue();
             myParentDir = myParentDir.replace(File.separatorChar, '/');
@@ -203,6 +233,18 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
         return myIsVersion;
     }
 
+    public int getJobs() {
+        return myJobs;
+    }
+
+    public boolean isBulkLoad() {
+        return myIsBulkLoad;
+    }
+
+    public int getFlushInterval() {
+        return myFlushInterval;
+    }
+
     public String getParentDir() {
         return myParentDir;
     }
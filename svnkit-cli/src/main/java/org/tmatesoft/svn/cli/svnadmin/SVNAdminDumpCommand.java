@@ -47,6 +47,7 @@ public class SVNAdminDumpCommand extends SVNAdminCommand implements ISVNAdminEve
         options.add(SVNAdminOption.INCREMENTAL);
         options.add(SVNAdminOption.DELTAS);
         options.add(SVNAdminOption.QUIET);
+        options.add(SVNAdminOption.JOBS);
         return options;
     }
     
@@ -82,7 +83,8 @@ public class SVNAdminDumpCommand extends SVNAdminCommand implements ISVNAdminEve
         }
         start = SVNRevision.create(startRev);
         end = SVNRevision.create(endRev);
-        client.doDump(getLocalRepository(), getEnvironment().getOut(), start, end, incremental, deltas);
+        client.doDump(getLocalRepository(), getEnvironment().getOut(), start, end, incremental, deltas,
+                getSVNAdminEnvironment().getJobs());
     }
 
     public void handleAdminEvent(SVNAdminEvent event, double progress) throws SVNException {
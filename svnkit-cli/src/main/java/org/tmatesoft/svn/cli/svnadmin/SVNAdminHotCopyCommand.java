@@ -31,12 +31,15 @@ public class SVNAdminHotCopyCommand extends SVNAdminCommand {
     protected Collection createSupportedOptions() {
         Collection options = new LinkedList();
         options.add(SVNAdminOption.CLEAN_LOGS);
+        options.add(SVNAdminOption.INCREMENTAL);
+        options.add(SVNAdminOption.JOBS);
         return options;
     }
 
     public void run() throws SVNException {
         SVNAdminClient client = getEnvironment().getClientManager().getAdminClient();
-        client.doHotCopy(getLocalRepository(), getLocalRepository(1));
+        client.doHotCopy(getLocalRepository(), getLocalRepository(1), getSVNAdminEnvironment().isIncremental(),
+                getSVNAdminEnvironment().getJobs());
     }
 
 }
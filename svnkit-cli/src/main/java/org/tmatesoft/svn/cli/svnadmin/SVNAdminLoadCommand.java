@@ -44,6 +44,8 @@ public class SVNAdminLoadCommand extends SVNAdminCommand implements ISVNAdminEve
         options.add(SVNAdminOption.USE_PRE_COMMIT_HOOK);
         options.add(SVNAdminOption.USE_POST_COMMIT_HOOK);
         options.add(SVNAdminOption.PARENT_DIR);
+        options.add(SVNAdminOption.BULK_LOAD);
+        options.add(SVNAdminOption.FLUSH_INTERVAL);
         return options;
     }
 
@@ -61,7 +63,8 @@ public class SVNAdminLoadCommand extends SVNAdminCommand implements ISVNAdminEve
         client.doLoad(getLocalRepository(), getEnvironment().getIn(), 
                 getSVNAdminEnvironment().isUsePreCommitHook(),
                 getSVNAdminEnvironment().isUsePostCommitHook(),
-                uuidAction, getSVNAdminEnvironment().getParentDir());
+                uuidAction, getSVNAdminEnvironment().getParentDir(),
+                getSVNAdminEnvironment().isBulkLoad(), getSVNAdminEnvironment().getFlushInterval());
     }
 
     public void handleAdminEvent(SVNAdminEvent event, double progress) throws SVNException {
@@ -47,6 +47,9 @@ public class SVNAdminOption extends AbstractSVNOption {
     public static final SVNAdminOption PRE_16_COMPATIBLE = new SVNAdminOption("pre-1.6-compatible");
     public static final SVNAdminOption PRE_17_COMPATIBLE = new SVNAdminOption("pre-1.7-compatible");
     public static final SVNAdminOption WITH_17_COMPATIBLE = new SVNAdminOption("with-1.7-compatible");
+    public static final SVNAdminOption JOBS = new SVNAdminOption("jobs", null, false);
+    public static final SVNAdminOption BULK_LOAD = new SVNAdminOption("bulk-load");
+    public static final SVNAdminOption FLUSH_INTERVAL = new SVNAdminOption("flush-interval", null, false);
 
     private SVNAdminOption(String name) {
         this(name, null, true);
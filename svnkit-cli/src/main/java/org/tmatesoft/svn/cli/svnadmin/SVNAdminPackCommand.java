@@ -12,6 +12,7 @@
 package org.tmatesoft.svn.cli.svnadmin;
 
 import java.util.Collection;
+import java.util.LinkedList;
 
 import org.tmatesoft.svn.core.SVNCancelException;
 import org.tmatesoft.svn.core.SVNException;
@@ -33,13 +34,15 @@ public class SVNAdminPackCommand extends SVNAdminCommand implements ISVNAdminEve
     }
     
     protected Collection createSupportedOptions() {
-        return null;
+        Collection options = new LinkedList();
+        options.add(SVNAdminOption.JOBS);
+        return options;
     }
 
     public void run() throws SVNException {
         SVNAdminClient client = getEnvironment().getClientManager().getAdminClient();
         client.setEventHandler(this);
-        client.doPack(getLocalRepository());
+        client.doPack(getLocalRepository(), getSVNAdminEnvironment().getJobs());
     }
 
     public void handleAdminEvent(SVNAdminEvent event, double progress) throws SVNException {
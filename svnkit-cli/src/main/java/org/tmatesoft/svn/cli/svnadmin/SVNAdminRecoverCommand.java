@@ -37,13 +37,14 @@ public class SVNAdminRecoverCommand extends SVNAdminCommand implements ISVNAdmin
     protected Collection createSupportedOptions() {
         Collection options = new LinkedList();
         options.add(SVNAdminOption.WAIT);
+        options.add(SVNAdminOption.JOBS);
         return options;
     }
 
     public void run() throws SVNException {
         SVNAdminClient client = getEnvironment().getClientManager().getAdminClient();
         client.setEventHandler(this);
-        client.doRecover(getLocalRepository());
+        client.doRecover(getLocalRepository(), getSVNAdminEnvironment().getJobs());
         getEnvironment().getOut().println();
         getEnvironment().getOut().println("Recovery completed.");
         long youngestRevision = client.getYoungestRevision(getLocalRepository());
@@ -56,6 +57,8 @@ public class SVNAdminRecoverCommand extends SVNAdminCommand implements ISVNAdmin
         if (event.getAction() == SVNAdminEventAction.RECOVERY_STARTED) {
             getEnvironment().getOut().println("Repository lock acquired.");
             getEnvironment().getOut().println("Please wait; recovering the repository may take some time...");
+        } else if (event.getAction() == SVNAdminEventAction.RECOVERY_REVISION_SCANNED) {
+            getEnvironment().getOut().println("* Scanned revision " + event.getRevision() + ".");
         }
     }
 
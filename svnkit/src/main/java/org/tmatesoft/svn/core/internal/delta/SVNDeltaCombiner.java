@@ -11,12 +11,11 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
+import net.jpountz.lz4.LZ4Exception;
 import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
-import org.tmatesoft.svn.core.internal.delta.SVNRangeTree.SVNRangeListNode;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.io.diff.SVNDiffInstruction;
@@ -24,440 +23,654 @@ import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Iterator;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 
 /**
+ * Combines the windows of a delta chain, from the topmost delta down to a self-contained
+ * window or to the base fulltext, into the target view of the topmost window.
+ * <p/>
+ * Windows are read into one byte pool and their instructions are decoded into primitive arrays,
+ * one level per window. All levels are then composed at once: every byte range the topmost window
+ * copies from its source is resolved through the instructions of the levels below it and copied
+ * straight into the target buffer, so neither intermediate windows nor intermediate fulltexts
+ * are built. Buffers are reused after {@link #reset()} and only grow, so once they fit the
+ * largest chain nothing is allocated per window; {@link #getPeakMemoryUsage()} tells how
+ * large they have grown. An instance is not thread-safe.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class SVNDeltaCombiner {
-    
-    private SVNDiffWindow myWindow;
-    
-    private ByteBuffer myWindowData;    
-    private ByteBuffer myNextWindowInstructions;
-    private ByteBuffer myNextWindowData;
-    private ByteBuffer myTarget;
-    private ByteBuffer myRealTarget;
-    private ByteBuffer myReadWindowBuffer;
-    
-    private SVNRangeTree myRangeTree;
-    private SVNOffsetsIndex myOffsetsIndex;
-    private SVNDiffInstruction[] myWindowInstructions;
-    private SVNDiffInstruction myInstructionTemplate;
-    
+
+    // enough for a source view offset and four lengths
+    private static final int HEADER_LENGTH = 64;
+
+    private ByteBuffer myHeaderBuffer;
+    private byte[] myPool;
+    private ByteBuffer myPoolBuffer;
+    private int myPoolLength;
+    private int myDecodePosition;
+    private Inflater myInflater;
+
+    private SVNDiffWindow myReadWindow;
+    private int myReadWindowOffset;
+    private int myReadInstructionsLength;
+    private int myReadNewDataLength;
+
+    private int myLevelsCount;
+    private long[] mySourceOffsets;
+    private int[] mySourceLengths;
+    private int[] myTargetLengths;
+    private int[] myFirstInstructions;
+
+    private int myInstructionsCount;
+    private int[] myInstructionTypes;
+    private int[] myInstructionOffsets;
+    private int[] myInstructionLengths;
+    private int[] myInstructionTargetOffsets;
+
+    private int myRangesCount;
+    private int[] myRangeLevels;
+    private int[] myRangeOffsets;
+    private int[] myRangeLengths;
+    private int[] myRangeTargetOffsets;
+
+    private byte[] myTarget;
+    private ByteBuffer myTargetBuffer;
+    private byte[] myBase;
+    private int myBaseOffset;
+
+    private long myPeakMemoryUsage;
+
     public SVNDeltaCombiner() {
-        myRangeTree = new SVNRangeTree();
-        myWindowInstructions = new SVNDiffInstruction[10];
-        myInstructionTemplate = new SVNDiffInstruction(0,0,0);
-        myOffsetsIndex = new SVNOffsetsIndex();
-        
-        myNextWindowData = ByteBuffer.allocate(2048);
+        myHeaderBuffer = ByteBuffer.allocate(HEADER_LENGTH);
+        myPool = new byte[8192];
+        myPoolBuffer = ByteBuffer.wrap(myPool);
+        myTarget = new byte[0];
+        myTargetBuffer = ByteBuffer.wrap(myTarget);
+
+        ensureLevelsCapacity(8);
+        ensureInstructionsCapacity(64);
+        ensureRangesCapacity(64);
     }
 
     public void reset() {
-        myWindow = null;
-        myWindowData = null;
-        myReadWindowBuffer = null;
-        myNextWindowData = clearBuffer(myNextWindowData);
-        myNextWindowInstructions = null;
-        myTarget = null;
-        myRealTarget = null;
-        
-        myRangeTree.dispose();
-    }
-    
+        myPoolLength = 0;
+        myReadWindow = null;
+        myLevelsCount = 0;
+        myInstructionsCount = 0;
+        myRangesCount = 0;
+        myBase = null;
+    }
+
+    /**
+     * Returns the largest amount of memory in bytes this combiner has held in its buffers so far.
+     *
+     * @return peak memory usage in bytes
+     */
+    public long getPeakMemoryUsage() {
+        return myPeakMemoryUsage;
+    }
+
     public SVNDiffWindow readWindow(FSFile file, int version) throws SVNException {
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
-        myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, 4096);
+        myHeaderBuffer.clear();
         long position = 0;
         try {
             position = file.position();
-            file.read(myReadWindowBuffer);
+            file.read(myHeaderBuffer);
         } catch (IOException e) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
             SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
         }
-        myReadWindowBuffer.flip();
-        long sourceOffset = readLongOffset(myReadWindowBuffer);
-        int sourceLength = readOffset(myReadWindowBuffer);
-        int targetLength = readOffset(myReadWindowBuffer);
-        int instructionsLength = readOffset(myReadWindowBuffer);
-        int dataLength = readOffset(myReadWindowBuffer);
+        myHeaderBuffer.flip();
+        long sourceOffset = readLongOffset(myHeaderBuffer);
+        int sourceLength = readOffset(myHeaderBuffer);
+        int targetLength = readOffset(myHeaderBuffer);
+        int instructionsLength = readOffset(myHeaderBuffer);
+        int dataLength = readOffset(myHeaderBuffer);
         if (sourceOffset < 0 || sourceLength < 0 || targetLength < 0 || instructionsLength < 0 || dataLength < 0) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
             SVNErrorManager.error(err, SVNLogType.DEFAULT);
         }
-        position += myReadWindowBuffer.position();
+        position += myHeaderBuffer.position();
         file.seek(position);
 
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
-        myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, instructionsLength + dataLength);
-        myReadWindowBuffer.limit(instructionsLength + dataLength);
+        // the window goes to the free part of the pool, so that windows read earlier stay where they are
+        int offset = myPoolLength;
+        ensurePoolCapacity(offset + instructionsLength + dataLength);
+        myPoolBuffer.limit(offset + instructionsLength + dataLength);
+        myPoolBuffer.position(offset);
         try {
-            file.read(myReadWindowBuffer);
+            file.read(myPoolBuffer);
         } catch (IOException e) {
             SVNDebugLog.getDefaultLog().logSevere(SVNLogType.DEFAULT, e);
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
             SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
         }
-        myReadWindowBuffer.position(0);
-        myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
+        if (myPoolBuffer.hasRemaining()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_UNEXPECTED_END);
+            SVNErrorManager.error(err, SVNLogType.DEFAULT);
+        }
+        myReadInstructionsLength = instructionsLength;
+        myReadNewDataLength = dataLength;
         if (version == 1 || version == 2) {
-            // decompress instructions and new data, put back to the buffer.
-            try {
-                int[] lenghts = decompress(instructionsLength, dataLength, version);
-                instructionsLength = lenghts[0];
-                dataLength = lenghts[1];
-            } catch (IOException e) {
-                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
-                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
-            }
+            decompress(offset, instructionsLength, dataLength, version);
         }
-        SVNDiffWindow window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength, instructionsLength, dataLength);
-        window.setData(myReadWindowBuffer);
-        return window;
-    }
+        myPoolBuffer.limit(myPoolBuffer.capacity());
+        myPoolBuffer.position(offset);
 
-    private int[] decompress(int instructionsLength, int dataLength, int version) throws IOException {
-        int originalPosition = myReadWindowBuffer.position();
-        int realInstructionsLength = readOffset(myReadWindowBuffer);
-        byte[] instructionsData = new byte[realInstructionsLength];
-        byte[] data = null;
-        int realDataLength = 0;
-        int compressedLength = instructionsLength - (myReadWindowBuffer.position() - originalPosition);
-        if (realInstructionsLength == compressedLength) {
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), instructionsData, 0, realInstructionsLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + realInstructionsLength);
-        } else {
-            byte[] compressedData = new byte[compressedLength];
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-            if (version == 1) {
-                final InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-                int read = 0;
-                while (read < realInstructionsLength) {
-                    read += is.read(instructionsData, read, realInstructionsLength - read);
-                }
-            } else if (version == 2) {
-                final LZ4FastDecompressor dc = LZ4Factory.fastestInstance().fastDecompressor();
-                dc.decompress(compressedData, 0, instructionsData, 0, realInstructionsLength);
-            }
-        }
-        if (dataLength > 0) {
-            originalPosition = myReadWindowBuffer.position();
-            realDataLength = readOffset(myReadWindowBuffer);
-            compressedLength = dataLength - (myReadWindowBuffer.position() - originalPosition);
-            data = new byte[realDataLength];
-            if (compressedLength == realDataLength) {
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), data, 0, realDataLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + realDataLength);
-            } else {
-                byte[] compressedData = new byte[compressedLength];
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-                if (version == 1) {
-                    final InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-                    int read = 0;
-                    while (read < realDataLength) {
-                        read += is.read(data, read, realDataLength - read);
-                    }
-                } else if (version == 2) {
-                    final LZ4FastDecompressor dc = LZ4Factory.fastestInstance().fastDecompressor();
-                    dc.decompress(compressedData, 0, data, 0, realDataLength);
-                }
-            }
-        }
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
-        myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, realInstructionsLength + realDataLength);
-        myReadWindowBuffer.put(instructionsData);
-        if (data != null) {
-            myReadWindowBuffer.put(data);
-        }
-        myReadWindowBuffer.position(0);
-        myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
-        return new int[] {realInstructionsLength, realDataLength};
+        SVNDiffWindow window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength, myReadInstructionsLength, myReadNewDataLength);
+        window.setData(myPoolBuffer);
+        myReadWindow = window;
+        myReadWindowOffset = offset;
+        return window;
     }
 
     public void skipWindow(FSFile file) throws SVNException {
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
-        myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, 4096);
+        myHeaderBuffer.clear();
         long position = 0;
         try {
             position = file.position();
-            file.read(myReadWindowBuffer);
+            file.read(myHeaderBuffer);
         } catch (IOException e) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
             SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
         }
-        myReadWindowBuffer.flip();
-        if (readLongOffset(myReadWindowBuffer) < 0) {
+        myHeaderBuffer.flip();
+        if (readLongOffset(myHeaderBuffer) < 0) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
             SVNErrorManager.error(err, SVNLogType.DEFAULT);
         }
-        if (readOffset(myReadWindowBuffer) < 0) {
+        if (readOffset(myHeaderBuffer) < 0) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
             SVNErrorManager.error(err, SVNLogType.DEFAULT);
         }
-        if (readOffset(myReadWindowBuffer) < 0) {
+        if (readOffset(myHeaderBuffer) < 0) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
             SVNErrorManager.error(err, SVNLogType.DEFAULT);
         }
-        int instructionsLength = readOffset(myReadWindowBuffer);
-        int dataLength = readOffset(myReadWindowBuffer);
+        int instructionsLength = readOffset(myHeaderBuffer);
+        int dataLength = readOffset(myHeaderBuffer);
         if (instructionsLength < 0 || dataLength < 0) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
             SVNErrorManager.error(err, SVNLogType.DEFAULT);
         }
-        position += myReadWindowBuffer.position();
+        position += myHeaderBuffer.position();
         file.seek(position + dataLength + instructionsLength);
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
     }
-    
-    // when true, there is a target and my window.
+
+    /**
+     * Adds the next window of the chain, the one the windows added so far are deltas against.
+     *
+     * @return the target view of the first window added, when <code>window</code> does not need
+     *         a source; <span class="javakeyword">null</span> when more windows or the base
+     *         fulltext are needed
+     */
     public ByteBuffer addWindow(SVNDiffWindow window) throws SVNException {
-        // 1.
-        // if window doesn't has cpfrom source apply it to empty file and save results to the target.
-        // and we're done.
-        if (window.getSourceViewLength() == 0 || !window.hasCopyFromSourceInstructions()) {
-            // apply window, make sure target not less then getTargetViewLength.
-            myTarget = clearBuffer(myTarget);
-            myTarget = ensureBufferSize(myTarget, window.getTargetViewLength());
-            window.apply(new byte[0], myTarget.array());
-            // and then apply myWindow if any.
-            ByteBuffer result = null;
-            if (myWindow != null) {
-                myRealTarget = clearBuffer(myRealTarget);
-                myRealTarget = ensureBufferSize(myRealTarget, myWindow.getTargetViewLength());
-                myWindow.apply(myTarget.array(), myRealTarget.array());
-                result = myRealTarget;
-            } else {
-                result = myTarget;
-            }
-            result.position(0);
-            int tLength = myWindow != null ? myWindow.getTargetViewLength() : window.getTargetViewLength();
-            result.limit(tLength);
-            return result;
-        }
-        
-        // 2.
-        // otherwise combine window with myWindow, and save it in place of myWindow.
-        // we're not done.
-        if (myWindow != null) {
-            myWindow = combineWindows(window);
+        int offset = myPoolLength;
+        if (window == myReadWindow) {
+            offset = myReadWindowOffset;
+        } else if (window.getDataLength() > 0) {
+            // a window that was not read by this combiner
+            ensurePoolCapacity(offset + window.getDataLength());
+            myPoolBuffer.clear();
+            myPoolBuffer.position(offset);
+            window.clone(myPoolBuffer);
+            myPoolBuffer.position(0);
+        }
+        myReadWindow = null;
+        myPoolLength = offset + window.getDataLength();
+
+        if (addLevel(window, offset)) {
             return null;
-        } 
-        
-        // 3. 
-        // if we do not have myWindow yet, just save window as myWindow.
-        // make sure window is 'copied', so that its full data goes to our buffer.
-        // and also make sure that myWindowData has enough free space for that window.
-        // we're not done.
-        myWindowData = clearBuffer(myWindowData);
-        myWindowData = ensureBufferSize(myWindowData, window.getDataLength());
-        myWindow = window.clone(myWindowData);
-        return null;
-    }
-
-    private SVNDiffWindow combineWindows(SVNDiffWindow window /* A, B - myWindow */) throws SVNException {
-        myNextWindowInstructions = clearBuffer(myNextWindowInstructions);
-        myNextWindowData = clearBuffer(myNextWindowData);
-        
+        }
+        return combine(null, 0);
+    }
+
+    // applies the windows added so far to the fulltext of the base representation.
+    public ByteBuffer applyWindow(byte[] source) throws SVNException {
+        return applyWindow(source, 0, source.length);
+    }
+
+    // offset of the base fulltext view the windows added so far are applied to.
+    public long getSourceViewOffset() {
+        return myLevelsCount > 0 ? mySourceOffsets[myLevelsCount - 1] : 0;
+    }
+
+    public int getSourceViewLength() {
+        return myLevelsCount > 0 ? mySourceLengths[myLevelsCount - 1] : 0;
+    }
+
+    // applies the windows added so far to the part of the base fulltext at sourceStart held in source.
+    public ByteBuffer applyWindow(byte[] source, long sourceStart, int length) throws SVNException {
+        if (myLevelsCount == 0) {
+            return null;
+        }
+        long sourceOffset = getSourceViewOffset();
+        int sourceLength = getSourceViewLength();
+        if (sourceOffset < sourceStart || sourceOffset + sourceLength > sourceStart + length) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW, "Delta source view is out of the base fulltext bounds");
+            SVNErrorManager.error(err, SVNLogType.DEFAULT);
+        }
+        return combine(source, (int) (sourceOffset - sourceStart));
+    }
+
+    /**
+     * Decodes and checks the instructions of a window stored in the pool at <code>offset</code>
+     * and returns whether the window copies anything from its source.
+     */
+    private boolean addLevel(SVNDiffWindow window, int offset) throws SVNException {
+        int level = myLevelsCount;
+        int sourceLength = window.getSourceViewLength();
+        int targetLength = window.getTargetViewLength();
+        if (level > 0 && mySourceLengths[level - 1] > targetLength) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW, "Delta source view is out of the base window bounds");
+            SVNErrorManager.error(err, SVNLogType.DEFAULT);
+        }
+        ensureLevelsCapacity(level + 2);
+        mySourceOffsets[level] = window.getSourceViewOffset();
+        mySourceLengths[level] = sourceLength;
+        myTargetLengths[level] = targetLength;
+        myFirstInstructions[level] = myInstructionsCount;
+
+        int end = offset + window.getInstructionsLength();
+        int newDataOffset = end;
+        int newDataEnd = end + window.getNewDataLength();
         int targetOffset = 0;
-        myWindowInstructions = window.loadDiffInstructions(myWindowInstructions);
-        createOffsetsIndex(myWindowInstructions, window.getInstructionsCount());
-        
-        SVNRangeTree rangeIndexTree = myRangeTree;
-        rangeIndexTree.dispose();
-    
-        for(Iterator instructions = myWindow.instructions(true); instructions.hasNext();) {
-            SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
-            if (instruction.type != SVNDiffInstruction.COPY_FROM_SOURCE) {
-                myNextWindowInstructions = ensureBufferSize(myNextWindowInstructions, 10);
-                instruction.writeTo(myNextWindowInstructions);
-                if (instruction.type == SVNDiffInstruction.COPY_FROM_NEW_DATA) {
-                    myNextWindowData = ensureBufferSize(myNextWindowData, instruction.length);
-                    myWindow.writeNewData(myNextWindowData, instruction.offset, instruction.length);
+        boolean hasSourceCopies = false;
+        myDecodePosition = offset;
+        for (int index = 0; myDecodePosition < end; index++) {
+            int type = (myPool[myDecodePosition] & 0xC0) >> 6;
+            int length = myPool[myDecodePosition] & 0x3F;
+            myDecodePosition++;
+            if (length == 0) {
+                length = readInt(end);
+            }
+            int instructionOffset = 0;
+            if (type == SVNDiffInstruction.COPY_FROM_SOURCE || type == SVNDiffInstruction.COPY_FROM_TARGET) {
+                instructionOffset = readInt(end);
+            }
+            if (length < 0 || instructionOffset < 0 || type > SVNDiffInstruction.COPY_FROM_NEW_DATA) {
+                invalidInstruction("Invalid diff stream: insn {0} cannot be decoded", index);
+            }
+            if (length == 0) {
+                continue;
+            }
+            if (length > targetLength - targetOffset) {
+                invalidInstruction("Invalid diff stream: insn {0} overflows the target view", index);
+            }
+            if (type == SVNDiffInstruction.COPY_FROM_SOURCE) {
+                if (instructionOffset > sourceLength - length) {
+                    invalidInstruction("Invalid diff stream: [src] insn {0} overflows the source view", index);
+                }
+                hasSourceCopies = true;
+            } else if (type == SVNDiffInstruction.COPY_FROM_TARGET) {
+                if (instructionOffset >= targetOffset) {
+                    invalidInstruction("Invalid diff stream: [tgt] insn {0} starts beyond the target view position", index);
                 }
             } else {
-                int offset = instruction.offset;
-                int limit = instruction.offset + instruction.length;
-                int tgt_off = targetOffset;
-                rangeIndexTree.splay(offset);
-                SVNRangeListNode listTail = rangeIndexTree.buildRangeList(offset, limit);
-                SVNRangeListNode listHead = listTail.head;
-                for(SVNRangeListNode range = listHead; range != null; range = range.next) {
-                    if (range.kind == SVNRangeListNode.FROM_TARGET) {
-                        myInstructionTemplate.type = SVNDiffInstruction.COPY_FROM_TARGET;
-                        myInstructionTemplate.length = range.limit - range.offset;
-                        myInstructionTemplate.offset = range.targetOffset;
-                        myNextWindowInstructions = ensureBufferSize(myNextWindowInstructions, 10);
-                        myInstructionTemplate.writeTo(myNextWindowInstructions);
-                    } else {
-                        copySourceInstructions(range.offset, range.limit, tgt_off, window, myWindowInstructions);
-                    }
-                    tgt_off += range.limit - range.offset;
+                if (length > newDataEnd - newDataOffset) {
+                    invalidInstruction("Invalid diff stream: [new] insn {0} overflows the new data section", index);
                 }
-                SVNErrorManager.assertionFailure(tgt_off == targetOffset + instruction.length, null, SVNLogType.DEFAULT);
-                rangeIndexTree.disposeList(listHead);
-                rangeIndexTree.insert(offset, limit, targetOffset);
+                instructionOffset = newDataOffset;
+                newDataOffset += length;
             }
-            targetOffset += instruction.length;
-        }
-        // build window from 'next' buffers and replace myWindow with the new one.
-        myNextWindowData.flip();
-        myNextWindowInstructions.flip();
-        int instrLength = myNextWindowInstructions.limit();
-        int newDataLength = myNextWindowData.limit();
-        myWindowData = clearBuffer(myWindowData);
-        myWindowData = ensureBufferSize(myWindowData, instrLength + newDataLength);
-        myWindowData.put(myNextWindowInstructions);
-        myWindowData.put(myNextWindowData);
-        myWindowData.position(0); // no need to set 'limit'...
-        
-        myWindow = new SVNDiffWindow(window.getSourceViewOffset(), window.getSourceViewLength(), myWindow.getTargetViewLength(), instrLength, newDataLength);
-        myWindow.setData(myWindowData);
-        
-        myNextWindowInstructions = clearBuffer(myNextWindowInstructions);
-        myNextWindowData = clearBuffer(myNextWindowData);
-        return myWindow;
-    }
-
-    private void copySourceInstructions(int offset, int limit, int targetOffset, SVNDiffWindow window, SVNDiffInstruction[] windowInsructions) throws SVNException {
-        int firstInstuctionIndex = findInstructionIndex(myOffsetsIndex, offset);
-        int lastInstuctionIndex = findInstructionIndex(myOffsetsIndex, limit - 1);
-        
-        for(int i = firstInstuctionIndex; i <= lastInstuctionIndex; i++) {
-            SVNDiffInstruction instruction = windowInsructions[i];
-            int off0 = myOffsetsIndex.offsets[i];
-            int off1 = myOffsetsIndex.offsets[i + 1];
-            
-            int fix_offset = offset > off0 ? offset - off0 : 0;
-            int fix_limit = off1 > limit ? off1 - limit : 0;
-            SVNErrorManager.assertionFailure(fix_offset + fix_limit < instruction.length, null, SVNLogType.DEFAULT);
-            if (instruction.type != SVNDiffInstruction.COPY_FROM_TARGET) {
-                int oldOffset = instruction.offset;
-                int oldLength = instruction.length;
-                
-                instruction.offset += fix_offset;
-                instruction.length = oldLength - fix_offset - fix_limit; 
-                
-                myNextWindowInstructions = ensureBufferSize(myNextWindowInstructions, 10);
-                instruction.writeTo(myNextWindowInstructions);
-                if (instruction.type == SVNDiffInstruction.COPY_FROM_NEW_DATA) {
-                    myNextWindowData = ensureBufferSize(myNextWindowData, instruction.length);
-                    window.writeNewData(myNextWindowData, instruction.offset, instruction.length);
-                }
-                instruction.offset = oldOffset;
-                instruction.length = oldLength;
+            ensureInstructionsCapacity(myInstructionsCount + 1);
+            myInstructionTypes[myInstructionsCount] = type;
+            myInstructionOffsets[myInstructionsCount] = instructionOffset;
+            myInstructionLengths[myInstructionsCount] = length;
+            myInstructionTargetOffsets[myInstructionsCount] = targetOffset;
+            myInstructionsCount++;
+            targetOffset += length;
+        }
+        if (targetOffset != targetLength) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_INVALID_OPS, "Delta does not fill the target window");
+            SVNErrorManager.error(err, SVNLogType.DEFAULT);
+        }
+        myLevelsCount++;
+        myFirstInstructions[myLevelsCount] = myInstructionsCount;
+        return hasSourceCopies;
+    }
+
+    private ByteBuffer combine(byte[] base, int baseOffset) {
+        myBase = base;
+        myBaseOffset = baseOffset;
+        int targetLength = myTargetLengths[0];
+        ensureTargetCapacity(targetLength);
+        byte[] target = myTarget;
+        for (int i = myFirstInstructions[0]; i < myFirstInstructions[1]; i++) {
+            int offset = myInstructionOffsets[i];
+            int length = myInstructionLengths[i];
+            int targetOffset = myInstructionTargetOffsets[i];
+            switch (myInstructionTypes[i]) {
+                case SVNDiffInstruction.COPY_FROM_NEW_DATA:
+                    System.arraycopy(myPool, offset, target, targetOffset, length);
+                    break;
+                case SVNDiffInstruction.COPY_FROM_SOURCE:
+                    copySource(0, offset, length, target, targetOffset);
+                    break;
+                default:
+                    copyPattern(target, offset, targetOffset, length);
+            }
+        }
+        myBase = null;
+        myTargetBuffer.clear();
+        myTargetBuffer.limit(targetLength);
+        return myTargetBuffer;
+    }
+
+    /**
+     * Copies <code>length</code> bytes of the source view of <code>level</code> starting
+     * at <code>offset</code>, which is the target view of the level below it or the base fulltext.
+     */
+    private void copySource(int level, int offset, int length, byte[] target, int targetOffset) {
+        if (level + 1 < myLevelsCount) {
+            resolve(level + 1, offset, length, target, targetOffset);
+        } else {
+            System.arraycopy(myBase, myBaseOffset + offset, target, targetOffset, length);
+        }
+    }
+
+    /**
+     * Copies <code>length</code> bytes of the target view of <code>level</code> starting
+     * at <code>offset</code> without building that target view.
+     * <p/>
+     * Ranges that refer to other levels are kept on a stack of pending ranges instead of being
+     * resolved recursively, so that the depth of a chain is not limited by the thread stack.
+     * Ranges are taken from the stack in target order, which makes bytes copied within
+     * <code>target</code> by a target copy available before they are read.
+     */
+    private void resolve(int level, int offset, int length, byte[] target, int targetOffset) {
+        int bottom = myRangesCount;
+        pushRange(level, offset, length, targetOffset);
+        while (myRangesCount > bottom) {
+            myRangesCount--;
+            int rangeLevel = myRangeLevels[myRangesCount];
+            int rangeOffset = myRangeOffsets[myRangesCount];
+            int rangeLength = myRangeLengths[myRangesCount];
+            int rangeTargetOffset = myRangeTargetOffsets[myRangesCount];
+            if (rangeLevel < 0) {
+                System.arraycopy(target, rangeOffset, target, rangeTargetOffset, rangeLength);
             } else {
-                SVNErrorManager.assertionFailure(instruction.offset < off0, null, SVNLogType.DEFAULT);
-                if (instruction.offset + instruction.length - fix_limit <= off0) {
-                    copySourceInstructions(instruction.offset + fix_offset, 
-                                           instruction.offset + instruction.length - fix_limit, 
-                                           targetOffset, window, windowInsructions);
-                } else {
-                    int patternLength = off0 - instruction.offset;
-                    int patternOverlap = fix_offset % patternLength;
-                    SVNErrorManager.assertionFailure(patternLength > patternOverlap, null, SVNLogType.DEFAULT);
-                    int fix_off = fix_offset;
-                    int tgt_off = targetOffset;
-                    
-                    if (patternOverlap >= 0) {
-                        int length = Math.min(instruction.length - fix_off - fix_limit, patternLength - patternOverlap);
-                        copySourceInstructions(instruction.offset + patternOverlap, 
-                                               instruction.offset + patternOverlap + length, 
-                                               tgt_off, window, windowInsructions);
-                        tgt_off += length;
-                        fix_off += length;
-                    }
-                    SVNErrorManager.assertionFailure(fix_off + fix_limit <= instruction.length, null, SVNLogType.DEFAULT);
-                    if (patternOverlap > 0 && fix_off + fix_limit < instruction.length) {
-                        int length = Math.min(instruction.length - fix_off - fix_limit, patternOverlap);
-                        copySourceInstructions(instruction.offset, 
-                                               instruction.offset + length, 
-                                               tgt_off, window, windowInsructions);
-                        tgt_off += length;
-                        fix_off += length;
-                    }
-                    SVNErrorManager.assertionFailure(fix_off + fix_limit <= instruction.length, null, SVNLogType.DEFAULT);
-                    if (fix_off + fix_limit < instruction.length) {
-                        myInstructionTemplate.type = SVNDiffInstruction.COPY_FROM_TARGET;
-                        myInstructionTemplate.length = instruction.length - fix_off - fix_limit;
-                        myInstructionTemplate.offset = tgt_off - patternLength;
-                        myNextWindowInstructions = ensureBufferSize(myNextWindowInstructions, 10);
-                        myInstructionTemplate.writeTo(myNextWindowInstructions);
+                resolveRange(rangeLevel, rangeOffset, rangeLength, target, rangeTargetOffset);
+            }
+        }
+    }
+
+    /**
+     * Copies what the instructions of <code>level</code> can provide right away and pushes
+     * the rest as pending ranges.
+     */
+    private void resolveRange(int level, int offset, int length, byte[] target, int targetOffset) {
+        int first = myRangesCount;
+        int i = findInstruction(level, offset);
+        // a range within one source copy is followed down without going through the stack
+        while (myInstructionTypes[i] == SVNDiffInstruction.COPY_FROM_SOURCE && level + 1 < myLevelsCount
+                && offset + length <= myInstructionTargetOffsets[i] + myInstructionLengths[i]) {
+            offset = myInstructionOffsets[i] + offset - myInstructionTargetOffsets[i];
+            level++;
+            i = findInstruction(level, offset);
+        }
+        while (length > 0) {
+            int skip = offset - myInstructionTargetOffsets[i];
+            int count = Math.min(myInstructionLengths[i] - skip, length);
+            switch (myInstructionTypes[i]) {
+                case SVNDiffInstruction.COPY_FROM_NEW_DATA:
+                    System.arraycopy(myPool, myInstructionOffsets[i] + skip, target, targetOffset, count);
+                    break;
+                case SVNDiffInstruction.COPY_FROM_SOURCE:
+                    if (level + 1 < myLevelsCount) {
+                        pushRange(level + 1, myInstructionOffsets[i] + skip, count, targetOffset);
+                    } else {
+                        System.arraycopy(myBase, myBaseOffset + myInstructionOffsets[i] + skip, target, targetOffset, count);
                     }
-                    
-                }
+                    break;
+                default:
+                    pushPattern(level, myInstructionOffsets[i], myInstructionTargetOffsets[i] - myInstructionOffsets[i], skip, count, targetOffset);
             }
-            targetOffset += instruction.length - fix_offset - fix_limit;
+            offset += count;
+            length -= count;
+            targetOffset += count;
+            i++;
+        }
+        // ranges were pushed in target order, the stack gives them back in reverse
+        for (int lo = first, hi = myRangesCount - 1; lo < hi; lo++, hi--) {
+            swapRanges(lo, hi);
         }
-        
     }
 
-    private void createOffsetsIndex(SVNDiffInstruction[] instructions, int length) {
-        if (myOffsetsIndex == null) {
-            myOffsetsIndex = new SVNOffsetsIndex();
+    /**
+     * Pushes bytes <code>[skip, skip + count)</code> of a target copy of <code>level</code>. The copy
+     * may overlap the bytes it produces, then it repeats the <code>period</code> bytes it starts
+     * from; only one period is resolved, the rest is copied within <code>target</code>.
+     */
+    private void pushPattern(int level, int from, int period, int skip, int count, int targetOffset) {
+        int done = 0;
+        while (done < count) {
+            int chunk;
+            if (done >= period) {
+                int shift = (done / period) * period;
+                chunk = Math.min(count - done, shift);
+                pushRange(-1, targetOffset + done - shift, chunk, targetOffset + done);
+            } else {
+                int phase = (skip + done) % period;
+                chunk = Math.min(count - done, period - phase);
+                pushRange(level, from + phase, chunk, targetOffset + done);
+            }
+            done += chunk;
         }
-        myOffsetsIndex.clear();
-        int offset = 0;
-        for (int i = 0; i < length; i++) {
-            SVNDiffInstruction instruction = instructions[i];
-            myOffsetsIndex.addOffset(offset);
-            offset += instruction.length;
-        }
-        myOffsetsIndex.addOffset(offset);
-    }
-    
-    private int findInstructionIndex(SVNOffsetsIndex offsets, int offset) throws SVNException {
-        int lo = 0;
-        int hi = offsets.length - 1;
-        int op = (lo + hi)/2;
-        
-        SVNErrorManager.assertionFailure(offset < offsets.offsets[offsets.length - 1], null, SVNLogType.DEFAULT);
-        for (; lo < hi; op = (lo + hi)/2 ) {
-            int thisOffset = offsets.offsets[op];
-            int nextOffset = offsets.offsets[op + 1];
-            if (offset < thisOffset) {
-                hi = op;
-            } else if (offset > nextOffset) {
-                lo = op;
+    }
+
+    private void pushRange(int level, int offset, int length, int targetOffset) {
+        ensureRangesCapacity(myRangesCount + 1);
+        myRangeLevels[myRangesCount] = level;
+        myRangeOffsets[myRangesCount] = offset;
+        myRangeLengths[myRangesCount] = length;
+        myRangeTargetOffsets[myRangesCount] = targetOffset;
+        myRangesCount++;
+    }
+
+    private void swapRanges(int i, int j) {
+        swap(myRangeLevels, i, j);
+        swap(myRangeOffsets, i, j);
+        swap(myRangeLengths, i, j);
+        swap(myRangeTargetOffsets, i, j);
+    }
+
+    /**
+     * Performs a target copy of the topmost level, the way {@link SVNDiffWindow#apply(byte[], byte[])}
+     * does it byte by byte, but copying whole periods.
+     */
+    private static void copyPattern(byte[] target, int from, int to, int length) {
+        int period = to - from;
+        int done = 0;
+        while (done < length) {
+            int shift = (done / period + 1) * period;
+            int chunk = Math.min(length - done, shift);
+            System.arraycopy(target, to + done - shift, target, to + done, chunk);
+            done += chunk;
+        }
+    }
+
+    private int findInstruction(int level, int offset) {
+        int lo = myFirstInstructions[level];
+        int hi = myFirstInstructions[level + 1] - 1;
+        while (lo < hi) {
+            int middle = (lo + hi + 1) >>> 1;
+            if (myInstructionTargetOffsets[middle] <= offset) {
+                lo = middle;
             } else {
-                if (offset == nextOffset) {
-                    op++;
+                hi = middle - 1;
+            }
+        }
+        return lo;
+    }
+
+    private void decompress(int offset, int instructionsLength, int dataLength, int version) throws SVNException {
+        // sections are decompressed behind the compressed ones and then moved in their place.
+        int compressedEnd = offset + instructionsLength + dataLength;
+        int realInstructionsLength = decompressSection(offset, instructionsLength, compressedEnd, version);
+        int realDataLength = 0;
+        if (dataLength > 0) {
+            realDataLength = decompressSection(offset + instructionsLength, dataLength, compressedEnd + realInstructionsLength, version);
+        }
+        System.arraycopy(myPool, compressedEnd, myPool, offset, realInstructionsLength + realDataLength);
+        myReadInstructionsLength = realInstructionsLength;
+        myReadNewDataLength = realDataLength;
+    }
+
+    private int decompressSection(int offset, int length, int targetOffset, int version) throws SVNException {
+        int end = offset + length;
+        myDecodePosition = offset;
+        int realLength = readInt(end);
+        if (realLength < 0) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
+            SVNErrorManager.error(err, SVNLogType.DEFAULT);
+        }
+        int compressedLength = end - myDecodePosition;
+        ensurePoolCapacity(targetOffset + realLength);
+        if (realLength == compressedLength) {
+            System.arraycopy(myPool, myDecodePosition, myPool, targetOffset, realLength);
+        } else if (version == 1) {
+            if (myInflater == null) {
+                myInflater = new Inflater();
+            }
+            myInflater.reset();
+            myInflater.setInput(myPool, myDecodePosition, compressedLength);
+            int inflated = 0;
+            try {
+                while (inflated < realLength) {
+                    int read = myInflater.inflate(myPool, targetOffset + inflated, realLength - inflated);
+                    if (read == 0 && (myInflater.finished() || myInflater.needsInput() || myInflater.needsDictionary())) {
+                        break;
+                    }
+                    inflated += read;
                 }
-                break;
+            } catch (DataFormatException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
+                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+            }
+            if (inflated < realLength) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
+                SVNErrorManager.error(err, SVNLogType.DEFAULT);
             }
+        } else {
+            try {
+                LZ4Factory.fastestInstance().fastDecompressor().decompress(myPool, myDecodePosition, myPool, targetOffset, realLength);
+            } catch (LZ4Exception e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_CORRUPT_WINDOW);
+                SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+            }
+        }
+        return realLength;
+    }
+
+    private void invalidInstruction(String message, int index) throws SVNException {
+        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SVNDIFF_INVALID_OPS, message, new Integer(index));
+        SVNErrorManager.error(err, SVNLogType.DEFAULT);
+    }
+
+    private void ensurePoolCapacity(int length) {
+        if (myPool.length < length) {
+            byte[] pool = new byte[length * 3 / 2];
+            System.arraycopy(myPool, 0, pool, 0, myPool.length);
+            myPool = pool;
+            myPoolBuffer = ByteBuffer.wrap(myPool);
+            updatePeakMemoryUsage();
+        }
+    }
+
+    private void ensureTargetCapacity(int length) {
+        if (myTarget.length < length) {
+            myTarget = new byte[length];
+            myTargetBuffer = ByteBuffer.wrap(myTarget);
+            updatePeakMemoryUsage();
         }
-        SVNErrorManager.assertionFailure(offsets.offsets[op] <= offset && offset < offsets.offsets[op + 1], null, SVNLogType.DEFAULT);
-        return op;
-    }
-    
-    private ByteBuffer clearBuffer(ByteBuffer b) {
-        if (b != null) {
-            b.clear();
-        }
-        return b;
-    }
-    
-    private ByteBuffer ensureBufferSize(ByteBuffer buffer, int dataLength) {
-        if (buffer == null || buffer.remaining() < dataLength) {
-            ByteBuffer data = buffer != null ? 
-                    ByteBuffer.allocate((buffer.position() + dataLength)*3/2) : 
-                    ByteBuffer.allocate(dataLength*3/2);
-            data.clear();
-            if (buffer != null) {
-                data.put(buffer.array(), 0, buffer.position());
+    }
+
+    private void ensureLevelsCapacity(int count) {
+        if (myFirstInstructions == null || myFirstInstructions.length < count) {
+            int capacity = Math.max(count, myLevelsCount * 3 / 2);
+            mySourceOffsets = copyOf(mySourceOffsets, capacity);
+            mySourceLengths = copyOf(mySourceLengths, capacity);
+            myTargetLengths = copyOf(myTargetLengths, capacity);
+            myFirstInstructions = copyOf(myFirstInstructions, capacity);
+            updatePeakMemoryUsage();
+        }
+    }
+
+    private void ensureInstructionsCapacity(int count) {
+        if (myInstructionTypes == null || myInstructionTypes.length < count) {
+            int capacity = Math.max(count, myInstructionsCount * 3 / 2);
+            myInstructionTypes = copyOf(myInstructionTypes, capacity);
+            myInstructionOffsets = copyOf(myInstructionOffsets, capacity);
+            myInstructionLengths = copyOf(myInstructionLengths, capacity);
+            myInstructionTargetOffsets = copyOf(myInstructionTargetOffsets, capacity);
+            updatePeakMemoryUsage();
+        }
+    }
+
+    private void ensureRangesCapacity(int count) {
+        if (myRangeLevels == null || myRangeLevels.length < count) {
+            int capacity = Math.max(count, myRangesCount * 3 / 2);
+            myRangeLevels = copyOf(myRangeLevels, capacity);
+            myRangeOffsets = copyOf(myRangeOffsets, capacity);
+            myRangeLengths = copyOf(myRangeLengths, capacity);
+            myRangeTargetOffsets = copyOf(myRangeTargetOffsets, capacity);
+            updatePeakMemoryUsage();
+        }
+    }
+
+    private void updatePeakMemoryUsage() {
+        long usage = myHeaderBuffer.capacity() + myPool.length + myTarget.length;
+        if (myFirstInstructions != null) {
+            usage += 20L * myFirstInstructions.length;
+        }
+        if (myInstructionTypes != null) {
+            usage += 16L * myInstructionTypes.length;
+        }
+        if (myRangeLevels != null) {
+            usage += 16L * myRangeLevels.length;
+        }
+        myPeakMemoryUsage = Math.max(myPeakMemoryUsage, usage);
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        if (array != null) {
+            System.arraycopy(array, 0, copy, 0, array.length);
+        }
+        return copy;
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int value = array[i];
+        array[i] = array[j];
+        array[j] = value;
+    }
+
+    private static long[] copyOf(long[] array, int length) {
+        long[] copy = new long[length];
+        if (array != null) {
+            System.arraycopy(array, 0, copy, 0, array.length);
+        }
+        return copy;
+    }
+
+    private int readInt(int end) {
+        int result = 0;
+        while (myDecodePosition < end) {
+            byte b = myPool[myDecodePosition++];
+            result = (result << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                return result;
             }
-            buffer = data;
-        }        
-        return buffer;
+        }
+        return -1;
     }
 
     private int readOffset(ByteBuffer buffer) {
@@ -491,29 +704,4 @@ public class SVNDeltaCombiner {
         buffer.reset();
         return -1;
     }
-    
-    private static class SVNOffsetsIndex {
-        
-        public int length;
-        public int[] offsets;
-        
-        public SVNOffsetsIndex() {
-            offsets = new int[10];
-        }
-        
-        public void clear() {
-            length = 0;
-        }
-        
-        public void addOffset(int offset) {
-            if (length >= offsets.length) {
-                int[] newOffsets = new int[length*3/2];
-                System.arraycopy(offsets, 0, newOffsets, 0, length);
-                offsets = newOffsets;
-            }
-            offsets[length] = offset;
-            length++;
-        }
-    }
-
 }
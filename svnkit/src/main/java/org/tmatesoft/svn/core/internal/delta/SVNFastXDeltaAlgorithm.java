@@ -0,0 +1,188 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.util.Arrays;
+
+/**
+ * X-Delta algorithm which produces exactly the same instructions as {@link SVNXDeltaAlgorithm}, but
+ * does not allocate anything per window.
+ * <p/>
+ * Source blocks are kept in primitive arrays with one block per slot, which are reused by the following
+ * windows and are emptied by bumping a stamp. The rolling checksum is kept in local variables and is
+ * computed anew after long matches instead of rolled over them, and matches are extended eight bytes
+ * per step. An instance is not thread-safe.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNFastXDeltaAlgorithm extends SVNDeltaAlgorithm {
+
+    private static final int MATCH_BLOCK_SIZE = 64;
+    private static final int ADLER32_MASK = 0x0000FFFF;
+
+    private static final int TABLE_SIZE = 8192;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+
+    private final int[] myChecksums;
+    private final int[] myPositions;
+    private final int[] myStamps;
+    private int myStamp;
+
+    public SVNFastXDeltaAlgorithm() {
+        myChecksums = new int[TABLE_SIZE];
+        myPositions = new int[TABLE_SIZE];
+        myStamps = new int[TABLE_SIZE];
+    }
+
+    public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
+        if (bLength < MATCH_BLOCK_SIZE) {
+            copyFromNewData(b, 0, bLength);
+            return;
+        }
+        createMatchesTable(a, aLength);
+
+        // pseudo Adler-32 of b[lo, lo + windowLength), windowLength is MATCH_BLOCK_SIZE unless near the end of b
+        int s1 = 1;
+        int s2 = 0;
+        for (int i = 0; i < MATCH_BLOCK_SIZE; i++) {
+            s1 = (s1 + (b[i] & 0xFF)) & ADLER32_MASK;
+            s2 = (s2 + s1) & ADLER32_MASK;
+        }
+        int windowLength = MATCH_BLOCK_SIZE;
+
+        int lo = 0;
+        int insertionPosition = 0;
+        int insertionLength = 0;
+        while (lo < bLength) {
+            int advance = 1;
+            final int slot = findSlot((s2 << 16) | s1);
+            int matchLength = -1;
+            int matchPosition = 0;
+            if (slot >= 0) {
+                matchPosition = myPositions[slot];
+                final int blockLength = Math.min(MATCH_BLOCK_SIZE, aLength - matchPosition);
+                final int commonLength = getCommonLength(a, matchPosition, b, lo, Math.min(aLength - matchPosition, bLength - lo));
+                if (commonLength >= blockLength) {
+                    matchLength = commonLength;
+                    advance = commonLength;
+                }
+            }
+            if (matchLength < 0) {
+                if (insertionLength > 0) {
+                    insertionLength++;
+                } else {
+                    insertionPosition = lo;
+                    insertionLength = 1;
+                }
+            } else {
+                // extend backward into the pending insertion
+                int bPos = lo;
+                while (insertionLength > 0 && matchPosition > 0 && bPos > 0 && a[matchPosition - 1] == b[bPos - 1]) {
+                    insertionLength--;
+                    bPos--;
+                    matchPosition--;
+                    matchLength++;
+                }
+                if (insertionLength > 0) {
+                    copyFromNewData(b, insertionPosition, insertionLength);
+                    insertionLength = 0;
+                }
+                copyFromSource(matchPosition, matchLength);
+            }
+
+            final int next = lo + advance;
+            if (advance > MATCH_BLOCK_SIZE / 2) {
+                windowLength = Math.min(MATCH_BLOCK_SIZE, bLength - next);
+                s1 = 1;
+                s2 = 0;
+                for (int i = next; i < next + windowLength; i++) {
+                    s1 = (s1 + (b[i] & 0xFF)) & ADLER32_MASK;
+                    s2 = (s2 + s1) & ADLER32_MASK;
+                }
+            } else {
+                for (int i = lo; i < next; i++) {
+                    int z = b[i] & 0xFF;
+                    s1 = (s1 - z) & ADLER32_MASK;
+                    s2 = (s2 - (windowLength * z + 1)) & ADLER32_MASK;
+                    if (i + MATCH_BLOCK_SIZE < bLength) {
+                        z = b[i + MATCH_BLOCK_SIZE] & 0xFF;
+                        s1 = (s1 + z) & ADLER32_MASK;
+                        s2 = (s2 + s1) & ADLER32_MASK;
+                    } else {
+                        windowLength--;
+                    }
+                }
+            }
+            lo = next;
+        }
+        if (insertionLength > 0) {
+            copyFromNewData(b, insertionPosition, insertionLength);
+        }
+    }
+
+    private void createMatchesTable(byte[] data, int dataLength) {
+        if (++myStamp == 0) {
+            Arrays.fill(myStamps, 0);
+            myStamp = 1;
+        }
+        for (int position = 0; position < dataLength; position += MATCH_BLOCK_SIZE) {
+            final int end = Math.min(position + MATCH_BLOCK_SIZE, dataLength);
+            int s1 = 1;
+            int s2 = 0;
+            for (int i = position; i < end; i++) {
+                s1 = (s1 + (data[i] & 0xFF)) & ADLER32_MASK;
+                s2 = (s2 + s1) & ADLER32_MASK;
+            }
+            final int checksum = (s2 << 16) | s1;
+            final int slot = checksum & TABLE_MASK;
+            // the first block of a slot is kept, as it always was, so that deltas do not change
+            if (myStamps[slot] != myStamp) {
+                myStamps[slot] = myStamp;
+                myChecksums[slot] = checksum;
+                myPositions[slot] = position;
+            }
+        }
+    }
+
+    private int findSlot(int checksum) {
+        final int slot = checksum & TABLE_MASK;
+        if (myStamps[slot] == myStamp && myChecksums[slot] == checksum) {
+            return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the length of the common prefix of <code>a[aPos, aPos + limit)</code> and
+     * <code>b[bPos, bPos + limit)</code>.
+     */
+    private static int getCommonLength(byte[] a, int aPos, byte[] b, int bPos, int limit) {
+        int length = 0;
+        while (length + 8 <= limit) {
+            if (getLong(a, aPos + length) != getLong(b, bPos + length)) {
+                break;
+            }
+            length += 8;
+        }
+        while (length < limit && a[aPos + length] == b[bPos + length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        return ((long) data[offset] << 56) | ((long) (data[offset + 1] & 0xFF) << 48) | ((long) (data[offset + 2] & 0xFF) << 40) |
+                ((long) (data[offset + 3] & 0xFF) << 32) | ((long) (data[offset + 4] & 0xFF) << 24) | ((data[offset + 5] & 0xFF) << 16) |
+                ((data[offset + 6] & 0xFF) << 8) | (data[offset + 7] & 0xFF);
+    }
+}
@@ -36,6 +36,7 @@ import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.ISVNWorkspaceMediator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffCodec;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -402,6 +403,7 @@ class DAVCommitEditor implements ISVNEditor {
     private File myDeltaFile;
     private boolean myIsAborted;
     private boolean myIsFirstWindow;
+    private SVNDiffCodec myDeltaCodec;
 
     public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
         // save window, create temp file.
@@ -410,7 +412,12 @@ class DAVCommitEditor implements ISVNEditor {
                 myDeltaFile = SVNFileUtil.createTempFile("svnkit", ".tmp");
                 myCurrentDelta = SVNFileUtil.openFileForWriting(myDeltaFile);
             }
-            diffWindow.writeTo(myCurrentDelta, myIsFirstWindow);
+            if (myDeltaCodec == null) {
+                // deltas are sent uncompressed unless a codec is asked for
+                final SVNDiffCodec codec = myRepository.getDeltaCodec();
+                myDeltaCodec = codec != null ? SVNDiffCodec.select(codec, myConnection.getSVNDiffVersion()) : SVNDiffCodec.createNone();
+            }
+            diffWindow.writeTo(myCurrentDelta, myIsFirstWindow, myDeltaCodec);
             myIsFirstWindow = false;
             return SVNFileUtil.DUMMY_OUT;
         } catch (IOException e) {
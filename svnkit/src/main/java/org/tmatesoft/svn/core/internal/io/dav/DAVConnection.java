@@ -51,6 +51,8 @@ public class DAVConnection {
     protected boolean myKeepLocks;
     protected Map myLocks;
     protected Map myCapabilities;
+    private boolean myIsSVNDiff1;
+    private boolean myIsSVNDiff2;
     //HTTPv2 stuff:
     protected boolean myHttpV2Enabled;
     protected String myMeResource;
@@ -653,6 +655,13 @@ public class DAVConnection {
         }
     }
 
+    /**
+     * Returns the latest svndiff version the server has told it accepts, <code>0</code> if it has not.
+     */
+    public int getSVNDiffVersion() {
+        return myIsSVNDiff2 ? 2 : (myIsSVNDiff1 ? 1 : 0);
+    }
+
     public String getCapabilityResponse(SVNCapability capability) throws SVNException {
     	if (myCapabilities == null || myCapabilities.get(capability) == null) {
     		exchangeCapabilities(null);
@@ -755,6 +764,8 @@ public class DAVConnection {
         myCapabilities.put(SVNCapability.ATOMIC_REVPROPS, DAV_CAPABILITY_NO);
         myCapabilities.put(SVNCapability.INHERITED_PROPS, DAV_CAPABILITY_NO);
         myCapabilities.put(SVNCapability.EPHEMERAL_PROPS, DAV_CAPABILITY_NO);
+        myIsSVNDiff1 = false;
+        myIsSVNDiff2 = false;
 
         HTTPHeader header = status.getHeader();
         Collection capValues = header.getHeaderValues(HTTPHeader.DAV_HEADER);
@@ -778,6 +789,10 @@ public class DAVConnection {
                         myCapabilities.put(SVNCapability.INHERITED_PROPS, DAV_CAPABILITY_YES);
                     } else if (DAVElement.EPHEMERAL_PROPS_OPTION.equalsIgnoreCase(value)) {
                         myCapabilities.put(SVNCapability.EPHEMERAL_PROPS, DAV_CAPABILITY_YES);
+                    } else if (DAVElement.SVNDIFF1_OPTION.equalsIgnoreCase(value)) {
+                        myIsSVNDiff1 = true;
+                    } else if (DAVElement.SVNDIFF2_OPTION.equalsIgnoreCase(value)) {
+                        myIsSVNDiff2 = true;
                     }
                 }
 			}
@@ -60,6 +60,8 @@ public class DAVElement {
     public static final String ATOMIC_REVPROPS_OPTION = SVN_DAV_PROPERTY_NAMESPACE + "svn/atomic-revprops";
     public static final String INHERITED_PROPS_OPTION = SVN_DAV_PROPERTY_NAMESPACE + "svn/inherited-props";
     public static final String EPHEMERAL_PROPS_OPTION = SVN_DAV_PROPERTY_NAMESPACE + "svn/ephemeral-txnprops";
+    public static final String SVNDIFF1_OPTION = SVN_DAV_PROPERTY_NAMESPACE + "svn/svndiff1";
+    public static final String SVNDIFF2_OPTION = SVN_DAV_PROPERTY_NAMESPACE + "svn/svndiff2";
 
     public static final String SVN_ROOT_URI_HEADER = "SVN-Repository-Root";
     public static final String SVN_ME_RESOURCE_HEADER = "SVN-Me-Resource";
@@ -0,0 +1,138 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+
+/**
+ * Compact immutable form of the changed paths of a committed revision, as kept in the changed-paths cache.
+ * Paths are interned, so that paths changed in many revisions are stored once, and the change kind,
+ * node kind and modification flags of every path are packed into a single int.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSChangedPaths {
+
+    private static final FSPathChangeKind[] CHANGE_KINDS = {
+        FSPathChangeKind.FS_PATH_CHANGE_MODIFY,
+        FSPathChangeKind.FS_PATH_CHANGE_ADD,
+        FSPathChangeKind.FS_PATH_CHANGE_DELETE,
+        FSPathChangeKind.FS_PATH_CHANGE_REPLACE,
+        FSPathChangeKind.FS_PATH_CHANGE_RESET,
+    };
+    private static final SVNNodeKind[] NODE_KINDS = {
+        SVNNodeKind.UNKNOWN, SVNNodeKind.FILE, SVNNodeKind.DIR, SVNNodeKind.NONE,
+    };
+
+    private static final int CHANGE_KIND_MASK = 0x07;
+    private static final int NODE_KIND_SHIFT = 3;
+    private static final int NODE_KIND_MASK = 0x03;
+    private static final int TEXT_MODIFIED = 0x20;
+    private static final int PROPERTIES_MODIFIED = 0x40;
+    private static final int MERGEINFO_KNOWN = 0x80;
+    private static final int MERGEINFO_MODIFIED = 0x100;
+
+    private final String[] myPaths;
+    private final FSID[] myRevNodeIds;
+    private final int[] myFlags;
+    private final String[] myCopyFromPaths;
+    private final long[] myCopyFromRevisions;
+
+    private FSChangedPaths(int count) {
+        myPaths = new String[count];
+        myRevNodeIds = new FSID[count];
+        myFlags = new int[count];
+        myCopyFromPaths = new String[count];
+        myCopyFromRevisions = new long[count];
+    }
+
+    public static FSChangedPaths create(Map changedPaths) {
+        final FSChangedPaths compactPaths = new FSChangedPaths(changedPaths.size());
+        int i = 0;
+        for (Iterator changes = changedPaths.values().iterator(); changes.hasNext(); i++) {
+            final FSPathChange change = (FSPathChange) changes.next();
+            compactPaths.myPaths[i] = change.getPath().intern();
+            compactPaths.myRevNodeIds[i] = change.getRevNodeId();
+            compactPaths.myCopyFromPaths[i] = change.getCopyPath() != null ? change.getCopyPath().intern() : null;
+            compactPaths.myCopyFromRevisions[i] = change.getCopyRevision();
+            compactPaths.myFlags[i] = packFlags(change);
+        }
+        return compactPaths;
+    }
+
+    public int size() {
+        return myPaths.length;
+    }
+
+    /**
+     * Returns a new map of path to {@link FSPathChange}, which the caller may modify.
+     */
+    public Map toMap() {
+        final Map changedPaths = new SVNHashMap();
+        for (int i = 0; i < myPaths.length; i++) {
+            final int flags = myFlags[i];
+            final Boolean mergeInfoModified = (flags & MERGEINFO_KNOWN) != 0 ? Boolean.valueOf((flags & MERGEINFO_MODIFIED) != 0) : null;
+            changedPaths.put(myPaths[i], new FSPathChange(myPaths[i], myRevNodeIds[i], CHANGE_KINDS[flags & CHANGE_KIND_MASK],
+                    (flags & TEXT_MODIFIED) != 0, (flags & PROPERTIES_MODIFIED) != 0, mergeInfoModified,
+                    myCopyFromPaths[i], myCopyFromRevisions[i], NODE_KINDS[(flags >> NODE_KIND_SHIFT) & NODE_KIND_MASK]));
+        }
+        return changedPaths;
+    }
+
+    public long estimateSize() {
+        long size = 96 + 40L * myPaths.length;
+        for (int i = 0; i < myPaths.length; i++) {
+            size += 48 + myPaths[i].length() * 2;
+            if (myCopyFromPaths[i] != null) {
+                size += 48 + myCopyFromPaths[i].length() * 2;
+            }
+            if (myRevNodeIds[i] != null) {
+                size += 96;
+            }
+        }
+        return size;
+    }
+
+    private static int packFlags(FSPathChange change) {
+        int flags = 0;
+        for (int kind = 0; kind < CHANGE_KINDS.length; kind++) {
+            if (CHANGE_KINDS[kind] == change.getChangeKind()) {
+                flags = kind;
+                break;
+            }
+        }
+        for (int kind = 0; kind < NODE_KINDS.length; kind++) {
+            if (NODE_KINDS[kind] == change.getKind()) {
+                flags |= kind << NODE_KIND_SHIFT;
+                break;
+            }
+        }
+        if (change.isTextModified()) {
+            flags |= TEXT_MODIFIED;
+        }
+        if (change.arePropertiesModified()) {
+            flags |= PROPERTIES_MODIFIED;
+        }
+        if (change.getMergeInfoModified() != null) {
+            flags |= MERGEINFO_KNOWN;
+            if (change.getMergeInfoModified().booleanValue()) {
+                flags |= MERGEINFO_MODIFIED;
+            }
+        }
+        return flags;
+    }
+}
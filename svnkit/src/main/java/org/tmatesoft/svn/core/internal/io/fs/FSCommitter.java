@@ -310,22 +310,23 @@ public class FSCommitter {
                     FSWriteLock.release(writeLock);
                 }
             }
-            // write representations here.
+            // write representations here, in one batch, after the write lock is released.
             if (representations != null && !representations.isEmpty()) {
-                if (myFSFS.getRepositoryCacheManager() != null) {
-                    try {
-                        myFSFS.getRepositoryCacheManager().runWriteTransaction(new IFSSqlJetTransaction() {
-                            public void run() throws SVNException {
-                                for (FSRepresentation fsRepresentation : representations) {
-                                    myFSFS.getRepositoryCacheManager().insert(fsRepresentation, false);
-                                }
-                            }
-                        });
-                    } catch (SVNException e) {
-                        // ignore
-                        SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
-                    }
+                try {
+                    myFSFS.getRepositoryCacheManager().insertAll(representations, false);
+                } catch (SVNException e) {
+                    // ignore
+                    SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+                }
+            }
+            try {
+                final FSPathHistoryIndex pathHistoryIndex = myFSFS.isWriteBatch() ? null : myFSFS.getPathHistoryIndex();
+                if (pathHistoryIndex != null) {
+                    pathHistoryIndex.update(myFSFS);
                 }
+            } catch (SVNException e) {
+                // the index is only used for revisions it covers, the next commit will try again
+                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
             }
             break;
         }
@@ -82,11 +82,9 @@ public class FSDeltaConsumer implements ISVNDeltaConsumer {
         InputStream sourceStream = null;
         OutputStream targetStream = null;
         
-        int dbFormat = myFSFS.getDBFormat();
-        
         try {
             sourceStream = FSInputStream.createDeltaStream(getCombiner(), node, myFSFS);
-            targetStream = FSOutputStream.createStream(node, myTxnRoot, myTargetStream, dbFormat >= 2);
+            targetStream = FSOutputStream.createStream(node, myTxnRoot, myTargetStream, myFSFS.getDeltificationCodec());
             if (myDeltaProcessor == null) {
                 myDeltaProcessor = new SVNDeltaProcessor();
             }
@@ -115,11 +113,9 @@ public class FSDeltaConsumer implements ISVNDeltaConsumer {
         InputStream sourceStream = null;
         OutputStream targetStream = null;
         
-        int dbFormat = myFSFS.getDBFormat();
-        
         try {
             sourceStream = SVNFileUtil.DUMMY_IN;
-            targetStream = FSOutputStream.createStream(node, myTxnRoot, myTargetStream, dbFormat >= 2);
+            targetStream = FSOutputStream.createStream(node, myTxnRoot, myTargetStream, myFSFS.getDeltificationCodec());
             if (myDeltaProcessor == null) {
                 myDeltaProcessor = new SVNDeltaProcessor();
             }
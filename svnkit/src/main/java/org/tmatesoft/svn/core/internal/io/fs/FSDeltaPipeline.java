@@ -0,0 +1,212 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNFastXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.util.SVNWorkers;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.diff.SVNDiffCodec;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Computes and compresses the svndiff windows of a representation on a JVM-wide pool of worker threads
+ * and writes them out in the order they were submitted.
+ * <p/>
+ * Every window only depends on its own source and target views, so windows may be computed in any order
+ * as long as the source views are read sequentially by the caller. The output is the same as the one of
+ * {@link org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator} for the same views.
+ * <p/>
+ * The pipeline is off by default and is turned on with the <code>svnkit.fsfs.deltaThreads</code> system
+ * property, which sets the number of worker threads. At most two windows per worker thread are kept
+ * in memory by every pipeline; submitting more blocks until the oldest one is written. Source and
+ * target view buffers are taken from a small pool of the pipeline and go back to it as soon as their
+ * window is computed.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDeltaPipeline {
+
+    public static final String THREADS_PROPERTY = "svnkit.fsfs.deltaThreads";
+
+    private static int ourThreadCount = Math.max(0, Integer.getInteger(THREADS_PROPERTY, 0).intValue());
+    private static ThreadPoolExecutor ourExecutor;
+
+    private static final ThreadLocal<SVNDeltaAlgorithm> ourAlgorithm = new ThreadLocal<SVNDeltaAlgorithm>() {
+        @Override
+        protected SVNDeltaAlgorithm initialValue() {
+            return new SVNFastXDeltaAlgorithm();
+        }
+    };
+
+    private final LinkedList<Future<byte[]>> myWindows;
+    private final LinkedList<byte[]> myFreeBuffers;
+    private final SVNDiffCodec myCodec;
+    private final int myMaxPendingWindows;
+
+    private FSDeltaPipeline(SVNDiffCodec codec, int threadCount) {
+        myWindows = new LinkedList<Future<byte[]>>();
+        myFreeBuffers = new LinkedList<byte[]>();
+        myCodec = codec;
+        myMaxPendingWindows = 2 * threadCount;
+    }
+
+    /**
+     * Returns a new pipeline, or <code>null</code> if windows should be computed by the calling thread.
+     */
+    public static synchronized FSDeltaPipeline create(SVNDiffCodec codec) {
+        if (ourThreadCount <= 0) {
+            return null;
+        }
+        return new FSDeltaPipeline(codec, ourThreadCount);
+    }
+
+    public static synchronized int getThreadCount() {
+        return ourThreadCount;
+    }
+
+    public static synchronized void setThreadCount(int threadCount) {
+        ourThreadCount = Math.max(0, threadCount);
+        if (ourExecutor != null) {
+            ourExecutor.shutdown();
+            ourExecutor = null;
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (ourExecutor == null) {
+            final int threadCount = Math.max(1, ourThreadCount);
+            ourExecutor = new ThreadPoolExecutor(threadCount, threadCount, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), SVNWorkers.createThreadFactory("svnkit-fsfs-delta-"));
+            ourExecutor.allowCoreThreadTimeOut(true);
+        }
+        return ourExecutor;
+    }
+
+    /**
+     * Returns a buffer of at least <code>length</code> bytes for a source view. The buffer is given back
+     * to the pipeline by {@link #submit}, the caller must not use it afterwards.
+     */
+    public byte[] getBuffer(int length) {
+        synchronized (myFreeBuffers) {
+            for (Iterator<byte[]> buffers = myFreeBuffers.iterator(); buffers.hasNext();) {
+                final byte[] buffer = buffers.next();
+                if (buffer.length >= length) {
+                    buffers.remove();
+                    return buffer;
+                }
+            }
+        }
+        return new byte[length];
+    }
+
+    /**
+     * Schedules a window of <code>targetLength</code> bytes of <code>target</code> against the source view
+     * at <code>sourceOffset</code>. <code>target</code> is owned by the pipeline until the window is written,
+     * <code>source</code> goes back to the pool of the pipeline once the window is computed.
+     */
+    public void submit(final long sourceOffset, final byte[] source, final int sourceLength, final byte[] target,
+                       final int targetOffset, final int targetLength, final boolean writeHeader, OutputStream os) throws SVNException {
+        while (myWindows.size() >= myMaxPendingWindows) {
+            writeWindow(myWindows.removeFirst(), os);
+        }
+        myWindows.add(getExecutor().submit(new Callable<byte[]>() {
+            public byte[] call() throws IOException {
+                byte[] targetView = target;
+                if (targetOffset != 0) {
+                    targetView = getBuffer(targetLength);
+                    System.arraycopy(target, targetOffset, targetView, 0, targetLength);
+                }
+                final SVNDeltaAlgorithm algorithm = ourAlgorithm.get();
+                try {
+                    algorithm.computeDelta(source, sourceLength, targetView, targetLength);
+                    final SVNDiffWindow window = new SVNDiffWindow(sourceOffset, sourceLength, targetLength,
+                            algorithm.getInstructionsLength(), algorithm.getNewDataLength());
+                    window.setData(algorithm.getData());
+
+                    final ByteArrayOutputStream windowBytes = new ByteArrayOutputStream(targetLength / 2 + 64);
+                    window.writeTo(windowBytes, writeHeader, myCodec);
+                    return windowBytes.toByteArray();
+                } finally {
+                    algorithm.reset();
+                    releaseBuffer(source);
+                    if (targetView != target) {
+                        releaseBuffer(targetView);
+                    }
+                }
+            }
+        }));
+    }
+
+    /**
+     * Waits for all submitted windows and writes them out.
+     */
+    public void flush(OutputStream os) throws SVNException {
+        while (!myWindows.isEmpty()) {
+            writeWindow(myWindows.removeFirst(), os);
+        }
+    }
+
+    /**
+     * Drops windows which are not written yet, to be called when the representation is abandoned.
+     */
+    public void cancel() {
+        while (!myWindows.isEmpty()) {
+            myWindows.removeFirst().cancel(true);
+        }
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        synchronized (myFreeBuffers) {
+            // no more buffers than windows in flight are ever needed at once
+            if (myFreeBuffers.size() <= myMaxPendingWindows) {
+                myFreeBuffers.addLast(buffer);
+            }
+        }
+    }
+
+    private void writeWindow(Future<byte[]> window, OutputStream os) throws SVNException {
+        try {
+            os.write(window.get());
+        } catch (InterruptedException e) {
+            cancel();
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Interrupted while waiting for a delta window");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            cancel();
+            final Throwable cause = e.getCause() != null ? e.getCause() : e;
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, cause.getLocalizedMessage());
+            SVNErrorManager.error(err, cause, SVNLogType.FSFS);
+        } catch (IOException e) {
+            cancel();
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+    }
+}
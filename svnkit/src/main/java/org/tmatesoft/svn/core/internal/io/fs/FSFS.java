@@ -23,6 +23,7 @@ import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.zip.Deflater;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -34,8 +35,14 @@ import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSL2PProtoIndex;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSP2LEntry;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSP2LProtoIndex;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSDeferredRepresentationCacheManager;
 import org.tmatesoft.svn.core.internal.io.fs.revprop.SVNFSFSPackedRevProps;
 import org.tmatesoft.svn.core.internal.io.fs.revprop.SVNFSFSPackedRevPropsManifest;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
@@ -54,8 +61,10 @@ import org.tmatesoft.svn.core.io.ISVNLockHandler;
 import org.tmatesoft.svn.core.io.SVNLocationEntry;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffCodec;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 /**
@@ -85,6 +94,7 @@ public class FSFS {
     public static final String MANIFEST_FILE = "manifest";
 
     public static final String REP_CACHE_DB = "rep-cache.db";
+    public static final String PATH_HISTORY_DB = "path-history.db";
     public static final String PACK_EXT = ".pack";
     public static final String PACK_KIND_PACK = "pack";
     public static final String PACK_KIND_MANIFEST = "manifest";
@@ -95,6 +105,8 @@ public class FSFS {
     public static final String REVPROP_PACK_SIZE_OPTION = "revprop-pack-size";
     public static final String DELTIFICATION_SECTION = "deltification";
     public static final String COMPRESSION_OPTION = "compression";
+    public static final String COMPRESSION_LEVEL_OPTION = "compression-level";
+    public static final String COMPRESSION_PROPERTY = "svnkit.fsfs.compression";
 
     public static final String IO_SECTION = "io";
     public static final String BLOCK_SIZE_OPTION = "block-size";
@@ -151,15 +163,32 @@ public class FSFS {
 
     //TODO: we should be able to change this via some option
     private static long DEFAULT_MAX_FILES_PER_DIRECTORY = 1000;
+    private static boolean DEFAULT_USE_LOG_ADDRESSING = true;
     private static final String DB_TYPE = "fsfs";
 
     public static final String REVISION_PROPERTIES_DB = "revprops.db";
     public static final String REVISION_PROPERTIES_TABLE = "revprop";
     public static final String MIN_UNPACKED_REV = "min-unpacked-rev";
+    public static final String REVPROP_GENERATION_FILE = "revprop-generation";
 
     public static final boolean DB_FORMAT_PRE_17_USE_AS_DEFAULT = true;
     //public static final boolean DB_FORMAT_PRE_17_USE_AS_DEFAULT = false;
 
+    private static final FSCache<FSCacheKey, FSRevisionNode> ourRevisionNodesCache = FSCacheManager.getCache("revision-nodes", 10);
+    private static final FSCache<FSCacheKey, Map> ourDirContentsCache = FSCacheManager.getCache("dir-contents", 15);
+    private static final FSCache<FSCacheKey, long[]> ourPackManifestsCache = FSCacheManager.getCache("pack-manifests", 2);
+    private static final FSCache<FSCacheKey, SVNProperties> ourRevisionPropertiesCache = FSCacheManager.getCache("revision-properties", 5);
+    private static final FSCache<FSCacheKey, long[]> ourRevisionDatesCache = FSCacheManager.getCache("revision-dates", 1);
+
+    private static final int UNSHARDED_REVISION_DATES_COUNT = 1000;
+    private static final long UNKNOWN_REVISION_DATE = Long.MIN_VALUE;
+
+    // repository scope -> {revprop generation, modification time and length of the generation file it was read from}
+    private static final Map<String, long[]> ourRevPropGenerations = new HashMap<String, long[]>();
+
+    private static final boolean ourIsOpenedStateShared = Boolean.valueOf(System.getProperty("svnkit.fsfs.shareOpenedState", "true")).booleanValue();
+    private static final Map<String, OpenedState> ourOpenedStates = new HashMap<String, OpenedState>();
+
     private int myDBFormat;
     private int myReposFormat;
     private String myUUID;
@@ -188,6 +217,11 @@ public class FSFS {
     private boolean myUseLogAddressing;
     private SVNConfigFile myConfig;
     private IFSRepresentationCacheManager myReposCacheManager;
+    private boolean myIsReposCacheManagerOpened;
+    private FSDeferredRepresentationCacheManager myDeferredReposCacheManager;
+    private boolean myIsWriteBatch;
+    private FSPathHistoryIndex myPathHistoryIndex;
+    private boolean myIsPathHistoryIndexOpened;
     private long myMinUnpackedRevProp;
     
     private boolean myIsHooksEnabled;
@@ -199,6 +233,9 @@ public class FSFS {
     private long myL2PPageSize;
     private long myP2LPageSize;
     private String myDeltificationCompressionAlgorithm;
+    private SVNDiffCodec myDeltificationCodec;
+    private SVNDiffCodec myConfiguredDeltificationCodec;
+    private String myCacheScope;
 
     public FSFS(File repositoryRoot) {
         myRepositoryRoot = repositoryRoot;
@@ -234,16 +271,156 @@ public class FSFS {
         return myDeltificationCompressionAlgorithm;
     }
 
+    /**
+     * Returns the codec new representations are compressed with. It is either the one set with
+     * {@link #setDeltificationCodec(SVNDiffCodec)}, or the one named by the <code>svnkit.fsfs.compression</code>
+     * system property, or the one configured in fsfs.conf, whichever comes first and can be read by this
+     * repository format.
+     */
+    public synchronized SVNDiffCodec getDeltificationCodec() {
+        if (myDeltificationCodec != null && isDeltificationCodecSupported(myDeltificationCodec)) {
+            return myDeltificationCodec;
+        }
+        SVNDiffCodec codec = SVNDiffCodec.create(System.getProperty(COMPRESSION_PROPERTY));
+        if (codec == null || !isDeltificationCodecSupported(codec)) {
+            codec = SVNDiffCodec.create(myDeltificationCompressionAlgorithm);
+        }
+        if (codec == null || !isDeltificationCodecSupported(codec)) {
+            codec = SVNDiffCodec.createNone();
+        }
+        // the same codec as long as the settings do not change, so that its statistics add up
+        if (myConfiguredDeltificationCodec == null || !myConfiguredDeltificationCodec.getName().equals(codec.getName())) {
+            myConfiguredDeltificationCodec = codec;
+        }
+        return myConfiguredDeltificationCodec;
+    }
+
+    /**
+     * Sets the codec new representations are compressed with, <code>null</code> to use the configured one.
+     * Codecs which can not be read by this repository format are ignored.
+     */
+    public synchronized void setDeltificationCodec(SVNDiffCodec codec) {
+        myDeltificationCodec = codec;
+    }
+
+    private boolean isDeltificationCodecSupported(SVNDiffCodec codec) {
+        if (codec.getVersion() >= 2) {
+            return myDBFormat >= MIN_COMPRESSION_FORMAT;
+        } else if (codec.getVersion() == 1) {
+            return myDBFormat >= MIN_SVNDIFF1_FORMAT;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the compression of new representations the way Subversion does: <code>compression</code>
+     * is only known to formats with LZ4 support, older formats and older configs use <code>compression-level</code>.
+     */
+    private String readDeltificationCompression(SVNConfigFile config) throws SVNException {
+        final String compression = myDBFormat >= MIN_COMPRESSION_FORMAT ? config.getPropertyValue(DELTIFICATION_SECTION, COMPRESSION_OPTION) : null;
+        final String compressionLevel = config.getPropertyValue(DELTIFICATION_SECTION, COMPRESSION_LEVEL_OPTION);
+        if (compression != null && compressionLevel != null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, "The ''{0}'' and ''{1}'' options are mutually exclusive", new Object[] {COMPRESSION_OPTION, COMPRESSION_LEVEL_OPTION});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        if (compression != null) {
+            final SVNDiffCodec codec = SVNDiffCodec.create(compression);
+            // the high LZ4 compression is not known to Subversion, so it may only be set outside of fsfs.conf
+            if (codec == null || !codec.getName().equals(compression) || compression.endsWith("-high")) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, "Invalid ''{0}'' value ''{1}'' in the config", new Object[] {COMPRESSION_OPTION, compression});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            return compression;
+        }
+        int level = Deflater.DEFAULT_COMPRESSION;
+        if (compressionLevel != null) {
+            try {
+                level = Math.max(0, Math.min(9, Integer.parseInt(compressionLevel.trim())));
+            } catch (NumberFormatException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, "Invalid ''{0}'' value ''{1}'' in the config", new Object[] {COMPRESSION_LEVEL_OPTION, compressionLevel});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            if (level == 0) {
+                return SVNDiffCodec.NONE;
+            }
+            return myDBFormat >= MIN_SVNDIFF1_FORMAT ? SVNDiffCodec.ZLIB + "-" + level : SVNDiffCodec.NONE;
+        }
+        return getDefaultDeltificationCompression(level);
+    }
+
+    private String getDefaultDeltificationCompression(int zlibLevel) {
+        if (myDBFormat >= MIN_COMPRESSION_FORMAT) {
+            return SVNDiffCodec.LZ4;
+        } else if (myDBFormat >= MIN_SVNDIFF1_FORMAT) {
+            return zlibLevel == Deflater.DEFAULT_COMPRESSION ? SVNDiffCodec.ZLIB : SVNDiffCodec.ZLIB + "-" + zlibLevel;
+        }
+        return SVNDiffCodec.NONE;
+    }
+
     public void open() throws SVNException {
+        if (!ourIsOpenedStateShared) {
+            openRoot();
+            openDB();
+            return;
+        }
+        String key = getOpenedStateKey(myRepositoryRoot);
+        long[] stamps = OpenedState.readStamps(this);
+        OpenedState state;
+        synchronized (ourOpenedStates) {
+            state = ourOpenedStates.get(key);
+        }
+        if (state != null && state.isUpToDate(stamps)) {
+            state.applyTo(this);
+            checkCurrentFileExists();
+            return;
+        }
         openRoot();
         openDB();
+        state = OpenedState.create(this, stamps);
+        synchronized (ourOpenedStates) {
+            if (state != null) {
+                ourOpenedStates.put(key, state);
+            } else {
+                ourOpenedStates.remove(key);
+            }
+        }
+    }
+
+    // the same repository reached through different paths, such as symbolic links, shares one state
+    private static String getOpenedStateKey(File repositoryRoot) {
+        try {
+            return repositoryRoot.getCanonicalPath();
+        } catch (IOException e) {
+            return repositoryRoot.getAbsolutePath();
+        }
     }
 
     public void close() throws SVNException {
+        try {
+            if (myIsWriteBatch) {
+                endWriteBatch();
+            }
+        } finally {
+            closeDatabases();
+        }
+    }
+
+    /**
+     * Closes rep-cache.db and the path history index, which are opened again on demand. A write batch
+     * stays active, but what it kept so far has to be flushed first.
+     */
+    private void closeDatabases() throws SVNException {
+        myDeferredReposCacheManager = null;
         if (myReposCacheManager != null) {
             myReposCacheManager.close();
             myReposCacheManager = null;
         }
+        myIsReposCacheManagerOpened = false;
+        if (myPathHistoryIndex != null) {
+            myPathHistoryIndex.close();
+            myPathHistoryIndex = null;
+        }
+        myIsPathHistoryIndexOpened = false;
     }
 
     public void openForRecovery() throws SVNException {
@@ -312,39 +489,18 @@ public class FSFS {
             String optionValue = config.getPropertyValue(REP_SHARING_SECTION, ENABLE_REP_SHARING_OPTION);
             isRepSharingAllowed = DefaultSVNOptions.getBooleanValue(optionValue, true);
 
-            if (myDBFormat >= MIN_COMPRESSION_FORMAT) {
-                myDeltificationCompressionAlgorithm = myConfig.getPropertyValue(DELTIFICATION_SECTION, COMPRESSION_OPTION);
-                if (myDeltificationCompressionAlgorithm == null) {
-                    myDeltificationCompressionAlgorithm = "lz4";
-                }
-            }
-            if (myDeltificationCompressionAlgorithm == null) {
-                myDeltificationCompressionAlgorithm = "none";
-            }
+            myDeltificationCompressionAlgorithm = readDeltificationCompression(config);
         } else {
-            if (myDBFormat >= MIN_COMPRESSION_FORMAT) {
-                myDeltificationCompressionAlgorithm = "lz4";
-            } else {
-                myDeltificationCompressionAlgorithm = "zlib";
-            }
+            myDeltificationCompressionAlgorithm = getDefaultDeltificationCompression(Deflater.DEFAULT_COMPRESSION);
         }
         myIsRepSharingAllowed = isRepSharingAllowed;
-
-        if (myDBFormat >= MIN_REP_SHARING_FORMAT && isRepSharingAllowed) {
-            myReposCacheManager = FSRepresentationCacheUtil.open(this);
+        // databases opened before have to follow the configuration just read
+        if (myIsWriteBatch) {
+            flushWriteBatch();
         }
+        closeDatabases();
 
-        File dbCurrentFile = getCurrentFile();
-        if (!(dbCurrentFile.exists() && dbCurrentFile.canRead())) {
-            if (myReposCacheManager != null) {
-                myReposCacheManager.close();
-                myReposCacheManager = null;
-            }
-
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR,
-                    "Can''t open file ''{0}''", dbCurrentFile);
-            SVNErrorManager.error(err, SVNLogType.FSFS);
-        }
+        checkCurrentFileExists();
 
         /* Open the revprops db. */
         if (myDBFormat >= MIN_PACKED_REVPROP_FORMAT) {
@@ -459,6 +615,13 @@ public class FSFS {
         return myUUID;
     }
 
+    public String getCacheScope() throws SVNException {
+        if (myCacheScope == null) {
+            myCacheScope = FSCacheManager.getScope(myRepositoryRoot, getUUID(), getUUIDFile().lastModified());
+        }
+        return myCacheScope;
+    }
+
     public File getDBRoot() {
         if (myDBRoot == null) {
             myDBRoot = new File(myRepositoryRoot, DB_DIR);
@@ -547,6 +710,21 @@ public class FSFS {
         return myCurrentFile;
     }
 
+    public File getPathHistoryIndexFile() {
+        return new File(getDBRoot(), PATH_HISTORY_DB);
+    }
+
+    /**
+     * Returns the path history index of the repository, or <code>null</code> if the repository is not indexed.
+     */
+    public FSPathHistoryIndex getPathHistoryIndex() throws SVNException {
+        if (!myIsPathHistoryIndexOpened) {
+            myIsPathHistoryIndexOpened = true;
+            myPathHistoryIndex = FSPathHistoryIndex.openIndex(this);
+        }
+        return myPathHistoryIndex;
+    }
+
     public File getRepositoryCacheFile() {
         if (myRepositoryCacheFile == null) {
             myRepositoryCacheFile = new File(getDBRoot(), REP_CACHE_DB);
@@ -572,26 +750,24 @@ public class FSFS {
         long top = latest;
         long bottom = 0;
         long middle;
-        Date currentTime = null;
+        final long generation = FSCacheManager.isEnabled() ? getRevPropGeneration() : -1;
 
         while (bottom <= top) {
             middle = (top + bottom) / 2;
-            currentTime = getRevisionTime(middle);
-            if (currentTime.compareTo(date) > 0) {
+            final int comparison = compareRevisionTime(getRevisionTime(middle, generation), date);
+            if (comparison > 0) {
                 if ((middle - 1) < 0) {
                     return 0;
                 }
-                Date prevTime = getRevisionTime(middle - 1);
-                if (prevTime.compareTo(date) < 0) {
+                if (compareRevisionTime(getRevisionTime(middle - 1, generation), date) < 0) {
                     return middle - 1;
                 }
                 top = middle - 1;
-            } else if (currentTime.compareTo(date) < 0) {
+            } else if (comparison < 0) {
                 if ((middle + 1) > latest) {
                     return latest;
                 }
-                Date nextTime = getRevisionTime(middle + 1);
-                if (nextTime.compareTo(date) > 0) {
+                if (compareRevisionTime(getRevisionTime(middle + 1, generation), date) > 0) {
                     return middle;
                 }
                 bottom = middle + 1;
@@ -675,6 +851,10 @@ public class FSFS {
     }
 
     public void writeDBFormat(int format, long maxFilesPerDir, boolean overwrite) throws SVNException {
+        writeDBFormat(format, maxFilesPerDir, isUseLogAddressing(), overwrite);
+    }
+
+    public void writeDBFormat(int format, long maxFilesPerDir, boolean useLogAddressing, boolean overwrite) throws SVNException {
         File formatFile = getDBFormatFile();
         SVNErrorManager.assertionFailure(format >= 1 && format <= DB_FORMAT, "unexpected format " + String.valueOf(format), SVNLogType.FSFS);
         String contents = null;
@@ -682,7 +862,10 @@ public class FSFS {
             if (maxFilesPerDir > 0) {
                 contents = format + "\nlayout sharded " + maxFilesPerDir + "\n";
             } else {
-                contents = format + "\nlayout linear";
+                contents = format + "\nlayout linear\n";
+            }
+            if (format >= MIN_LOG_ADDRESSING_MINIMAL_FORMAT) {
+                contents += useLogAddressing ? "addressing logical\n" : "addressing physical\n";
             }
         } else {
             contents = format + "\n";
@@ -711,21 +894,34 @@ public class FSFS {
     }
 
     public SVNProperties getRevisionProperties(long revision) throws SVNException {
-        try{
-            if (!SVNRevision.isValidRevisionNumber(revision)) {
-                revision = getYoungestRevision();
+        if (!SVNRevision.isValidRevisionNumber(revision)) {
+            revision = getYoungestRevision();
+        }
+        final long generation = FSCacheManager.isEnabled() ? getRevPropGeneration() : -1;
+        if (generation >= 0) {
+            final SVNProperties cachedProperties = ourRevisionPropertiesCache.get(new FSCacheKey(getCacheScope(), generation, revision));
+            if (cachedProperties != null) {
+                return new SVNProperties(cachedProperties);
             }
-            return readRevisionProperties(revision);
+        }
+        SVNProperties properties;
+        try{
+            properties = readRevisionProperties(revision, generation);
         } catch(SVNException e ) {
             if(e.getErrorMessage().getErrorCode()==SVNErrorCode.FS_NO_SUCH_REVISION && myDBFormat >= MIN_PACKED_REVPROP_FORMAT ) {
                 updateMinUnpackedRevProp();
-                return readRevisionProperties(revision);
+                properties = readRevisionProperties(revision, generation);
+            } else {
+                throw e;
             }
-            throw e;
         }
+        if (generation >= 0) {
+            cacheRevisionProperties(generation, revision, properties);
+        }
+        return properties;
     }
 
-    private SVNProperties readRevisionProperties(long revision) throws SVNException {
+    private SVNProperties readRevisionProperties(long revision, long generation) throws SVNException {
         ensureRevisionsExists(revision);
         SVNProperties properties = null;
         if (!isPackedRevisionProperties(revision)) {
@@ -742,13 +938,13 @@ public class FSFS {
         }
         if (myDBFormat >= MIN_PACKED_REVPROP_FORMAT && properties == null) {
             // read packed revision props
-            return readPackedRevisionProperties(revision);
+            return readPackedRevisionProperties(revision, generation);
             // TODO wrap exception, do retry
         }
         return properties == null ? new SVNProperties() : properties;
     }
     
-    private SVNProperties readPackedRevisionProperties(long revision) throws SVNException {
+    private SVNProperties readPackedRevisionProperties(long revision, long generation) throws SVNException {
         if (!isPackedRevisionProperties(revision)) {
             updateMinUnpackedRevProp();
         }
@@ -759,9 +955,93 @@ public class FSFS {
         final File packFile = getPackedRevPropFile(revision);
         final SVNFSFSPackedRevProps packedRevProps = SVNFSFSPackedRevProps.fromPackFile(packFile);
         final SVNProperties properties = packedRevProps.parseProperties(revision);
+        if (generation >= 0) {
+            // log walks revisions one by one, so keep the neighbours decoded as the whole pack is read anyway
+            final long lastRevision = packedRevProps.getFirstRevision() + packedRevProps.getRevisionsCount();
+            for (long packedRevision = packedRevProps.getFirstRevision(); packedRevision < lastRevision; packedRevision++) {
+                if (packedRevision != revision) {
+                    final SVNProperties packedProperties = packedRevProps.parseProperties(packedRevision);
+                    cacheRevisionProperties(generation, packedRevision, packedProperties == null ? new SVNProperties() : packedProperties);
+                }
+            }
+        }
         return properties == null ? new SVNProperties() : properties;
     }
 
+    private void cacheRevisionProperties(long generation, long revision, SVNProperties properties) throws SVNException {
+        long size = 64;
+        for (Iterator names = properties.nameSet().iterator(); names.hasNext();) {
+            final String name = (String) names.next();
+            final SVNPropertyValue value = properties.getSVNPropertyValue(name);
+            size += 64 + name.length() * 2;
+            if (value != null && value.isString()) {
+                size += value.getString().length() * 2;
+            } else if (value != null && value.getBytes() != null) {
+                size += value.getBytes().length;
+            }
+        }
+        ourRevisionPropertiesCache.put(new FSCacheKey(getCacheScope(), generation, revision), new SVNProperties(properties), size);
+    }
+
+    public File getRevPropGenerationFile() {
+        return new File(getDBRoot(), REVPROP_GENERATION_FILE);
+    }
+
+    /**
+     * Returns the current revprop generation, or <code>-1</code> while revision properties are being
+     * changed. The generation file is only read again when its timestamp or size changes, so
+     * for cached revision properties the file system is asked for nothing but this file's status.
+     */
+    private long getRevPropGeneration() throws SVNException {
+        final File generationFile = getRevPropGenerationFile();
+        final long lastModified = generationFile.lastModified();
+        final long length = generationFile.length();
+        final String scope = getCacheScope();
+        long generation;
+        synchronized (ourRevPropGenerations) {
+            final long[] knownGeneration = ourRevPropGenerations.get(scope);
+            if (knownGeneration != null && knownGeneration[1] == lastModified && knownGeneration[2] == length) {
+                generation = knownGeneration[0];
+                return generation % 2 == 0 ? generation : -1;
+            }
+        }
+        generation = readRevPropGeneration();
+        // the file may change again within the timestamp granularity without changing its status
+        if (System.currentTimeMillis() - lastModified > OpenedState.TIMESTAMP_GRANULARITY) {
+            synchronized (ourRevPropGenerations) {
+                ourRevPropGenerations.put(scope, new long[] {generation, lastModified, length});
+            }
+        }
+        return generation % 2 == 0 ? generation : -1;
+    }
+
+    private long readRevPropGeneration() throws SVNException {
+        final File generationFile = getRevPropGenerationFile();
+        if (!generationFile.isFile()) {
+            return 0;
+        }
+        FSFile file = new FSFile(generationFile);
+        try {
+            return file.readLong();
+        } catch (NumberFormatException nfe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Revprop generation file ''{0}'' is corrupt", generationFile);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        } finally {
+            file.close();
+        }
+        return -1;
+    }
+
+    private void writeRevPropGeneration(long generation) throws SVNException {
+        final File generationFile = getRevPropGenerationFile();
+        final File tmpFile = SVNFileUtil.createUniqueFile(generationFile.getParentFile(), generationFile.getName(), ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, generation + "\n", "US-ASCII");
+        SVNFileUtil.rename(tmpFile, generationFile);
+        synchronized (ourRevPropGenerations) {
+            ourRevPropGenerations.remove(getCacheScope());
+        }
+    }
+
     private File getPackedRevPropFile(long revision) throws SVNException {
         final File packShardDirectory = getPackedRevPropsShardPath(revision);
         final File manifestFile = new File(packShardDirectory, MANIFEST_FILE);
@@ -860,6 +1140,46 @@ public class FSFS {
         return new FSRevisionRoot(this, revision);
     }
 
+    /**
+     * Passes the changed paths of every revision from <code>startRevision</code> to <code>endRevision</code>
+     * to the handler, in descending order if <code>startRevision</code> is the younger one. Every pack file
+     * is opened once for all of its revisions rather than once per revision.
+     */
+    public void walkChangedPaths(long startRevision, long endRevision, IFSChangedPathsHandler handler) throws SVNException {
+        ensureRevisionsExists(Math.max(startRevision, endRevision));
+        final long step = startRevision <= endRevision ? 1 : -1;
+        FSFile packFile = null;
+        long packShard = -1;
+        try {
+            for (long revision = startRevision; ; revision += step) {
+                final FSRevisionRoot root = new FSRevisionRoot(this, revision);
+                final Map changedPaths;
+                if (isPackedRevision(revision)) {
+                    final long shard = revision / myMaxFilesPerDirectory;
+                    if (packFile == null || shard != packShard) {
+                        if (packFile != null) {
+                            packFile.close();
+                            packFile = null;
+                        }
+                        packFile = getPackOrRevisionFSFile(revision);
+                        packShard = shard;
+                    }
+                    changedPaths = root.getChangedPaths(packFile);
+                } else {
+                    changedPaths = root.getChangedPaths();
+                }
+                handler.handleChangedPaths(revision, changedPaths);
+                if (revision == endRevision) {
+                    break;
+                }
+            }
+        } finally {
+            if (packFile != null) {
+                packFile.close();
+            }
+        }
+    }
+
     public FSTransactionRoot createTransactionRoot(FSTransactionInfo txn) throws SVNException {
         SVNProperties txnProps = getTransactionProperties(txn.getTxnId());
         int flags = 0;
@@ -888,10 +1208,18 @@ public class FSFS {
     public FSRevisionNode getRevisionNode(FSID id) throws SVNException  {
         FSFile revisionFile = null;
 
+        FSCacheKey cacheKey = null;
         if (id.isTxn()) {
             File file = new File(getTransactionDir(id.getTxnID()), PATH_PREFIX_NODE + id.getNodeID() + "." + id.getCopyID());
             revisionFile = new FSFile(file);
         } else {
+            if (FSCacheManager.isEnabled()) {
+                cacheKey = new FSCacheKey(getCacheScope(), id.getRevision(), id.getOffset());
+                FSRevisionNode cachedNode = ourRevisionNodesCache.get(cacheKey);
+                if (cachedNode != null) {
+                    return FSRevisionNode.dumpRevisionNode(cachedNode);
+                }
+            }
             revisionFile = openAndSeekRevision(id.getRevision(), id.getOffset());
         }
 
@@ -906,6 +1234,9 @@ public class FSFS {
         if (node.isFreshTxnRoot()) {
             node.setFreshRootPredecessorId(node.getPredecessorId());
         }
+        if (cacheKey != null) {
+            ourRevisionNodesCache.put(cacheKey, FSRevisionNode.dumpRevisionNode(node), estimateSize(node));
+        }
         return node;
     }
 
@@ -926,11 +1257,40 @@ public class FSFS {
             }
             return entries;
         } else if (txtRep != null) {
-            return parsePlainRepresentation(parseProperties(txtRep), false);
+            FSCacheKey cacheKey = null;
+            if (FSCacheManager.isEnabled()) {
+                cacheKey = new FSCacheKey(getCacheScope(), txtRep.getRevision(), txtRep.getItemIndex());
+                Map cachedEntries = ourDirContentsCache.get(cacheKey);
+                if (cachedEntries != null) {
+                    return new SVNHashMap(cachedEntries);
+                }
+            }
+            Map entries = parsePlainRepresentation(parseProperties(txtRep), false);
+            if (cacheKey != null) {
+                ourDirContentsCache.put(cacheKey, new SVNHashMap(entries), estimateSize(entries));
+            }
+            return entries;
         }
         return new SVNHashMap();// returns an empty map, must not be null!!
     }
 
+    private static long estimateSize(FSRevisionNode node) {
+        long size = 256;
+        size += node.getCreatedPath() != null ? node.getCreatedPath().length() * 2 : 0;
+        size += node.getCopyFromPath() != null ? node.getCopyFromPath().length() * 2 : 0;
+        size += node.getCopyRootPath() != null ? node.getCopyRootPath().length() * 2 : 0;
+        return size;
+    }
+
+    private static long estimateSize(Map entries) {
+        long size = 64;
+        for (Iterator names = entries.keySet().iterator(); names.hasNext();) {
+            String name = (String) names.next();
+            size += 96 + name.length() * 2;
+        }
+        return size;
+    }
+
     private byte[] parseRawDeltaProperties(FSRepresentation txtRep, StringBuilder outputChecksum) throws SVNException {
         FSFile revisionFile = null;
         revisionFile = openAndSeekRepresentation(txtRep);
@@ -1198,6 +1558,65 @@ public class FSFS {
         return revFile;
     }
 
+    public void writeRevisionZero() throws SVNException {
+        if (!isUseLogAddressing()) {
+            return;
+        }
+        final File revFile = getNewRevisionFile(0);
+        final String txnId = "0-0";
+        final File txnDir = getTransactionDir(txnId);
+        txnDir.mkdirs();
+        CountingOutputStream revWriter = null;
+        try {
+            revWriter = new CountingOutputStream(SVNFileUtil.openFileForWriting(revFile), 0);
+            final long dirRepOffset = revWriter.getPosition();
+            revWriter.write("PLAIN\nEND\nENDREP\n".getBytes("US-ASCII"));
+            final FSP2LEntry dirRepEntry = new FSP2LEntry(dirRepOffset, revWriter.getPosition() - dirRepOffset,
+                    FSP2LProtoIndex.ItemType.DIR_REP, revWriter.finalizeChecksum(), SVNRepository.INVALID_REVISION, FSID.ITEM_FIRST_USER);
+
+            revWriter.resetChecksum();
+            final long nodeRevOffset = revWriter.getPosition();
+            revWriter.write(("id: 0.0.r0/" + FSID.ITEM_INDEX_ROOT_NODE + "\n" +
+                    "type: dir\n" +
+                    "count: 0\n" +
+                    "text: 0 " + FSID.ITEM_FIRST_USER + " 4 4 2d2977d1c96f487abe4a1e202dd03b4e\n" +
+                    "cpath: /\n" +
+                    "\n").getBytes("US-ASCII"));
+            final FSP2LEntry nodeRevEntry = new FSP2LEntry(nodeRevOffset, revWriter.getPosition() - nodeRevOffset,
+                    FSP2LProtoIndex.ItemType.NODEREV, revWriter.finalizeChecksum(), SVNRepository.INVALID_REVISION, FSID.ITEM_INDEX_ROOT_NODE);
+
+            revWriter.resetChecksum();
+            final long changesOffset = revWriter.getPosition();
+            revWriter.write('\n');
+            final FSP2LEntry changesEntry = new FSP2LEntry(changesOffset, revWriter.getPosition() - changesOffset,
+                    FSP2LProtoIndex.ItemType.CHANGES, revWriter.finalizeChecksum(), SVNRepository.INVALID_REVISION, FSID.ITEM_INDEX_CHANGES);
+
+            final FSL2PProtoIndex l2pProtoIndex = FSL2PProtoIndex.open(this, txnId, false);
+            try {
+                l2pProtoIndex.addEntry(dirRepEntry.getOffset(), dirRepEntry.getNumber());
+                l2pProtoIndex.addEntry(nodeRevEntry.getOffset(), nodeRevEntry.getNumber());
+                l2pProtoIndex.addEntry(changesEntry.getOffset(), changesEntry.getNumber());
+            } finally {
+                l2pProtoIndex.close();
+            }
+            final FSP2LProtoIndex p2lProtoIndex = FSP2LProtoIndex.open(this, txnId, false);
+            try {
+                p2lProtoIndex.writeEntry(dirRepEntry);
+                p2lProtoIndex.writeEntry(nodeRevEntry);
+                p2lProtoIndex.writeEntry(changesEntry);
+            } finally {
+                p2lProtoIndex.close();
+            }
+            new FSRevisionRoot(this, 0).writeIndexData(revWriter, 0, txnId);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Can not write revision 0 to ''{0}'': {1}", new Object[] {revFile, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(revWriter);
+            SVNFileUtil.deleteAll(txnDir, true);
+        }
+    }
+
     public File getNewRevisionPropertiesFile(long newRevision) {
         if (myMaxFilesPerDirectory > 0 && (newRevision % myMaxFilesPerDirectory == 0)) {
             File shardDir = new File(getRevisionPropertiesRoot(), String.valueOf(newRevision/myMaxFilesPerDirectory));
@@ -1239,6 +1658,8 @@ public class FSFS {
             SVNFileUtil.closeFile(uuidOS);
         }
         SVNFileUtil.rename(uniqueFile, getUUIDFile());
+        myUUID = null;
+        myCacheScope = null;
     }
 
     public File getRevisionPropertiesFile(long revision, boolean returnMissing) throws SVNException {
@@ -1301,9 +1722,15 @@ public class FSFS {
 
             FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(this);
             synchronized (writeLock) {
+                long generation = -1;
                 try {
                     writeLock.lock();
 
+                    // an odd generation tells readers in other processes not to trust their cached revision properties
+                    generation = readRevPropGeneration();
+                    generation += generation % 2 == 0 ? 1 : 2;
+                    writeRevPropGeneration(generation);
+
                     if (!isPackedRevisionProperties(revision)) {
                         SVNWCProperties revProps = new SVNWCProperties(getRevisionPropertiesFile(revision, false), null);
                         revProps.setPropertyValue(propertyName, propertyValue);
@@ -1346,8 +1773,14 @@ public class FSFS {
                         }
                     }
                 } finally {
-                    writeLock.unlock();
-                    FSWriteLock.release(writeLock);
+                    try {
+                        if (generation >= 0) {
+                            writeRevPropGeneration(generation + 1);
+                        }
+                    } finally {
+                        writeLock.unlock();
+                        FSWriteLock.release(writeLock);
+                    }
                 }
             }
     }
@@ -1985,10 +2418,84 @@ public class FSFS {
         }
     }
 
-    public IFSRepresentationCacheManager getRepositoryCacheManager() {
+    /**
+     * Returns the rep-cache.db manager, opening the database on the first call, so that
+     * sessions which only read the repository never touch it.
+     */
+    public IFSRepresentationCacheManager getRepositoryCacheManager() throws SVNException {
+        if (!myIsReposCacheManagerOpened) {
+            myIsReposCacheManagerOpened = true;
+            if (myDBFormat >= MIN_REP_SHARING_FORMAT && myIsRepSharingAllowed) {
+                myReposCacheManager = FSRepresentationCacheUtil.open(this);
+            }
+        }
+        if (myIsWriteBatch && myReposCacheManager != null) {
+            if (myDeferredReposCacheManager == null) {
+                myDeferredReposCacheManager = new FSDeferredRepresentationCacheManager(myReposCacheManager);
+            }
+            return myDeferredReposCacheManager;
+        }
         return myReposCacheManager;
     }
 
+    /**
+     * Starts a batch of commits made through this instance, such as a load of a dump. Within a batch
+     * rows of rep-cache.db are kept in memory and the path history index is not updated, both are
+     * written once by {@link #flushWriteBatch()} instead of once per revision.
+     */
+    public void beginWriteBatch() {
+        myIsWriteBatch = true;
+    }
+
+    public boolean isWriteBatch() {
+        return myIsWriteBatch;
+    }
+
+    /**
+     * Writes what the current batch kept so far. Rep-cache rows that could not be written stay kept and
+     * the error is raised, as otherwise the content of a whole batch would silently stop being shared.
+     * Failures to update the path history index are only logged, as after a single commit.
+     */
+    public void flushWriteBatch() throws SVNException {
+        SVNException repCacheError = null;
+        if (myDeferredReposCacheManager != null) {
+            try {
+                myDeferredReposCacheManager.flush();
+            } catch (SVNException e) {
+                repCacheError = e;
+            }
+        }
+        try {
+            final FSPathHistoryIndex pathHistoryIndex = getPathHistoryIndex();
+            if (pathHistoryIndex != null) {
+                pathHistoryIndex.update(this);
+            }
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+        }
+        if (repCacheError != null) {
+            throw repCacheError;
+        }
+    }
+
+    public void endWriteBatch() throws SVNException {
+        try {
+            flushWriteBatch();
+        } finally {
+            myIsWriteBatch = false;
+            myDeferredReposCacheManager = null;
+        }
+    }
+
+    private void checkCurrentFileExists() throws SVNException {
+        File dbCurrentFile = getCurrentFile();
+        if (!(dbCurrentFile.exists() && dbCurrentFile.canRead())) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR,
+                    "Can''t open file ''{0}''", dbCurrentFile);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+    }
+
     public static File findRepositoryRoot(File path) {
         if (path == null) {
             path = new File("");
@@ -2034,6 +2541,14 @@ public class FSFS {
         DEFAULT_MAX_FILES_PER_DIRECTORY = maxFilesPerDirectory;
     }
 
+    public static boolean isDefaultUseLogAddressing() {
+        return DEFAULT_USE_LOG_ADDRESSING;
+    }
+
+    public static void setDefaultUseLogAddressing(boolean useLogAddressing) {
+        DEFAULT_USE_LOG_ADDRESSING = useLogAddressing;
+    }
+
     public boolean isPackedRevision(long revision) {
         return revision < myMinUnpackedRevision;
     }
@@ -2079,7 +2594,7 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", String.valueOf(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return new FSFile(file);
+        return new FSFile(file, FSMappedFiles.isMappingEnabled(isPackedRevision(revision)));
     }
 
     protected File getAbsoluteRevisionPath(long revision) throws SVNException {
@@ -2088,7 +2603,9 @@ public class FSFS {
             if (revFile.exists()) {
                 return revFile;
             }
-            getMinUnpackedRev();
+            if (myDBFormat >= MIN_PACKED_FORMAT) {
+                getMinUnpackedRev();
+            }
             if (!isPackedRevision(revision)) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "Revision file ''{0}'' does not exist, and r{1} is not packed",
                         new Object[] { revFile, String.valueOf(revision) });
@@ -2189,23 +2706,45 @@ public class FSFS {
     }
 
     protected long getPackedOffset(long revision) throws SVNException {
-        //TODO: later on introduce invoking memcache here to fetch\store the requested data
-        //long shard = revision / myMaxFilesPerDirectory;
+        long shard = revision / myMaxFilesPerDirectory;
+        long[] manifest = getPackManifest(revision);
+        int index = (int) (revision % myMaxFilesPerDirectory);
+        if (index >= manifest.length) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Pack manifest of shard ''{0}'' has no offset for revision ''{1}''",
+                    new Object[] {new Long(shard), new Long(revision)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return manifest[index];
+    }
+
+    private long[] getPackManifest(long revision) throws SVNException {
+        long shard = revision / myMaxFilesPerDirectory;
+        FSCacheKey cacheKey = FSCacheManager.isEnabled() ? new FSCacheKey(getCacheScope(), shard) : null;
+        if (cacheKey != null) {
+            long[] cachedManifest = ourPackManifestsCache.get(cacheKey);
+            if (cachedManifest != null) {
+                return cachedManifest;
+            }
+        }
         File manifestFile = getPackedRevPath(revision, PACK_KIND_MANIFEST);
+        long[] manifest = new long[(int) Math.min(myMaxFilesPerDirectory, 1024 * 1024)];
+        int count = 0;
         BufferedReader reader = null;
-        LinkedList manifest = new LinkedList();
         try {
-            reader = new BufferedReader(new InputStreamReader(SVNFileUtil.openFileForReading(manifestFile)));
+            reader = new BufferedReader(new InputStreamReader(SVNFileUtil.openFileForReading(manifestFile), "US-ASCII"));
             String line = null;
             while ((line = reader.readLine()) != null) {
-                Long offset = null;
+                if (count == manifest.length) {
+                    long[] grown = new long[manifest.length * 2];
+                    System.arraycopy(manifest, 0, grown, 0, count);
+                    manifest = grown;
+                }
                 try {
-                    offset = Long.valueOf(line);
+                    manifest[count++] = Long.parseLong(line);
                 } catch (NumberFormatException nfe) {
-                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT);
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Malformed offset ''{0}'' in pack manifest ''{1}''", new Object[] {line, manifestFile});
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
-                manifest.add(offset);
             }
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
@@ -2213,10 +2752,24 @@ public class FSFS {
         } finally {
             SVNFileUtil.closeFile(reader);
         }
+        if (count < manifest.length) {
+            long[] trimmed = new long[count];
+            System.arraycopy(manifest, 0, trimmed, 0, count);
+            manifest = trimmed;
+        }
+        if (cacheKey != null) {
+            ourPackManifestsCache.put(cacheKey, manifest, 8L * manifest.length + 16);
+        }
+        return manifest;
+    }
 
-        Long revOffsetLong = (Long) manifest.get((int) (revision % myMaxFilesPerDirectory));
-        SVNErrorManager.assertionFailure(revOffsetLong != null, "offset for revision " + String.valueOf(revision) + " is null", SVNLogType.FSFS);
-        return revOffsetLong.longValue();
+    /**
+     * Forgets the cached manifest of the shard; called whenever the shard is (re)packed.
+     */
+    public void clearPackManifest(long shard) throws SVNException {
+        if (FSCacheManager.isEnabled()) {
+            ourPackManifestsCache.remove(new FSCacheKey(getCacheScope(), shard));
+        }
     }
 
     private SVNConfigFile loadConfig() {
@@ -2537,14 +3090,57 @@ public class FSFS {
         return new FSEntry(id, type, name);
     }
 
-    private Date getRevisionTime(long revision) throws SVNException {
+    /**
+     * Returns <code>svn:date</code> of the revision in microseconds. Dates are kept in per shard arrays
+     * which are filled as revisions are probed; the arrays are keyed by the revprop generation, so a changed
+     * revision property makes all of them stale.
+     */
+    private long getRevisionTime(long revision, long generation) throws SVNException {
+        if (generation < 0) {
+            return readRevisionTime(revision);
+        }
+        final int datesPerShard = myMaxFilesPerDirectory > 0 ? (int) myMaxFilesPerDirectory : UNSHARDED_REVISION_DATES_COUNT;
+        final FSCacheKey cacheKey = new FSCacheKey(getCacheScope(), generation, revision / datesPerShard);
+        long[] dates = ourRevisionDatesCache.get(cacheKey);
+        if (dates == null) {
+            dates = new long[datesPerShard];
+            Arrays.fill(dates, UNKNOWN_REVISION_DATE);
+            ourRevisionDatesCache.put(cacheKey, dates, 16 + 8L * datesPerShard);
+        }
+        final int index = (int) (revision % datesPerShard);
+        synchronized (dates) {
+            if (dates[index] != UNKNOWN_REVISION_DATE) {
+                return dates[index];
+            }
+        }
+        final long time = readRevisionTime(revision);
+        synchronized (dates) {
+            dates[index] = time;
+        }
+        return time;
+    }
+
+    private long readRevisionTime(long revision) throws SVNException {
         SVNProperties revisionProperties = getRevisionProperties(revision);
         String timeString = revisionProperties.getStringValue(SVNRevisionProperty.DATE);
         if (timeString == null) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_GENERAL, "Failed to find time on revision {0}", new Long(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return SVNDate.parseDateString(timeString);
+        final Date time = SVNDate.parseDateString(timeString);
+        return time instanceof SVNDate ? ((SVNDate) time).getTimeInMicros() : time.getTime() * 1000;
+    }
+
+    private static int compareRevisionTime(long revisionTime, Date date) {
+        // plain dates have no microseconds, so they are equal to any revision time within the same millisecond
+        final long time;
+        if (date instanceof SVNDate) {
+            time = ((SVNDate) date).getTimeInMicros();
+        } else {
+            time = date.getTime();
+            revisionTime = revisionTime / 1000;
+        }
+        return revisionTime < time ? -1 : (revisionTime == time ? 0 : 1);
     }
 
     private static boolean isRepositoryRoot(File candidatePath) {
@@ -2587,4 +3183,100 @@ public class FSFS {
     public boolean isCompressPackedRevprops() {
         return myCompressPackedRevprops;
     }
+
+    /**
+     * Everything {@link #open()} reads from the small files of the repository (format files, fs-type, uuid,
+     * fsfs.conf, min-unpacked-rev), shared by all FSFS objects opened for the same repository. The state
+     * is read again whenever one of these files changes its modification time or size.
+     */
+    private static class OpenedState {
+
+        // files modified that recently may change again without a visible change of their timestamps.
+        private static final long TIMESTAMP_GRANULARITY = 2000;
+
+        private final long[] myStamps;
+        private final int myReposFormat;
+        private final int myDBFormat;
+        private final long myMaxFilesPerDirectory;
+        private final boolean myUseLogAddressing;
+        private final String myFSType;
+        private final String myUUID;
+        private final long myMinUnpackedRevision;
+        private final long myMinUnpackedRevProp;
+        private final boolean myCompressPackedRevprops;
+        private final boolean myIsRepSharingAllowed;
+        private final long myRevpropPackSize;
+        private final long myBlockSize;
+        private final long myL2PPageSize;
+        private final long myP2LPageSize;
+        private final String myDeltificationCompressionAlgorithm;
+
+        private OpenedState(FSFS fsfs, long[] stamps) throws SVNException {
+            myStamps = stamps;
+            myReposFormat = fsfs.myReposFormat;
+            myDBFormat = fsfs.myDBFormat;
+            myMaxFilesPerDirectory = fsfs.myMaxFilesPerDirectory;
+            myUseLogAddressing = fsfs.myUseLogAddressing;
+            myFSType = fsfs.myFSType;
+            myUUID = fsfs.getUUID();
+            myMinUnpackedRevision = fsfs.myMinUnpackedRevision;
+            myMinUnpackedRevProp = fsfs.myMinUnpackedRevProp;
+            myCompressPackedRevprops = fsfs.myCompressPackedRevprops;
+            myIsRepSharingAllowed = fsfs.myIsRepSharingAllowed;
+            myRevpropPackSize = fsfs.myRevpropPackSize;
+            myBlockSize = fsfs.myBlockSize;
+            myL2PPageSize = fsfs.myL2PPageSize;
+            myP2LPageSize = fsfs.myP2LPageSize;
+            myDeltificationCompressionAlgorithm = fsfs.myDeltificationCompressionAlgorithm;
+        }
+
+        public static OpenedState create(FSFS fsfs, long[] stamps) throws SVNException {
+            long threshold = System.currentTimeMillis() - TIMESTAMP_GRANULARITY;
+            for (int i = 0; i < stamps.length; i += 2) {
+                if (stamps[i] > threshold) {
+                    return null;
+                }
+            }
+            return new OpenedState(fsfs, stamps);
+        }
+
+        public static long[] readStamps(FSFS fsfs) {
+            File[] files = new File[] {
+                    fsfs.getRepositoryFormatFile(),
+                    fsfs.getDBFormatFile(),
+                    fsfs.getFSTypeFile(),
+                    fsfs.getUUIDFile(),
+                    fsfs.getConfigFile(),
+                    fsfs.getMinUnpackedRevFile(),
+            };
+            long[] stamps = new long[files.length * 2];
+            for (int i = 0; i < files.length; i++) {
+                stamps[2 * i] = files[i].lastModified();
+                stamps[2 * i + 1] = files[i].length();
+            }
+            return stamps;
+        }
+
+        public boolean isUpToDate(long[] stamps) {
+            return Arrays.equals(myStamps, stamps);
+        }
+
+        public void applyTo(FSFS fsfs) {
+            fsfs.myReposFormat = myReposFormat;
+            fsfs.myDBFormat = myDBFormat;
+            fsfs.myMaxFilesPerDirectory = myMaxFilesPerDirectory;
+            fsfs.myUseLogAddressing = myUseLogAddressing;
+            fsfs.myFSType = myFSType;
+            fsfs.myUUID = myUUID;
+            fsfs.myMinUnpackedRevision = myMinUnpackedRevision;
+            fsfs.myMinUnpackedRevProp = myMinUnpackedRevProp;
+            fsfs.myCompressPackedRevprops = myCompressPackedRevprops;
+            fsfs.myIsRepSharingAllowed = myIsRepSharingAllowed;
+            fsfs.myRevpropPackSize = myRevpropPackSize;
+            fsfs.myBlockSize = myBlockSize;
+            fsfs.myL2PPageSize = myL2PPageSize;
+            fsfs.myP2LPageSize = myP2LPageSize;
+            fsfs.myDeltificationCompressionAlgorithm = myDeltificationCompressionAlgorithm;
+        }
+    }
 }
@@ -35,6 +35,10 @@ import java.util.logging.Level;
  * @author  TMate Software Ltd.
  */
 public class FSFile {
+
+    public static final String BUFFER_SIZE_PROPERTY = "svnkit.fsfs.bufferSize";
+
+    private static final int ourBufferSize = Math.max(128, Integer.getInteger(BUFFER_SIZE_PROPERTY, 1024).intValue());
     
     private File myFile;
     private final byte[] myData;
@@ -51,6 +55,10 @@ public class FSFile {
     private CharsetDecoder myDecoder;
     private MessageDigest myDigest;
 
+    private boolean myIsMappingAllowed;
+    private FSMappedFiles.Mapping myMapping;
+    private ByteBuffer myMappedBuffer;
+
     // Logical address index is written to the end of the file
     // and the footer of the index contains basic information about its size
     private long myL2POffset;
@@ -60,11 +68,20 @@ public class FSFile {
     private long myFooterOffset;
 
     public FSFile(File file) {
+        this(file, false);
+    }
+
+    /**
+     * @param memoryMapped whether the file may be read through a shared memory mapping,
+     *                     only allowed for files that are never modified, see {@link FSMappedFiles}
+     */
+    public FSFile(File file, boolean memoryMapped) {
         myFile = file;
         myData = null;
+        myIsMappingAllowed = memoryMapped;
         myPosition = 0;
         myBufferPosition = 0;
-        myBuffer = ByteBuffer.allocate(1024);
+        myBuffer = ByteBuffer.allocate(ourBufferSize);
         myReadLineBuffer = ByteBuffer.allocate(1024);
         myDecoder = Charset.forName("UTF-8").newDecoder();
         myDecoder = myDecoder.onMalformedInput(CodingErrorAction.REPORT).onUnmappableCharacter(CodingErrorAction.REPORT);
@@ -100,7 +117,10 @@ public class FSFile {
     }
 
     public long size() {
-        return myData == null ? myFile.length() : myLength;
+        if (myData != null) {
+            return myLength;
+        }
+        return isMapped() ? myMappedBuffer.capacity() : myFile.length();
     }
     
     public void resetDigest() {
@@ -363,6 +383,17 @@ public class FSFile {
             }
             return myData[((int) (myOffset + myPosition - 1))] & 0xff;
         }
+        if (isMapped()) {
+            if (myPosition >= myMappedBuffer.capacity()) {
+                return -1;
+            }
+            int r = myMappedBuffer.get((int) myPosition) & 0xff;
+            if (myDigest != null) {
+                myDigest.update((byte) r);
+            }
+            myPosition++;
+            return r;
+        }
         if ((myChannel == null && myInputStream == null) || myPosition < myBufferPosition || myPosition >= myBufferPosition + myBuffer.limit()) {
             if (fill() <= 0) {
                 return -1;
@@ -388,6 +419,19 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (isMapped()) {
+            int couldRead = (int) Math.max(0, Math.min(myMappedBuffer.capacity() - myPosition, target.remaining()));
+            myMappedBuffer.limit((int) myPosition + couldRead);
+            myMappedBuffer.position((int) myPosition);
+            if (myDigest != null) {
+                myDigest.update(myMappedBuffer);
+                myMappedBuffer.position((int) myPosition);
+            }
+            target.put(myMappedBuffer);
+            myMappedBuffer.limit(myMappedBuffer.capacity());
+            myPosition += couldRead;
+            return couldRead > 0 ? couldRead : -1;
+        }
         int read = 0;
         while(target.hasRemaining()) {
             if (fill() < 0) {
@@ -418,6 +462,16 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (isMapped()) {
+            int couldRead = (int) Math.max(0, Math.min(myMappedBuffer.capacity() - myPosition, length));
+            myMappedBuffer.position((int) myPosition);
+            myMappedBuffer.get(buffer, offset, couldRead);
+            if (myDigest != null) {
+                myDigest.update(buffer, offset, couldRead);
+            }
+            myPosition += couldRead;
+            return couldRead > 0 ? couldRead : -1;
+        }
         int read = 0;
         int toRead = length;
         while(toRead > 0) {
@@ -450,6 +504,11 @@ public class FSFile {
             } catch (IOException e) {}
         }
         SVNFileUtil.closeFile(myInputStream);
+        if (myMapping != null) {
+            FSMappedFiles.release(myMapping);
+        }
+        myMapping = null;
+        myMappedBuffer = null;
         myChannel = null;
         myInputStream = null;
         myPosition = 0;
@@ -469,6 +528,18 @@ public class FSFile {
         return 0;
     }
     
+    private boolean isMapped() {
+        if (myMappedBuffer == null && myIsMappingAllowed) {
+            myMapping = FSMappedFiles.acquire(myFile);
+            if (myMapping == null) {
+                myIsMappingAllowed = false;
+            } else {
+                myMappedBuffer = myMapping.createBuffer();
+            }
+        }
+        return myMappedBuffer != null;
+    }
+
     private void allocateReadBuffer(int limit) {
         if (limit > myReadLineBuffer.capacity()) {
             myReadLineBuffer = ByteBuffer.allocate(limit*3/2);
@@ -14,6 +14,11 @@ package org.tmatesoft.svn.core.internal.io.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
@@ -22,23 +27,63 @@ import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.db.SVNSqlJetDb;
+import org.tmatesoft.svn.core.internal.util.SVNWorkers;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileType;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.util.SVNLogType;
 
-
 /**
+ * Copies a repository while it is in use.
+ * <p/>
+ * <code>current</code> of the source is read first and written to the destination last, so the copy
+ * contains exactly the revisions which were committed when the copy started. In incremental mode an
+ * existing copy of the same repository is brought up to date: only revisions younger than its youngest
+ * revision, shards packed since and revision properties which changed (by their size or timestamp) are
+ * copied, and only new rows are added to its rep-cache. Files are copied by a pool of
+ * {@link #setThreadCount(int) threads}.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSHotCopier {
 
+    private boolean myIsIncremental;
+    private int myThreadCount;
+
+    public FSHotCopier() {
+        myThreadCount = 1;
+    }
+
+    /**
+     * Makes the copy incremental when the destination is an existing copy of the source repository.
+     */
+    public void setIncremental(boolean incremental) {
+        myIsIncremental = incremental;
+    }
+
+    /**
+     * Sets the number of files copied at once, <code>1</code> by default.
+     */
+    public void setThreadCount(int threadCount) {
+        myThreadCount = Math.max(1, threadCount);
+    }
+
     public void runHotCopy(FSFS srcOwner, File dstPath) throws SVNException {
         FSWriteLock dbLogsLock = FSWriteLock.getDBLogsLock(srcOwner, false);
         File srcPath = srcOwner.getRepositoryRoot();
         synchronized (dbLogsLock) {
             try {
                 dbLogsLock.lock();
+                if (myIsIncremental && new File(new File(dstPath, FSFS.DB_DIR), FSFS.DB_FORMAT_FILE).isFile()) {
+                    FSFS dstOwner = openDestination(srcOwner, dstPath);
+                    try {
+                        hotCopy(srcOwner, dstOwner, true);
+                    } finally {
+                        dstOwner.close();
+                    }
+                    return;
+                }
                 createRepositoryLayout(srcPath, dstPath);
                 File dstReposLocksDir = new File(dstPath, FSFS.LOCKS_DIR);
                 try {
@@ -54,7 +99,7 @@ public class FSHotCopier {
                 SVNFileUtil.setSGID(dstDBDir);
                 FSFS dstOwner = new FSFS(dstPath);
                 String fsType = srcOwner.getFSType();
-                hotCopy(srcOwner, dstOwner);
+                hotCopy(srcOwner, dstOwner, false);
                 writeFSType(dstOwner, fsType);
                 SVNFileUtil.writeVersionFile(new File(dstPath, FSFS.REPOS_FORMAT_FILE),
                         srcOwner.getReposFormat());
@@ -65,6 +110,33 @@ public class FSHotCopier {
         }
     }
 
+    private FSFS openDestination(FSFS srcOwner, File dstPath) throws SVNException {
+        FSFS dstOwner = new FSFS(dstPath);
+        dstOwner.open();
+        if (!srcOwner.getUUID().equals(dstOwner.getUUID())) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_UUID_MISMATCH,
+                    "The UUID of the hotcopy source ({0}) does not match the UUID of the hotcopy destination ({1})",
+                    new Object[] {srcOwner.getUUID(), dstOwner.getUUID()});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        int format = srcOwner.readDBFormat();
+        if (format != dstOwner.getDBFormat()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE,
+                    "The FSFS format ({0}) of the hotcopy source does not match the FSFS format ({1}) of the hotcopy " +
+                    "destination; please upgrade both repositories to the same format",
+                    new Object[] {String.valueOf(format), String.valueOf(dstOwner.getDBFormat())});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        if (srcOwner.getMaxFilesPerDirectory() != dstOwner.getMaxFilesPerDirectory()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE,
+                    "The sharding layout configuration of the FSFS filesystem at ''{0}'' does not match the sharding " +
+                    "layout configuration of the filesystem at ''{1}''",
+                    new Object[] {srcOwner.getRepositoryRoot(), dstOwner.getRepositoryRoot()});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        return dstOwner;
+    }
+
     private void writeFSType(FSFS dstOwner, String fsType) throws SVNException {
         OutputStream fsTypeStream = null;
         try {
@@ -132,103 +204,317 @@ public class FSHotCopier {
         }
     }
 
-    private void hotCopy(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+    private void hotCopy(FSFS srcOwner, FSFS dstOwner, boolean incremental) throws SVNException {
         int format = srcOwner.readDBFormat();
         FSRepositoryUtil.checkReposDBFormat(format);
-        SVNFileUtil.copyFile(srcOwner.getCurrentFile(), dstOwner.getCurrentFile(), true);
-        SVNFileUtil.copyFile(srcOwner.getUUIDFile(), dstOwner.getUUIDFile(), true);
+        long maxFilesPerDirectory = srcOwner.getMaxFilesPerDirectory();
+
+        // everything up to this revision is copied, whatever is committed meanwhile
+        File dstDBDir = dstOwner.getDBRoot();
+        File currentCopy = SVNFileUtil.createUniqueFile(dstDBDir, "current", ".tmp", false);
+        SVNFileUtil.copyFile(srcOwner.getCurrentFile(), currentCopy, false);
+        long youngestRev = readRevision(currentCopy);
+        try {
+            long dstYoungestRev = -1;
+            long dstMinUnpackedRevision = 0;
+            if (incremental) {
+                dstYoungestRev = dstOwner.getYoungestRevision();
+                if (dstYoungestRev > youngestRev) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE,
+                            "The hotcopy destination already contains more revisions ({0}) than the hotcopy source " +
+                            "contains ({1}); are source and destination swapped?",
+                            new Object[] {String.valueOf(dstYoungestRev), String.valueOf(youngestRev)});
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+                if (format >= FSFS.MIN_PACKED_FORMAT) {
+                    dstMinUnpackedRevision = dstOwner.getMinUnpackedRev();
+                }
+            } else {
+                SVNFileUtil.copyFile(srcOwner.getUUIDFile(), dstOwner.getUUIDFile(), true);
+                SVNFileUtil.copyFile(srcOwner.getConfigFile(), dstOwner.getConfigFile(), true);
+            }
+
+            long minUnpackedRevision = 0;
+            if (format >= FSFS.MIN_PACKED_FORMAT) {
+                minUnpackedRevision = srcOwner.getMinUnpackedRev();
+                if (dstMinUnpackedRevision > minUnpackedRevision) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE,
+                            "The hotcopy destination already contains more packed revisions ({0}) than the hotcopy " +
+                            "source contains ({1})",
+                            new Object[] {String.valueOf(dstMinUnpackedRevision - 1), String.valueOf(minUnpackedRevision - 1)});
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+            }
+            boolean packedRevisionProperties = format >= FSFS.MIN_PACKED_REVPROP_FORMAT;
+
+            File dstRevsDir = dstOwner.getDBRevsDir();
+            dstRevsDir.mkdirs();
+            File dstRevPropsDir = dstOwner.getRevisionPropertiesRoot();
+            dstRevPropsDir.mkdirs();
+
+            FileCopier copier = new FileCopier(myThreadCount);
+            try {
+                long rev = 0;
+                for (; rev < minUnpackedRevision; rev += maxFilesPerDirectory) {
+                    long packedShard = rev / maxFilesPerDirectory;
+                    // packs of revisions never change once written, packs of their properties may
+                    boolean isNewShard = rev >= dstMinUnpackedRevision;
+                    if (isNewShard) {
+                        copier.copyDirectory(srcOwner.getPackDir(packedShard), new File(dstRevsDir, packedShard + FSFS.PACK_EXT), false);
+                    }
+                    if (packedRevisionProperties) {
+                        copier.copyDirectory(srcOwner.getPackedRevPropsShardPath(rev), new File(dstRevPropsDir, packedShard + FSFS.PACK_EXT),
+                                !isNewShard);
+                    }
+                }
+
+                SVNErrorManager.assertionFailure(rev == minUnpackedRevision, "expected minimal unpacked revision " + String.valueOf(minUnpackedRevision) + ", but real revision is " +
+                        String.valueOf(rev), SVNLogType.FSFS);
+
+                for (rev = Math.max(rev, dstYoungestRev + 1); rev <= youngestRev; rev++) {
+                    copier.copyFile(srcOwner.getRevisionFile(rev), getShardFile(dstRevsDir, rev, maxFilesPerDirectory), false);
+                }
+
+                long minUnpackedRevProp = 0;
+                if (packedRevisionProperties) {
+                    minUnpackedRevProp = minUnpackedRevision;
+                    if (minUnpackedRevProp > 0) {
+                        // revision 0 keeps its own file when its shard is packed
+                        copier.copyFile(srcOwner.getRevisionPropertiesFile(0, false), getShardFile(dstRevPropsDir, 0, maxFilesPerDirectory), incremental);
+                    }
+                }
+                for (rev = minUnpackedRevProp; rev <= youngestRev; rev++) {
+                    copier.copyFile(srcOwner.getRevisionPropertiesFile(rev, false), getShardFile(dstRevPropsDir, rev, maxFilesPerDirectory),
+                            rev <= dstYoungestRev);
+                }
+                copier.waitForAll();
+            } finally {
+                copier.dispose();
+            }
+
+            if (format >= FSFS.MIN_PACKED_REVPROP_SQLITE_DEV_FORMAT) {
+                copyRevisionPropertiesDb(srcOwner, dstOwner);
+            }
+
+            dstOwner.getTransactionsParentDir().mkdirs();
+            if (format >= FSFS.MIN_PROTOREVS_DIR_FORMAT) {
+                dstOwner.getTransactionProtoRevsDir().mkdirs();
+            }
+
+            File srcLocksDir = srcOwner.getDBLocksDir();
+            if (incremental) {
+                // locks which were released in the source must not remain in the copy
+                SVNFileUtil.deleteAll(dstOwner.getDBLocksDir(), true);
+            }
+            if (srcLocksDir.exists()) {
+                SVNFileUtil.copyDirectory(srcLocksDir, dstOwner.getDBLocksDir(), false, null);
+            }
+
+            File srcNodeOriginsDir = srcOwner.getNodeOriginsDir();
+            if (srcNodeOriginsDir.exists()) {
+                SVNFileUtil.copyDirectory(srcNodeOriginsDir, dstOwner.getNodeOriginsDir(), false, null);
+            }
+
+            if (format >= FSFS.MIN_CURRENT_TXN_FORMAT) {
+                SVNFileUtil.copyFile(srcOwner.getTransactionCurrentFile(), dstOwner.getTransactionCurrentFile(), true);
+            }
+
+            if (format >= FSFS.MIN_REP_SHARING_FORMAT) {
+                copyRepresentationCache(srcOwner, dstOwner, incremental ? dstYoungestRev : -1, youngestRev);
+            }
+
+            if (format >= FSFS.MIN_PACKED_FORMAT) {
+                File tmpFile = SVNFileUtil.createUniqueFile(dstDBDir, "tempfile", ".tmp", false);
+                SVNFileUtil.writeToFile(tmpFile, String.valueOf(minUnpackedRevision) + '\n', "US-ASCII");
+                SVNFileUtil.rename(tmpFile, dstOwner.getMinUnpackedRevFile());
+            }
+            if (!incremental) {
+                dstOwner.writeDBFormat(format, maxFilesPerDirectory, srcOwner.isUseLogAddressing(), false);
+            }
+            SVNFileUtil.rename(currentCopy, dstOwner.getCurrentFile());
 
-        long minUnpackedRevision = 0;
-        if (format >= FSFS.MIN_PACKED_FORMAT) {
-            SVNFileUtil.copyFile(srcOwner.getMinUnpackedRevFile(), dstOwner.getMinUnpackedRevFile(), true);
-            minUnpackedRevision = srcOwner.getMinUnpackedRev();
+            // shards which became packed since the last copy are read from their packs now
+            for (long rev = dstMinUnpackedRevision; rev < minUnpackedRevision; rev += maxFilesPerDirectory) {
+                long shard = rev / maxFilesPerDirectory;
+                SVNFileUtil.deleteAll(new File(dstRevsDir, String.valueOf(shard)), true);
+                if (packedRevisionProperties) {
+                    deleteRevPropShard(new File(dstRevPropsDir, String.valueOf(shard)), shard, maxFilesPerDirectory);
+                }
+            }
+        } finally {
+            SVNFileUtil.deleteFile(currentCopy);
         }
-        long youngestRev = dstOwner.getYoungestRevision();
+    }
 
-        File dstRevsDir = dstOwner.getDBRevsDir();
-        dstRevsDir.mkdirs();
+    private void copyRevisionPropertiesDb(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+        final File srcRevPropDb = srcOwner.getRevisionPropertiesDbPath();
+        final File dstRevPropDb = dstOwner.getRevisionPropertiesDbPath();
+        if (!srcRevPropDb.isFile()) {
+            return;
+        }
+        final SVNSqlJetDb revPropDb = SVNSqlJetDb.open(srcRevPropDb, SVNSqlJetDb.Mode.ReadWrite);
+        try {
+            SVNException e = (SVNException) revPropDb.getDb().runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    try {
+                        SVNFileUtil.copyFile(srcRevPropDb, dstRevPropDb, true);
+                    } catch (SVNException e) {
+                        return e;
+                    }
+                    return null;
+                }
+            });
+            if (e != null) {
+                throw e;
+            }
+        } catch (SqlJetException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SQLITE_ERROR, e);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        } finally {
+            revPropDb.close();
+        }
+    }
 
-        long maxFilesPerDirectory = srcOwner.getMaxFilesPerDirectory();
-        long rev = 0;
-        for (; rev < minUnpackedRevision; rev += srcOwner.getMaxFilesPerDirectory()) {
-            long packedShard = rev / maxFilesPerDirectory;
-            SVNFileUtil.copyDirectory(srcOwner.getPackDir(packedShard), dstOwner.getPackDir(packedShard), false, null);
-        }
-
-        SVNErrorManager.assertionFailure(rev == minUnpackedRevision, "expected minimal unpacked revision " + String.valueOf(minUnpackedRevision) + ", but real revision is " +
-                String.valueOf(rev), SVNLogType.FSFS);
-
-        for (; rev <= youngestRev; rev++) {
-            File dstDir = dstRevsDir;
-            if (maxFilesPerDirectory > 0) {
-                String shard = String.valueOf(rev / maxFilesPerDirectory);
-                dstDir = new File(dstRevsDir, shard);
-            }
-            SVNFileUtil.copyFile(srcOwner.getRevisionFile(rev), new File(dstDir, String.valueOf(rev)), true);
-        }
-
-        long min_unpacked_revprop = 0;
-        /* Copy the min unpacked revprop file, and read its value. */
-        if (format >= FSFS.MIN_PACKED_REVPROP_FORMAT)
-          {
-            min_unpacked_revprop = srcOwner.getMinUnpackedRevProp();
-            SVNFileUtil.copyFile(srcOwner.getMinUnpackedRevPropPath(), dstOwner.getMinUnpackedRevPropPath(),true);
-            final File srcRevPropDb = srcOwner.getRevisionPropertiesDbPath();
-            final File dstRevPropDb = dstOwner.getRevisionPropertiesDbPath();
-            final SVNSqlJetDb revPropDb = SVNSqlJetDb.open(
-                    srcOwner.getRevisionPropertiesDbPath(), SVNSqlJetDb.Mode.ReadWrite);
-            try{
-                SVNException e = (SVNException) revPropDb.getDb().runReadTransaction(new ISqlJetTransaction() {
-                        public Object run(SqlJetDb db) throws SqlJetException {
-                            try {
-                                SVNFileUtil.copyFile(srcRevPropDb,
-                                        dstRevPropDb,true);
-                            } catch (SVNException e) {
-                                return e;
-                            }
-                            return null;
-                        }
-                    });
-                if(e!=null){
-                    throw e;
-                }
-            } catch (SqlJetException e) {
-                SVNErrorMessage err = SVNErrorMessage.create( SVNErrorCode.SQLITE_ERROR, e );
-                SVNErrorManager.error(err, SVNLogType.FSFS);
+    /**
+     * Copies rows of the rep-cache which refer to revisions after <code>dstYoungestRev</code>, or the whole
+     * database if the destination has none. Rows are inserted after their revision is committed, so rows of
+     * <code>dstYoungestRev</code> itself are copied once more.
+     */
+    private void copyRepresentationCache(FSFS srcOwner, FSFS dstOwner, long dstYoungestRev, long youngestRev) throws SVNException {
+        final File srcRepCache = srcOwner.getRepositoryCacheFile();
+        final File dstRepCache = dstOwner.getRepositoryCacheFile();
+        if (!srcRepCache.isFile()) {
+            return;
+        }
+        final IFSRepresentationCacheManager srcManager = FSRepresentationCacheUtil.open(srcOwner);
+        if (srcManager == null) {
+            return;
+        }
+        try {
+            if (dstYoungestRev >= 0 && dstRepCache.isFile()) {
+                final List<FSRepresentation> representations = srcManager.getRepresentationsByRevisions(dstYoungestRev, youngestRev);
+                if (representations.isEmpty()) {
+                    return;
+                }
+                final IFSRepresentationCacheManager dstManager = FSRepresentationCacheUtil.open(dstOwner);
+                try {
+                    dstManager.insertAll(representations, false);
+                } finally {
+                    dstManager.close();
+                }
+                return;
+            }
+            srcManager.runReadTransaction(new IFSSqlJetTransaction() {
+                public void run() throws SVNException {
+                    SVNFileUtil.copyFile(srcRepCache, dstRepCache, true);
+                }
+            });
+        } finally {
+            srcManager.close();
+        }
+        if (srcOwner.getYoungestRevision() > youngestRev) {
+            // rows of revisions committed during the copy would point past its youngest revision
+            final IFSRepresentationCacheManager dstManager = FSRepresentationCacheUtil.open(dstOwner);
+            try {
+                dstManager.deleteRepresentationsAfter(youngestRev);
             } finally {
-                revPropDb.close();
+                dstManager.close();
             }
-          }
+        }
+    }
 
-        File dstRevPropsDir = dstOwner.getRevisionPropertiesRoot();
-        for (rev = min_unpacked_revprop; rev <= youngestRev; rev++) {
-            File dstDir = dstRevPropsDir;
-            if (maxFilesPerDirectory > 0) {
-                String shard = String.valueOf(rev / maxFilesPerDirectory);
-                dstDir = new File(dstRevPropsDir, shard);
+    private void deleteRevPropShard(File revPropShardPath, long shard, long maxFilesPerDirectory) throws SVNException {
+        if (shard == 0) {
+            for (int i = 1; i < maxFilesPerDirectory; i++) {
+                SVNFileUtil.deleteFile(new File(revPropShardPath, String.valueOf(i)));
             }
-            SVNFileUtil.copyFile(srcOwner.getRevisionPropertiesFile(rev, false), new File(dstDir, String.valueOf(rev)),
-                    true);
+        } else {
+            SVNFileUtil.deleteAll(revPropShardPath, true);
         }
+    }
 
-        dstOwner.getTransactionsParentDir().mkdirs();
-        if (format >= FSFS.MIN_PROTOREVS_DIR_FORMAT) {
-            dstOwner.getTransactionProtoRevsDir().mkdirs();
+    private static File getShardFile(File dir, long revision, long maxFilesPerDirectory) {
+        if (maxFilesPerDirectory > 0) {
+            dir = new File(dir, String.valueOf(revision / maxFilesPerDirectory));
         }
+        return new File(dir, String.valueOf(revision));
+    }
 
-        File srcLocksDir = srcOwner.getDBLocksDir();
-        if (srcLocksDir.exists()) {
-            SVNFileUtil.copyDirectory(srcLocksDir, dstOwner.getDBLocksDir(), false, null);
+    private static long readRevision(File currentFile) throws SVNException {
+        FSFile file = new FSFile(currentFile);
+        try {
+            String line = file.readLine(180);
+            int spaceIndex = line.indexOf(' ');
+            return Long.parseLong(spaceIndex > 0 ? line.substring(0, spaceIndex) : line);
+        } catch (NumberFormatException nfe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Corrupt ''current'' file");
+            SVNErrorManager.error(err, nfe, SVNLogType.FSFS);
+        } finally {
+            file.close();
         }
+        return -1;
+    }
+
+    /**
+     * Copies files on a pool of threads, or on the calling one when there is only one thread. Files to be
+     * copied only when changed are skipped when their copies have the same size and timestamp, which
+     * {@link SVNFileUtil#copyFile(File, File, boolean)} keeps.
+     */
+    private static class FileCopier {
 
-        File srcNodeOriginsDir = srcOwner.getNodeOriginsDir();
-        if (srcNodeOriginsDir.exists()) {
-            SVNFileUtil.copyDirectory(srcNodeOriginsDir, dstOwner.getNodeOriginsDir(), false, null);
+        private final ExecutorService myExecutor;
+        private final LinkedList<Future<?>> myCopies;
+        private final int myMaxPendingCopies;
+
+        private FileCopier(int threadCount) {
+            myExecutor = threadCount > 1 ? SVNWorkers.createExecutor(threadCount, "svnkit-fsfs-hotcopy-") : null;
+            myCopies = new LinkedList<Future<?>>();
+            myMaxPendingCopies = 64 * threadCount;
         }
 
-        if (format >= FSFS.MIN_CURRENT_TXN_FORMAT) {
-            SVNFileUtil.copyFile(srcOwner.getTransactionCurrentFile(), dstOwner.getTransactionCurrentFile(), true);
+        public void copyDirectory(File srcDir, File dstDir, boolean onlyIfChanged) throws SVNException {
+            File[] files = srcDir.listFiles();
+            if (files == null) {
+                return;
+            }
+            dstDir.mkdirs();
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].isFile()) {
+                    copyFile(files[i], new File(dstDir, files[i].getName()), onlyIfChanged);
+                }
+            }
+        }
+
+        public void copyFile(final File src, final File dst, boolean onlyIfChanged) throws SVNException {
+            if (onlyIfChanged && SVNFileType.getType(dst) == SVNFileType.FILE &&
+                    dst.length() == src.length() && dst.lastModified() == src.lastModified()) {
+                return;
+            }
+            if (myExecutor == null) {
+                SVNFileUtil.copyFile(src, dst, true);
+                return;
+            }
+            while (myCopies.size() >= myMaxPendingCopies) {
+                SVNWorkers.waitFor(myCopies.removeFirst(), null, "Interrupted while copying");
+            }
+            myCopies.add(myExecutor.submit(new Callable<Object>() {
+                public Object call() throws SVNException {
+                    SVNFileUtil.copyFile(src, dst, true);
+                    return null;
+                }
+            }));
+        }
+
+        public void waitForAll() throws SVNException {
+            while (!myCopies.isEmpty()) {
+                SVNWorkers.waitFor(myCopies.removeFirst(), null, "Interrupted while copying");
+            }
+        }
+
+        public void dispose() {
+            if (myExecutor != null) {
+                SVNWorkers.shutdown(myExecutor);
+            }
         }
-        dstOwner.writeDBFormat(format, maxFilesPerDirectory, false);
     }
 }
@@ -25,6 +25,9 @@ import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
@@ -36,6 +39,12 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public class FSInputStream extends InputStream {
 
+    private static final boolean ourIsFulltextCacheEnabled = Boolean.valueOf(System.getProperty("svnkit.fsfs.cacheFulltexts", "true")).booleanValue();
+    private static final FSCache<FSCacheKey, byte[]> ourFulltextsCache = FSCacheManager.getCache("fulltexts", 30);
+    private static final FSCache<FSCacheKey, byte[]> ourWindowsCache = FSCacheManager.getCache("combined-windows", 15);
+    // files larger than 1/16th of the fulltexts cache are cached window by window, if at all.
+    private static final int FULLTEXT_ADMISSION_RATIO = 16;
+
     private LinkedList myRepStateList = new LinkedList();
     private int myChunkIndex;
     private boolean isChecksumFinalized;
@@ -46,6 +55,16 @@ public class FSInputStream extends InputStream {
     private ByteBuffer myBuffer;
     private SVNDeltaCombiner myCombiner;
 
+    private FSCacheKey myCacheKey;
+    private byte[] myBaseFulltext;
+    private FSRepresentationState myBaseState;
+    private byte[] myBaseView;
+    private boolean myIsFulltextLoaded;
+    private boolean myIsCachingWindows;
+    private long myProducedLength;
+    private byte[] myFulltext;
+    private int myFulltextLength;
+
     private FSInputStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner) throws SVNException {
         myCombiner = combiner;
         myChunkIndex = 0;
@@ -60,6 +79,22 @@ public class FSInputStream extends InputStream {
             SVNErrorManager.error(err, nsae, SVNLogType.FSFS);
         }
 
+        myCacheKey = createCacheKey(representation, owner);
+        if (myCacheKey != null) {
+            byte[] fulltext = ourFulltextsCache.get(myCacheKey);
+            if (fulltext != null) {
+                myBuffer = ByteBuffer.wrap(fulltext);
+                myIsFulltextLoaded = true;
+                isChecksumFinalized = true;
+                return;
+            }
+            if (myLength <= ourFulltextsCache.getCapacity() / FULLTEXT_ADMISSION_RATIO) {
+                myFulltext = new byte[(int) myLength];
+            } else if (myLength <= ourWindowsCache.getCapacity()) {
+                myIsCachingWindows = true;
+            }
+        }
+
         try {
             buildRepresentationList(representation, myRepStateList, owner);
         } catch (SVNException svne) {
@@ -70,6 +105,13 @@ public class FSInputStream extends InputStream {
             close();
             throw svne;
         }
+        if (myRepStateList.isEmpty() && myBaseFulltext != null) {
+            myBuffer = ByteBuffer.wrap(myBaseFulltext);
+            myIsFulltextLoaded = true;
+        } else if (myRepStateList.isEmpty()) {
+            // a plain representation is read as it is
+            myIsCachingWindows = false;
+        }
     }
 
     public static InputStream createDeltaStream(SVNDeltaCombiner combiner, FSRevisionNode fileNode, FSFS owner) throws SVNException {
@@ -112,6 +154,14 @@ public class FSInputStream extends InputStream {
 
     private int readContents(byte[] buf, int offset, int length) throws SVNException {
         length = getContents(buf, offset, length);
+        if (myFulltext != null && length > 0) {
+            if (myFulltextLength + length <= myFulltext.length) {
+                System.arraycopy(buf, offset, myFulltext, myFulltextLength, length);
+                myFulltextLength += length;
+            } else {
+                myFulltext = null;
+            }
+        }
         if (!isChecksumFinalized && length >= 0) {
             myDigest.update(buf, offset, length);
             myOffset += length;
@@ -126,6 +176,10 @@ public class FSInputStream extends InputStream {
                     });
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
+                if (myFulltext != null && myFulltextLength == myFulltext.length) {
+                    ourFulltextsCache.put(myCacheKey, myFulltext, myFulltext.length);
+                }
+                myFulltext = null;
             }
         }
 
@@ -147,6 +201,33 @@ public class FSInputStream extends InputStream {
                 remaining -= copyLength;
                 read += copyLength;
             } else {
+                if (myIsFulltextLoaded || (myIsCachingWindows && myProducedLength >= myLength)) {
+                    if (read == 0) {
+                        read = -1;
+                    }
+                    break;
+                }
+                if (myIsCachingWindows) {
+                    byte[] cachedWindow = ourWindowsCache.get(getWindowCacheKey(myChunkIndex));
+                    if (cachedWindow != null) {
+                        myBuffer = ByteBuffer.wrap(cachedWindow);
+                        myProducedLength += cachedWindow.length;
+                        myChunkIndex++;
+                        continue;
+                    }
+                }
+                if (myRepStateList.isEmpty()) {
+                    if (myBaseState == null || myBaseState.myOffset == myBaseState.myEnd) {
+                        if (read == 0) {
+                            read = -1;
+                        }
+                        break;
+                    }
+                    int chunkLength = (int) Math.min(FSOutputStream.SVN_DELTA_WINDOW_SIZE, myBaseState.myEnd - myBaseState.myOffset);
+                    myBuffer = ByteBuffer.wrap(readBaseView(myBaseState.myOffset - myBaseState.myStart, chunkLength), 0, chunkLength);
+                    myBaseState.myOffset += chunkLength;
+                    continue;
+                }
                 FSRepresentationState resultState = (FSRepresentationState) myRepStateList.getFirst();
                 if (resultState.myOffset == resultState.myEnd) {
                     if (read == 0) {
@@ -155,6 +236,7 @@ public class FSInputStream extends InputStream {
                     break;
                 }
                 myCombiner.reset();
+                ByteBuffer target = null;
                 for (ListIterator states = myRepStateList.listIterator(); states.hasNext();) {
                     FSRepresentationState curState = (FSRepresentationState) states.next();
 
@@ -168,15 +250,32 @@ public class FSInputStream extends InputStream {
                         }
                     }
                     SVNDiffWindow window = myCombiner.readWindow(curState.myFile, curState.myVersion);
-                    ByteBuffer target = myCombiner.addWindow(window);
+                    target = myCombiner.addWindow(window);
                     curState.myChunkIndex++;
                     curState.myOffset = curState.myFile.position();
                     if (target != null) {
-                        myBuffer = target;
-                        myChunkIndex++;
                         break;
                     }
                 }
+                if (target == null && myBaseFulltext != null) {
+                    target = myCombiner.applyWindow(myBaseFulltext);
+                } else if (target == null && myBaseState != null) {
+                    long sourceOffset = myCombiner.getSourceViewOffset();
+                    int sourceLength = myCombiner.getSourceViewLength();
+                    target = myCombiner.applyWindow(readBaseView(sourceOffset, sourceLength), sourceOffset, sourceLength);
+                }
+                if (target == null) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Delta chain of the representation does not end with a fulltext");
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+                myBuffer = target;
+                myProducedLength += target.remaining();
+                if (myIsCachingWindows) {
+                    byte[] window = new byte[target.remaining()];
+                    System.arraycopy(target.array(), target.arrayOffset() + target.position(), window, 0, window.length);
+                    ourWindowsCache.put(getWindowCacheKey(myChunkIndex), window, window.length);
+                }
+                myChunkIndex++;
             }
         }
         return read;
@@ -190,6 +289,10 @@ public class FSInputStream extends InputStream {
             }
             states.remove();
         }
+        if (myBaseState != null) {
+            myBaseState.myFile.close();
+            myBaseState = null;
+        }
     }
 
     private FSRepresentationState buildRepresentationList(FSRepresentation firstRep, LinkedList result, FSFS owner) throws SVNException {
@@ -198,6 +301,13 @@ public class FSInputStream extends InputStream {
         ByteBuffer buffer = ByteBuffer.allocate(4);
         try {
             while (true) {
+                if (!result.isEmpty()) {
+                    byte[] cachedBase = getCachedFulltext(rep, owner);
+                    if (cachedBase != null) {
+                        myBaseFulltext = cachedBase;
+                        return null;
+                    }
+                }
                 file = owner.openAndSeekRepresentation(rep);
                 FSRepresentationState repState = readRepresentationLine(file);
                 repState.myFile = file;
@@ -205,6 +315,14 @@ public class FSInputStream extends InputStream {
                 repState.myOffset = repState.myStart;
                 repState.myEnd = repState.myStart + rep.getSize();
                 if (!repState.myIsDelta) {
+                    // the base is streamed as windows need it, unless it is small enough for the fulltexts cache
+                    if (createCacheKey(rep, owner) != null && rep.getSize() <= ourFulltextsCache.getCapacity() / FULLTEXT_ADMISSION_RATIO) {
+                        myBaseFulltext = readPlainRepresentation(file, (int) rep.getSize());
+                        file.close();
+                        repState.myFile = null;
+                    } else {
+                        myBaseState = repState;
+                    }
                     return repState;
                 }
                 buffer.clear();
@@ -244,6 +362,62 @@ public class FSInputStream extends InputStream {
         return null;
     }
 
+    private byte[] readBaseView(long offset, int length) throws SVNException {
+        if (offset < 0 || offset + length > myBaseState.myEnd - myBaseState.myStart) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Delta source view is out of the plain representation bounds");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        if (myBaseView == null || myBaseView.length < length) {
+            myBaseView = new byte[Math.max(length, FSOutputStream.SVN_DELTA_WINDOW_SIZE)];
+        }
+        myBaseState.myFile.seek(myBaseState.myStart + offset);
+        try {
+            readFully(myBaseState.myFile, myBaseView, length);
+        } catch (IOException ioe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
+            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+        }
+        return myBaseView;
+    }
+
+    private static byte[] readPlainRepresentation(FSFile file, int size) throws IOException, SVNException {
+        byte[] contents = new byte[size];
+        readFully(file, contents, size);
+        return contents;
+    }
+
+    private static void readFully(FSFile file, byte[] buffer, int length) throws IOException, SVNException {
+        int read = 0;
+        while (read < length) {
+            int r = file.read(buffer, read, length - read);
+            if (r < 0) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Unexpected end of plain representation");
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            read += r;
+        }
+    }
+
+    private FSCacheKey getWindowCacheKey(int chunkIndex) {
+        return new FSCacheKey(myCacheKey.getScope(), myCacheKey.getFirst(), myCacheKey.getSecond(), chunkIndex);
+    }
+
+    private static byte[] getCachedFulltext(FSRepresentation representation, FSFS owner) throws SVNException {
+        FSCacheKey cacheKey = createCacheKey(representation, owner);
+        return cacheKey != null ? ourFulltextsCache.get(cacheKey) : null;
+    }
+
+    private static FSCacheKey createCacheKey(FSRepresentation representation, FSFS owner) throws SVNException {
+        if (!ourIsFulltextCacheEnabled || !FSCacheManager.isEnabled() || representation.isTxn() ||
+                !FSRepository.isValidRevision(representation.getRevision())) {
+            return null;
+        }
+        if (representation.getExpandedSize() <= 0 && representation.getSize() != 0) {
+            return null;
+        }
+        return new FSCacheKey(owner.getCacheScope(), representation.getRevision(), representation.getItemIndex());
+    }
+
     public static FSRepresentationState readRepresentationLine(FSFile file) throws SVNException {
         try {
             String line = file.readLine(160);
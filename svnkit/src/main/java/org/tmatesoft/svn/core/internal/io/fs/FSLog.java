@@ -154,6 +154,16 @@ public class FSLog {
                 count = myLimit;
             }
         
+            if (count > 0 && myIsDiscoverChangedPaths && myHandler != null) {
+                final long firstRevision = myIsDescending ? myEndRevision : myStartRevision;
+                final long lastRevision = myIsDescending ? myEndRevision - count + 1 : myStartRevision + count - 1;
+                myFSFS.walkChangedPaths(firstRevision, lastRevision, new IFSChangedPathsHandler() {
+                    public void handleChangedPaths(long revision, Map changedPaths) throws SVNException {
+                        sendLog(revision, changedPaths, null, null, false, false, false);
+                    }
+                });
+                return count;
+            }
             for (int i = 0; i < count; i++) {
                 long rev = myStartRevision + i;
                 if (myIsDescending) {
@@ -284,10 +294,14 @@ public class FSLog {
     }
 
     private void sendLog(long revision, Map logTargetHistoryAsMergeInfo, Set nestedMerges, boolean subtractiveMerge, boolean handlingMergedRevision, boolean hasChildren) throws SVNException {
+        sendLog(revision, null, logTargetHistoryAsMergeInfo, nestedMerges, subtractiveMerge, handlingMergedRevision, hasChildren);
+    }
+
+    private void sendLog(long revision, Map readChangedPaths, Map logTargetHistoryAsMergeInfo, Set nestedMerges, boolean subtractiveMerge, boolean handlingMergedRevision, boolean hasChildren) throws SVNException {
         if (myHandler == null) {
             return;
         }
-        SVNLogEntry logEntry = fillLogEntry(revision, myIsDiscoverChangedPaths || handlingMergedRevision);
+        SVNLogEntry logEntry = fillLogEntry(revision, readChangedPaths, myIsDiscoverChangedPaths || handlingMergedRevision);
         logEntry.setHasChildren(hasChildren);
         logEntry.setSubtractiveMerge(subtractiveMerge);
         boolean revisionIsInteresting = true;
@@ -333,14 +347,18 @@ public class FSLog {
         }
     }
 
-    private SVNLogEntry fillLogEntry(long revision, boolean discoverChangedPaths) throws SVNException {
+    private SVNLogEntry fillLogEntry(long revision, Map readChangedPaths, boolean discoverChangedPaths) throws SVNException {
         Map changedPaths = null;
         SVNProperties entryRevProps = null;
         boolean getRevProps = true;
         boolean censorRevProps = false;
         if (revision > 0 && discoverChangedPaths) {
-            FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
-            changedPaths = root.detectChanged();
+            if (readChangedPaths != null) {
+                changedPaths = FSRoot.removeResetChanges(readChangedPaths);
+            } else {
+                FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+                changedPaths = root.detectChanged();
+            }
         }
 
         if (getRevProps) {
@@ -0,0 +1,179 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * JVM-wide registry of read-only memory mappings of files that never change once written:
+ * packed shards and, optionally, revision files of committed revisions.
+ * <p/>
+ * Memory mapping is off by default and is turned on with the <code>svnkit.fsfs.mmap</code> system property:
+ * <code>packs</code> maps pack files only, <code>all</code> maps revision files as well. A mapping is shared
+ * by all {@link FSFile} objects reading the file and is reference counted; mappings nobody uses any more are
+ * kept for reuse until their total size exceeds <code>svnkit.fsfs.mmapLimit</code> megabytes (1024 by default).
+ * Files which change their size or modification time are mapped again.
+ * <p/>
+ * Note that on Windows a mapped file cannot be deleted until the mapping is garbage collected, so revision
+ * files should not be mapped on repositories which are packed while being read.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSMappedFiles {
+
+    public static final String MMAP_PROPERTY = "svnkit.fsfs.mmap";
+    public static final String MMAP_LIMIT_PROPERTY = "svnkit.fsfs.mmapLimit";
+
+    private static final String MMAP_PACKS = "packs";
+    private static final String MMAP_ALL = "all";
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private static String ourMode = System.getProperty(MMAP_PROPERTY, "none").trim().toLowerCase();
+    private static long ourIdleLimit = Math.max(0, Long.getLong(MMAP_LIMIT_PROPERTY, 1024).longValue()) * MEGABYTE;
+
+    private static final Map<String, Mapping> ourMappings = new LinkedHashMap<String, Mapping>(16, 0.75f, true);
+    private static long ourIdleSize;
+
+    public static synchronized boolean isMappingEnabled(boolean packed) {
+        return packed ? MMAP_PACKS.equals(ourMode) || MMAP_ALL.equals(ourMode) : MMAP_ALL.equals(ourMode);
+    }
+
+    public static synchronized void setMappingMode(String mode) {
+        ourMode = mode == null ? "none" : mode.trim().toLowerCase();
+    }
+
+    public static synchronized void setIdleLimit(long bytes) {
+        ourIdleLimit = Math.max(0, bytes);
+        shrink();
+    }
+
+    /**
+     * Forgets mappings of the file or of all files under the directory, to be called before such files
+     * are deleted or rewritten. Buffers already handed out stay valid until they are released.
+     */
+    public static synchronized void invalidate(File file) {
+        final String path = file.getAbsolutePath();
+        final String prefix = path + File.separatorChar;
+        for (Iterator<Map.Entry<String, Mapping>> mappings = ourMappings.entrySet().iterator(); mappings.hasNext();) {
+            final Map.Entry<String, Mapping> entry = mappings.next();
+            if (entry.getKey().equals(path) || entry.getKey().startsWith(prefix)) {
+                final Mapping mapping = entry.getValue();
+                if (mapping.myReferences == 0) {
+                    ourIdleSize -= mapping.myLength;
+                }
+                mapping.myIsStale = true;
+                mappings.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns a shared mapping of the whole file, or <code>null</code> if the file can not be mapped,
+     * in which case it should be read through a channel.
+     */
+    static synchronized Mapping acquire(File file) {
+        final String path = file.getAbsolutePath();
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+
+        Mapping mapping = ourMappings.get(path);
+        if (mapping != null && (mapping.myLength != length || mapping.myLastModified != lastModified)) {
+            invalidate(file);
+            mapping = null;
+        }
+        if (mapping == null) {
+            if (length <= 0 || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            final ByteBuffer buffer = map(file, length);
+            if (buffer == null) {
+                return null;
+            }
+            mapping = new Mapping(path, buffer, length, lastModified);
+            ourMappings.put(path, mapping);
+        } else if (mapping.myReferences == 0) {
+            ourIdleSize -= mapping.myLength;
+        }
+        mapping.myReferences++;
+        return mapping;
+    }
+
+    static synchronized void release(Mapping mapping) {
+        if (mapping.myReferences <= 0) {
+            return;
+        }
+        mapping.myReferences--;
+        if (mapping.myReferences == 0 && !mapping.myIsStale) {
+            ourIdleSize += mapping.myLength;
+            shrink();
+        }
+    }
+
+    private static void shrink() {
+        for (Iterator<Mapping> mappings = ourMappings.values().iterator(); mappings.hasNext() && ourIdleSize > ourIdleLimit;) {
+            final Mapping mapping = mappings.next();
+            if (mapping.myReferences == 0) {
+                ourIdleSize -= mapping.myLength;
+                mapping.myIsStale = true;
+                mappings.remove();
+            }
+        }
+    }
+
+    private static ByteBuffer map(File file, long length) {
+        FileInputStream inputStream = null;
+        try {
+            inputStream = SVNFileUtil.createFileInputStream(file);
+            return inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            SVNFileUtil.closeFile(inputStream);
+        }
+    }
+
+    static class Mapping {
+
+        private final String myPath;
+        private final ByteBuffer myBuffer;
+        private final long myLength;
+        private final long myLastModified;
+        private int myReferences;
+        private boolean myIsStale;
+
+        private Mapping(String path, ByteBuffer buffer, long length, long lastModified) {
+            myPath = path;
+            myBuffer = buffer;
+            myLength = length;
+            myLastModified = lastModified;
+        }
+
+        public ByteBuffer createBuffer() {
+            return myBuffer.duplicate();
+        }
+
+        public String toString() {
+            return myPath;
+        }
+    }
+}
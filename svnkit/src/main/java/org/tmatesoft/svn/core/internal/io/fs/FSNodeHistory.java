@@ -32,6 +32,11 @@ public class FSNodeHistory {
     private SVNLocationEntry mySearchResumeEntry;
     private boolean myIsInteresting;
     private FSFS myFSFS;
+
+    // histories backed by the path history index continue the search at myIndexResumeEntry
+    private boolean myIsIndexed;
+    private SVNLocationEntry myIndexResumeEntry;
+    private boolean myIsIndexResumeAcrossCopy;
     
     public FSNodeHistory(SVNLocationEntry newHistoryEntry, boolean interesting, 
             SVNLocationEntry newSearchResumeEntry, FSFS owner) {
@@ -41,6 +46,13 @@ public class FSNodeHistory {
         myFSFS = owner;
     }
 
+    static FSNodeHistory createIndexedHistory(SVNLocationEntry historyEntry, FSFS owner) {
+        final FSNodeHistory history = new FSNodeHistory(historyEntry, false, new SVNLocationEntry(SVNRepository.INVALID_REVISION, null), owner);
+        history.myIsIndexed = true;
+        history.myIndexResumeEntry = historyEntry;
+        return history;
+    }
+
     public SVNLocationEntry getHistoryEntry() {
         return myHistoryEntry;
     }
@@ -158,7 +170,31 @@ public class FSNodeHistory {
                                  myFSFS);
     }
 
+    private FSNodeHistory indexedHistoryPrev(boolean crossCopies) throws SVNException {
+        if (myIndexResumeEntry == null || (myIsIndexResumeAcrossCopy && !crossCopies)) {
+            return null;
+        }
+        final String path = myIndexResumeEntry.getPath();
+        final FSPathHistoryIndex.Change change = myFSFS.getPathHistoryIndex().findPreviousChange(path, myIndexResumeEntry.getRevision());
+        if (change == null) {
+            return null;
+        }
+        final FSNodeHistory prevHist = new FSNodeHistory(new SVNLocationEntry(change.getRevision(), path), true,
+                new SVNLocationEntry(SVNRepository.INVALID_REVISION, null), myFSFS);
+        prevHist.myIsIndexed = true;
+        if (!change.isCreation()) {
+            prevHist.myIndexResumeEntry = change.getRevision() > 0 ? new SVNLocationEntry(change.getRevision() - 1, path) : null;
+        } else if (change.getCopyFromPath() != null && FSRepository.isValidRevision(change.getCopyFromRevision())) {
+            prevHist.myIndexResumeEntry = new SVNLocationEntry(change.getCopyFromRevision(), change.getCopyFromPath());
+            prevHist.myIsIndexResumeAcrossCopy = true;
+        }
+        return prevHist;
+    }
+
     public FSNodeHistory getPreviousHistory(boolean crossCopies) throws SVNException {
+        if (myIsIndexed) {
+            return indexedHistoryPrev(crossCopies);
+        }
         if ("/".equals(myHistoryEntry.getPath())) {
             if (!myIsInteresting) {
                 return new FSNodeHistory(new SVNLocationEntry(myHistoryEntry.getRevision(), "/"), 
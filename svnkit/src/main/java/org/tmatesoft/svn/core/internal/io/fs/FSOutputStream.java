@@ -36,6 +36,7 @@ import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffCodec;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -64,11 +65,12 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     private long mySourceOffset;
     private ByteArrayOutputStream myTextBuffer;
     private boolean myIsClosed;
-    private boolean myIsCompress;
+    private SVNDiffCodec myCodec;
     private FSWriteLock myTxnLock;
+    private FSDeltaPipeline myDeltaPipeline;
 
     private FSOutputStream(FSRevisionNode revNode, CountingOutputStream targetFileOS, File targetFile, InputStream source, long deltaStart, 
-            long repSize, long repOffset, FSTransactionRoot txnRoot, boolean compress, FSWriteLock txnLock) throws SVNException {
+            long repSize, long repOffset, FSTransactionRoot txnRoot, SVNDiffCodec codec, FSWriteLock txnLock) throws SVNException {
         myTxnRoot = txnRoot;
         myTargetFileOS = targetFileOS;
         myTargetFile = targetFile;
@@ -97,11 +99,12 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             SVNErrorManager.error(err, nsae, SVNLogType.FSFS);
         }
 
-        myIsCompress = compress;
+        myCodec = codec;
+        myDeltaPipeline = FSDeltaPipeline.create(codec);
     }
 
     private void reset(FSRevisionNode revNode, CountingOutputStream targetFileOS, File targetFile, InputStream source, long deltaStart, 
-            long repSize, long repOffset, FSTransactionRoot txnRoot, FSWriteLock txnLock) {
+            long repSize, long repOffset, FSTransactionRoot txnRoot, SVNDiffCodec codec, FSWriteLock txnLock) {
         myTxnRoot = txnRoot;
         myTargetFileOS = targetFileOS;
         myTargetFile = targetFile;
@@ -117,9 +120,13 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         mySHA1Digest.reset();
         myTextBuffer.reset();
         myTxnLock = txnLock;
+        if (myCodec != codec) {
+            myCodec = codec;
+            myDeltaPipeline = FSDeltaPipeline.create(codec);
+        }
     }
 
-    public static OutputStream createStream(FSRevisionNode revNode, FSTransactionRoot txnRoot, OutputStream dstStream, boolean compress) throws SVNException {
+    public static OutputStream createStream(FSRevisionNode revNode, FSTransactionRoot txnRoot, OutputStream dstStream, SVNDiffCodec codec) throws SVNException {
         if (revNode.getType() != SVNNodeKind.FILE) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NOT_FILE, "Attempted to set textual contents of a *non*-file node");
             SVNErrorManager.error(err, SVNLogType.FSFS);
@@ -159,12 +166,12 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
 
             if (dstStream instanceof FSOutputStream) {
                 FSOutputStream fsOS = (FSOutputStream) dstStream;
-                fsOS.reset(revNode, revWriter, targetFile, sourceStream, deltaStart, 0, offset, txnRoot, txnLock);
+                fsOS.reset(revNode, revWriter, targetFile, sourceStream, deltaStart, 0, offset, txnRoot, codec, txnLock);
                 return dstStream;
             }
 
             return new FSOutputStream(revNode, revWriter, targetFile, sourceStream, deltaStart, 0, offset, txnRoot, 
-                    compress, txnLock);
+                    codec, txnLock);
 
         } catch (IOException ioe) {
             SVNFileUtil.closeFile(targetOS);
@@ -205,8 +212,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             myTextBuffer.write(b, off, toWrite);
             if (myTextBuffer.size() >= WRITE_BUFFER_SIZE) {
                 try {
-                    ByteArrayInputStream target = new ByteArrayInputStream(myTextBuffer.toByteArray());
-                    myDeltaGenerator.sendDelta(null, mySourceStream, mySourceOffset, target, this, false);
+                    sendDelta(myTextBuffer.toByteArray());
                 } catch (SVNException svne) {
                     throw new IOException(svne.getMessage());
                 }
@@ -224,8 +230,10 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         boolean truncateToSize = false;
         myIsClosed = true;
         try {
-            ByteArrayInputStream target = new ByteArrayInputStream(myTextBuffer.toByteArray());
-            myDeltaGenerator.sendDelta(null, mySourceStream, mySourceOffset, target, this, false);
+            sendDelta(myTextBuffer.toByteArray());
+            if (myDeltaPipeline != null) {
+                myDeltaPipeline.flush(myTargetFileOS);
+            }
 
             final FSRepresentation rep = new FSRepresentation();
             rep.setItemIndex(myRepOffset);
@@ -270,6 +278,9 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         } catch (SVNException svne) {
             throw new IOException(svne.getMessage());
         } finally {
+            if (myDeltaPipeline != null) {
+                myDeltaPipeline.cancel();
+            }
             closeStreams();
             try {
                 if (truncateToSize) {
@@ -287,6 +298,34 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         }
     }
 
+    private void sendDelta(byte[] text) throws SVNException {
+        if (myDeltaPipeline == null) {
+            myDeltaGenerator.sendDelta(null, mySourceStream, mySourceOffset, new ByteArrayInputStream(text), this, false);
+            return;
+        }
+        if (text.length == 0) {
+            // same as the empty window the generator sends when there are no windows at all
+            textDeltaChunk(null, SVNDiffWindow.EMPTY);
+            return;
+        }
+        for (int targetOffset = 0; targetOffset < text.length; targetOffset += SVN_DELTA_WINDOW_SIZE) {
+            final int targetLength = Math.min(SVN_DELTA_WINDOW_SIZE, text.length - targetOffset);
+            final byte[] source = myDeltaPipeline.getBuffer(SVN_DELTA_WINDOW_SIZE);
+            int sourceLength;
+            try {
+                sourceLength = SVNFileUtil.readIntoBuffer(mySourceStream, source, 0, SVN_DELTA_WINDOW_SIZE);
+            } catch (IOException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+                return;
+            }
+            sourceLength = Math.max(0, sourceLength);
+            myDeltaPipeline.submit(mySourceOffset, source, sourceLength, text, targetOffset, targetLength, !isHeaderWritten, myTargetFileOS);
+            mySourceOffset += sourceLength;
+            isHeaderWritten = true;
+        }
+    }
+
     public void closeStreams() throws IOException {
         SVNFileUtil.closeFile(myTargetFileOS);
         SVNFileUtil.closeFile(mySourceStream);
@@ -299,7 +338,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
         mySourceOffset += diffWindow.getSourceViewLength();
         try {
-            diffWindow.writeTo(myTargetFileOS, !isHeaderWritten, myIsCompress);
+            diffWindow.writeTo(myTargetFileOS, !isHeaderWritten, myCodec);
             isHeaderWritten = true;
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
@@ -12,10 +12,14 @@
 package org.tmatesoft.svn.core.internal.io.fs;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.util.List;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.tmatesoft.svn.core.ISVNCanceller;
 import org.tmatesoft.svn.core.SVNErrorCode;
@@ -23,28 +27,46 @@ import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.io.fs.revprop.SVNFSFSPackedRevProps;
 import org.tmatesoft.svn.core.internal.io.fs.revprop.SVNFSFSPackedRevPropsManifest;
+import org.tmatesoft.svn.core.internal.util.SVNWorkers;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
-import org.tmatesoft.svn.core.internal.wc.SVNMergeInfoManager;
 import org.tmatesoft.svn.core.wc.ISVNEventHandler;
 import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
 import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
 import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
 import org.tmatesoft.svn.util.SVNLogType;
 
-
 /**
+ * Packs completed shards of a repository.
+ * <p/>
+ * Shards are packed into their pack files by up to {@link #setThreadCount(int) a number of} worker threads
+ * at once, while the shards are switched to their packs and their revision files are deleted one after
+ * another in the order of revisions, so that <code>min-unpacked-rev</code> only moves forward. Every shard
+ * which is packed but not switched yet has a completion marker in its pack directory, so that an interrupted
+ * pack goes on with switching it instead of packing it again.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSPacker {
 
+    private static final String PACK_COMPLETE_FILE = "pack-complete";
+
     private ISVNCanceller myCanceller;
     private ISVNAdminEventHandler myNotifyHandler;
+    private int myThreadCount;
 
     public FSPacker(ISVNAdminEventHandler notifyHandler) {
         myCanceller = notifyHandler == null ? ISVNCanceller.NULL : notifyHandler;
         myNotifyHandler = notifyHandler;
+        myThreadCount = 1;
+    }
+
+    /**
+     * Sets the number of shards packed at once, <code>1</code> by default.
+     */
+    public void setThreadCount(int threadCount) {
+        myThreadCount = Math.max(1, threadCount);
     }
 
     public void pack(FSFS fsfs) throws SVNException {
@@ -88,31 +110,92 @@ public class FSPacker {
             return;
         }
 
-        for (long i = minUnpackedRev / maxFilesPerDirectory; i < completedShards; i++) {
+        long firstShard = minUnpackedRev / maxFilesPerDirectory;
+        if (myThreadCount > 1 && completedShards - firstShard > 1) {
+            packShardsConcurrently(fsfs, firstShard, completedShards, packRevisionProperties);
+            return;
+        }
+        for (long i = firstShard; i < completedShards; i++) {
             myCanceller.checkCancelled();
             packShard(fsfs, i, packRevisionProperties);
         }
     }
 
     private void packShard(FSFS fsfs, long shard, boolean packRevisionProperties) throws SVNException {
-        File revShardPath = new File(fsfs.getDBRevsDir(), String.valueOf(shard));
-        File revpropShardPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard));
-        packRevShard(fsfs, shard, revShardPath);
-
+        final ShardPacker shardPacker = new ShardPacker(fsfs, shard, packRevisionProperties);
+        final boolean isPacked = shardPacker.isPacked();
+        firePackEvent(shard, true);
+        if (!isPacked) {
+            shardPacker.packRevisions(myCanceller);
+        }
         if (packRevisionProperties) {
             myCanceller.checkCancelled();
-            packRevPropShard(fsfs, shard, revpropShardPath, (long)(0.9 * fsfs.getRevPropPackSize()));
+            firePackEvent(shard, true);
+            if (!isPacked) {
+                shardPacker.packRevisionProperties(myCanceller);
+            }
         }
+        if (!isPacked) {
+            shardPacker.markPacked();
+        }
+        switchToPack(fsfs, shardPacker);
+    }
 
+    private void packShardsConcurrently(FSFS fsfs, long firstShard, long completedShards, boolean packRevisionProperties) throws SVNException {
+        final SVNWorkers.Canceller workerCanceller = new SVNWorkers.Canceller("Packing cancelled");
+        final ExecutorService executor = SVNWorkers.createExecutor(myThreadCount, "svnkit-fsfs-pack-");
+        final LinkedList<ShardPacker> shardPackers = new LinkedList<ShardPacker>();
+        final LinkedList<Future<?>> packs = new LinkedList<Future<?>>();
+        try {
+            long nextShard = firstShard;
+            while (nextShard < completedShards || !shardPackers.isEmpty()) {
+                // shards are packed ahead of the one switched next, but not too far ahead
+                while (nextShard < completedShards && shardPackers.size() < 2 * myThreadCount) {
+                    final ShardPacker shardPacker = new ShardPacker(fsfs, nextShard++, packRevisionProperties);
+                    shardPackers.add(shardPacker);
+                    packs.add(shardPacker.isPacked() ? null : executor.submit(new Callable<Object>() {
+                        public Object call() throws SVNException {
+                            shardPacker.pack(workerCanceller);
+                            return null;
+                        }
+                    }));
+                }
+                final ShardPacker shardPacker = shardPackers.removeFirst();
+                final Future<?> pack = packs.removeFirst();
+                if (pack != null) {
+                    SVNWorkers.waitFor(pack, myCanceller, "Interrupted while packing");
+                }
+                firePackEvent(shardPacker.myShard, true);
+                if (packRevisionProperties) {
+                    firePackEvent(shardPacker.myShard, true);
+                }
+                switchToPack(fsfs, shardPacker);
+            }
+        } finally {
+            // packs in progress are left without completion markers and are packed again next time
+            workerCanceller.cancel();
+            SVNWorkers.shutdown(executor);
+        }
+    }
+
+    /**
+     * Makes readers use the pack of the shard instead of its revision files, which are deleted then.
+     */
+    private void switchToPack(FSFS fsfs, ShardPacker shardPacker) throws SVNException {
+        final long shard = shardPacker.myShard;
+        fsfs.clearPackManifest(shard);
+        // without the marker the shard is packed again if the following is interrupted
+        SVNFileUtil.deleteFile(shardPacker.getCompletionMarker());
 
         File finalPath = fsfs.getMinUnpackedRevFile();
         File tmpFile = SVNFileUtil.createUniqueFile(fsfs.getDBRoot(), "tempfile", ".tmp", false);
         String line = String.valueOf((shard + 1) * fsfs.getMaxFilesPerDirectory()) + '\n';
         SVNFileUtil.writeToFile(tmpFile, line, "UTF-8");
         SVNFileUtil.rename(tmpFile, finalPath);
-        SVNFileUtil.deleteAll(revShardPath, true, myCanceller);
-        if (packRevisionProperties) {
-            deleteRevPropShard(revpropShardPath, shard, fsfs.getMaxFilesPerDirectory());
+        FSMappedFiles.invalidate(shardPacker.myRevShardPath);
+        SVNFileUtil.deleteAll(shardPacker.myRevShardPath, true, myCanceller);
+        if (shardPacker.myIsPackRevisionProperties) {
+            deleteRevPropShard(shardPacker.myRevPropShardPath, shard, fsfs.getMaxFilesPerDirectory());
         }
 
         firePackEvent(shard, false);
@@ -132,119 +215,193 @@ public class FSPacker {
         }
     }
 
-    private void packRevShard(FSFS fsfs, long shard, File shardPath) throws SVNException {
-        File packDir = fsfs.getPackDir(shard);
-        File packFile = fsfs.getPackFile(shard);
-        File manifestFile = fsfs.getManifestFile(shard);
+    private void firePackEvent(long shard, boolean start) throws SVNException {
+        if (myNotifyHandler != null) {
+            SVNAdminEvent event = new SVNAdminEvent(start ? SVNAdminEventAction.PACK_START : SVNAdminEventAction.PACK_END, shard);
+            myNotifyHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
+        }
+    }
 
-        firePackEvent(shard, true);
+    /**
+     * Writes the pack files of one shard. Everything it needs from {@link FSFS} is read in the constructor,
+     * so that the packing itself may run on any thread.
+     */
+    private static class ShardPacker {
+
+        private final long myShard;
+        private final File myRevShardPath;
+        private final File myRevPropShardPath;
+        private final File myPackDir;
+        private final File myPackFile;
+        private final File myManifestFile;
+        private final File myRevPropPackPath;
+        private final long myMaxFilesPerDirectory;
+        private final long myMaxRevPropPackSize;
+        private final boolean myIsCompressRevProps;
+        private final boolean myIsPackRevisionProperties;
+        private final boolean myIsUseLogAddressing;
+        private final int myDBFormat;
+
+        private ShardPacker(FSFS fsfs, long shard, boolean packRevisionProperties) {
+            myShard = shard;
+            myRevShardPath = new File(fsfs.getDBRevsDir(), String.valueOf(shard));
+            myRevPropShardPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard));
+            myPackDir = fsfs.getPackDir(shard);
+            myPackFile = fsfs.getPackFile(shard);
+            myManifestFile = fsfs.getManifestFile(shard);
+            myRevPropPackPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard) + FSFS.PACK_EXT);
+            myMaxFilesPerDirectory = fsfs.getMaxFilesPerDirectory();
+            myMaxRevPropPackSize = (long) (0.9 * fsfs.getRevPropPackSize());
+            myIsCompressRevProps = fsfs.isCompressPackedRevprops();
+            myIsPackRevisionProperties = packRevisionProperties;
+            myIsUseLogAddressing = fsfs.isUseLogAddressing();
+            myDBFormat = fsfs.getDBFormat();
+        }
 
-        SVNFileUtil.deleteAll(packDir, false, myCanceller);
+        public File getCompletionMarker() {
+            return new File(myPackDir, PACK_COMPLETE_FILE);
+        }
 
-        if (fsfs.isUseLogAddressing()) {
-            SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, "Logical addressing is unsupported for FS format ''{0}''", new Object[]{new Integer(fsfs.getDBFormat())});
-            SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
-        } else {
-            packPhysicallyAddressed(fsfs, shard, shardPath, packFile, manifestFile);
+        /**
+         * Tells whether the shard was packed completely by an earlier, interrupted pack.
+         */
+        public boolean isPacked() {
+            final File marker = getCompletionMarker();
+            if (!marker.isFile() || !myManifestFile.isFile() || !myRevShardPath.isDirectory()) {
+                return false;
+            }
+            if (myIsPackRevisionProperties && !new File(myRevPropPackPath, FSFS.MANIFEST_FILE).isFile()) {
+                return false;
+            }
+            try {
+                return Long.parseLong(SVNFileUtil.readFile(marker).trim()) == myPackFile.length();
+            } catch (SVNException e) {
+                return false;
+            } catch (NumberFormatException e) {
+                return false;
+            }
         }
-    }
 
-    private void packPhysicallyAddressed(FSFS fsfs, long shard, File shardPath, File packFile, File manifestFile) throws SVNException {
-        long startRev = shard * fsfs.getMaxFilesPerDirectory();
-        long endRev = (shard + 1) * fsfs.getMaxFilesPerDirectory() - 1;
-        long nextOffset = 0;
-        OutputStream packFileOS = null;
-        OutputStream manifestFileOS = null;
-        try {
-            packFileOS = SVNFileUtil.openFileForWriting(packFile);
-            manifestFileOS = SVNFileUtil.openFileForWriting(manifestFile);
-            for (long rev = startRev; rev <= endRev; rev++) {
-                File path = new File(shardPath, String.valueOf(rev));
-                String line = String.valueOf(nextOffset) + '\n';
-                manifestFileOS.write(line.getBytes("UTF-8"));
-                nextOffset += path.length();
-                InputStream revIS = null;
-                try {
-                    revIS = SVNFileUtil.openFileForReading(path);
-                    FSRepositoryUtil.copy(revIS, packFileOS, myCanceller);
-                } finally {
-                    SVNFileUtil.closeFile(revIS);
-                }
+        public void pack(ISVNCanceller canceller) throws SVNException {
+            packRevisions(canceller);
+            if (myIsPackRevisionProperties) {
+                canceller.checkCancelled();
+                packRevisionProperties(canceller);
             }
-        } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
-            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
-        } finally {
-            SVNFileUtil.closeFile(packFileOS);
-            SVNFileUtil.closeFile(manifestFileOS);
+            markPacked();
         }
-    }
 
-    private void firePackEvent(long shard, boolean start) throws SVNException {
-        if (myNotifyHandler != null) {
-            SVNAdminEvent event = new SVNAdminEvent(start ? SVNAdminEventAction.PACK_START : SVNAdminEventAction.PACK_END, shard);
-            myNotifyHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
+        public void markPacked() throws SVNException {
+            SVNFileUtil.writeToFile(getCompletionMarker(), String.valueOf(myPackFile.length()) + '\n', "UTF-8");
         }
-    }
 
-    private void packRevPropShard(FSFS fsfs, long shard, File shardPath, long maxPackSize) throws SVNException {
-        File packPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard) + FSFS.PACK_EXT);
+        public void packRevisions(ISVNCanceller canceller) throws SVNException {
+            FSMappedFiles.invalidate(myPackDir);
+            SVNFileUtil.deleteAll(myPackDir, false, canceller);
 
-        firePackEvent(shard, true);
+            if (myIsUseLogAddressing) {
+                SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, "Logical addressing is unsupported for FS format ''{0}''", new Object[]{new Integer(myDBFormat)});
+                SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+            } else {
+                packPhysicallyAddressed(canceller);
+            }
+        }
 
-        long startRev = shard * fsfs.getMaxFilesPerDirectory();
-        long endRev = (shard + 1) * fsfs.getMaxFilesPerDirectory() - 1;
-        if (startRev == 0) {
-            startRev++;
+        private void packPhysicallyAddressed(ISVNCanceller canceller) throws SVNException {
+            long startRev = myShard * myMaxFilesPerDirectory;
+            long endRev = (myShard + 1) * myMaxFilesPerDirectory - 1;
+            long nextOffset = 0;
+            final StringBuffer manifest = new StringBuffer();
+            FileOutputStream packFileOS = null;
+            try {
+                myPackDir.mkdirs();
+                packFileOS = SVNFileUtil.createFileOutputStream(myPackFile, false);
+                final FileChannel packChannel = packFileOS.getChannel();
+                for (long rev = startRev; rev <= endRev; rev++) {
+                    canceller.checkCancelled();
+                    File path = new File(myRevShardPath, String.valueOf(rev));
+                    manifest.append(nextOffset).append('\n');
+                    FileInputStream revIS = null;
+                    try {
+                        revIS = SVNFileUtil.createFileInputStream(path);
+                        final FileChannel revChannel = revIS.getChannel();
+                        final long size = revChannel.size();
+                        for (long position = 0; position < size;) {
+                            position += revChannel.transferTo(position, size - position, packChannel);
+                        }
+                        nextOffset += size;
+                    } finally {
+                        SVNFileUtil.closeFile(revIS);
+                    }
+                }
+            } catch (IOException ioe) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
+                SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+            } finally {
+                SVNFileUtil.closeFile(packFileOS);
+            }
+            SVNFileUtil.writeToFile(myManifestFile, manifest.toString(), "UTF-8");
         }
 
-        long totalSize = 2 * SVNFSFSPackedRevProps.INT64_BUFFER_SIZE;
-        boolean packIsEmpty = true;
-        String packName = null;
+        public void packRevisionProperties(ISVNCanceller canceller) throws SVNException {
+            File packPath = myRevPropPackPath;
+            File shardPath = myRevPropShardPath;
+            long maxPackSize = myMaxRevPropPackSize;
+
+            long startRev = myShard * myMaxFilesPerDirectory;
+            long endRev = (myShard + 1) * myMaxFilesPerDirectory - 1;
+            if (startRev == 0) {
+                startRev++;
+            }
+
+            long totalSize = 2 * SVNFSFSPackedRevProps.INT64_BUFFER_SIZE;
+            boolean packIsEmpty = true;
+            String packName = null;
 
-        final SVNFSFSPackedRevPropsManifest.Builder manifestBuilder = new SVNFSFSPackedRevPropsManifest.Builder();
+            final SVNFSFSPackedRevPropsManifest.Builder manifestBuilder = new SVNFSFSPackedRevPropsManifest.Builder();
 
-        for (long rev = startRev; rev <= endRev; rev++) {
-            final File path = new File(shardPath, String.valueOf(rev));
-            final long size = path.length();
+            for (long rev = startRev; rev <= endRev; rev++) {
+                final File path = new File(shardPath, String.valueOf(rev));
+                final long size = path.length();
+
+                if (!packIsEmpty && totalSize + SVNFSFSPackedRevProps.INT64_BUFFER_SIZE + size > maxPackSize) {
+                    canceller.checkCancelled();
+                    copyRevProps(packName, packPath, shardPath, startRev, rev-1, myIsCompressRevProps);
+                    totalSize = 2 * SVNFSFSPackedRevProps.INT64_BUFFER_SIZE;
+                    startRev = rev;
+                    packIsEmpty = true;
+                }
 
-            if (!packIsEmpty && totalSize + SVNFSFSPackedRevProps.INT64_BUFFER_SIZE + size > maxPackSize) {
-                copyRevProps(packName, packPath, shardPath, startRev, rev-1, fsfs.isCompressPackedRevprops());
-                totalSize = 2 * SVNFSFSPackedRevProps.INT64_BUFFER_SIZE;
-                startRev = rev;
-                packIsEmpty = true;
+                if (packIsEmpty) {
+                    packName = rev + ".0";
+                }
+                manifestBuilder.addPackName(packName);
+                packIsEmpty = false;
+                totalSize += SVNFSFSPackedRevProps.INT64_BUFFER_SIZE + size;
             }
 
-            if (packIsEmpty) {
-                packName = rev + ".0";
+            if (!packIsEmpty) {
+                copyRevProps(packName, packPath, shardPath, startRev, endRev /*=rev - 1*/, myIsCompressRevProps);
             }
-            manifestBuilder.addPackName(packName);
-            packIsEmpty = false;
-            totalSize += SVNFSFSPackedRevProps.INT64_BUFFER_SIZE + size;
-        }
 
-        if (!packIsEmpty) {
-            copyRevProps(packName, packPath, shardPath, startRev, endRev /*=rev - 1*/, fsfs.isCompressPackedRevprops());
+            final SVNFSFSPackedRevPropsManifest manifest = manifestBuilder.build();
+            SVNFileUtil.writeToFile(new File(packPath, FSFS.MANIFEST_FILE), manifest.asString(), "UTF-8");
         }
 
-        final SVNFSFSPackedRevPropsManifest manifest = manifestBuilder.build();
-        SVNFileUtil.writeToFile(new File(packPath, FSFS.MANIFEST_FILE), manifest.asString(), "UTF-8");
+        private void copyRevProps(String packName, File packPath, File shardPath, long startRev, long endRev, boolean compressPackedRevprops) throws SVNException {
+            final SVNFSFSPackedRevProps.Builder packedRevPropsBuilder = new SVNFSFSPackedRevProps.Builder();
+            packedRevPropsBuilder.setFirstRevision(startRev);
 
-   }
-
-    private void copyRevProps(String packName, File packPath, File shardPath, long startRev, long endRev, boolean compressPackedRevprops) throws SVNException {
-        final SVNFSFSPackedRevProps.Builder packedRevPropsBuilder = new SVNFSFSPackedRevProps.Builder();
-        packedRevPropsBuilder.setFirstRevision(startRev);
+            for (long rev = startRev; rev <= endRev; rev++) {
+                final File revPropFile = new File(shardPath, String.valueOf(rev));
+                final byte[] content = SVNFileUtil.readFully(revPropFile);
 
-        for (long rev = startRev; rev <= endRev; rev++) {
-            final File revPropFile = new File(shardPath, String.valueOf(rev));
-            final byte[] content = SVNFileUtil.readFully(revPropFile);
+                packedRevPropsBuilder.addByteArrayEntry(content);
+            }
 
-            packedRevPropsBuilder.addByteArrayEntry(content);
+            final SVNFSFSPackedRevProps packedRevProps = packedRevPropsBuilder.build();
+            final File packFile = new File(packPath, packName);
+            packedRevProps.writeToFile(packFile, compressPackedRevprops);
         }
-
-        final SVNFSFSPackedRevProps packedRevProps = packedRevPropsBuilder.build();
-        final File packFile = new File(packPath, packName);
-        packedRevProps.writeToFile(packFile, compressPackedRevprops);
     }
 }
@@ -0,0 +1,375 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.tmatesoft.sqljet.core.SqlJetErrorCode;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.SVNHashSet;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Optional index of the revisions in which every path, or anything below it, was changed, and of the
+ * revisions in which paths were added or replaced, together with their copy sources. It is kept in
+ * <code>db/path-history.db</code> next to <code>rep-cache.db</code>; the index is maintained by commits
+ * only if that file exists, which is created by <code>jsvnadmin build-path-index</code>.
+ * <p/>
+ * {@link FSNodeHistory} uses the index to find the previous interesting revision of a path without opening
+ * revision roots. Revisions committed by tools that do not maintain the index are added to it by the next
+ * commit; until then the index is only used for histories that start in indexed revisions.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSPathHistoryIndex {
+
+    private static final String PATH_REVISIONS_TABLE = "path_revisions";
+    private static final String PATH_ADDITIONS_TABLE = "path_additions";
+    private static final String INDEXED_REVISION_TABLE = "indexed_revision";
+
+    private static final int PATH_HISTORY_DB_FORMAT = 1;
+    private static final String[] PATH_HISTORY_DB_SQL = {
+        "create table path_revisions (path text not null, " +
+        "                             revision integer not null, " +
+        "                             primary key (path, revision)) without rowid;",
+        "create table path_additions (path text not null, " +
+        "                             revision integer not null, " +
+        "                             copyfrom_path text, " +
+        "                             copyfrom_revision integer not null, " +
+        "                             primary key (path, revision)) without rowid;",
+        "create table indexed_revision (id integer not null primary key, " +
+        "                               revision integer not null);",
+    };
+
+    private SqlJetDb myDB;
+    private ISqlJetTable myRevisionsTable;
+    private ISqlJetTable myAdditionsTable;
+    private ISqlJetTable myIndexedRevisionTable;
+    private long myIndexedRevision;
+
+    /**
+     * Opens the index of the repository, or returns <code>null</code> if the repository has no index
+     * or it can not be read.
+     */
+    public static FSPathHistoryIndex openIndex(FSFS fsfs) throws SVNException {
+        final File indexFile = fsfs.getPathHistoryIndexFile();
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        final FSPathHistoryIndex index = new FSPathHistoryIndex();
+        try {
+            index.open(indexFile);
+            index.myIndexedRevision = index.readIndexedRevision();
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
+            index.close();
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Creates the index of the repository, or empties the existing one, and indexes all its revisions.
+     */
+    public static void buildIndex(FSFS fsfs) throws SVNException {
+        final FSPathHistoryIndex index = new FSPathHistoryIndex();
+        try {
+            index.open(fsfs.getPathHistoryIndexFile());
+            index.myDB.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    index.myRevisionsTable.clear();
+                    index.myAdditionsTable.clear();
+                    index.writeIndexedRevision(-1);
+                    return null;
+                }
+            });
+        } catch (SqlJetException e) {
+            index.close();
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        try {
+            index.update(fsfs);
+        } finally {
+            index.close();
+        }
+    }
+
+    public long getIndexedRevision() {
+        return myIndexedRevision;
+    }
+
+    public boolean isIndexed(long revision) throws SVNException {
+        if (revision > myIndexedRevision) {
+            try {
+                myIndexedRevision = readIndexedRevision();
+            } catch (SqlJetException e) {
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            }
+        }
+        return revision <= myIndexedRevision;
+    }
+
+    /**
+     * Adds all revisions committed since the last update to the index.
+     */
+    public void update(final FSFS fsfs) throws SVNException {
+        final long youngestRevision = fsfs.getYoungestRevision();
+        try {
+            myDB.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    final long indexedRevision = getIndexedRevision(myIndexedRevisionTable);
+                    if (indexedRevision >= youngestRevision) {
+                        myIndexedRevision = indexedRevision;
+                        return null;
+                    }
+                    try {
+                        fsfs.walkChangedPaths(indexedRevision + 1, youngestRevision, new IFSChangedPathsHandler() {
+                            public void handleChangedPaths(long revision, Map changedPaths) throws SVNException {
+                                try {
+                                    addRevision(revision, changedPaths);
+                                } catch (SqlJetException e) {
+                                    SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                                }
+                            }
+                        });
+                    } catch (SVNException e) {
+                        throw new SqlJetException(e);
+                    }
+                    writeIndexedRevision(youngestRevision);
+                    myIndexedRevision = youngestRevision;
+                    return null;
+                }
+            });
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+    }
+
+    /**
+     * Finds the youngest revision not younger than <code>revision</code> in which the node at
+     * <code>path</code> was changed, or in which it (or one of its parents) was created.
+     *
+     * @return the change, or <code>null</code> if the path has no history up to the revision
+     */
+    public Change findPreviousChange(final String path, final long revision) throws SVNException {
+        try {
+            return (Change) myDB.runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    final long changedRevision = findYoungestRevision(myRevisionsTable, path, revision);
+
+                    Change parentAddition = null;
+                    String parentPath = null;
+                    for (String parent = SVNPathUtil.removeTail(path); parent.length() > 0; parent = SVNPathUtil.removeTail(parent)) {
+                        final long additionRevision = findYoungestRevision(myAdditionsTable, parent, revision);
+                        if (additionRevision >= 0 && (parentAddition == null || additionRevision > parentAddition.getRevision())) {
+                            parentAddition = getAddition(parent, additionRevision);
+                            parentPath = parent;
+                        }
+                    }
+                    if (changedRevision < 0 && parentAddition == null) {
+                        return null;
+                    }
+                    if (parentAddition == null || changedRevision >= parentAddition.getRevision()) {
+                        final Change addition = getAddition(path, changedRevision);
+                        if (addition != null) {
+                            return addition;
+                        }
+                        if (parentAddition == null || changedRevision > parentAddition.getRevision()) {
+                            return new Change(changedRevision, false, null, -1);
+                        }
+                    }
+                    // the path was created together with its parent, possibly copied along with it
+                    String copyFromPath = parentAddition.getCopyFromPath();
+                    if (copyFromPath != null) {
+                        copyFromPath = SVNPathUtil.getAbsolutePath(SVNPathUtil.append(copyFromPath, path.substring(parentPath.length() + 1)));
+                    }
+                    return new Change(parentAddition.getRevision(), true, copyFromPath, parentAddition.getCopyFromRevision());
+                }
+            });
+        } catch (SqlJetException e) {
+            SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    public void close() throws SVNException {
+        if (myDB != null) {
+            try {
+                myDB.close();
+            } catch (SqlJetException e) {
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            } finally {
+                myDB = null;
+                myRevisionsTable = null;
+                myAdditionsTable = null;
+                myIndexedRevisionTable = null;
+            }
+        }
+    }
+
+    private void open(File indexFile) throws SqlJetException {
+        myDB = SqlJetDb.open(indexFile, true);
+        myDB.setSafetyLevel(SqlJetSafetyLevel.OFF);
+        checkFormat(myDB);
+        myRevisionsTable = myDB.getTable(PATH_REVISIONS_TABLE);
+        myAdditionsTable = myDB.getTable(PATH_ADDITIONS_TABLE);
+        myIndexedRevisionTable = myDB.getTable(INDEXED_REVISION_TABLE);
+    }
+
+    private void addRevision(long revision, Map changedPaths) throws SqlJetException {
+        final Set touchedPaths = new SVNHashSet();
+        for (Iterator changes = changedPaths.values().iterator(); changes.hasNext();) {
+            final FSPathChange change = (FSPathChange) changes.next();
+            final FSPathChangeKind kind = change.getChangeKind();
+            if (kind == FSPathChangeKind.FS_PATH_CHANGE_RESET) {
+                continue;
+            }
+            if (kind == FSPathChangeKind.FS_PATH_CHANGE_ADD || kind == FSPathChangeKind.FS_PATH_CHANGE_REPLACE) {
+                final boolean isCopy = change.getCopyPath() != null && change.getCopyRevision() >= 0;
+                myAdditionsTable.insertOr(SqlJetConflictAction.REPLACE, new Object[] {change.getPath(), new Long(revision),
+                        isCopy ? change.getCopyPath() : null, new Long(isCopy ? change.getCopyRevision() : -1)});
+            }
+            for (String path = change.getPath(); path.length() > 0 && touchedPaths.add(path); path = SVNPathUtil.removeTail(path)) {
+                myRevisionsTable.insertOr(SqlJetConflictAction.IGNORE, new Object[] {path, new Long(revision)});
+            }
+        }
+    }
+
+    private Change getAddition(String path, long revision) throws SqlJetException {
+        if (revision < 0) {
+            return null;
+        }
+        final ISqlJetCursor cursor = myAdditionsTable.lookup(myAdditionsTable.getPrimaryKeyIndexName(), new Object[] {path, new Long(revision)});
+        try {
+            if (cursor.eof()) {
+                return null;
+            }
+            return new Change(revision, true, cursor.getString("copyfrom_path"), cursor.getInteger("copyfrom_revision"));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long findYoungestRevision(ISqlJetTable table, String path, long revision) throws SqlJetException {
+        final ISqlJetCursor cursor = table.scope(table.getPrimaryKeyIndexName(),
+                new Object[] {path, new Long(0)}, new Object[] {path, new Long(revision)}).reverse();
+        try {
+            return cursor.eof() ? -1 : cursor.getInteger("revision");
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long readIndexedRevision() throws SqlJetException {
+        return ((Long) myDB.runReadTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                return new Long(getIndexedRevision(myIndexedRevisionTable));
+            }
+        })).longValue();
+    }
+
+    private static long getIndexedRevision(ISqlJetTable indexedRevisionTable) throws SqlJetException {
+        final ISqlJetCursor cursor = indexedRevisionTable.open();
+        try {
+            return cursor.eof() ? -1 : cursor.getInteger("revision");
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void writeIndexedRevision(long revision) throws SqlJetException {
+        myIndexedRevisionTable.insertOr(SqlJetConflictAction.REPLACE, new Object[] {new Long(1), new Long(revision)});
+    }
+
+    private static void checkFormat(final SqlJetDb db) throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                int version = db.getOptions().getUserVersion();
+                if (version < PATH_HISTORY_DB_FORMAT) {
+                    db.getOptions().setAutovacuum(true);
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getOptions().setUserVersion(PATH_HISTORY_DB_FORMAT);
+                            for (int i = 0; i < PATH_HISTORY_DB_SQL.length; i++) {
+                                db.createTable(PATH_HISTORY_DB_SQL[i]);
+                            }
+                            return null;
+                        }
+                    });
+                } else if (version > PATH_HISTORY_DB_FORMAT) {
+                    throw new SqlJetException("Schema format " + version + " not recognized");
+                }
+                return null;
+            }
+        });
+    }
+
+    private static SVNErrorMessage convertError(SqlJetException e) {
+        if (e.getCause() instanceof SVNException) {
+            return ((SVNException) e.getCause()).getErrorMessage();
+        }
+        SqlJetErrorCode sqlCode = e.getErrorCode();
+        return SVNErrorMessage.create(sqlCode == SqlJetErrorCode.READONLY ? SVNErrorCode.SQLITE_READONLY : SVNErrorCode.SQLITE_ERROR, e.getMessage());
+    }
+
+    /**
+     * A revision in the history of a path: either a change of the node at the path or the creation
+     * of the node, which may have been copied from <code>copyFromPath@copyFromRevision</code>.
+     */
+    public static class Change {
+
+        private final long myRevision;
+        private final boolean myIsCreation;
+        private final String myCopyFromPath;
+        private final long myCopyFromRevision;
+
+        private Change(long revision, boolean creation, String copyFromPath, long copyFromRevision) {
+            myRevision = revision;
+            myIsCreation = creation;
+            myCopyFromPath = copyFromPath;
+            myCopyFromRevision = copyFromRevision;
+        }
+
+        public long getRevision() {
+            return myRevision;
+        }
+
+        public boolean isCreation() {
+            return myIsCreation;
+        }
+
+        public String getCopyFromPath() {
+            return myCopyFromPath;
+        }
+
+        public long getCopyFromRevision() {
+            return myCopyFromRevision;
+        }
+    }
+}
@@ -14,7 +14,11 @@ package org.tmatesoft.svn.core.internal.io.fs;
 import java.io.File;
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.tmatesoft.svn.core.ISVNCanceller;
 import org.tmatesoft.svn.core.SVNErrorCode;
@@ -22,21 +26,47 @@ import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.internal.util.SVNWorkers;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
 import org.tmatesoft.svn.util.SVNLogType;
 
-
 /**
+ * Recovers <code>current</code> of a repository from its revision files.
+ * <p/>
+ * Repositories of formats older than 3 keep the next node and copy ids in <code>current</code>, which
+ * are recomputed from the node-revisions of all revisions. Revisions are scanned by up to
+ * {@link #setThreadCount(int) a number of} worker threads, each reading its own revision file, and
+ * every scanned revision is reported in the order of revisions.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSRecoverer {
+
     private FSFS myOwner;
     private ISVNCanceller myCanceller;
+    private ISVNAdminEventHandler myNotifyHandler;
+    private int myThreadCount;
     
     public FSRecoverer(FSFS owner, ISVNCanceller canceller) {
+        this(owner, canceller, null);
+    }
+
+    public FSRecoverer(FSFS owner, ISVNCanceller canceller, ISVNAdminEventHandler notifyHandler) {
         myOwner = owner;
         myCanceller = canceller == null ? ISVNCanceller.NULL : canceller;
+        myNotifyHandler = notifyHandler;
+        myThreadCount = 1;
+    }
+
+    /**
+     * Sets the number of revisions scanned at once, <code>1</code> by default.
+     */
+    public void setThreadCount(int threadCount) {
+        myThreadCount = Math.max(1, threadCount);
     }
     
     public void runRecovery() throws SVNException {
@@ -65,24 +95,9 @@ public class FSRecoverer {
         }
         
         if (myOwner.getDBFormat() < FSFS.MIN_NO_GLOBAL_IDS_FORMAT) {
-            long[] rootOffset = { -1 };
-            String[] maxNodeID = { "0" };
-            String[] maxCopyID = { "0" };
-            for (long rev = 0; rev <= maxRev; rev++) {
-                myCanceller.checkCancelled();
-                FSFile revFile = null;
-                try {
-                    revFile = myOwner.getPackOrRevisionFSFile(rev);
-                    FSRepositoryUtil.loadRootChangesOffset(myOwner, rev, revFile, rootOffset, null);
-                    findMaxIDs(rev, revFile, rootOffset[0], maxNodeID, maxCopyID);
-                } finally {
-                    if (revFile != null) {
-                        revFile.close();
-                    }
-                }
-            }
-            nextNodeID = FSRepositoryUtil.generateNextKey(maxNodeID[0]);
-            nextCopyID = FSRepositoryUtil.generateNextKey(maxCopyID[0]);
+            String[] maxIDs = myThreadCount > 1 && maxRev > 0 ? findMaxIDsConcurrently(maxRev) : findMaxIDs(maxRev);
+            nextNodeID = FSRepositoryUtil.generateNextKey(maxIDs[0]);
+            nextCopyID = FSRepositoryUtil.generateNextKey(maxIDs[1]);
         }
         
         File revpropFile = null;
@@ -111,6 +126,90 @@ public class FSRecoverer {
         }
     }
     
+    private String[] findMaxIDs(long maxRev) throws SVNException {
+        String[] maxIDs = { "0", "0" };
+        for (long rev = 0; rev <= maxRev; rev++) {
+            myCanceller.checkCancelled();
+            mergeMaxIDs(maxIDs, scanRevision(rev));
+            fireRevisionScanned(rev, maxRev);
+        }
+        return maxIDs;
+    }
+
+    private String[] findMaxIDsConcurrently(long maxRev) throws SVNException {
+        final SVNWorkers.Canceller workerCanceller = new SVNWorkers.Canceller("Recovery cancelled");
+        final ExecutorService executor = SVNWorkers.createExecutor(myThreadCount, "svnkit-fsfs-recover-");
+        final LinkedList<Future<String[]>> scans = new LinkedList<Future<String[]>>();
+        String[] maxIDs = { "0", "0" };
+        try {
+            long nextRev = 0;
+            for (long rev = 0; rev <= maxRev; rev++) {
+                // revisions are scanned ahead of the one reported next, but not too far ahead
+                while (nextRev <= maxRev && scans.size() < 2 * myThreadCount) {
+                    final long scannedRev = nextRev++;
+                    scans.add(executor.submit(new Callable<String[]>() {
+                        public String[] call() throws SVNException {
+                            workerCanceller.checkCancelled();
+                            return scanRevision(scannedRev);
+                        }
+                    }));
+                }
+                mergeMaxIDs(maxIDs, SVNWorkers.waitFor(scans.removeFirst(), myCanceller, "Interrupted while recovering"));
+                fireRevisionScanned(rev, maxRev);
+            }
+        } finally {
+            workerCanceller.cancel();
+            SVNWorkers.shutdown(executor);
+        }
+        return maxIDs;
+    }
+
+    /**
+     * Returns the largest node and copy ids of the nodes created in <code>rev</code>. Opens its own
+     * revision file, so that revisions may be scanned on any thread.
+     */
+    private String[] scanRevision(long rev) throws SVNException {
+        String[] maxNodeID = { "0" };
+        String[] maxCopyID = { "0" };
+        FSFile revFile = null;
+        try {
+            revFile = myOwner.getPackOrRevisionFSFile(rev);
+            long[] rootOffset = { -1 };
+            FSRepositoryUtil.loadRootChangesOffset(myOwner, rev, revFile, rootOffset, null);
+            findMaxIDs(rev, revFile, rootOffset[0], maxNodeID, maxCopyID);
+        } finally {
+            if (revFile != null) {
+                revFile.close();
+            }
+        }
+        return new String[] { maxNodeID[0], maxCopyID[0] };
+    }
+
+    private void fireRevisionScanned(long rev, long maxRev) throws SVNException {
+        if (myNotifyHandler != null) {
+            SVNAdminEvent event = new SVNAdminEvent(rev, SVNAdminEventAction.RECOVERY_REVISION_SCANNED, null);
+            myNotifyHandler.handleAdminEvent(event, (double) (rev + 1) / (maxRev + 1));
+        }
+    }
+
+    private static void mergeMaxIDs(String[] maxIDs, String[] revisionMaxIDs) {
+        for (int i = 0; i < maxIDs.length; i++) {
+            if (compareKeys(revisionMaxIDs[i], maxIDs[i]) > 0) {
+                maxIDs[i] = revisionMaxIDs[i];
+            }
+        }
+    }
+
+    /**
+     * Keys are base-36 numbers without leading zeros, so a longer key is always the larger one.
+     */
+    private static int compareKeys(String key1, String key2) {
+        if (key1.length() != key2.length()) {
+            return key1.length() > key2.length() ? 1 : -1;
+        }
+        return key1.compareTo(key2);
+    }
+
     private void findMaxIDs(long rev, FSFile revFile, long offset, String[] maxNodeID, String[] maxCopyID) throws SVNException {
         revFile.seek(offset);
         Map headers = null;
@@ -142,15 +241,7 @@ public class FSRecoverer {
         if (revNode.getTextRepresentation().getRevision() != rev) {
             return;
         }
-        long off;
-        long itemIndex = revNode.getTextRepresentation().getItemIndex();
-        if (myOwner.isUseLogAddressing()) {
-            throw new UnsupportedOperationException("TODO");
-//            off = lookupOffsetInIndex(itemIndex);
-        } else {
-            off = itemIndex;
-        }
-        revFile.seek(off);
+        revFile.seek(revNode.getTextRepresentation().getItemIndex());
         FSInputStream.FSRepresentationState repState = FSInputStream.readRepresentationLine(revFile);
         if (repState.myIsDelta) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, 
@@ -184,10 +275,10 @@ public class FSRecoverer {
             
             String nodeID = id.getNodeID();
             String copyID = id.getCopyID();
-            if (nodeID.compareTo(maxNodeID[0]) > 0) {
+            if (compareKeys(nodeID, maxNodeID[0]) > 0) {
                 maxNodeID[0] = nodeID;
             }
-            if (copyID.compareTo(maxCopyID[0]) > 0) {
+            if (compareKeys(copyID, maxCopyID[0]) > 0) {
                 maxCopyID[0] = copyID;
             }
             
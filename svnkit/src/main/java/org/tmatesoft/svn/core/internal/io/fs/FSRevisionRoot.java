@@ -17,6 +17,9 @@ import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.io.SVNLocationEntry;
@@ -29,6 +32,9 @@ import org.tmatesoft.svn.util.SVNLogType;
  * @author  TMate Software Ltd.
  */
 public class FSRevisionRoot extends FSRoot {
+
+    private static final FSCache<FSCacheKey, FSChangedPaths> ourChangedPathsCache = FSCacheManager.getCache("changed-paths", 5);
+
     private long myRevision;
     private long myRootOffset;
     private long myChangesOffset;
@@ -45,14 +51,37 @@ public class FSRevisionRoot extends FSRoot {
     }
 
     public Map getChangedPaths() throws SVNException {
-        FSFile file = getOwner().getPackOrRevisionFSFile(getRevision());
+        return getChangedPaths(null);
+    }
+
+    /**
+     * Reads the changed paths from the given revision or pack file, which is left open,
+     * or opens the revision file itself if <code>revisionFile</code> is <code>null</code>.
+     */
+    Map getChangedPaths(FSFile revisionFile) throws SVNException {
+        final FSCacheKey cacheKey = FSCacheManager.isEnabled() ? new FSCacheKey(getOwner().getCacheScope(), getRevision()) : null;
+        if (cacheKey != null) {
+            final FSChangedPaths cachedPaths = ourChangedPathsCache.get(cacheKey);
+            if (cachedPaths != null) {
+                return cachedPaths.toMap();
+            }
+        }
+        final FSFile file = revisionFile != null ? revisionFile : getOwner().getPackOrRevisionFSFile(getRevision());
+        final Map changedPaths;
         try {
             loadOffsets(file, FSID.ITEM_INDEX_CHANGES);
             file.seek(myChangesOffset);
-            return fetchAllChanges(file, true);
+            changedPaths = fetchAllChanges(file, true);
         } finally {
-            file.close();
+            if (revisionFile == null) {
+                file.close();
+            }
         }
+        if (cacheKey != null) {
+            final FSChangedPaths compactPaths = FSChangedPaths.create(changedPaths);
+            ourChangedPathsCache.put(cacheKey, compactPaths, compactPaths.estimateSize());
+        }
+        return changedPaths;
     }
 
     public FSCopyInheritance getCopyInheritance(FSParentPath child) throws SVNException{
@@ -64,7 +93,12 @@ public class FSRevisionRoot extends FSRoot {
         if (kind == SVNNodeKind.NONE) {
             SVNErrorManager.error(FSErrors.errorNotFound(this, path), SVNLogType.FSFS);
         }
-        return new FSNodeHistory(new SVNLocationEntry(getRevision(), SVNPathUtil.canonicalizeAbsolutePath(path)), 
+        final SVNLocationEntry historyEntry = new SVNLocationEntry(getRevision(), SVNPathUtil.canonicalizeAbsolutePath(path));
+        final FSPathHistoryIndex pathHistoryIndex = getOwner().getPathHistoryIndex();
+        if (pathHistoryIndex != null && !"/".equals(historyEntry.getPath()) && pathHistoryIndex.isIndexed(getRevision())) {
+            return FSNodeHistory.createIndexedHistory(historyEntry, getOwner());
+        }
+        return new FSNodeHistory(historyEntry, 
                 false, new SVNLocationEntry(SVNRepository.INVALID_REVISION, null), getOwner());
     }
 
@@ -290,7 +290,10 @@ public abstract class FSRoot {
     }
 
     public Map detectChanged() throws SVNException {
-        Map changes = getChangedPaths();
+        return removeResetChanges(getChangedPaths());
+    }
+
+    static Map removeResetChanges(Map changes) {
         if (changes.size() == 0) {
             return changes;
         }
@@ -0,0 +1,32 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNException;
+
+
+/**
+ * Receives the changed paths of revisions read by {@link FSFS#walkChangedPaths(long, long, IFSChangedPathsHandler)}.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public interface IFSChangedPathsHandler {
+
+    /**
+     * @param revision      revision number
+     * @param changedPaths  map of path to {@link FSPathChange}, owned by the handler
+     */
+    public void handleChangedPaths(long revision, Map changedPaths) throws SVNException;
+}
@@ -11,6 +11,9 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.tmatesoft.svn.core.SVNException;
 
 
@@ -22,11 +25,17 @@ public interface IFSRepresentationCacheManager {
     
     public void insert(final FSRepresentation representation, boolean rejectDup) throws SVNException;
 
+    public void insertAll(Collection<FSRepresentation> representations, boolean rejectDup) throws SVNException;
+
     public void runWriteTransaction(IFSSqlJetTransaction transaction) throws SVNException;
 
     public void runReadTransaction(IFSSqlJetTransaction transaction) throws SVNException;
     
     public FSRepresentation getRepresentationByHash(String hash) throws SVNException;
+
+    public List<FSRepresentation> getRepresentationsByRevisions(long startRevision, long endRevision) throws SVNException;
+
+    public void deleteRepresentationsAfter(long revision) throws SVNException;
     
     public void close() throws SVNException;
 }
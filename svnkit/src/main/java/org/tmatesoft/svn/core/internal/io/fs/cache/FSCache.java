@@ -0,0 +1,161 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe LRU cache bounded by the total estimated size (in bytes) of its values.
+ * Intended for immutable repository data only: values are shared between threads
+ * and must not be modified once put into the cache.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCache<K, V> {
+
+    private final String myName;
+    private final LinkedHashMap<K, Entry<V>> myEntries;
+
+    private long myCapacity;
+    private long mySize;
+
+    private long myHits;
+    private long myMisses;
+    private long myEvictions;
+
+    public FSCache(String name, long capacity) {
+        myName = name;
+        myCapacity = Math.max(0, capacity);
+        myEntries = new LinkedHashMap<K, Entry<V>>(64, 0.75f, true);
+    }
+
+    public String getName() {
+        return myName;
+    }
+
+    public synchronized V get(K key) {
+        final Entry<V> entry = myEntries.get(key);
+        if (entry == null) {
+            myMisses++;
+            return null;
+        }
+        myHits++;
+        return entry.value;
+    }
+
+    public synchronized boolean containsKey(K key) {
+        return myEntries.containsKey(key);
+    }
+
+    public synchronized void put(K key, V value, long weight) {
+        if (key == null || value == null) {
+            return;
+        }
+        weight = Math.max(1, weight);
+        if (weight > myCapacity) {
+            remove(key);
+            return;
+        }
+        final Entry<V> previous = myEntries.put(key, new Entry<V>(value, weight));
+        if (previous != null) {
+            mySize -= previous.weight;
+        }
+        mySize += weight;
+        shrink(myCapacity);
+    }
+
+    public synchronized V remove(K key) {
+        final Entry<V> entry = myEntries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        mySize -= entry.weight;
+        return entry.value;
+    }
+
+    public synchronized void clear() {
+        myEntries.clear();
+        mySize = 0;
+    }
+
+    public synchronized void resetStatistics() {
+        myHits = 0;
+        myMisses = 0;
+        myEvictions = 0;
+    }
+
+    public synchronized void setCapacity(long capacity) {
+        myCapacity = Math.max(0, capacity);
+        shrink(myCapacity);
+    }
+
+    public synchronized long getCapacity() {
+        return myCapacity;
+    }
+
+    public synchronized long getSize() {
+        return mySize;
+    }
+
+    public synchronized int getCount() {
+        return myEntries.size();
+    }
+
+    public synchronized long getHits() {
+        return myHits;
+    }
+
+    public synchronized long getMisses() {
+        return myMisses;
+    }
+
+    public synchronized long getEvictions() {
+        return myEvictions;
+    }
+
+    public synchronized double getHitRatio() {
+        final long requests = myHits + myMisses;
+        return requests == 0 ? 0 : (double) myHits / requests;
+    }
+
+    public String toString() {
+        synchronized (this) {
+            return myName + ": " + myEntries.size() + " entries, " + mySize + "/" + myCapacity + " bytes, " +
+                    myHits + " hits, " + myMisses + " misses, " + myEvictions + " evictions";
+        }
+    }
+
+    private void shrink(long capacity) {
+        if (mySize <= capacity) {
+            return;
+        }
+        for (Iterator<Map.Entry<K, Entry<V>>> entries = myEntries.entrySet().iterator(); entries.hasNext() && mySize > capacity;) {
+            final Entry<V> eldest = entries.next().getValue();
+            entries.remove();
+            mySize -= eldest.weight;
+            myEvictions++;
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.cache;
+
+/**
+ * Key of an immutable item in one repository: the repository scope (see {@link FSCacheManager#getScope})
+ * and up to three numbers identifying the item within it, e.g. revision, item index and window number.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public final class FSCacheKey {
+
+    private final String myScope;
+    private final long myFirst;
+    private final long mySecond;
+    private final long myThird;
+    private final int myHashCode;
+
+    public FSCacheKey(String scope, long first) {
+        this(scope, first, 0, 0);
+    }
+
+    public FSCacheKey(String scope, long first, long second) {
+        this(scope, first, second, 0);
+    }
+
+    public FSCacheKey(String scope, long first, long second, long third) {
+        myScope = scope;
+        myFirst = first;
+        mySecond = second;
+        myThird = third;
+
+        int hash = scope == null ? 0 : scope.hashCode();
+        hash = 31 * hash + (int) (first ^ (first >>> 32));
+        hash = 31 * hash + (int) (second ^ (second >>> 32));
+        hash = 31 * hash + (int) (third ^ (third >>> 32));
+        myHashCode = hash;
+    }
+
+    public String getScope() {
+        return myScope;
+    }
+
+    public long getFirst() {
+        return myFirst;
+    }
+
+    public long getSecond() {
+        return mySecond;
+    }
+
+    public long getThird() {
+        return myThird;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof FSCacheKey)) {
+            return false;
+        }
+        final FSCacheKey other = (FSCacheKey) obj;
+        return myHashCode == other.myHashCode &&
+                myFirst == other.myFirst &&
+                mySecond == other.mySecond &&
+                myThird == other.myThird &&
+                (myScope == null ? other.myScope == null : myScope.equals(other.myScope));
+    }
+
+    public int hashCode() {
+        return myHashCode;
+    }
+
+    public String toString() {
+        return myScope + ":" + myFirst + ":" + mySecond + ":" + myThird;
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JVM-wide registry of the caches for immutable FSFS data.
+ * <p/>
+ * All caches share one memory budget, which may be set with the <code>svnkit.fsfs.cacheSize</code>
+ * system property (in megabytes) or with {@link #setMemoryBudget(long)}; every cache gets a fixed
+ * share of it. The budget is <code>0</code> unless set, that is, caching is off by default. Entries of different repositories are told apart by the
+ * repository scope, so that all {@link org.tmatesoft.svn.core.internal.io.fs.FSFS} objects opened
+ * for the same repository share cached data.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCacheManager {
+
+    public static final String CACHE_SIZE_PROPERTY = "svnkit.fsfs.cacheSize";
+
+    private static final long MEGABYTE = 1024 * 1024;
+    private static final long DEFAULT_BUDGET = 0;
+
+    private static final Map<String, CacheInfo> ourCaches = new LinkedHashMap<String, CacheInfo>();
+    private static long ourMemoryBudget = readMemoryBudget();
+
+    public static synchronized <K, V> FSCache<K, V> getCache(String name, int budgetPercent) {
+        CacheInfo info = ourCaches.get(name);
+        if (info == null) {
+            info = new CacheInfo(new FSCache<K, V>(name, ourMemoryBudget * budgetPercent / 100), budgetPercent);
+            ourCaches.put(name, info);
+        }
+        @SuppressWarnings("unchecked")
+        final FSCache<K, V> cache = (FSCache<K, V>) info.cache;
+        return cache;
+    }
+
+    public static synchronized Collection<FSCache<?, ?>> getCaches() {
+        final Collection<FSCache<?, ?>> caches = new ArrayList<FSCache<?, ?>>(ourCaches.size());
+        for (CacheInfo info : ourCaches.values()) {
+            caches.add(info.cache);
+        }
+        return caches;
+    }
+
+    public static synchronized long getMemoryBudget() {
+        return ourMemoryBudget;
+    }
+
+    public static synchronized void setMemoryBudget(long bytes) {
+        ourMemoryBudget = Math.max(0, bytes);
+        for (CacheInfo info : ourCaches.values()) {
+            info.cache.setCapacity(ourMemoryBudget * info.budgetPercent / 100);
+        }
+    }
+
+    public static synchronized boolean isEnabled() {
+        return ourMemoryBudget > 0;
+    }
+
+    public static synchronized void clearAll() {
+        for (CacheInfo info : ourCaches.values()) {
+            info.cache.clear();
+        }
+    }
+
+    /**
+     * Returns the string that identifies the repository in cache keys. Besides the canonical path
+     * it contains the repository UUID and the time the UUID was written, so a repository that is
+     * deleted and created again at the same location never sees stale entries of its predecessor.
+     */
+    public static String getScope(File repositoryRoot, String uuid, long uuidTimestamp) {
+        String path;
+        try {
+            path = repositoryRoot.getCanonicalPath();
+        } catch (IOException e) {
+            path = repositoryRoot.getAbsolutePath();
+        }
+        return (path + '\n' + uuid + '\n' + uuidTimestamp).intern();
+    }
+
+    private static long readMemoryBudget() {
+        final String value = System.getProperty(CACHE_SIZE_PROPERTY);
+        if (value != null) {
+            try {
+                return Math.max(0, Long.parseLong(value.trim())) * MEGABYTE;
+            } catch (NumberFormatException e) {
+                //ignore
+            }
+        }
+        return DEFAULT_BUDGET;
+    }
+
+    private static class CacheInfo {
+        final FSCache<?, ?> cache;
+        final int budgetPercent;
+
+        CacheInfo(FSCache<?, ?> cache, int budgetPercent) {
+            this.cache = cache;
+            this.budgetPercent = budgetPercent;
+        }
+    }
+}
@@ -7,6 +7,9 @@ import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
 import org.tmatesoft.svn.core.internal.io.fs.FSID;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -21,6 +24,12 @@ public class FSLogicalAddressingIndex {
     public static final String L2P_STREAM_PREFIX = "L2P-INDEX\n";
     public static final String P2L_STREAM_PREFIX = "P2L-INDEX\n";
 
+    private static final FSCache<FSCacheKey, L2PIndexHeader> ourL2PHeadersCache = FSCacheManager.getCache("l2p-headers", 2);
+    private static final FSCache<FSCacheKey, long[]> ourL2PPagesCache = FSCacheManager.getCache("l2p-pages", 3);
+    private static final FSCache<FSCacheKey, P2LIndexHeader> ourP2LHeadersCache = FSCacheManager.getCache("p2l-headers", 1);
+    private static final FSCache<FSCacheKey, long[]> ourP2LPagesCache = FSCacheManager.getCache("p2l-pages", 2);
+    private static final int P2L_ENTRY_FIELDS = 6;
+
     private FSFile myFile;
     private long startRevision;
     private FSFS fsfs;
@@ -52,8 +61,7 @@ public class FSLogicalAddressingIndex {
 //            final long maxOffset = align(entry.offset + entry.size, fsfs.getBlockSize());
 //            final long minOffset = maxOffset - fsfs.getBlockSize();
 
-            final Page page = getL2PPage(entry);
-            //TODO: cache!
+            final Page page = getL2PPage(revision, entry);
             offset = getL2PPageEntry(page, pageInfo.getPageOffset(), itemIndex, revision);
         } else {
             //TODO: set this to the cached value
@@ -83,6 +91,7 @@ public class FSLogicalAddressingIndex {
             //TODO: block read?
 
             final List<FSP2LEntry> pageEntries = getP2LPage(
+                    revision,
                     pageInfo.getFirstRevision(),
                     pageInfo.getStartOffset(),
                     pageInfo.getNextOffset(),
@@ -131,29 +140,23 @@ public class FSLogicalAddressingIndex {
     }
 
     private P2LPageInfo getP2LPageInfo(long revision, long offset) throws SVNException {
-        boolean isCached = false;
-
-        if (isCached) {
-            //TODO return cached value here
-            return null;
+        final FSCacheKey cacheKey = createCacheKey(revision, 0);
+        P2LIndexHeader header = cacheKey != null ? ourP2LHeadersCache.get(cacheKey) : null;
+        if (header == null) {
+            header = getP2LHeader(revision);
+            if (cacheKey != null) {
+                ourP2LHeadersCache.put(cacheKey, header, 64 + 8 * header.getOffsets().length);
+            }
         }
-        final P2LIndexHeader header = getP2LHeader();
         return createPageInfo(header, revision, offset);
     }
 
-    private P2LIndexHeader getP2LHeader() throws SVNException {
-        boolean isCached = false;
-
-        if (isCached) {
-            //TODO return cached value here
-            return null;
-        }
-
+    private P2LIndexHeader getP2LHeader(long revision) throws SVNException {
         final FSPackedNumbersStream packedNumbersStream = autoOpenP2LIndex();
         packedNumbersStream.seek(0);
 
         final long firstRevision = packedNumbersStream.read();
-        if (firstRevision != startRevision) {
+        if (firstRevision != getStartRevision(revision)) {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_CORRUPTION, "Index rev / pack file revision numbers do not match");
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
@@ -189,8 +192,6 @@ public class FSLogicalAddressingIndex {
             offsets[i] += offset;
         }
 
-        //TODO: save to cache here
-
         final P2LIndexHeader p2LIndexHeader = new P2LIndexHeader(firstRevision, pageSize, pageCount, fileSize, offsets);
         return p2LIndexHeader;
     }
@@ -257,7 +258,35 @@ public class FSLogicalAddressingIndex {
         return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
     }
 
-    private List<FSP2LEntry> getP2LPage(long startRevision, long startOffset, long nextOffset, long pageStart, long pageSize) throws SVNException {
+    private List<FSP2LEntry> getP2LPage(long revision, long startRevision, long startOffset, long nextOffset, long pageStart, long pageSize) throws SVNException {
+        final FSCacheKey cacheKey = createCacheKey(revision, startOffset);
+        final long[] cachedPage = cacheKey != null ? ourP2LPagesCache.get(cacheKey) : null;
+        if (cachedPage != null) {
+            final List<FSP2LEntry> result = new ArrayList<FSP2LEntry>(cachedPage.length / P2L_ENTRY_FIELDS);
+            for (int i = 0; i < cachedPage.length; i += P2L_ENTRY_FIELDS) {
+                result.add(new FSP2LEntry(cachedPage[i], cachedPage[i + 1], FSP2LProtoIndex.ItemType.fromCode((int) cachedPage[i + 2]),
+                        (int) cachedPage[i + 3], cachedPage[i + 4], cachedPage[i + 5]));
+            }
+            return result;
+        }
+        final List<FSP2LEntry> result = readP2LPage(startRevision, startOffset, nextOffset, pageStart, pageSize);
+        if (cacheKey != null) {
+            final long[] page = new long[result.size() * P2L_ENTRY_FIELDS];
+            int i = 0;
+            for (FSP2LEntry entry : result) {
+                page[i++] = entry.getOffset();
+                page[i++] = entry.getSize();
+                page[i++] = entry.getType().getCode();
+                page[i++] = entry.getChecksum();
+                page[i++] = entry.getRevision();
+                page[i++] = entry.getNumber();
+            }
+            ourP2LPagesCache.put(cacheKey, page, 16 + 8 * page.length);
+        }
+        return result;
+    }
+
+    private List<FSP2LEntry> readP2LPage(long startRevision, long startOffset, long nextOffset, long pageStart, long pageSize) throws SVNException {
         final List<FSP2LEntry> result = new ArrayList<FSP2LEntry>();
         final FSPackedNumbersStream packedNumbersStream = autoOpenP2LIndex();
         packedNumbersStream.seek(startOffset);
@@ -335,7 +364,20 @@ public class FSLogicalAddressingIndex {
         return offsets[((int) pageOffset)];
     }
 
-    private Page getL2PPage(PageTableEntry tableEntry) throws SVNException {
+    private Page getL2PPage(long revision, PageTableEntry tableEntry) throws SVNException {
+        final FSCacheKey cacheKey = createCacheKey(revision, tableEntry.offset);
+        final long[] cachedOffsets = cacheKey != null ? ourL2PPagesCache.get(cacheKey) : null;
+        if (cachedOffsets != null) {
+            return new Page(cachedOffsets.length, cachedOffsets);
+        }
+        final Page page = readL2PPage(tableEntry);
+        if (cacheKey != null) {
+            ourL2PPagesCache.put(cacheKey, page.getOffsets(), 16 + 8 * page.getOffsets().length);
+        }
+        return page;
+    }
+
+    private Page readL2PPage(PageTableEntry tableEntry) throws SVNException {
         final long entryCount = tableEntry.entryCount;
         long lastValue = 0;
         final long[] offsets = new long[(int) entryCount];
@@ -356,11 +398,30 @@ public class FSLogicalAddressingIndex {
     }
 
     private L2PPageInfo getL2PPageInfo(long revision, long itemIndex) throws SVNException {
-        //TODO: cache the result
-        final L2PIndexHeader header = getL2PHeaderBody(revision);
+        final FSCacheKey cacheKey = createCacheKey(revision, 0);
+        L2PIndexHeader header = cacheKey != null ? ourL2PHeadersCache.get(cacheKey) : null;
+        if (header == null) {
+            header = getL2PHeaderBody(revision);
+            if (cacheKey != null) {
+                ourL2PHeadersCache.put(cacheKey, header, 64 + 8 * header.getPageTableIndex().length + 40 * header.getPageTable().length);
+            }
+        }
         return createPageInfo(header, revision, itemIndex);
     }
 
+    /**
+     * Index data never changes once the revision or pack file is written. Packed shards and revision
+     * files are told apart by the sign of the file number, as the same revision is laid out differently
+     * in them.
+     */
+    private FSCacheKey createCacheKey(long revision, long position) throws SVNException {
+        if (!FSCacheManager.isEnabled()) {
+            return null;
+        }
+        final long fileNumber = fsfs.isPackedRevision(revision) ? -1 - getStartRevision(revision) : getStartRevision(revision);
+        return new FSCacheKey(fsfs.getCacheScope(), fileNumber, position);
+    }
+
     private L2PPageInfo createPageInfo(L2PIndexHeader header, long revision, long itemIndex) throws SVNException {
         long relativeRevision = revision - header.getFirstRevision();
         if (relativeRevision >= header.getRevisionCount()) {
@@ -0,0 +1,136 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.repcache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
+
+
+/**
+ * Keeps representations inserted into a rep-cache in memory and writes them to the database in one
+ * transaction when {@link #flush()} is called, so that a batch of commits pays for one database
+ * commit instead of one per revision.
+ * <p/>
+ * Lookups see kept representations as if they were in the database already, so representations are
+ * shared exactly as they would be without the batch. Representations kept when the process dies are
+ * lost, which only means that their content is not shared by later commits.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDeferredRepresentationCacheManager implements IFSRepresentationCacheManager {
+
+    private final IFSRepresentationCacheManager myManager;
+    private final Map<String, FSRepresentation> myPendingRepresentations;
+
+    public FSDeferredRepresentationCacheManager(IFSRepresentationCacheManager manager) {
+        myManager = manager;
+        myPendingRepresentations = new LinkedHashMap<String, FSRepresentation>();
+    }
+
+    public IFSRepresentationCacheManager getManager() {
+        return myManager;
+    }
+
+    public int getPendingCount() {
+        return myPendingRepresentations.size();
+    }
+
+    public void insert(FSRepresentation representation, boolean rejectDup) throws SVNException {
+        if (rejectDup) {
+            flush();
+            myManager.insert(representation, true);
+            return;
+        }
+        addPending(representation);
+    }
+
+    public void insertAll(Collection<FSRepresentation> representations, boolean rejectDup) throws SVNException {
+        if (rejectDup) {
+            flush();
+            myManager.insertAll(representations, true);
+            return;
+        }
+        for (FSRepresentation representation : representations) {
+            addPending(representation);
+        }
+    }
+
+    public void runWriteTransaction(IFSSqlJetTransaction transaction) throws SVNException {
+        myManager.runWriteTransaction(transaction);
+    }
+
+    public void runReadTransaction(IFSSqlJetTransaction transaction) throws SVNException {
+        myManager.runReadTransaction(transaction);
+    }
+
+    public FSRepresentation getRepresentationByHash(String hash) throws SVNException {
+        final FSRepresentation representation = myPendingRepresentations.get(hash);
+        if (representation != null) {
+            // callers change what they get, just like they change representations read from the database
+            return new FSRepresentation(representation);
+        }
+        return myManager.getRepresentationByHash(hash);
+    }
+
+    public List<FSRepresentation> getRepresentationsByRevisions(long startRevision, long endRevision) throws SVNException {
+        flush();
+        return myManager.getRepresentationsByRevisions(startRevision, endRevision);
+    }
+
+    public void deleteRepresentationsAfter(long revision) throws SVNException {
+        flush();
+        myManager.deleteRepresentationsAfter(revision);
+    }
+
+    /**
+     * Writes all kept representations to the database in a single write transaction. When that fails
+     * representations stay kept, so that the next flush writes them again.
+     */
+    public void flush() throws SVNException {
+        if (myPendingRepresentations.isEmpty()) {
+            return;
+        }
+        final List<FSRepresentation> representations = new ArrayList<FSRepresentation>(myPendingRepresentations.values());
+        myManager.insertAll(representations, false);
+        myPendingRepresentations.clear();
+    }
+
+    public void close() throws SVNException {
+        try {
+            flush();
+        } finally {
+            myManager.close();
+        }
+    }
+
+    private void addPending(FSRepresentation representation) throws SVNException {
+        final String hash = representation.getSHA1HexDigest();
+        if (hash == null) {
+            // fails right away, as the database would
+            myManager.insert(representation, false);
+            return;
+        }
+        // the database keeps the first row of a key as well
+        if (!myPendingRepresentations.containsKey(hash)) {
+            myPendingRepresentations.put(hash, new FSRepresentation(representation));
+        }
+    }
+}
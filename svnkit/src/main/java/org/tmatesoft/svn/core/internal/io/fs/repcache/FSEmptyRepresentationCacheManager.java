@@ -11,6 +11,10 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs.repcache;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
 import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
@@ -46,6 +50,16 @@ public class FSEmptyRepresentationCacheManager implements IFSRepresentationCache
     public void insert(FSRepresentation representation, boolean rejectDup) throws SVNException {
     }
 
+    public void insertAll(Collection<FSRepresentation> representations, boolean rejectDup) throws SVNException {
+    }
+
+    public List<FSRepresentation> getRepresentationsByRevisions(long startRevision, long endRevision) throws SVNException {
+        return Collections.emptyList();
+    }
+
+    public void deleteRepresentationsAfter(long revision) throws SVNException {
+    }
+
     /**
      * @param transaction
      * @throws SVNException
@@ -12,10 +12,16 @@
 package org.tmatesoft.svn.core.internal.io.fs.repcache;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.schema.SqlJetConflictAction;
 import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
 import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
 import org.tmatesoft.sqljet.core.table.ISqlJetTable;
@@ -48,9 +54,13 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
                                                     "                        offset integer not null, " + 
                                                     "                        size integer not null, " +
                                                     "                        expanded_size integer not null) without rowid;";
+    // not a part of the Subversion schema, which is fine as SQLite keeps indexes it does not know about up to date
+    private static final String REP_CACHE_REVISION_INDEX = "i_rep_cache_revision";
+    private static final String REP_CACHE_REVISION_INDEX_SQL = "create index " + REP_CACHE_REVISION_INDEX + " on rep_cache (revision);";
 
     private SqlJetDb myRepCacheDB;
     private ISqlJetTable myTable;
+    private boolean myIsRevisionIndexed;
     private FSFS myFSFS;
     
     public static IFSRepresentationCacheManager openRepresentationCache(FSFS fsfs) throws SVNException {
@@ -61,11 +71,19 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
             
             checkFormat(cacheObj.myRepCacheDB);
             cacheObj.myTable = cacheObj.myRepCacheDB.getTable(REP_CACHE_TABLE);
+            cacheObj.myFSFS = fsfs;
         } catch (SqlJetException e) {
             SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
             return new FSEmptyRepresentationCacheManager();
             
         }
+        try {
+            createRevisionIndex(cacheObj.myRepCacheDB);
+            cacheObj.myIsRevisionIndexed = true;
+        } catch (SqlJetException e) {
+            // queries by revision scan the table then
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+        }
         return cacheObj;
     }
     
@@ -74,6 +92,7 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         try {
             db = SqlJetDb.open(path, true);
             checkFormat(db);
+            createRevisionIndex(db);
         } catch (SqlJetException e) {
             SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, e);
         } finally {
@@ -109,11 +128,7 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     }
     
     public void insert(final FSRepresentation representation, boolean rejectDup) throws SVNException {
-        if (representation.getSHA1HexDigest() == null) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CHECKSUM_KIND, 
-                    "Only SHA1 checksums can be used as keys in the rep_cache table.\n");
-            SVNErrorManager.error(err, SVNLogType.FSFS);
-        }
+        checkSHA1HexDigest(representation);
         FSRepresentation oldRep = getRepresentationByHash(representation.getSHA1HexDigest());
         if (oldRep != null) {
             if (rejectDup && (oldRep.getRevision() != representation.getRevision() || oldRep.getItemIndex() != representation.getItemIndex() ||
@@ -130,14 +145,132 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         }
         
         try {
-            myTable.insert(new Object[] { representation.getSHA1HexDigest(), new Long(representation.getRevision()),
-                    new Long(representation.getItemIndex()), new Long(representation.getSize()),
-                    new Long(representation.getExpandedSize()) });
+            myTable.insert(createRecord(representation));
         } catch (SqlJetException e) {
             SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
         }
     }
 
+    /**
+     * Inserts all representations in a single write transaction, in the order of their hashes.
+     * Unless duplicates are to be rejected, keys which are already in the table are skipped
+     * without being looked up first.
+     */
+    public void insertAll(Collection<FSRepresentation> representations, final boolean rejectDup) throws SVNException {
+        final Map<String, FSRepresentation> sortedRepresentations = new TreeMap<String, FSRepresentation>();
+        for (FSRepresentation representation : representations) {
+            checkSHA1HexDigest(representation);
+            sortedRepresentations.put(representation.getSHA1HexDigest(), representation);
+        }
+        runWriteTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                for (FSRepresentation representation : sortedRepresentations.values()) {
+                    if (rejectDup) {
+                        insert(representation, true);
+                        continue;
+                    }
+                    try {
+                        myTable.insertOr(SqlJetConflictAction.IGNORE, createRecord(representation));
+                    } catch (SqlJetException e) {
+                        SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Indexes rows by revision, unless that is done already. A table created without the index is
+     * indexed the first time it is opened, which reads it once.
+     */
+    private static void createRevisionIndex(final SqlJetDb db) throws SqlJetException {
+        if (db.getSchema().getIndex(REP_CACHE_REVISION_INDEX) != null) {
+            return;
+        }
+        db.runWriteTransaction(new ISqlJetTransaction() {
+            public Object run(SqlJetDb db) throws SqlJetException {
+                if (db.getSchema().getIndex(REP_CACHE_REVISION_INDEX) == null) {
+                    db.createIndex(REP_CACHE_REVISION_INDEX_SQL);
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Returns all representations of revisions from <code>startRevision</code> to <code>endRevision</code>.
+     * Only rows of these revisions are read, unless the revision index could not be created.
+     */
+    public List<FSRepresentation> getRepresentationsByRevisions(final long startRevision, final long endRevision) throws SVNException {
+        final List<FSRepresentation> representations = new ArrayList<FSRepresentation>();
+        runReadTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                ISqlJetCursor cursor = null;
+                try {
+                    cursor = openRevisionsCursor(startRevision, endRevision);
+                    for (; !cursor.eof(); cursor.next()) {
+                        final long revision = cursor.getInteger(FSRepresentationCacheRecord.REVISION_FIELD);
+                        if (revision >= startRevision && revision <= endRevision) {
+                            representations.add(createRepresentation(new FSRepresentationCacheRecord(cursor)));
+                        }
+                    }
+                } catch (SqlJetException e) {
+                    SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                } finally {
+                    closeCursor(cursor);
+                }
+            }
+        });
+        return representations;
+    }
+
+    /**
+     * Deletes representations of revisions younger than <code>revision</code>.
+     */
+    public void deleteRepresentationsAfter(final long revision) throws SVNException {
+        runWriteTransaction(new IFSSqlJetTransaction() {
+            public void run() throws SVNException {
+                ISqlJetCursor cursor = null;
+                try {
+                    cursor = openRevisionsCursor(revision + 1, Long.MAX_VALUE);
+                    while (!cursor.eof()) {
+                        if (cursor.getInteger(FSRepresentationCacheRecord.REVISION_FIELD) > revision) {
+                            cursor.delete();
+                        } else {
+                            cursor.next();
+                        }
+                    }
+                } catch (SqlJetException e) {
+                    SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+                } finally {
+                    closeCursor(cursor);
+                }
+            }
+        });
+    }
+
+    // the cursor may still return rows of other revisions, callers check them
+    private ISqlJetCursor openRevisionsCursor(long startRevision, long endRevision) throws SqlJetException {
+        if (myIsRevisionIndexed) {
+            return myTable.scope(REP_CACHE_REVISION_INDEX, new Object[] {new Long(startRevision)}, new Object[] {new Long(endRevision)});
+        }
+        return myTable.open();
+    }
+
+    private static Object[] createRecord(FSRepresentation representation) {
+        return new Object[] { representation.getSHA1HexDigest(), new Long(representation.getRevision()),
+                new Long(representation.getItemIndex()), new Long(representation.getSize()),
+                new Long(representation.getExpandedSize()) };
+    }
+
+    private static void checkSHA1HexDigest(FSRepresentation representation) throws SVNException {
+        if (representation.getSHA1HexDigest() == null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CHECKSUM_KIND, 
+                    "Only SHA1 checksums can be used as keys in the rep_cache table.\n");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+    }
+
     public void close() throws SVNException {
         if (myRepCacheDB != null) {
             try {
@@ -155,17 +288,31 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     public FSRepresentation getRepresentationByHash(String hash) throws SVNException {
         FSRepresentationCacheRecord cache = getByHash(hash);
         if (cache != null) {
-            FSRepresentation representation = new FSRepresentation();
-            representation.setExpandedSize(cache.getExpandedSize());
-            representation.setItemIndex(cache.getOffset());
-            representation.setRevision(cache.getRevision());
-            representation.setSize(cache.getSize());
-            representation.setSHA1HexDigest(cache.getHash());
-            return representation;
+            return createRepresentation(cache);
         }
         return null;
     }
 
+    private static FSRepresentation createRepresentation(FSRepresentationCacheRecord cache) {
+        FSRepresentation representation = new FSRepresentation();
+        representation.setExpandedSize(cache.getExpandedSize());
+        representation.setItemIndex(cache.getOffset());
+        representation.setRevision(cache.getRevision());
+        representation.setSize(cache.getSize());
+        representation.setSHA1HexDigest(cache.getHash());
+        return representation;
+    }
+
+    private static void closeCursor(ISqlJetCursor cursor) throws SVNException {
+        if (cursor != null) {
+            try {
+                cursor.close();
+            } catch (SqlJetException e) {
+                SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            }
+        }
+    }
+
     private FSRepresentationCacheRecord getByHash(final String hash) throws SVNException {
         ISqlJetCursor lookup = null;
         try {
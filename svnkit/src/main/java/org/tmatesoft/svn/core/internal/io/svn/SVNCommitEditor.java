@@ -30,6 +30,7 @@ import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffCodec;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -169,12 +170,17 @@ class SVNCommitEditor implements ISVNEditor {
 
     private int myDiffWindowCount = 0;
     private boolean myIsAborted;
+    private SVNDiffCodec myDeltaCodec;
 
     public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
         String fileToken = (String) myFilesToTokens.get(path);
 
         try {
-            diffWindow.writeTo(myConnection.getDeltaStream(fileToken), myDiffWindowCount == 0, myConnection.isSVNDiff1());
+            if (myDeltaCodec == null) {
+                final int maxVersion = myConnection.isSVNDiff2() ? 2 : (myConnection.isSVNDiff1() ? 1 : 0);
+                myDeltaCodec = SVNDiffCodec.select(myRepository.getDeltaCodec(), maxVersion);
+            }
+            diffWindow.writeTo(myConnection.getDeltaStream(fileToken), myDiffWindowCount == 0, myDeltaCodec);
             myDiffWindowCount++;
             return SVNFileUtil.DUMMY_OUT;
         } catch (IOException e) {
@@ -0,0 +1,130 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Worker threads of the repository operations that spread their work over several threads. The calling
+ * thread waits for the workers in short steps, so that it notices cancellation while they are busy.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNWorkers {
+
+    private static final long CANCEL_CHECK_INTERVAL = 500;
+
+    /**
+     * Creates a fixed size pool of daemon threads named <code>namePrefix</code> followed by a number.
+     */
+    public static ExecutorService createExecutor(int threadCount, String namePrefix) {
+        return Executors.newFixedThreadPool(threadCount, createThreadFactory(namePrefix));
+    }
+
+    public static ThreadFactory createThreadFactory(String namePrefix) {
+        return new DaemonThreadFactory(namePrefix);
+    }
+
+    /**
+     * Waits for a worker result, checking <code>canceller</code> (if any) in between. Failures of the
+     * worker are rethrown to the calling thread.
+     */
+    public static <T> T waitFor(Future<T> result, ISVNCanceller canceller, String interruptedMessage) throws SVNException {
+        while (true) {
+            if (canceller != null) {
+                canceller.checkCancelled();
+            }
+            try {
+                return result.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                SVNErrorManager.cancel(interruptedMessage, SVNLogType.FSFS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SVNException) {
+                    throw (SVNException) e.getCause();
+                }
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                SVNErrorManager.error(err, e.getCause(), SVNLogType.FSFS);
+            }
+        }
+    }
+
+    /**
+     * Interrupts the workers and waits until all of them have stopped. The interrupted status of the
+     * calling thread is kept when it is interrupted while waiting.
+     */
+    public static void shutdown(ExecutorService executor) {
+        executor.shutdownNow();
+        try {
+            while (!executor.awaitTermination(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the workers once the calling thread gives up on them, or when they are interrupted.
+     */
+    public static class Canceller implements ISVNCanceller {
+
+        private final String myMessage;
+        private volatile boolean myIsCancelled;
+
+        public Canceller(String message) {
+            myMessage = message;
+        }
+
+        public void cancel() {
+            myIsCancelled = true;
+        }
+
+        public void checkCancelled() throws SVNCancelException {
+            if (myIsCancelled || Thread.currentThread().isInterrupted()) {
+                SVNErrorManager.cancel(myMessage, SVNLogType.FSFS);
+            }
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String myNamePrefix;
+        private int myThreadNumber;
+
+        private DaemonThreadFactory(String namePrefix) {
+            myNamePrefix = namePrefix;
+        }
+
+        public synchronized Thread newThread(Runnable task) {
+            final Thread thread = new Thread(task, myNamePrefix + (++myThreadNumber));
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
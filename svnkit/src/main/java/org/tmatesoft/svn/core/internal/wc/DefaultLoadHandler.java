@@ -69,6 +69,8 @@ public class DefaultLoadHandler implements ISVNLoadHandler {
     private SVNDeltaReader myDeltaReader;
     private SVNDeltaGenerator myDeltaGenerator;
     private ISVNAdminEventHandler myProgressHandler;
+    private int myFlushInterval;
+    private int myBatchedRevisionsCount;
     
     public DefaultLoadHandler(boolean usePreCommitHook, boolean usePostCommitHook, SVNUUIDAction uuidAction, 
             String parentDir, ISVNAdminEventHandler progressHandler) {
@@ -83,6 +85,15 @@ public class DefaultLoadHandler implements ISVNLoadHandler {
     public void setFSFS(FSFS fsfs) {
         myFSFS = fsfs;
     }
+
+    /**
+     * Sets the number of revisions after which the write batch of the repository, if one was begun,
+     * is flushed, <code>0</code> to leave that to the end of the load.
+     */
+    public void setFlushInterval(int flushInterval) {
+        myFlushInterval = flushInterval;
+        myBatchedRevisionsCount = 0;
+    }
     
     public void closeRevision() throws SVNException {
         if (myCurrentRevisionBaton != null) {
@@ -125,6 +136,10 @@ public class DefaultLoadHandler implements ISVNLoadHandler {
             if (baton.myDatestamp != null) {
                 myFSFS.setRevisionProperty(newRevision, SVNRevisionProperty.DATE, baton.myDatestamp);
             }
+            if (myFSFS.isWriteBatch() && myFlushInterval > 0 && ++myBatchedRevisionsCount >= myFlushInterval) {
+                myFSFS.flushWriteBatch();
+                myBatchedRevisionsCount = 0;
+            }
             
             String message;
             if (newRevision == baton.myRevision) {
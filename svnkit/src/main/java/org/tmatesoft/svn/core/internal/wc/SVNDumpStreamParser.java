@@ -14,6 +14,7 @@ package org.tmatesoft.svn.core.internal.wc;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.CharsetDecoder;
+import java.util.Arrays;
 import java.util.Map;
 
 import org.tmatesoft.svn.core.ISVNCanceller;
@@ -31,18 +32,42 @@ import org.tmatesoft.svn.util.SVNLogType;
  * @author  TMate Software Ltd.
  */
 public class SVNDumpStreamParser {
+    private static final int BULK_LOAD_BUFFER_SIZE = 1024 * 1024;
+
     private ISVNCanceller myCanceller;
+    private BufferedDumpStream myBufferedStream;
     
     public SVNDumpStreamParser(ISVNCanceller canceller) {
         myCanceller = canceller;
     }
     
     public void parseDumpStream(InputStream dumpStream, ISVNLoadHandler handler, CharsetDecoder decoder) throws SVNException {
+        parseDumpStream(dumpStream, handler, decoder, false);
+    }
+
+    /**
+     * With <code>isBulkLoad</code> the stream is read through a large buffer and header lines are
+     * scanned in that buffer instead of byte by byte. Bytes read ahead are not returned to
+     * <code>dumpStream</code>, which is read up to its end anyway.
+     */
+    public void parseDumpStream(InputStream dumpStream, ISVNLoadHandler handler, CharsetDecoder decoder, boolean isBulkLoad) throws SVNException {
+        if (isBulkLoad) {
+            myBufferedStream = new BufferedDumpStream(dumpStream, BULK_LOAD_BUFFER_SIZE);
+            dumpStream = myBufferedStream;
+        }
+        try {
+            doParseDumpStream(dumpStream, handler, decoder);
+        } finally {
+            myBufferedStream = null;
+        }
+    }
+
+    private void doParseDumpStream(InputStream dumpStream, ISVNLoadHandler handler, CharsetDecoder decoder) throws SVNException {
         String line = null;
         int version = -1;
         StringBuffer buffer = new StringBuffer();
         try {
-            line = SVNFileUtil.readLineFromStream(dumpStream, buffer, decoder);
+            line = readLine(dumpStream, buffer, decoder);
             if (line == null) {
                 SVNAdminHelper.generateIncompleteDataError();
             }
@@ -75,7 +100,7 @@ public class SVNDumpStreamParser {
             
                 //skip empty lines
                 buffer.setLength(0);
-                line = SVNFileUtil.readLineFromStream(dumpStream, buffer, decoder);
+                line = readLine(dumpStream, buffer, decoder);
                 if (line == null) {
                     if (buffer.length() > 0) {
                         SVNAdminHelper.generateIncompleteDataError();
@@ -254,7 +279,7 @@ public class SVNDumpStreamParser {
         try {
             while (contentLength != actualLength) {
                 buffer.setLength(0);
-                line = SVNFileUtil.readLineFromStream(dumpStream, buffer, decoder);
+                line = readLine(dumpStream, buffer, decoder);
                 
                 if (line == null) {
                     SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.STREAM_MALFORMED_DATA, 
@@ -281,7 +306,7 @@ public class SVNDumpStreamParser {
                     String propName = new String(buff, 0, len, "UTF-8");
                     
                     buffer.setLength(0);
-                    line = SVNFileUtil.readLineFromStream(dumpStream, buffer, decoder);
+                    line = readLine(dumpStream, buffer, decoder);
                     if (line == null) {
                         SVNAdminHelper.generateIncompleteDataError();
                     }
@@ -350,7 +375,7 @@ public class SVNDumpStreamParser {
                 header = firstHeader;
                 firstHeader = null;
             } else {
-                header = SVNFileUtil.readLineFromStream(dumpStream, buffer, decoder);
+                header = readLine(dumpStream, buffer, decoder);
                 if (header == null && buffer.length() > 0) {
                     SVNAdminHelper.generateIncompleteDataError();
                 } else if (buffer.length() == 0) {
@@ -379,5 +404,134 @@ public class SVNDumpStreamParser {
     
         return headers;
     }
-    
+
+    private String readLine(InputStream dumpStream, StringBuffer buffer, CharsetDecoder decoder) throws IOException {
+        if (myBufferedStream != null) {
+            return myBufferedStream.readLine(buffer, decoder);
+        }
+        return SVNFileUtil.readLineFromStream(dumpStream, buffer, decoder);
+    }
+
+    /**
+     * Unsynchronized buffered stream which reads lines the same way
+     * {@link SVNFileUtil#readLineFromStream(InputStream, StringBuffer, CharsetDecoder)} does,
+     * reusing its line buffers, and decodes ASCII lines without the decoder.
+     */
+    private static class BufferedDumpStream extends InputStream {
+
+        private final InputStream mySource;
+        private final byte[] myBuffer;
+        private int myPosition;
+        private int myLength;
+        private byte[] myLine;
+        private char[] myChars;
+
+        private BufferedDumpStream(InputStream source, int bufferSize) {
+            mySource = source;
+            myBuffer = new byte[bufferSize];
+            myLine = new byte[256];
+            myChars = new char[256];
+        }
+
+        public int read() throws IOException {
+            if (myPosition >= myLength && !fill()) {
+                return -1;
+            }
+            return myBuffer[myPosition++] & 0xFF;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (myPosition >= myLength) {
+                if (len >= myBuffer.length) {
+                    return mySource.read(b, off, len);
+                }
+                if (!fill()) {
+                    return -1;
+                }
+            }
+            final int count = Math.min(len, myLength - myPosition);
+            System.arraycopy(myBuffer, myPosition, b, off, count);
+            myPosition += count;
+            return count;
+        }
+
+        public long skip(long n) throws IOException {
+            if (n <= 0) {
+                return 0;
+            }
+            if (myPosition >= myLength) {
+                return mySource.skip(n);
+            }
+            final int count = (int) Math.min(n, myLength - myPosition);
+            myPosition += count;
+            return count;
+        }
+
+        public int available() throws IOException {
+            return (myLength - myPosition) + mySource.available();
+        }
+
+        public void close() throws IOException {
+            mySource.close();
+        }
+
+        private String readLine(StringBuffer buffer, CharsetDecoder decoder) throws IOException {
+            int lineLength = 0;
+            boolean isAscii = true;
+            while (true) {
+                if (myPosition >= myLength && !fill()) {
+                    buffer.append(decode(lineLength, isAscii, decoder));
+                    return null;
+                }
+                int end = myPosition;
+                while (end < myLength && myBuffer[end] != '\n') {
+                    isAscii &= myBuffer[end] >= 0;
+                    end++;
+                }
+                final int count = end - myPosition;
+                if (lineLength + count > myLine.length) {
+                    myLine = Arrays.copyOf(myLine, Math.max(myLine.length * 2, lineLength + count));
+                }
+                System.arraycopy(myBuffer, myPosition, myLine, lineLength, count);
+                lineLength += count;
+                myPosition = end;
+                if (end < myLength) {
+                    myPosition++;
+                    final String line = decode(lineLength, isAscii, decoder);
+                    buffer.append(line);
+                    return line;
+                }
+            }
+        }
+
+        private String decode(int lineLength, boolean isAscii, CharsetDecoder decoder) {
+            if (!isAscii) {
+                return SVNFileUtil.decode(decoder, Arrays.copyOf(myLine, lineLength));
+            }
+            if (lineLength > myChars.length) {
+                myChars = new char[Math.max(myChars.length * 2, lineLength)];
+            }
+            for (int i = 0; i < lineLength; i++) {
+                myChars[i] = (char) myLine[i];
+            }
+            return new String(myChars, 0, lineLength);
+        }
+
+        private boolean fill() throws IOException {
+            myPosition = 0;
+            myLength = 0;
+            int read;
+            do {
+                read = mySource.read(myBuffer, 0, myBuffer.length);
+            } while (read == 0);
+            if (read < 0) {
+                return false;
+            }
+            myLength = read;
+            return true;
+        }
+    }
 }
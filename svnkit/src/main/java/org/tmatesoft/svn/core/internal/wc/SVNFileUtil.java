@@ -2116,7 +2116,7 @@ public class SVNFileUtil {
         return line;
     }
 
-    private static String decode(CharsetDecoder decoder, byte[] in) {
+    static String decode(CharsetDecoder decoder, byte[] in) {
         ByteBuffer inBuf = ByteBuffer.wrap(in);
         CharBuffer outBuf = CharBuffer.allocate(inBuf.capacity() * Math.round(decoder.maxCharsPerByte() + 0.5f));
         decoder.decode(inBuf, outBuf, true);
@@ -19,7 +19,8 @@ public class SvnRepositoryDumpImpl extends SvnRepositoryOperationRunner<SVNAdmin
                 getOperation().getStartRevision(), 
                 getOperation().getEndRevision(), 
                 getOperation().isIncremental(), 
-                getOperation().isUseDelta());
+                getOperation().isUseDelta(),
+                getOperation().getJobs());
         
         return getOperation().first();
     }
@@ -11,7 +11,8 @@ public class SvnRepositoryHotCopyImpl extends SvnRepositoryOperationRunner<Long,
         SVNAdminClient ac = new SVNAdminClient(getOperation().getAuthenticationManager(), getOperation().getOptions());
         ac.setEventHandler(this);
                 
-        ac.doHotCopy(getOperation().getSrcRepositoryRoot(), getOperation().getNewRepositoryRoot());
+        ac.doHotCopy(getOperation().getSrcRepositoryRoot(), getOperation().getNewRepositoryRoot(),
+                getOperation().isIncremental(), getOperation().getJobs());
         
         return 1l;
     }
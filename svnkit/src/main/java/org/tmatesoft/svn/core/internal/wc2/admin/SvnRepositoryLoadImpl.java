@@ -20,7 +20,9 @@ public class SvnRepositoryLoadImpl extends SvnRepositoryOperationRunner<SVNAdmin
         		getOperation().isUsePreCommitHook(),
         		getOperation().isUsePostCommitHook(),
         		getOperation().getUuidAction(),
-        		getOperation().getParentDir());
+        		getOperation().getParentDir(),
+        		getOperation().isBulkLoad(),
+        		getOperation().getFlushInterval());
         
         return getOperation().first();
     }
@@ -15,7 +15,7 @@ public class SvnRepositoryRecoverImpl extends SvnRepositoryOperationRunner<SVNAd
         SVNAdminClient ac = new SVNAdminClient(getOperation().getAuthenticationManager(), getOperation().getOptions());
         ac.setEventHandler(this);
                 
-        ac.doRecover(getOperation().getRepositoryRoot());
+        ac.doRecover(getOperation().getRepositoryRoot(), getOperation().getJobs());
         
         return getOperation().first();
     }
@@ -20,6 +20,7 @@ import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDiffCodec;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.core.wc.ISVNEventHandler;
 import org.tmatesoft.svn.util.ISVNDebugLog;
@@ -140,6 +141,7 @@ public abstract class SVNRepository {
     private ISVNCanceller myCanceller;
     private ISVNEventHandler myEventHandler;
     private Collection myConnectionListeners;
+    private SVNDiffCodec myDeltaCodec;
 
     protected SVNRepository(SVNURL location, ISVNSession options) {
         myLocation = location;
@@ -405,6 +407,36 @@ public abstract class SVNRepository {
         return myEventHandler;
     }
 
+    /**
+     * Sets a codec to compress deltas sent to the server with.
+     * 
+     * <p>
+     * The codec is used only if the server reads its svndiff format, otherwise deltas 
+     * are compressed with zlib if the server reads svndiff1, or are not compressed at all. 
+     * If no codec is set, deltas sent over <code>svn://</code> are compressed with zlib 
+     * when the server reads svndiff1, and deltas sent over <code>http(s)://</code> 
+     * are not compressed. Local repositories compress new file contents 
+     * as their configuration tells and do not use this codec.
+     * 
+     * @param codec  a codec, or <span class="javakeyword">null</span> to keep 
+     *               the default of the protocol
+     * @since        1.10
+     */
+    public void setDeltaCodec(SVNDiffCodec codec) {
+        myDeltaCodec = codec;
+    }
+
+    /**
+     * Returns the codec to compress deltas sent to the server with.
+     * 
+     * @return  the codec set with {@link #setDeltaCodec(SVNDiffCodec)}, or 
+     *          <span class="javakeyword">null</span>
+     * @since   1.10
+     */
+    public SVNDiffCodec getDeltaCodec() {
+        return myDeltaCodec;
+    }
+
     /**
      * Caches identification parameters (UUID, rood directory location) 
      * of the repository with which this driver is working.
@@ -484,6 +484,7 @@ public abstract class SVNRepositoryFactory {
         OutputStream txnCurrentOS = null;
         OutputStream minUnpacledOS = null;
         OutputStream currentOS = null;
+        int fsFormat = FSFS.DB_FORMAT;
         try {
             copyToFile(is, jarFile);
             extract(jarFile, path);
@@ -525,7 +526,6 @@ public abstract class SVNRepositoryFactory {
                     SVNFileUtil.setExecutable(hookFile, true);
                 }
             }
-            int fsFormat = FSFS.DB_FORMAT;
             if( FSFS.DB_FORMAT_PRE_17_USE_AS_DEFAULT && !with17Compatible ) {
                 fsFormat = FSFS.DB_FORMAT_PRE_17;
             }
@@ -627,7 +627,7 @@ public abstract class SVNRepositoryFactory {
                         format += "layout linear\n";
                     }
                     if (fsFormat >= FSFS.MIN_LOG_ADDRESSING_MINIMAL_FORMAT) {
-                        format += "addressing logical\n";
+                        format += FSFS.isDefaultUseLogAddressing() ? "addressing logical\n" : "addressing physical\n";
                     }
                     fsFormatOS.write(format.getBytes("US-ASCII"));
                 } catch (IOException e) {
@@ -719,6 +719,15 @@ public abstract class SVNRepositoryFactory {
             SVNFileUtil.closeFile(currentOS);
             SVNFileUtil.deleteFile(jarFile);
         }
+        if (fsFormat >= FSFS.MIN_LOG_ADDRESSING_MINIMAL_FORMAT && FSFS.isDefaultUseLogAddressing()) {
+            final FSFS fsfs = new FSFS(path);
+            fsfs.open();
+            try {
+                fsfs.writeRevisionZero();
+            } finally {
+                fsfs.close();
+            }
+        }
         return SVNURL.fromFile(path);
     }
 
@@ -21,7 +21,7 @@ import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
-import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNFastXDeltaAlgorithm;
 import org.tmatesoft.svn.core.internal.wc.IOExceptionWrapper;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
@@ -44,7 +44,7 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public class SVNDeltaGenerator {
     
-    private SVNDeltaAlgorithm myXDelta = new SVNXDeltaAlgorithm();
+    private SVNDeltaAlgorithm myXDelta = new SVNFastXDeltaAlgorithm();
     
     private byte[] mySourceBuffer;
     private byte[] myTargetBuffer;
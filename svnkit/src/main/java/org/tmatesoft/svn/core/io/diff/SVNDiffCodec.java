@@ -0,0 +1,462 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.io.diff;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+
+/**
+ * The <b>SVNDiffCodec</b> class represents a way to compress instructions and
+ * new data of diff windows, that is one of svndiff formats.
+ *
+ * <p>
+ * There are three of them: svndiff0 keeps window data uncompressed, svndiff1
+ * compresses it with zlib and svndiff2 with LZ4. Codecs are created by the
+ * {@link #createNone()}, {@link #createZlib(int)} and {@link #createLZ4(boolean)}
+ * methods, or by {@link #create(String)} from a name like the ones of the
+ * <code>compression</code> option of FSFS repositories.
+ *
+ * <p>
+ * Each part of a window is compressed separately and is stored uncompressed if it is
+ * shorter than {@link #getMinCompressSize()} or if compression does not make it
+ * shorter than {@link #getMaxCompressedRatio()} of its size. The default ratio of 1
+ * keeps everything compression makes smaller at all, lower ratios save the time of
+ * decompression for parts compression does little to.
+ *
+ * <p>
+ * A codec counts how much data it has compressed, to what size and how long it took,
+ * so that codecs and their settings may be compared on real data. One codec may be
+ * used by several threads at once.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ * @since   1.10
+ * @see     SVNDiffWindow#writeTo(java.io.OutputStream, boolean, SVNDiffCodec)
+ */
+public abstract class SVNDiffCodec {
+
+    /**
+     * The name of the codec writing svndiff0.
+     */
+    public static final String NONE = "none";
+
+    /**
+     * The name of the codec writing svndiff1.
+     */
+    public static final String ZLIB = "zlib";
+
+    /**
+     * The name of the codec writing svndiff2.
+     */
+    public static final String LZ4 = "lz4";
+
+    /**
+     * The default minimal size of a compressed part, the same as in Subversion.
+     */
+    public static final int DEFAULT_MIN_COMPRESS_SIZE = 512;
+
+    private volatile int myMinCompressSize = DEFAULT_MIN_COMPRESS_SIZE;
+    private volatile double myMaxCompressedRatio = 1;
+
+    private final AtomicLong mySectionsCount = new AtomicLong();
+    private final AtomicLong myStoredSectionsCount = new AtomicLong();
+    private final AtomicLong myInputSize = new AtomicLong();
+    private final AtomicLong myOutputSize = new AtomicLong();
+    private final AtomicLong myCompressionTime = new AtomicLong();
+
+    /**
+     * Creates a codec which writes svndiff0, that is does not compress anything.
+     *
+     * @return a new codec
+     */
+    public static SVNDiffCodec createNone() {
+        return new NoneCodec();
+    }
+
+    /**
+     * Creates a codec which writes svndiff1 compressing data with zlib at the given
+     * level.
+     *
+     * @param  level  a level from 0 to 9, or <code>-1</code> for the default level
+     *                of {@link Deflater}
+     * @return        a new codec
+     */
+    public static SVNDiffCodec createZlib(int level) {
+        if (level < -1 || level > 9) {
+            throw new IllegalArgumentException("Invalid zlib compression level " + level);
+        }
+        return new ZlibCodec(level);
+    }
+
+    /**
+     * Creates a codec which writes svndiff2 compressing data with LZ4.
+     *
+     * <p>
+     * High compression makes data smaller at the cost of much slower compression,
+     * decompression is as fast as in the fast mode and both modes are read by
+     * any Subversion which reads svndiff2.
+     *
+     * @param  highCompression  <span class="javakeyword">true</span> for the high
+     *                          compression mode, <span class="javakeyword">false</span>
+     *                          for the fast one
+     * @return                  a new codec
+     */
+    public static SVNDiffCodec createLZ4(boolean highCompression) {
+        return new LZ4Codec(highCompression);
+    }
+
+    /**
+     * Creates a codec by its name. Names are <code>"none"</code>, <code>"zlib"</code>,
+     * <code>"zlib-0"</code> to <code>"zlib-9"</code> for zlib at the given level,
+     * <code>"lz4"</code> and <code>"lz4-high"</code> for the high LZ4 compression.
+     *
+     * @param  name  a codec name
+     * @return       a new codec, or <span class="javakeyword">null</span> if
+     *               <code>name</code> is not known
+     */
+    public static SVNDiffCodec create(String name) {
+        if (NONE.equals(name)) {
+            return createNone();
+        } else if (ZLIB.equals(name)) {
+            return createZlib(Deflater.DEFAULT_COMPRESSION);
+        } else if (LZ4.equals(name)) {
+            return createLZ4(false);
+        } else if ((LZ4 + "-high").equals(name)) {
+            return createLZ4(true);
+        } else if (name != null && name.length() == ZLIB.length() + 2 && name.startsWith(ZLIB + "-")) {
+            final char level = name.charAt(name.length() - 1);
+            if (level >= '0' && level <= '9') {
+                return createZlib(level - '0');
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Chooses a codec to compress deltas for a reader of svndiff formats up to the given version.
+     *
+     * @param  codec       a preferred codec, or <span class="javakeyword">null</span>
+     * @param  maxVersion  the latest svndiff version the reader reads
+     * @return             <code>codec</code> if the reader reads its format, otherwise a new
+     *                     codec the reader reads: zlib for svndiff1 and later, or none
+     */
+    public static SVNDiffCodec select(SVNDiffCodec codec, int maxVersion) {
+        if (codec != null && codec.getVersion() <= maxVersion) {
+            return codec;
+        }
+        return maxVersion >= 1 ? createZlib(Deflater.DEFAULT_COMPRESSION) : createNone();
+    }
+
+    /**
+     * Returns the name of this codec, which {@link #create(String)} creates
+     * the same codec by.
+     *
+     * @return the name of this codec
+     */
+    public abstract String getName();
+
+    /**
+     * Returns the svndiff version this codec writes.
+     *
+     * @return <code>0</code>, <code>1</code> or <code>2</code>
+     */
+    public abstract int getVersion();
+
+    /**
+     * Returns the svndiff header this codec writes.
+     *
+     * @return one of {@link SVNDiffWindow#SVN_HEADER}, {@link SVNDiffWindow#SVN1_HEADER}
+     *         and {@link SVNDiffWindow#SVN2_HEADER}
+     */
+    public byte[] getHeader() {
+        if (getVersion() == 2) {
+            return SVNDiffWindow.SVN2_HEADER;
+        } else if (getVersion() == 1) {
+            return SVNDiffWindow.SVN1_HEADER;
+        }
+        return SVNDiffWindow.SVN_HEADER;
+    }
+
+    /**
+     * Returns the size below which parts of windows are stored uncompressed.
+     *
+     * @return the minimal size of a compressed part
+     */
+    public int getMinCompressSize() {
+        return myMinCompressSize;
+    }
+
+    /**
+     * Sets the size below which parts of windows are stored uncompressed.
+     * The default is {@link #DEFAULT_MIN_COMPRESS_SIZE}.
+     *
+     * @param size the minimal size of a compressed part
+     */
+    public void setMinCompressSize(int size) {
+        myMinCompressSize = Math.max(0, size);
+    }
+
+    /**
+     * Returns the ratio of compressed to original size above which parts
+     * of windows are stored uncompressed.
+     *
+     * @return the maximal compression ratio of a compressed part
+     */
+    public double getMaxCompressedRatio() {
+        return myMaxCompressedRatio;
+    }
+
+    /**
+     * Sets the ratio of compressed to original size above which parts of windows
+     * are stored uncompressed. The default of <code>1</code> keeps all parts
+     * which get any smaller, ratios above <code>1</code> are treated as <code>1</code>,
+     * since parts which do not get smaller can not be stored compressed.
+     *
+     * @param ratio the maximal compression ratio of a compressed part
+     */
+    public void setMaxCompressedRatio(double ratio) {
+        myMaxCompressedRatio = Math.max(0, Math.min(1, ratio));
+    }
+
+    /**
+     * Returns the number of window parts this codec has encoded.
+     *
+     * @return the number of encoded parts
+     */
+    public long getSectionsCount() {
+        return mySectionsCount.get();
+    }
+
+    /**
+     * Returns the number of window parts this codec has stored uncompressed.
+     *
+     * @return the number of parts stored uncompressed
+     */
+    public long getStoredSectionsCount() {
+        return myStoredSectionsCount.get();
+    }
+
+    /**
+     * Returns the total size of window parts this codec has encoded.
+     *
+     * @return the number of bytes before encoding
+     */
+    public long getInputSize() {
+        return myInputSize.get();
+    }
+
+    /**
+     * Returns the total size of window parts this codec has encoded, after encoding.
+     *
+     * @return the number of bytes after encoding
+     */
+    public long getOutputSize() {
+        return myOutputSize.get();
+    }
+
+    /**
+     * Returns the time this codec has spent encoding, summed over all threads.
+     *
+     * @return the encoding time in nanoseconds
+     */
+    public long getCompressionTime() {
+        return myCompressionTime.get();
+    }
+
+    /**
+     * Returns the ratio of encoded to original size of all data this codec has encoded.
+     *
+     * @return the compression ratio, <code>1</code> if nothing was encoded yet
+     */
+    public double getCompressionRatio() {
+        final long inputSize = getInputSize();
+        return inputSize == 0 ? 1 : (double) getOutputSize() / inputSize;
+    }
+
+    /**
+     * Returns how fast this codec encodes data, that is the size of original
+     * data encoded per second of the encoding time.
+     *
+     * @return the number of bytes encoded per second, <code>0</code> if nothing
+     *         was encoded yet
+     */
+    public double getThroughput() {
+        final long time = getCompressionTime();
+        return time == 0 ? 0 : getInputSize() * 1000000000.0 / time;
+    }
+
+    /**
+     * Resets the counters of encoded data.
+     */
+    public void resetStatistics() {
+        mySectionsCount.set(0);
+        myStoredSectionsCount.set(0);
+        myInputSize.set(0);
+        myOutputSize.set(0);
+        myCompressionTime.set(0);
+    }
+
+    /**
+     * Encodes a part of a window, that is instructions or new data, the way svndiff1
+     * and svndiff2 store them: the original size followed by compressed bytes,
+     * or by the original bytes if compression is not worth it.
+     *
+     * @param  data    a buffer with the bytes to encode
+     * @param  offset  the offset of the bytes in <code>data</code>
+     * @param  length  the number of bytes to encode
+     * @return         a buffer with the encoded bytes between its position and limit
+     */
+    public ByteBuffer encode(byte[] data, int offset, int length) {
+        final long start = System.nanoTime();
+        final ByteBuffer buffer = ByteBuffer.allocate(getMaxEncodedLength(length));
+        SVNDiffInstruction.writeInt(buffer, length);
+        boolean stored = true;
+        if (length >= myMinCompressSize) {
+            // the encoded part has to be shorter than the original one, otherwise it is taken as stored
+            final int maxLength = (int) Math.min(length - 1 - buffer.position(), (long) (length * myMaxCompressedRatio) - 1 - buffer.position());
+            if (maxLength > 0) {
+                final int compressedLength = compress(data, offset, length, buffer.array(), buffer.arrayOffset() + buffer.position(), maxLength);
+                if (compressedLength >= 0 && compressedLength <= maxLength) {
+                    buffer.position(buffer.position() + compressedLength);
+                    stored = false;
+                }
+            }
+        }
+        if (stored) {
+            buffer.put(data, offset, length);
+            myStoredSectionsCount.incrementAndGet();
+        }
+        buffer.flip();
+        mySectionsCount.incrementAndGet();
+        myInputSize.addAndGet(length);
+        myOutputSize.addAndGet(buffer.remaining());
+        myCompressionTime.addAndGet(System.nanoTime() - start);
+        return buffer;
+    }
+
+    /**
+     * Gives a string representation of this codec and its counters.
+     *
+     * @return a string representation of this object
+     */
+    public String toString() {
+        return getName() + ": " + getSectionsCount() + " parts (" + getStoredSectionsCount() + " stored), " +
+                getInputSize() + " -> " + getOutputSize() + " bytes, ratio " + (Math.round(getCompressionRatio() * 1000) / 1000.0) +
+                ", " + Math.round(getThroughput() / (1024 * 1024)) + " MB/s";
+    }
+
+    /**
+     * Compresses <code>length</code> bytes of <code>data</code> into <code>target</code>.
+     *
+     * @return the compressed length, or <code>-1</code> if the compressed bytes
+     *         do not fit into <code>maxLength</code> bytes
+     */
+    protected abstract int compress(byte[] data, int offset, int length, byte[] target, int targetOffset, int maxLength);
+
+    /**
+     * Returns the size of a buffer which compressed <code>length</code> bytes always fit into.
+     */
+    protected int getMaxCompressedLength(int length) {
+        return length;
+    }
+
+    private int getMaxEncodedLength(int length) {
+        // 5 bytes is the longest encoded int
+        return 5 + Math.max(length, getMaxCompressedLength(length));
+    }
+
+    private static class NoneCodec extends SVNDiffCodec {
+
+        public String getName() {
+            return NONE;
+        }
+
+        public int getVersion() {
+            return 0;
+        }
+
+        protected int compress(byte[] data, int offset, int length, byte[] target, int targetOffset, int maxLength) {
+            return -1;
+        }
+    }
+
+    private static class ZlibCodec extends SVNDiffCodec {
+
+        private final int myLevel;
+
+        public ZlibCodec(int level) {
+            myLevel = level;
+        }
+
+        public String getName() {
+            return myLevel == Deflater.DEFAULT_COMPRESSION ? ZLIB : ZLIB + "-" + myLevel;
+        }
+
+        public int getVersion() {
+            return 1;
+        }
+
+        protected int compress(byte[] data, int offset, int length, byte[] target, int targetOffset, int maxLength) {
+            final Deflater deflater = new Deflater(myLevel);
+            try {
+                deflater.setInput(data, offset, length);
+                deflater.finish();
+                int compressedLength = 0;
+                // one byte more than allowed tells whether the output was cut
+                while (!deflater.finished() && compressedLength <= maxLength) {
+                    compressedLength += deflater.deflate(target, targetOffset + compressedLength, maxLength + 1 - compressedLength);
+                }
+                return deflater.finished() && compressedLength <= maxLength ? compressedLength : -1;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        protected int getMaxCompressedLength(int length) {
+            return length + 1;
+        }
+    }
+
+    private static class LZ4Codec extends SVNDiffCodec {
+
+        private final boolean myIsHighCompression;
+        private final LZ4Compressor myCompressor;
+
+        public LZ4Codec(boolean highCompression) {
+            myIsHighCompression = highCompression;
+            final LZ4Factory factory = LZ4Factory.fastestInstance();
+            myCompressor = highCompression ? factory.highCompressor() : factory.fastCompressor();
+        }
+
+        public String getName() {
+            return myIsHighCompression ? LZ4 + "-high" : LZ4;
+        }
+
+        public int getVersion() {
+            return 2;
+        }
+
+        protected int compress(byte[] data, int offset, int length, byte[] target, int targetOffset, int maxLength) {
+            final int compressedLength = myCompressor.compress(data, offset, length, target, targetOffset, myCompressor.maxCompressedLength(length));
+            return compressedLength <= maxLength ? compressedLength : -1;
+        }
+
+        protected int getMaxCompressedLength(int length) {
+            return myCompressor.maxCompressedLength(length);
+        }
+    }
+}
@@ -16,7 +16,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Deflater;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -68,6 +68,9 @@ public class SVNDiffWindow {
      * create an empty file. 
      */
     public static final SVNDiffWindow EMPTY = new SVNDiffWindow(0,0,0,0,0);
+
+    private static final SVNDiffCodec ourNoneCodec = SVNDiffCodec.createNone();
+    private static final SVNDiffCodec ourDefaultZlibCodec = SVNDiffCodec.createZlib(Deflater.DEFAULT_COMPRESSION);
     
     private final long mySourceViewOffset;
     private final int mySourceViewLength;
@@ -249,6 +252,7 @@ public class SVNDiffWindow {
         
         // 2. buffer for source.
         int length = 0;
+        boolean isSameSourceView = false;
         if (getSourceViewOffset() != applyBaton.mySourceViewOffset || getSourceViewLength() > applyBaton.mySourceViewLength) {
             byte[] oldSourceBuffer = applyBaton.mySourceBuffer;
             // create a new buffer
@@ -260,6 +264,10 @@ public class SVNDiffWindow {
                 System.arraycopy(oldSourceBuffer, start, applyBaton.mySourceBuffer, 0, (applyBaton.mySourceViewLength - start));
                 length = (applyBaton.mySourceViewLength - start);
             }            
+        } else {
+            // the view is a part of the previous window's view, it is in the buffer already.
+            length = getSourceViewLength();
+            isSameSourceView = true;
         }
         if (length < getSourceViewLength()) {
             // fill what remains.
@@ -274,9 +282,11 @@ public class SVNDiffWindow {
                 SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
             }
         }
-        // update offsets in baton.
-        applyBaton.mySourceViewLength = getSourceViewLength();
-        applyBaton.mySourceViewOffset = getSourceViewOffset();
+        // update offsets in baton, a longer view that is in the buffer is kept.
+        if (!isSameSourceView) {
+            applyBaton.mySourceViewLength = getSourceViewLength();
+            applyBaton.mySourceViewOffset = getSourceViewOffset();
+        }
         
         // apply instructions.
         int tpos = 0;
@@ -459,8 +469,28 @@ public class SVNDiffWindow {
      * @since                 1.1
      */
     public void writeTo(OutputStream os, boolean writeHeader, boolean compress) throws IOException {
+        writeTo(os, writeHeader, compress ? ourDefaultZlibCodec : ourNoneCodec);
+    }
+
+    /**
+     * Formats and writes this window bytes to the specified output stream 
+     * in the svndiff format of the given codec.
+     * 
+     * <p>
+     * All windows of one delta should be written with the same codec, 
+     * since the format is told by the header written before the first window only. 
+     * 
+     * @param os              an output stream to write the window to
+     * @param writeHeader     if <span class="javakeyword">true</span> the 
+     *                        header of the <code>codec</code> format will be 
+     *                        also written
+     * @param codec           a codec to compress window bytes with
+     * @throws IOException
+     * @since                 1.10
+     */
+    public void writeTo(OutputStream os, boolean writeHeader, SVNDiffCodec codec) throws IOException {
         if (writeHeader) {
-            os.write(compress ? SVN1_HEADER : SVN_HEADER);
+            os.write(codec.getHeader());
         }
         if (!hasInstructions()) {
             return;
@@ -470,17 +500,14 @@ public class SVNDiffWindow {
         SVNDiffInstruction.writeInt(offsets, mySourceViewLength);
         SVNDiffInstruction.writeInt(offsets, myTargetViewLength);
 
+        final boolean compress = codec.getVersion() > 0;
         ByteBuffer instructions = null;
         ByteBuffer newData = null;
-        int instLength = 0;
-        int dataLength = 0;
         if (compress) {
-            instructions = inflate(myData, myDataOffset, myInstructionsLength);
-            instLength = instructions.remaining();
-            newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength);
-            dataLength = newData.remaining();
-            SVNDiffInstruction.writeInt(offsets, instLength);
-            SVNDiffInstruction.writeInt(offsets, dataLength);
+            instructions = codec.encode(myData, myDataOffset, myInstructionsLength);
+            newData = codec.encode(myData, myDataOffset + myInstructionsLength, myNewDataLength);
+            SVNDiffInstruction.writeInt(offsets, instructions.remaining());
+            SVNDiffInstruction.writeInt(offsets, newData.remaining());
         } else {
             SVNDiffInstruction.writeInt(offsets, myInstructionsLength);
             SVNDiffInstruction.writeInt(offsets, myNewDataLength);
@@ -547,35 +574,6 @@ public class SVNDiffWindow {
         return clone;
     }
     
-    private static ByteBuffer inflate(byte[] src, int offset, int length) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(length*2 + 2);
-        SVNDiffInstruction.writeInt(buffer, length);
-        if (length < 512) {
-            buffer.put(src, offset, length);
-        } else {
-            DeflaterOutputStream out = new DeflaterOutputStream(new OutputStream() {
-                public void write(int b) throws IOException {
-                    buffer.put((byte) (b & 0xFF));
-                }
-                public void write(byte[] b, int off, int len) throws IOException {
-                    buffer.put(b, off, len);
-                }
-                public void write(byte[] b) throws IOException {
-                    write(b, 0, b.length);
-                }
-            });
-            out.write(src, offset, length);
-            out.finish();
-            if (buffer.position() >= length) {
-                buffer.clear();
-                SVNDiffInstruction.writeInt(buffer, length);
-                buffer.put(src, offset, length);
-            }
-        }
-        buffer.flip();
-        return buffer;
-    }
-    
     private class InstructionsIterator implements Iterator {
         
         private SVNDiffInstruction myNextInsruction;
@@ -25,8 +25,16 @@ import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Map;
-
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
 import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.SVNErrorCode;
@@ -42,16 +50,19 @@ import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSHotCopier;
 import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.io.fs.FSPathHistoryIndex;
 import org.tmatesoft.svn.core.internal.io.fs.FSRecoverer;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
 import org.tmatesoft.svn.core.internal.io.fs.FSRoot;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.util.SVNSpillBuffer;
 import org.tmatesoft.svn.core.internal.util.SVNUUIDGenerator;
+import org.tmatesoft.svn.core.internal.util.SVNWorkers;
 import org.tmatesoft.svn.core.internal.wc.DefaultDumpFilterHandler;
 import org.tmatesoft.svn.core.internal.wc.DefaultLoadHandler;
-import org.tmatesoft.svn.core.internal.wc.ISVNLoadHandler;
+import org.tmatesoft.svn.core.internal.wc.IOExceptionWrapper;
 import org.tmatesoft.svn.core.internal.wc.SVNAdminDeltifier;
 import org.tmatesoft.svn.core.internal.wc.SVNAdminHelper;
 import org.tmatesoft.svn.core.internal.wc.SVNCancellableEditor;
@@ -72,6 +83,7 @@ import org.tmatesoft.svn.core.wc.ISVNOptions;
 import org.tmatesoft.svn.core.wc.ISVNRepositoryPool;
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.util.ISVNDebugLog;
 import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
@@ -123,6 +135,9 @@ import org.tmatesoft.svn.util.SVNLogType;
  * <tr bgcolor="#EAEAEA" align="left">
  * <td>doPack()</td><td>'svnadmin pack'</td>
  * </tr>
+ * <tr bgcolor="#EAEAEA" align="left">
+ * <td>doBuildPathIndex()</td><td>'jsvnadmin build-path-index'</td>
+ * </tr>
  * </table>
  *
  * @version 1.3
@@ -131,6 +146,9 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public class SVNAdminClient extends SVNAdminBasicClient {
 
+    private static final int DUMP_BUFFER_BLOCK_SIZE = 0x10000;
+    private static final long DUMP_BUFFER_MEMORY_SIZE = 0x400000;
+
     private ISVNLogEntryHandler mySyncHandler;
     private DefaultDumpFilterHandler myDumpFilterHandler;
     private ISVNAdminEventHandler myEventHandler;
@@ -350,7 +368,6 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         return doCreateRepository(path, uuid, enableRevisionProperties, force, pre14Compatible, pre15Compatible, false);
     }
 
-
     /**
      * Copies revision properties from the source repository starting at <code>startRevision</code> and up to
      * <code>endRevision</code> to corresponding revisions of the destination repository represented by
@@ -577,9 +594,27 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since  1.3, SVN 1.6
      */
     public void doPack(File repositoryRoot) throws SVNException {
+        doPack(repositoryRoot, 1);
+    }
+
+    /**
+     * Compacts a repository into a more efficient storage model, packing up to
+     * <code>jobs</code> shards at once.
+     *
+     * <p/>
+     * Shards become packed one after another in the order of revisions. If packing is
+     * interrupted, shards which were packed completely are not packed again next time.
+     *
+     * @param  repositoryRoot  root of the repository to pack
+     * @param  jobs            number of shards to pack at once
+     * @throws SVNException
+     * @since  1.10
+     */
+    public void doPack(File repositoryRoot, int jobs) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
             FSPacker packer = new FSPacker(myEventHandler);
+            packer.setThreadCount(jobs);
             packer.pack(fsfs);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
@@ -587,6 +622,26 @@ public class SVNAdminClient extends SVNAdminBasicClient {
 
     }
 
+    /**
+     * Builds the path history index of a repository, replacing the existing one.
+     *
+     * <p/>
+     * Once the index exists, it is kept up to date by commits and is used to speed up
+     * history walks of individual paths, such as log, blame and locations requests.
+     *
+     * @param  repositoryRoot  root of the repository to index
+     * @throws SVNException
+     * @since  1.10
+     */
+    public void doBuildPathIndex(File repositoryRoot) throws SVNException {
+        FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
+        try {
+            FSPathHistoryIndex.buildIndex(fsfs);
+        } finally {
+            SVNAdminHelper.closeRepository(fsfs);
+        }
+    }
+
     /**
      * Completely synchronizes two repositories.
      *
@@ -943,6 +998,26 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                   1.2.0, SVN 1.5.0
      */
     public void doVerify(File repositoryRoot, SVNRevision startRevision, SVNRevision endRevision) throws SVNException {
+        doVerify(repositoryRoot, startRevision, endRevision, 1);
+    }
+
+    /**
+     * Verifies repository contents found under <code>repositoryRoot</code> starting at <code>startRevision</code>
+     * and up to <code>endRevision</code>, verifying up to <code>jobs</code> revisions at once.
+     *
+     * <p/>
+     * Every thread reads the repository through its own {@link FSFS} instance. Events are still fired in the
+     * order of revisions from the calling thread, and if several revisions are corrupted, the error of the
+     * oldest one is thrown, just like with sequential verification.
+     *
+     * @param  repositoryRoot   a repository root directory path
+     * @param  startRevision    revision to start verification at
+     * @param  endRevision      revision to stop verification at
+     * @param  jobs             number of revisions to verify at once
+     * @throws SVNException     verification failed - a repository may be corrupted
+     * @since                   1.10
+     */
+    public void doVerify(File repositoryRoot, SVNRevision startRevision, SVNRevision endRevision, int jobs) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
             long youngestRevision = fsfs.getYoungestRevision();
@@ -954,7 +1029,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
                 upperRev = lowerRev;
             }
 
-            verify(fsfs, lowerRev, upperRev);
+            verify(fsfs, lowerRev, upperRev, jobs);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -988,6 +1063,36 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                   1.1.1
      */
     public void doDump(File repositoryRoot, OutputStream dumpStream, SVNRevision startRevision, SVNRevision endRevision, boolean isIncremental, boolean useDeltas) throws SVNException {
+        doDump(repositoryRoot, dumpStream, startRevision, endRevision, isIncremental, useDeltas, 1);
+    }
+
+    /**
+     * Dumps contents of the repository to the provided output stream in a
+     * 'dumpfile' portable format, preparing up to <code>jobs</code> revisions at once.
+     *
+     * <p/>
+     * Node records, property blocks, deltas and checksums of the revisions ahead are prepared by worker
+     * threads, each one reading the repository through its own {@link FSFS} instance, and are buffered
+     * in memory or in a temporary file until the calling thread writes them out. Revisions are written
+     * and events are fired in the order of revisions, so the dump is the same as the one written with
+     * a single job.
+     *
+     * @param  repositoryRoot   a repository root directory path
+     * @param  dumpStream       an output stream to write dumped contents to
+     * @param  startRevision    the first revision to start dumping from
+     * @param  endRevision      the last revision to end dumping at
+     * @param  isIncremental    if <span class="javakeyword">true</span>
+     *                          then the first revision dumped will be a
+     *                          diff against the previous revision; otherwise
+     *                          the first revision is a fulltext.
+     * @param  useDeltas        if <span class="javakeyword">true</span>
+     *                          deltas will be written instead of fulltexts
+     * @param  jobs             number of revisions to prepare at once
+     * @throws SVNException
+     * @since                   1.10
+     */
+    public void doDump(File repositoryRoot, OutputStream dumpStream, SVNRevision startRevision, SVNRevision endRevision, boolean isIncremental, boolean useDeltas,
+            int jobs) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
             long youngestRevision = fsfs.getYoungestRevision();
@@ -1007,7 +1112,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
                 SVNErrorManager.error(err, SVNLogType.FSFS);
             }
 
-            dump(fsfs, dumpStream, lowerR, upperR, isIncremental, useDeltas);
+            dump(fsfs, dumpStream, lowerR, upperR, isIncremental, useDeltas, jobs);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1071,14 +1176,57 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      */
     public void doLoad(File repositoryRoot, InputStream dumpStream, boolean usePreCommitHook,
             boolean usePostCommitHook, SVNUUIDAction uuidAction, String parentDir) throws SVNException {
+        doLoad(repositoryRoot, dumpStream, usePreCommitHook, usePostCommitHook, uuidAction, parentDir, false, 0);
+    }
+
+    /**
+     * Reads the provided dump stream committing new revisions to a repository,
+     * optionally in bulk load mode.
+     *
+     * <p/>
+     * In bulk load mode the dump stream is read through a large buffer, and rows of the repository's
+     * rep-cache and its path history index, if any, are written once per <code>flushInterval</code>
+     * revisions, or once at the end of the load if <code>flushInterval</code> is <code>0</code>, instead of
+     * once per revision. Revisions loaded are the same as in the normal mode. If the load is interrupted,
+     * the rep-cache misses rows of the last batch, which only means that their contents are not shared
+     * by later commits. Hooks are run in both modes only if requested with <code>usePreCommitHook</code> and
+     * <code>usePostCommitHook</code>.
+     *
+     * @param  repositoryRoot    the root directory path of the repository where
+     *                           new revisions will be committed
+     * @param  dumpStream        stream with dumped contents of a repository
+     * @param  usePreCommitHook  if <span class="javakeyword">true</span>
+     *                           then calls a pre-commit hook before committing
+     * @param  usePostCommitHook if <span class="javakeyword">true</span>
+     *                           then calls a post-commit hook after committing
+     * @param  uuidAction        one of the three possible ways to treat uuids
+     * @param  parentDir         if not <span class="javakeyword">null</span>
+     *                           then loads at this directory in the repository
+     * @param  isBulkLoad        if <span class="javakeyword">true</span>
+     *                           then loads in bulk load mode
+     * @param  flushInterval     number of revisions per batch in bulk load mode,
+     *                           <code>0</code> for a single batch
+     * @throws SVNException
+     * @since                    1.10
+     */
+    public void doLoad(File repositoryRoot, InputStream dumpStream, boolean usePreCommitHook,
+            boolean usePostCommitHook, SVNUUIDAction uuidAction, String parentDir, boolean isBulkLoad, int flushInterval) throws SVNException {
         CharsetDecoder decoder = Charset.forName("UTF-8").newDecoder();
         FSFS fsfs = null;
         try {
             fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
-            ISVNLoadHandler handler = createLoadHandler(fsfs, usePreCommitHook, usePostCommitHook,
+            DefaultLoadHandler handler = createLoadHandler(fsfs, usePreCommitHook, usePostCommitHook,
                     uuidAction, parentDir);
+            if (isBulkLoad) {
+                fsfs.beginWriteBatch();
+                handler.setFlushInterval(flushInterval);
+            }
             SVNDumpStreamParser parser = getDumpStreamParser();
-            parser.parseDumpStream(dumpStream, handler, decoder);
+            parser.parseDumpStream(dumpStream, handler, decoder, isBulkLoad);
+            if (isBulkLoad) {
+                // closing the repository would only log a failure to write what the batch kept
+                fsfs.endWriteBatch();
+            }
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1099,6 +1247,25 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                    1.2.0, SVN 1.5.0
      */
     public void doRecover(File repositoryRoot) throws SVNException {
+        doRecover(repositoryRoot, 1);
+    }
+
+    /**
+     * Recovers the repository found under <code>repositoryRoot</code>, scanning up to <code>jobs</code>
+     * revisions at once.
+     *
+     * <p/>
+     * Only repositories of formats older than 3 keep node and copy ids which are recovered from the
+     * revisions. While recovering such a repository, the event handler receives an {@link SVNAdminEvent}
+     * with the {@link SVNAdminEventAction#RECOVERY_REVISION_SCANNED} action for each revision in the order
+     * of revisions.
+     *
+     * @param  repositoryRoot    repository root location
+     * @param  jobs              number of revisions to scan at once
+     * @throws SVNException
+     * @since                    1.10
+     */
+    public void doRecover(File repositoryRoot, int jobs) throws SVNException {
         FSFS fsfs = null;
         try {
             fsfs = SVNAdminHelper.openRepositoryForRecovery(repositoryRoot);
@@ -1107,7 +1274,8 @@ public class SVNAdminClient extends SVNAdminBasicClient {
                 SVNAdminEvent event = new SVNAdminEvent(SVNAdminEventAction.RECOVERY_STARTED);
                 myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
             }
-            FSRecoverer recoverer = new FSRecoverer(fsfs, this);
+            FSRecoverer recoverer = new FSRecoverer(fsfs, this, myEventHandler);
+            recoverer.setThreadCount(jobs);
             recoverer.runRecovery();
         } finally {
             if (fsfs != null) {
@@ -1197,9 +1365,33 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                       1.2.0, SVN 1.5.0
      */
     public void doHotCopy(File srcRepositoryRoot, File newRepositoryRoot) throws SVNException {
+        doHotCopy(srcRepositoryRoot, newRepositoryRoot, false, 1);
+    }
+
+    /**
+     * Makes a hot copy of a repository located at <code>srcRepositoryRoot</code> to one located at
+     * <code>newRepositoryRoot</code>, copying up to <code>jobs</code> files at once. This method is
+     * identical to the <code>'svnadmin hotcopy --incremental'</code> command when <code>incremental</code>
+     * is <span class="javakeyword">true</span>.
+     *
+     * <p/>
+     * An incremental hot copy to an existing copy of the same repository only copies revisions and packs
+     * which are not there yet and revision properties which changed, and adds new rows to its rep-cache.
+     * Otherwise <code>newRepositoryRoot</code> must not exist or be empty.
+     *
+     * @param  srcRepositoryRoot   repository to copy data from
+     * @param  newRepositoryRoot   repository to copy data to
+     * @param  incremental         whether to only copy what changed since the previous hot copy
+     * @param  jobs                number of files to copy at once
+     * @throws SVNException
+     * @since                      1.10
+     */
+    public void doHotCopy(File srcRepositoryRoot, File newRepositoryRoot, boolean incremental, int jobs) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(srcRepositoryRoot, false);
         try {
             FSHotCopier copier = getHotCopier();
+            copier.setIncremental(incremental);
+            copier.setThreadCount(jobs);
             copier.runHotCopy(fsfs, newRepositoryRoot);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
@@ -1370,7 +1562,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         return myHotCopier;
     }
 
-    private void verify(FSFS fsfs, long startRev, long endRev) throws SVNException {
+    private void verify(FSFS fsfs, long startRev, long endRev, int jobs) throws SVNException {
         long youngestRev = fsfs.getYoungestRevision();
         if (!SVNRevision.isValidRevisionNumber(startRev)) {
             startRev = 0;
@@ -1392,26 +1584,75 @@ public class SVNAdminClient extends SVNAdminBasicClient {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
 
+        if (jobs > 1 && endRev > startRev) {
+            verifyConcurrently(fsfs.getRepositoryRoot(), startRev, endRev, jobs);
+            return;
+        }
         for (long rev = startRev; rev <= endRev; rev++) {
             FSRevisionRoot toRoot = fsfs.createRevisionRoot(rev);
             ISVNEditor editor = getDumpEditor(fsfs, toRoot, rev, startRev, "/", SVNFileUtil.DUMMY_OUT, false, true);
             editor = SVNCancellableEditor.newInstance(editor, getEventDispatcher(), getDebugLog());
             FSRepositoryUtil.replay(fsfs, toRoot, "", SVNRepository.INVALID_REVISION, false, editor);
             fsfs.getRevisionProperties(rev);
-            String message = "* Verified revision " + rev + ".";
+            fireRevisionVerified(rev);
+        }
+    }
 
-            if (myEventHandler != null) {
-                SVNAdminEvent event = new SVNAdminEvent(rev, SVNAdminEventAction.REVISION_DUMPED, message);
-                myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
+    private void verifyConcurrently(File repositoryRoot, final long startRev, long endRev, int jobs) throws SVNException {
+        final ISVNDebugLog debugLog = getDebugLog();
+        final SVNWorkers.Canceller canceller = new SVNWorkers.Canceller("Verification cancelled");
+        final BlockingQueue<FSFS> repositories = new LinkedBlockingQueue<FSFS>();
+        final ExecutorService executor = SVNWorkers.createExecutor(jobs, "svnkit-verify-");
+        final LinkedList<Future<?>> verifications = new LinkedList<Future<?>>();
+        try {
+            // one repository instance per thread, so that workers never share reading state
+            for (int i = 0; i < jobs; i++) {
+                repositories.add(SVNAdminHelper.openRepository(repositoryRoot, true));
+            }
+            long nextRev = startRev;
+            for (long rev = startRev; rev <= endRev; rev++) {
+                while (nextRev <= endRev && verifications.size() < 4 * jobs) {
+                    final long revision = nextRev++;
+                    verifications.add(executor.submit(new Callable<Object>() {
+                        public Object call() throws SVNException, InterruptedException {
+                            final FSFS fsfs = repositories.take();
+                            try {
+                                FSRevisionRoot toRoot = fsfs.createRevisionRoot(revision);
+                                ISVNEditor editor = new SVNDumpEditor(fsfs, toRoot, revision, startRev, "/", SVNFileUtil.DUMMY_OUT, false, true);
+                                editor = SVNCancellableEditor.newInstance(editor, canceller, debugLog);
+                                FSRepositoryUtil.replay(fsfs, toRoot, "", SVNRepository.INVALID_REVISION, false, editor);
+                                fsfs.getRevisionProperties(revision);
+                            } finally {
+                                repositories.add(fsfs);
+                            }
+                            return null;
+                        }
+                    }));
+                }
+                SVNWorkers.waitFor(verifications.removeFirst(), getEventDispatcher(), "Interrupted while verifying");
+                fireRevisionVerified(rev);
+            }
+        } finally {
+            canceller.cancel();
+            SVNWorkers.shutdown(executor);
+            for (FSFS fsfs : repositories) {
+                SVNAdminHelper.closeRepository(fsfs);
             }
         }
     }
 
-    private void dump(FSFS fsfs, OutputStream dumpStream, long start, long end, boolean isIncremental, boolean useDeltas) throws SVNException {
+    private void fireRevisionVerified(long rev) throws SVNException {
+        String message = "* Verified revision " + rev + ".";
+
+        if (myEventHandler != null) {
+            SVNAdminEvent event = new SVNAdminEvent(rev, SVNAdminEventAction.REVISION_DUMPED, message);
+            myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
+        }
+    }
+
+    private void dump(FSFS fsfs, OutputStream dumpStream, long start, long end, boolean isIncremental, boolean useDeltas, int jobs) throws SVNException {
         boolean isDumping = dumpStream != null && dumpStream != SVNFileUtil.DUMMY_OUT;
         long youngestRevision = fsfs.getYoungestRevision();
-        SVNAdminDeltifier deltifier = new SVNAdminDeltifier(fsfs, SVNDepth.INFINITY,
-                false, false, false, null);
 
         if (!SVNRevision.isValidRevisionNumber(start)) {
             start = 0;
@@ -1454,47 +1695,113 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_MAGIC_HEADER + ": " + version + "\n\n");
         writeDumpData(dumpStream, SVNAdminHelper.DUMPFILE_UUID + ": " + uuid + "\n\n");
 
+        if (isDumping && jobs > 1 && end > start) {
+            dumpConcurrently(fsfs.getRepositoryRoot(), dumpStream, start, end, isIncremental, useDeltas, jobs);
+            return;
+        }
+        SVNDumpEditor dumpEditor = getDumpEditor(fsfs, null, start, start, "/", dumpStream, useDeltas, false);
         for (long i = start; i <= end; i++) {
-            long fromRev, toRev;
-
             checkCancelled();
+            dumpRevision(fsfs, dumpEditor, null, dumpStream, i, start, isIncremental, useDeltas);
+            fireRevisionDumped(i, isDumping);
+        }
+    }
 
-            if (i == start && !isIncremental) {
-                if (i == 0) {
-                    writeRevisionRecord(dumpStream, fsfs, 0);
-                    toRev = 0;
-                    String message = (isDumping ? "* Dumped" : "* Verified") + " revision " + toRev + ".";
-                    if (myEventHandler != null) {
-                        SVNAdminEvent event = new SVNAdminEvent(toRev, SVNAdminEventAction.REVISION_DUMPED, message);
-                        myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
+    private void dumpConcurrently(File repositoryRoot, OutputStream dumpStream, final long start, long end, final boolean isIncremental,
+            final boolean useDeltas, int jobs) throws SVNException {
+        final ISVNDebugLog debugLog = getDebugLog();
+        final SVNWorkers.Canceller canceller = new SVNWorkers.Canceller("Dump cancelled");
+        final BlockingQueue<FSFS> repositories = new LinkedBlockingQueue<FSFS>();
+        final ExecutorService executor = SVNWorkers.createExecutor(jobs, "svnkit-dump-");
+        final LinkedList<Future<SVNSpillBuffer>> revisions = new LinkedList<Future<SVNSpillBuffer>>();
+        try {
+            for (int i = 0; i < jobs; i++) {
+                repositories.add(SVNAdminHelper.openRepository(repositoryRoot, true));
+            }
+            long nextRev = start;
+            for (long rev = start; rev <= end; rev++) {
+                // revisions ahead are kept in spill buffers, so only a few of them are prepared at a time
+                while (nextRev <= end && revisions.size() < 2 * jobs) {
+                    final long revision = nextRev++;
+                    revisions.add(executor.submit(new Callable<SVNSpillBuffer>() {
+                        public SVNSpillBuffer call() throws SVNException, InterruptedException {
+                            final SVNSpillBuffer buffer = new SVNSpillBuffer(DUMP_BUFFER_BLOCK_SIZE, DUMP_BUFFER_MEMORY_SIZE);
+                            boolean isPrepared = false;
+                            final FSFS fsfs = repositories.take();
+                            try {
+                                final SVNDumpEditor dumpEditor = new SVNDumpEditor(fsfs, null, revision, start, "/", null, useDeltas, false);
+                                dumpRevision(fsfs, dumpEditor, canceller, new SpillBufferOutputStream(buffer), revision, start, isIncremental, useDeltas);
+                                isPrepared = true;
+                            } finally {
+                                repositories.add(fsfs);
+                                if (!isPrepared) {
+                                    buffer.close();
+                                }
+                            }
+                            return buffer;
+                        }
+                    }));
+                }
+                final SVNSpillBuffer buffer = SVNWorkers.waitFor(revisions.removeFirst(), getEventDispatcher(), "Interrupted while dumping");
+                try {
+                    writeDumpData(dumpStream, buffer);
+                } finally {
+                    buffer.close();
+                }
+                fireRevisionDumped(rev, true);
+            }
+        } finally {
+            canceller.cancel();
+            SVNWorkers.shutdown(executor);
+            for (Future<SVNSpillBuffer> revision : revisions) {
+                // all workers are stopped, so a revision is either prepared already or never will be
+                if (!revision.cancel(false)) {
+                    try {
+                        revision.get().close();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        // the revision failed, there is nothing to close
                     }
-                    continue;
                 }
-
-                fromRev = 0;
-                toRev = i;
-            } else {
-                fromRev = i - 1;
-                toRev = i;
             }
+            for (FSFS fsfs : repositories) {
+                SVNAdminHelper.closeRepository(fsfs);
+            }
+        }
+    }
 
-            writeRevisionRecord(dumpStream, fsfs, toRev);
-            boolean useDeltasForRevision = useDeltas && (isIncremental || i != start);
-            FSRevisionRoot toRoot = fsfs.createRevisionRoot(toRev);
-            ISVNEditor dumpEditor = getDumpEditor(fsfs, toRoot, toRev, start, "/", dumpStream, useDeltasForRevision, false);
+    private void dumpRevision(FSFS fsfs, SVNDumpEditor dumpEditor, ISVNCanceller canceller, OutputStream dumpStream, long rev, long start,
+            boolean isIncremental, boolean useDeltas) throws SVNException {
+        if (rev == start && !isIncremental && rev == 0) {
+            writeRevisionRecord(dumpStream, fsfs, 0);
+            return;
+        }
 
-            if (i == start && !isIncremental) {
-                FSRevisionRoot fromRoot = fsfs.createRevisionRoot(fromRev);
-                deltifier.setEditor(dumpEditor);
-                deltifier.deltifyDir(fromRoot, "/", "", toRoot, "/");
-            } else {
-                FSRepositoryUtil.replay(fsfs, toRoot, "", -1, false, dumpEditor);
-            }
-            String message = (isDumping ? "* Dumped" : "* Verified") + " revision " + toRev + ".";
-            if (myEventHandler != null) {
-                SVNAdminEvent event = new SVNAdminEvent(toRev, SVNAdminEventAction.REVISION_DUMPED, message);
-                myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
-            }
+        writeRevisionRecord(dumpStream, fsfs, rev);
+        boolean useDeltasForRevision = useDeltas && (isIncremental || rev != start);
+        FSRevisionRoot toRoot = fsfs.createRevisionRoot(rev);
+        dumpEditor.reset(fsfs, toRoot, rev, start, "/", dumpStream, useDeltasForRevision, false);
+        ISVNEditor editor = dumpEditor;
+        if (canceller != null) {
+            editor = SVNCancellableEditor.newInstance(editor, canceller, getDebugLog());
+        }
+
+        if (rev == start && !isIncremental) {
+            FSRevisionRoot fromRoot = fsfs.createRevisionRoot(0);
+            SVNAdminDeltifier deltifier = new SVNAdminDeltifier(fsfs, SVNDepth.INFINITY, false, false, false, null);
+            deltifier.setEditor(editor);
+            deltifier.deltifyDir(fromRoot, "/", "", toRoot, "/");
+        } else {
+            FSRepositoryUtil.replay(fsfs, toRoot, "", -1, false, editor);
+        }
+    }
+
+    private void fireRevisionDumped(long rev, boolean isDumping) throws SVNException {
+        String message = (isDumping ? "* Dumped" : "* Verified") + " revision " + rev + ".";
+        if (myEventHandler != null) {
+            SVNAdminEvent event = new SVNAdminEvent(rev, SVNAdminEventAction.REVISION_DUMPED, message);
+            myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
         }
     }
 
@@ -1524,6 +1831,19 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         writeDumpData(dumpStream, "\n");
     }
 
+    private void writeDumpData(OutputStream out, SVNSpillBuffer data) throws SVNException {
+        InputStream in = data.createInputStream();
+        try {
+            byte[] buffer = new byte[DUMP_BUFFER_BLOCK_SIZE];
+            for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException ioe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
+            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+        }
+    }
+
     private void writeDumpData(OutputStream out, String data) throws SVNException {
         try {
             out.write(data.getBytes("UTF-8"));
@@ -1707,4 +2027,24 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         return null;
     }
 
+    private static class SpillBufferOutputStream extends OutputStream {
+
+        private final SVNSpillBuffer myBuffer;
+
+        private SpillBufferOutputStream(SVNSpillBuffer buffer) {
+            myBuffer = buffer;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                myBuffer.write(b, off, len);
+            } catch (SVNException e) {
+                throw new IOExceptionWrapper(e);
+            }
+        }
+    }
 }
@@ -206,4 +206,12 @@ public class SVNAdminEventAction {
     
     public static final SVNAdminEventAction NORMALIZED_PROPERTIES = new SVNAdminEventAction(25);
 
+    /**
+     * Informs that the next revision has been scanned while recovering a repository
+     * which keeps its next node and copy ids in <code>current</code>.
+     * 
+     * @since 1.10
+     */
+    public static final SVNAdminEventAction RECOVERY_REVISION_SCANNED = new SVNAdminEventAction(26);
+
 }
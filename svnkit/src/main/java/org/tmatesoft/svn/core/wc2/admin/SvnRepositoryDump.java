@@ -15,9 +15,11 @@ public class SvnRepositoryDump extends SvnRepositoryReceivingOperation<SVNAdminE
     private SVNRevision endRevision;
     private boolean useDelta;
     private boolean incremental;
+    private int jobs;
 
     public SvnRepositoryDump(SvnOperationFactory factory) {
         super(factory);
+        jobs = 1;
     }
 
     public OutputStream getOut() {
@@ -60,6 +62,23 @@ public class SvnRepositoryDump extends SvnRepositoryReceivingOperation<SVNAdminE
         this.incremental = incremental;
     }
 
+    /**
+     * @since 1.10
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Sets the number of revisions prepared at once, <code>1</code> by default.
+     * The dump is the same whatever the number of jobs is.
+     *
+     * @since 1.10
+     */
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
+
     @Override
     protected void ensureArgumentsAreValid() throws SVNException {
         if (getStartRevision() == null) {
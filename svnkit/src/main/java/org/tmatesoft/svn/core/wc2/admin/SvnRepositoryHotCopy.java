@@ -7,9 +7,12 @@ import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
 public class SvnRepositoryHotCopy extends SvnRepositoryOperation<Long> {
     
     private File srcRepositoryRoot;
+    private boolean incremental;
+    private int jobs;
 
     public SvnRepositoryHotCopy(SvnOperationFactory factory) {
         super(factory);
+        jobs = 1;
     }
 
 	public File getSrcRepositoryRoot() {
@@ -27,4 +30,36 @@ public class SvnRepositoryHotCopy extends SvnRepositoryOperation<Long> {
 	public void setNewRepositoryRoot(File newRepositoryRoot) {
 	    setRepositoryRoot(newRepositoryRoot);
 	}
+
+    /**
+     * @since 1.10
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Makes the hot copy only copy what changed since the previous hot copy to the same destination.
+     *
+     * @since 1.10
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
+    /**
+     * @since 1.10
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Sets the number of files copied at once, <code>1</code> by default.
+     *
+     * @since 1.10
+     */
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
 }
@@ -13,6 +13,8 @@ public class SvnRepositoryLoad extends SvnRepositoryReceivingOperation<SVNAdminE
     private boolean usePostCommitHook;
     private SVNUUIDAction uuidAction;
     private String parentDir;
+    private boolean bulkLoad;
+    private int flushInterval;
     
     
     public SvnRepositoryLoad(SvnOperationFactory factory) {
@@ -64,4 +66,38 @@ public class SvnRepositoryLoad extends SvnRepositoryReceivingOperation<SVNAdminE
 	public void setParentDir(String parentDir) {
 		this.parentDir = parentDir;
 	}
+
+    /**
+     * @since 1.10
+     */
+    public boolean isBulkLoad() {
+        return bulkLoad;
+    }
+
+    /**
+     * Sets whether the dump is loaded in bulk load mode, in which caches and indexes of the repository
+     * are written in batches of revisions. Revisions loaded are the same in both modes.
+     *
+     * @since 1.10
+     */
+    public void setBulkLoad(boolean bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    /**
+     * @since 1.10
+     */
+    public int getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * Sets the number of revisions per batch in bulk load mode, <code>0</code> by default,
+     * which writes a single batch at the end of the load.
+     *
+     * @since 1.10
+     */
+    public void setFlushInterval(int flushInterval) {
+        this.flushInterval = flushInterval;
+    }
 }
@@ -5,7 +5,31 @@ import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
 
 public class SvnRepositoryRecover extends SvnRepositoryReceivingOperation<SVNAdminEvent> {
     
+    private int jobs;
+    
     public SvnRepositoryRecover(SvnOperationFactory factory) {
         super(factory);
     }
+
+    @Override
+    protected void initDefaults() {
+        super.initDefaults();
+        jobs = 1;
+    }
+
+    /**
+     * @since 1.10
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Sets the number of revisions scanned at once, <code>1</code> by default.
+     *
+     * @since 1.10
+     */
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
 }
@@ -8,6 +8,7 @@ public class SvnRepositoryVerify extends SvnRepositoryReceivingOperation<SVNAdmi
 
     private SVNRevision startRevision;
     private SVNRevision endRevision;
+    private int jobs;
     
     public SvnRepositoryVerify(SvnOperationFactory factory) {
         super(factory);
@@ -18,6 +19,7 @@ public class SvnRepositoryVerify extends SvnRepositoryReceivingOperation<SVNAdmi
     	super.initDefaults();
     	startRevision = SVNRevision.create(0);
         endRevision = SVNRevision.HEAD;
+        jobs = 1;
     }
 	
 	public SVNRevision getStartRevision() {
@@ -35,4 +37,20 @@ public class SvnRepositoryVerify extends SvnRepositoryReceivingOperation<SVNAdmi
     public void setEndRevision(SVNRevision endRevision) {
         this.endRevision = endRevision;
     }
+
+    /**
+     * @since 1.10
+     */
+    public int getJobs() {
+        return jobs;
+    }
+
+    /**
+     * Sets the number of revisions verified at once, <code>1</code> by default.
+     *
+     * @since 1.10
+     */
+    public void setJobs(int jobs) {
+        this.jobs = jobs;
+    }
 }
@@ -0,0 +1,36 @@
+package org.tmatesoft.svn.test;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+
+/**
+ * Measures how long {@link SVNDeltaCombiner} takes to combine delta chains of different depths.
+ * Chains are generated the way {@link DeltaCombinerTest} generates them.
+ */
+public class DeltaCombinerPerformanceTest {
+
+    @Test
+    public void testCombinerPerformance() throws Exception {
+        final Random random = new Random(22);
+        final int[] depths = {2, 8, 20, 200};
+        for (int i = 0; i < depths.length; i++) {
+            final DeltaCombinerTest.Chain chain = DeltaCombinerTest.createChain(random, depths[i], false, 0, DeltaCombinerTest.WINDOW_SIZE);
+            final SVNDeltaCombiner combiner = new SVNDeltaCombiner();
+            long time = 0;
+            for (int run = 0; run < 4; run++) {
+                final long start = System.nanoTime();
+                for (int window = 0; window < 200; window++) {
+                    DeltaCombinerTest.combine(combiner, chain);
+                }
+                // the first runs only warm up
+                if (run >= 2) {
+                    time += System.nanoTime() - start;
+                }
+            }
+            System.out.println("400 windows of " + DeltaCombinerTest.WINDOW_SIZE + " bytes combined from " + depths[i] + " deltas: " +
+                    time / 1000000 + " ms, peak memory " + combiner.getPeakMemoryUsage() + " bytes");
+        }
+    }
+}
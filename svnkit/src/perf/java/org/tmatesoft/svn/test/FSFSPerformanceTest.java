@@ -0,0 +1,138 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
+import org.tmatesoft.svn.core.io.ISVNFileRevisionHandler;
+import org.tmatesoft.svn.core.io.SVNFileRevision;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Benchmarks of FSFS read paths. They only print timings and are run by the <code>perf</code> task.
+ */
+public class FSFSPerformanceTest {
+
+    private static final int BENCHMARK_RUNS = 5;
+    private static final long CACHE_MEMORY_BUDGET = 64 * 1024 * 1024;
+
+    @Test
+    public void testLogAndBlameOverPackedHistory() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testLogAndBlameOverPackedHistory", options);
+        final long originalBudget = FSCacheManager.getMemoryBudget();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = createRepository(repositoryRoot);
+            setMaxFilesPerDirectory(repositoryRoot, 10);
+
+            final int revisions = 300;
+            for (int i = 1; i <= revisions; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                final byte[] contents = ("line " + i + "\n").getBytes();
+                if (i == 1) {
+                    commitBuilder.addFile("file", contents);
+                } else {
+                    commitBuilder.changeFile("file", contents);
+                }
+                commitBuilder.addFile("added" + i);
+                commitBuilder.commit();
+            }
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            new FSPacker(null).pack(fsfs);
+            fsfs.close();
+
+            FSCacheManager.setMemoryBudget(0);
+            runLogAndBlame(url, revisions);
+            final long uncachedTime = runLogAndBlame(url, revisions);
+
+            FSCacheManager.setMemoryBudget(CACHE_MEMORY_BUDGET);
+            FSCacheManager.clearAll();
+            runLogAndBlame(url, revisions);
+            final long cachedTime = runLogAndBlame(url, revisions);
+
+            System.out.println("log and blame over " + revisions + " packed revisions: " +
+                    uncachedTime + " ms without caches, " + cachedTime + " ms with caches");
+        } finally {
+            FSCacheManager.setMemoryBudget(originalBudget);
+            sandbox.dispose();
+        }
+    }
+
+    private long runLogAndBlame(SVNURL url, int expectedRevisions) throws SVNException {
+        final long start = System.currentTimeMillis();
+        for (int run = 0; run < BENCHMARK_RUNS; run++) {
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                final Collection<SVNLogEntry> logEntries = new ArrayList<SVNLogEntry>();
+                svnRepository.log(new String[] {""}, 0, -1, true, false, new ISVNLogEntryHandler() {
+                    public void handleLogEntry(SVNLogEntry logEntry) {
+                        logEntries.add(logEntry);
+                    }
+                });
+                Assert.assertEquals(expectedRevisions + 1, logEntries.size());
+
+                final int[] fileRevisions = new int[1];
+                svnRepository.getFileRevisions("file", 0, -1, new ISVNFileRevisionHandler() {
+                    public void openRevision(SVNFileRevision fileRevision) {
+                        fileRevisions[0]++;
+                    }
+
+                    public void closeRevision(String token) {
+                    }
+
+                    public void applyTextDelta(String path, String baseChecksum) {
+                    }
+
+                    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                        return null;
+                    }
+
+                    public void textDeltaEnd(String path) {
+                    }
+                });
+                Assert.assertEquals(expectedRevisions, fileRevisions[0]);
+            } finally {
+                svnRepository.closeSession();
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    private SVNURL createRepository(File repositoryRoot) throws SVNException {
+        // logically addressed repositories can't be packed yet
+        final boolean useLogAddressing = FSFS.isDefaultUseLogAddressing();
+        FSFS.setDefaultUseLogAddressing(false);
+        try {
+            return SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+        } finally {
+            FSFS.setDefaultUseLogAddressing(useLogAddressing);
+        }
+    }
+
+    private void setMaxFilesPerDirectory(File repositoryRoot, int maxFilesPerDirectory) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        fsfs.writeDBFormat(fsfs.getDBFormat(), maxFilesPerDirectory, true);
+        fsfs.close();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
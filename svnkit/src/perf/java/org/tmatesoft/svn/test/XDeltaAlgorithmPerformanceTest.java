@@ -0,0 +1,46 @@
+package org.tmatesoft.svn.test;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNFastXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+
+/**
+ * Compares the time {@link SVNXDeltaAlgorithm} and {@link SVNFastXDeltaAlgorithm} take to compute
+ * the same deltas. Windows are generated the way {@link XDeltaAlgorithmTest} generates them.
+ */
+public class XDeltaAlgorithmPerformanceTest {
+
+    @Test
+    public void testFastAlgorithmPerformance() throws Exception {
+        final Random random = new Random(20);
+        final byte[] text = XDeltaAlgorithmTest.createData(random, XDeltaAlgorithmTest.WINDOW_SIZE, 256);
+        for (int i = 0; i < text.length; i++) {
+            text[i] = (byte) "abcdefghij klmnop\n".charAt((text[i] & 0xFF) % 18);
+        }
+        final byte[][] sources = { text, XDeltaAlgorithmTest.createData(random, XDeltaAlgorithmTest.WINDOW_SIZE, 256) };
+        final byte[][] targets = { XDeltaAlgorithmTest.edit(random, text, 256), XDeltaAlgorithmTest.edit(random, sources[1], 256) };
+        final String[] descriptions = { "text", "binary" };
+
+        final SVNDeltaAlgorithm[] algorithms = { new SVNXDeltaAlgorithm(), new SVNFastXDeltaAlgorithm() };
+        for (int i = 0; i < sources.length; i++) {
+            final long[] times = new long[algorithms.length];
+            for (int run = 0; run < 4; run++) {
+                for (int j = 0; j < algorithms.length; j++) {
+                    final long start = System.nanoTime();
+                    for (int window = 0; window < 500; window++) {
+                        XDeltaAlgorithmTest.computeDelta(algorithms[j], sources[i], sources[i].length, targets[i]);
+                    }
+                    // the first runs only warm up
+                    if (run >= 2) {
+                        times[j] += System.nanoTime() - start;
+                    }
+                }
+            }
+            System.out.println("1000 " + descriptions[i] + " windows of " + XDeltaAlgorithmTest.WINDOW_SIZE + " bytes: " +
+                    times[0] / 1000000 + " ms with SVNXDeltaAlgorithm, " + times[1] / 1000000 + " ms with SVNFastXDeltaAlgorithm");
+        }
+    }
+}
@@ -4,6 +4,14 @@ import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Test;
 import org.tmatesoft.svn.core.*;
+import org.tmatesoft.svn.core.internal.io.fs.FSDeltaPipeline;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSOutputStream;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSRepresentationCacheManager;
 import org.tmatesoft.svn.core.internal.wc.SVNExternal;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.internal.wc17.SVNWCContext;
@@ -12,12 +20,17 @@ import org.tmatesoft.svn.core.internal.wc17.db.StructureFields;
 import org.tmatesoft.svn.core.internal.wc2.SvnWcGeneration;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc.*;
 import org.tmatesoft.svn.core.wc2.*;
 import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryCreate;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 public class CommitTest {
     @Test
@@ -490,6 +503,102 @@ public class CommitTest {
         }
     }
 
+    @Test
+    public void testCommitAddsRepresentationsToRepCache() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCommitAddsRepresentationsToRepCache", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            for (int i = 0; i < 50; i++) {
+                commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+            }
+            commitBuilder.commit();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final FSRevisionRoot revisionRoot = fsfs.createRevisionRoot(1);
+                final List<FSRepresentation> representations = new ArrayList<FSRepresentation>();
+                for (int i = 0; i < 50; i++) {
+                    representations.add(revisionRoot.getRevisionNode("/file" + i).getTextRepresentation());
+                }
+                final IFSRepresentationCacheManager repCacheManager = fsfs.getRepositoryCacheManager();
+                Assume.assumeTrue(repCacheManager instanceof FSRepresentationCacheManager);
+                repCacheManager.runReadTransaction(new IFSSqlJetTransaction() {
+                    public void run() throws SVNException {
+                        for (FSRepresentation representation : representations) {
+                            final FSRepresentation cachedRepresentation = repCacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
+                            Assert.assertNotNull(cachedRepresentation);
+                            Assert.assertEquals(representation.getItemIndex(), cachedRepresentation.getItemIndex());
+                        }
+                    }
+                });
+                repCacheManager.insertAll(representations, true);
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testParallelDeltasWriteSameRevisions() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testParallelDeltasWriteSameRevisions", options);
+        final int threadCount = FSDeltaPipeline.getThreadCount();
+        try {
+            final byte[] contents1 = new byte[3 * FSOutputStream.WRITE_BUFFER_SIZE + 12345];
+            final Random random = new Random(13);
+            for (int i = 0; i < contents1.length; i++) {
+                contents1[i] = (byte) ('a' + random.nextInt(i % 3 == 0 ? 26 : 4));
+            }
+            final byte[] contents2 = new byte[contents1.length + FSOutputStream.SVN_DELTA_WINDOW_SIZE / 3];
+            System.arraycopy(contents1, 0, contents2, 0, contents1.length);
+            for (int i = 0; i < contents2.length; i += 1000) {
+                contents2[i] = '#';
+            }
+
+            final File[] repositoryRoots = new File[2];
+            for (int i = 0; i < repositoryRoots.length; i++) {
+                FSDeltaPipeline.setThreadCount(i == 0 ? 0 : 3);
+                repositoryRoots[i] = sandbox.createDirectory("svn.repo" + i);
+                final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoots[i], true, false);
+
+                final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+                commitBuilder1.addFile("file", contents1);
+                commitBuilder1.addFile("empty", new byte[0]);
+                commitBuilder1.commit();
+
+                final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+                commitBuilder2.changeFile("file", contents2);
+                commitBuilder2.commit();
+
+                final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+                try {
+                    final ByteArrayOutputStream fileContents = new ByteArrayOutputStream();
+                    svnRepository.getFile("file", 2, null, fileContents);
+                    Assert.assertArrayEquals(contents2, fileContents.toByteArray());
+                } finally {
+                    svnRepository.closeSession();
+                }
+            }
+            for (long revision = 1; revision <= 2; revision++) {
+                final File revisionFile0 = new File(repositoryRoots[0], "db/revs/0/" + revision);
+                final File revisionFile1 = new File(repositoryRoots[1], "db/revs/0/" + revision);
+                Assert.assertArrayEquals(SVNFileUtil.readFully(revisionFile0), SVNFileUtil.readFully(revisionFile1));
+            }
+        } finally {
+            FSDeltaPipeline.setThreadCount(threadCount);
+            sandbox.dispose();
+        }
+    }
+
     private void setIncomplete(SvnOperationFactory svnOperationFactory, File path, long revision, File reposRelpath) throws SVNException {
         SVNWCContext context = new SVNWCContext(svnOperationFactory.getOptions(), svnOperationFactory.getEventHandler());
         try {
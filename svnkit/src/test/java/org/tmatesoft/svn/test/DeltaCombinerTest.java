@@ -0,0 +1,165 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.delta.SVNVDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class DeltaCombinerTest {
+
+    static final int WINDOW_SIZE = 100 * 1024;
+
+    @Test
+    public void testCombinedWindowsMatchFulltexts() throws Exception {
+        final Random random = new Random(22);
+        // the same instance for all chains, so that reused buffers are tested too
+        final SVNDeltaCombiner combiner = new SVNDeltaCombiner();
+        for (int i = 0; i < 300; i++) {
+            final int depth = 1 + random.nextInt(25);
+            final boolean selfContained = random.nextInt(4) == 0;
+            final int baseOffset = random.nextInt(3) == 0 ? random.nextInt(1000) : 0;
+            final int length = random.nextInt(5) == 0 ? 1 + random.nextInt(300) : 1 + random.nextInt(WINDOW_SIZE);
+            final Chain chain = createChain(random, depth, selfContained, baseOffset, length);
+
+            final String description = "chain " + i + ": depth " + depth + ", self-contained " + selfContained + ", base offset " + baseOffset;
+            Assert.assertArrayEquals(description, chain.getTarget(), combine(combiner, chain));
+            Assert.assertTrue(description, combiner.getPeakMemoryUsage() >= chain.getTarget().length);
+        }
+    }
+
+    @Test
+    public void testDeepChainIsResolvedWithoutRecursion() throws Exception {
+        final Random random = new Random(22);
+        final int depth = 20000;
+        final Chain chain = new Chain();
+        chain.myTexts = new byte[depth + 1][];
+        chain.myDeltas = new byte[depth][];
+        chain.myVersions = new int[depth];
+        chain.myBase = createData(random, 256);
+        chain.myTexts[0] = chain.myBase;
+        // every level copies its source in two pieces around one changed byte
+        for (int level = 0; level < depth; level++) {
+            final byte[] source = chain.myTexts[level];
+            final byte[] target = source.clone();
+            target[random.nextInt(target.length)] = (byte) 'x';
+            chain.myTexts[level + 1] = target;
+
+            final SVNDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+            algorithm.computeDelta(source, source.length, target, target.length);
+            final SVNDiffWindow window = new SVNDiffWindow(0, source.length, target.length,
+                    algorithm.getInstructionsLength(), algorithm.getNewDataLength());
+            window.setData(algorithm.getData());
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            window.writeTo(out, false, false);
+            chain.myDeltas[level] = out.toByteArray();
+        }
+        Assert.assertArrayEquals(chain.getTarget(), combine(new SVNDeltaCombiner(), chain));
+    }
+
+    static byte[] combine(SVNDeltaCombiner combiner, Chain chain) throws Exception {
+        combiner.reset();
+        ByteBuffer target = null;
+        for (int level = chain.myDeltas.length - 1; level >= 0 && target == null; level--) {
+            final FSFile file = new FSFile(chain.myDeltas[level]);
+            final SVNDiffWindow window = combiner.readWindow(file, chain.myVersions[level]);
+            target = combiner.addWindow(window);
+        }
+        if (target == null) {
+            target = combiner.applyWindow(chain.myBase);
+        }
+        final byte[] result = new byte[target.remaining()];
+        target.get(result);
+        return result;
+    }
+
+    static Chain createChain(Random random, int depth, boolean selfContained, int baseOffset, int length) throws Exception {
+        final Chain chain = new Chain();
+        chain.myTexts = new byte[depth + 1][];
+        chain.myDeltas = new byte[depth][];
+        chain.myVersions = new int[depth];
+
+        chain.myTexts[0] = createData(random, length);
+        chain.myBase = new byte[baseOffset + length + random.nextInt(100)];
+        random.nextBytes(chain.myBase);
+        System.arraycopy(chain.myTexts[0], 0, chain.myBase, baseOffset, length);
+
+        for (int level = 0; level < depth; level++) {
+            final byte[] source = chain.myTexts[level];
+            final byte[] target = edit(random, source);
+            chain.myTexts[level + 1] = target;
+
+            final boolean vsEmpty = level == 0 && selfContained;
+            final SVNDeltaAlgorithm algorithm = vsEmpty || random.nextInt(3) == 0 ? new SVNVDeltaAlgorithm() : new SVNXDeltaAlgorithm();
+            final int sourceLength = vsEmpty ? 0 : source.length;
+            algorithm.computeDelta(source, sourceLength, target, target.length);
+            final SVNDiffWindow window = new SVNDiffWindow(level == 0 && !vsEmpty ? baseOffset : 0, sourceLength, target.length,
+                    algorithm.getInstructionsLength(), algorithm.getNewDataLength());
+            window.setData(algorithm.getData());
+
+            chain.myVersions[level] = random.nextBoolean() ? 1 : 0;
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            window.writeTo(out, false, chain.myVersions[level] == 1);
+            chain.myDeltas[level] = out.toByteArray();
+        }
+        return chain;
+    }
+
+    private static byte[] createData(Random random, int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) "abcdefghij klmnop\n".charAt(random.nextInt(18));
+        }
+        return data;
+    }
+
+    private static byte[] edit(Random random, byte[] data) {
+        byte[] edited = data.clone();
+        final int edits = random.nextInt(10);
+        for (int i = 0; i < edits; i++) {
+            final int position = edited.length == 0 ? 0 : random.nextInt(edited.length);
+            final int length = Math.min(random.nextInt(random.nextBoolean() ? 10 : 500), edited.length - position);
+            final int kind = random.nextInt(4);
+            if (kind == 0) {
+                System.arraycopy(createData(random, length), 0, edited, position, length);
+            } else if (kind == 1) {
+                final byte[] inserted = new byte[edited.length + length];
+                System.arraycopy(edited, 0, inserted, 0, position);
+                System.arraycopy(createData(random, length), 0, inserted, position, length);
+                System.arraycopy(edited, position, inserted, position + length, edited.length - position);
+                edited = inserted;
+            } else if (kind == 2) {
+                final byte[] deleted = new byte[edited.length - length];
+                System.arraycopy(edited, 0, deleted, 0, position);
+                System.arraycopy(edited, position + length, deleted, position, edited.length - position - length);
+                edited = deleted;
+            } else if (length > 0) {
+                // repeated short patterns end up as overlapping target copies
+                final int period = 1 + random.nextInt(Math.min(length, 8));
+                for (int j = period; j < length; j++) {
+                    edited[position + j] = edited[position + j - period];
+                }
+            }
+        }
+        // windows of empty texts are not written at all
+        return edited.length > 0 ? edited : new byte[] {'\n'};
+    }
+
+    static class Chain {
+        private byte[] myBase;
+        private byte[][] myTexts;
+        private byte[][] myDeltas;
+        private int[] myVersions;
+
+        public byte[] getTarget() {
+            return myTexts[myTexts.length - 1];
+        }
+    }
+}
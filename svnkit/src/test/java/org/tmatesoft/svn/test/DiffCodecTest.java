@@ -0,0 +1,220 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffCodec;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class DiffCodecTest {
+
+    private static final String[] CODECS = {"none", "zlib", "zlib-1", "zlib-9", "lz4", "lz4-high"};
+
+    @Test
+    public void testCodecsRoundTrip() throws Exception {
+        final Random random = new Random(25);
+        final byte[][] sources = {createText(random, 300 * 1024), createData(random, 300 * 1024)};
+        for (int i = 0; i < sources.length; i++) {
+            final byte[] source = sources[i];
+            final byte[] target = i == 0 ? createText(random, 350 * 1024) : createData(random, 350 * 1024);
+            System.arraycopy(source, 0, target, 50 * 1024, 200 * 1024);
+            final WindowCollector windows = new WindowCollector();
+            new SVNDeltaGenerator().sendDelta("file", new ByteArrayInputStream(source), 0, new ByteArrayInputStream(target), windows, false);
+
+            for (int j = 0; j < CODECS.length; j++) {
+                for (int ratio = 0; ratio < 2; ratio++) {
+                    final SVNDiffCodec codec = SVNDiffCodec.create(CODECS[j]);
+                    Assert.assertEquals(CODECS[j], codec.getName());
+                    if (ratio == 1) {
+                        codec.setMaxCompressedRatio(0.5);
+                    }
+                    final String description = (i == 0 ? "text" : "random data") + ", " + codec.getName() + ", ratio " + codec.getMaxCompressedRatio();
+
+                    final ByteArrayOutputStream delta = new ByteArrayOutputStream();
+                    long dataLength = 0;
+                    for (int w = 0; w < windows.myWindows.size(); w++) {
+                        windows.myWindows.get(w).writeTo(delta, w == 0, codec);
+                        dataLength += windows.myWindows.get(w).getDataLength();
+                    }
+                    final byte[] deltaBytes = delta.toByteArray();
+                    Assert.assertEquals(description, codec.getVersion(), deltaBytes[3]);
+                    Assert.assertArrayEquals(description, target, apply(source, deltaBytes));
+
+                    if (codec.getVersion() == 0) {
+                        Assert.assertEquals(description, 0, codec.getSectionsCount());
+                        continue;
+                    }
+                    Assert.assertEquals(description, 2 * windows.myWindows.size(), codec.getSectionsCount());
+                    Assert.assertEquals(description, dataLength, codec.getInputSize());
+                    if (i == 0 && ratio == 0) {
+                        Assert.assertTrue(description + ": " + codec, codec.getCompressionRatio() < 0.8);
+                        Assert.assertTrue(description + ": " + codec, codec.getStoredSectionsCount() < codec.getSectionsCount());
+                    } else if (i == 1) {
+                        // random data never compresses to half of its size
+                        Assert.assertTrue(description + ": " + codec, codec.getCompressionRatio() >= 1);
+                        Assert.assertEquals(description, ratio == 1 ? codec.getSectionsCount() : codec.getStoredSectionsCount(), codec.getStoredSectionsCount());
+                    }
+                    Assert.assertTrue(description, codec.getCompressionTime() > 0);
+                    codec.resetStatistics();
+                    Assert.assertEquals(description, 0, codec.getInputSize());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFSFSCompressionOption() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testFSFSCompressionOption", options);
+        try {
+            final Random random = new Random(25);
+            // the compression option is known to the format 8 only, older formats keep zlib
+            final String[] settings = {"compression = none", "compression = zlib-9", "compression = lz4", "compression-level = 0", "compression-level = 5", null, "compression = lz4", null};
+            final boolean[] formats8 = {true, true, true, true, true, true, false, false};
+            final int[] versions = {0, 1, 2, 0, 1, 2, 1, 1};
+            for (int i = 0; i < settings.length; i++) {
+                final File repositoryRoot = sandbox.createDirectory("svn.repo." + i);
+                final SVNURL url = createRepository(repositoryRoot, formats8[i]);
+                if (settings[i] != null) {
+                    SVNFileUtil.writeToFile(new File(repositoryRoot, "db/fsfs.conf"), "[deltification]\n" + settings[i] + "\n", "US-ASCII");
+                }
+                final byte[] contents = createText(random, 200 * 1024);
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file", contents);
+                commitBuilder.commit();
+
+                Assert.assertEquals(settings[i], versions[i], getDeltaVersion(repositoryRoot, 1));
+                final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+                try {
+                    final ByteArrayOutputStream readContents = new ByteArrayOutputStream();
+                    svnRepository.getFile("file", 1, null, readContents);
+                    Assert.assertArrayEquals(settings[i], contents, readContents.toByteArray());
+                } finally {
+                    svnRepository.closeSession();
+                }
+            }
+
+            // the high LZ4 compression is not a Subversion setting
+            final File repositoryRoot = sandbox.createDirectory("svn.repo.invalid");
+            final SVNURL url = createRepository(repositoryRoot, true);
+            SVNFileUtil.writeToFile(new File(repositoryRoot, "db/fsfs.conf"), "[deltification]\ncompression = lz4-high\n", "US-ASCII");
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file", "contents".getBytes());
+            try {
+                commitBuilder.commit();
+                Assert.fail();
+            } catch (SVNException e) {
+                Assert.assertEquals(SVNErrorCode.BAD_CONFIG_VALUE, e.getErrorMessage().getRootErrorMessage().getErrorCode());
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private byte[] apply(byte[] source, byte[] delta) throws SVNException {
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        final SVNDeltaProcessor processor = new SVNDeltaProcessor();
+        processor.applyTextDelta(new ByteArrayInputStream(source), target, false);
+        final SVNDeltaReader reader = new SVNDeltaReader();
+        final ISVNDeltaConsumer consumer = new ISVNDeltaConsumer() {
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
+                return processor.textDeltaChunk(diffWindow);
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        };
+        // in small pieces, as deltas come from the network
+        for (int offset = 0; offset < delta.length; offset += 1000) {
+            reader.nextWindow(delta, offset, Math.min(1000, delta.length - offset), "file", consumer);
+        }
+        reader.reset("file", consumer);
+        processor.textDeltaEnd();
+        return target.toByteArray();
+    }
+
+    private SVNURL createRepository(File repositoryRoot, boolean format8) throws SVNException {
+        if (format8) {
+            return SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true, false, false, false, false, false, true);
+        }
+        return SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+    }
+
+    private int getDeltaVersion(File repositoryRoot, long revision) throws SVNException {
+        File revisionFile = new File(repositoryRoot, "db/revs/" + revision);
+        if (!revisionFile.isFile()) {
+            revisionFile = new File(repositoryRoot, "db/revs/0/" + revision);
+        }
+        final byte[] revisionBytes = SVNFileUtil.readFully(revisionFile);
+        final byte[] header = "DELTA\nSVN".getBytes();
+        for (int i = 0; i + header.length < revisionBytes.length; i++) {
+            int j = 0;
+            while (j < header.length && revisionBytes[i + j] == header[j]) {
+                j++;
+            }
+            if (j == header.length) {
+                return revisionBytes[i + j];
+            }
+        }
+        Assert.fail("No delta representation found");
+        return -1;
+    }
+
+    private byte[] createData(Random random, int length) {
+        final byte[] data = new byte[length];
+        random.nextBytes(data);
+        return data;
+    }
+
+    private byte[] createText(Random random, int length) {
+        final String[] words = {"repository", "revision", "delta", "window", "source", "target", "commit", "the", "a", "of", "\n"};
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < length) {
+            text.append(words[random.nextInt(words.length)]).append(' ');
+        }
+        text.setLength(length);
+        return text.toString().getBytes();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+
+    private static class WindowCollector implements ISVNDeltaConsumer {
+
+        private final List<SVNDiffWindow> myWindows = new ArrayList<SVNDiffWindow>();
+
+        public void applyTextDelta(String path, String baseChecksum) {
+        }
+
+        public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+            // the generator reuses its buffers
+            myWindows.add(diffWindow.clone(ByteBuffer.allocate(diffWindow.getDataLength())));
+            return SVNFileUtil.DUMMY_OUT;
+        }
+
+        public void textDeltaEnd(String path) {
+        }
+    }
+}
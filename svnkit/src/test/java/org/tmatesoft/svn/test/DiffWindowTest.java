@@ -0,0 +1,45 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
+import org.tmatesoft.svn.core.io.diff.SVNDiffInstruction;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class DiffWindowTest {
+
+    @Test
+    public void testWindowsReusingPreviousSourceView() throws Exception {
+        final byte[] source = new byte[200];
+        new Random(23).nextBytes(source);
+        // the second and the third windows read nothing new from the source stream
+        final long[] offsets = {0, 0, 0, 50, 150};
+        final int[] lengths = {100, 100, 50, 100, 50};
+
+        final ByteArrayOutputStream expectedTarget = new ByteArrayOutputStream();
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        final SVNDeltaProcessor processor = new SVNDeltaProcessor();
+        processor.applyTextDelta(new ByteArrayInputStream(source), target, false);
+        for (int i = 0; i < offsets.length; i++) {
+            expectedTarget.write(source, (int) offsets[i], lengths[i]);
+            processor.textDeltaChunk(createSourceCopyWindow(offsets[i], lengths[i]));
+        }
+        processor.textDeltaEnd();
+
+        Assert.assertArrayEquals(expectedTarget.toByteArray(), target.toByteArray());
+    }
+
+    private SVNDiffWindow createSourceCopyWindow(long sourceViewOffset, int length) {
+        final ByteBuffer instructions = ByteBuffer.allocate(16);
+        new SVNDiffInstruction(SVNDiffInstruction.COPY_FROM_SOURCE, length, 0).writeTo(instructions);
+        instructions.flip();
+        final SVNDiffWindow window = new SVNDiffWindow(sourceViewOffset, length, length, instructions.limit(), 0);
+        window.setData(instructions);
+        return window;
+    }
+}
@@ -0,0 +1,102 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc2.ISvnObjectReceiver;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.SvnTarget;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryDump;
+
+public class DumpTest {
+
+    @Test
+    public void testConcurrentDumpIsIdenticalToSequentialDump() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testConcurrentDumpIsIdenticalToSequentialDump", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+            for (int revision = 1; revision <= 20; revision++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                if (revision == 1) {
+                    commitBuilder.addFile("trunk/file", "1\n".getBytes());
+                    commitBuilder.addFile("trunk/dir/file", "1\n".getBytes());
+                } else if (revision == 5) {
+                    commitBuilder.addDirectoryByCopying("branches/branch", "trunk");
+                } else if (revision == 9) {
+                    // larger than the memory part of a revision buffer
+                    final byte[] contents = new byte[5 * 1024 * 1024];
+                    for (int i = 0; i < contents.length; i++) {
+                        contents[i] = (byte) ('a' + (i * 31 + i / 1024) % 26);
+                    }
+                    commitBuilder.addFile("trunk/large", contents);
+                } else if (revision == 13) {
+                    commitBuilder.delete("branches/branch/dir");
+                    commitBuilder.setFileProperty("trunk/file", "property", SVNPropertyValue.create("value"));
+                } else {
+                    commitBuilder.changeFile("trunk/file", (revision + "\n").getBytes());
+                    commitBuilder.changeFile("trunk/dir/file", ("line\n" + revision + "\n").getBytes());
+                }
+                commitBuilder.commit();
+            }
+
+            final long[][] ranges = {{0, 20}, {7, 20}, {9, 9}};
+            for (int i = 0; i < ranges.length; i++) {
+                for (int flags = 0; flags < 4; flags++) {
+                    final boolean incremental = (flags & 1) != 0;
+                    final boolean useDeltas = (flags & 2) != 0;
+                    final List<Long> sequentialRevisions = new ArrayList<Long>();
+                    final byte[] sequentialDump = dump(svnOperationFactory, repositoryRoot, ranges[i][0], ranges[i][1], incremental, useDeltas, 1, sequentialRevisions);
+                    final List<Long> concurrentRevisions = new ArrayList<Long>();
+                    final byte[] concurrentDump = dump(svnOperationFactory, repositoryRoot, ranges[i][0], ranges[i][1], incremental, useDeltas, 4, concurrentRevisions);
+
+                    final String description = "r" + ranges[i][0] + ":" + ranges[i][1] + " incremental=" + incremental + " deltas=" + useDeltas;
+                    Assert.assertEquals(description, ranges[i][1] - ranges[i][0] + 1, sequentialRevisions.size());
+                    Assert.assertEquals(description, sequentialRevisions, concurrentRevisions);
+                    Assert.assertTrue(description, Arrays.equals(sequentialDump, concurrentDump));
+                }
+            }
+        } finally {
+            svnOperationFactory.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    private byte[] dump(SvnOperationFactory svnOperationFactory, File repositoryRoot, long startRevision, long endRevision,
+                        boolean incremental, boolean useDeltas, int jobs, final List<Long> dumpedRevisions) throws SVNException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SvnRepositoryDump dump = svnOperationFactory.createRepositoryDump();
+        dump.setRepositoryRoot(repositoryRoot);
+        dump.setOut(out);
+        dump.setStartRevision(SVNRevision.create(startRevision));
+        dump.setEndRevision(SVNRevision.create(endRevision));
+        dump.setIncremental(incremental);
+        dump.setUseDelta(useDeltas);
+        dump.setJobs(jobs);
+        dump.setReceiver(new ISvnObjectReceiver<SVNAdminEvent>() {
+            public void receive(SvnTarget target, SVNAdminEvent event) {
+                dumpedRevisions.add(event.getRevision());
+            }
+        });
+        dump.run();
+        return out.toByteArray();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,379 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSChangedPaths;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSID;
+import org.tmatesoft.svn.core.internal.io.fs.FSPathChange;
+import org.tmatesoft.svn.core.internal.io.fs.FSPathChangeKind;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        final FSCache<FSCacheKey, String> cache = new FSCache<FSCacheKey, String>("test", 300);
+        final FSCacheKey key1 = new FSCacheKey("scope", 1, 10);
+        final FSCacheKey key2 = new FSCacheKey("scope", 2, 10);
+        final FSCacheKey key3 = new FSCacheKey("scope", 3, 10);
+
+        cache.put(key1, "value1", 100);
+        cache.put(key2, "value2", 100);
+        cache.put(key3, "value3", 100);
+        Assert.assertEquals(300, cache.getSize());
+
+        Assert.assertEquals("value1", cache.get(key1));
+
+        cache.put(new FSCacheKey("scope", 4, 10), "value4", 100);
+
+        Assert.assertEquals(3, cache.getCount());
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals("value1", cache.get(key1));
+        Assert.assertNull(cache.get(key2));
+        Assert.assertEquals("value3", cache.get(key3));
+    }
+
+    @Test
+    public void testHitsAndMissesAreCounted() throws Exception {
+        final FSCache<FSCacheKey, String> cache = new FSCache<FSCacheKey, String>("test", 1000);
+        cache.put(new FSCacheKey("scope", 1), "value", 10);
+
+        Assert.assertEquals("value", cache.get(new FSCacheKey("scope", 1)));
+        Assert.assertNull(cache.get(new FSCacheKey("scope", 2)));
+        Assert.assertNull(cache.get(new FSCacheKey("otherScope", 1)));
+
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testEntriesLargerThanCapacityAreNotCached() throws Exception {
+        final FSCache<FSCacheKey, String> cache = new FSCache<FSCacheKey, String>("test", 100);
+        cache.put(new FSCacheKey("scope", 1), "small", 50);
+        cache.put(new FSCacheKey("scope", 2), "huge", 101);
+
+        Assert.assertEquals(1, cache.getCount());
+        Assert.assertEquals(50, cache.getSize());
+
+        cache.setCapacity(10);
+        Assert.assertEquals(0, cache.getCount());
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testChangedPathsSurviveCompaction() throws Exception {
+        final Map changedPaths = new SVNHashMap();
+        final FSID id = FSID.createRevId("1", "2", 5, 100);
+        changedPaths.put("/trunk/file", new FSPathChange("/trunk/file", id, FSPathChangeKind.FS_PATH_CHANGE_MODIFY,
+                true, false, null, null, -1, SVNNodeKind.FILE));
+        changedPaths.put("/branches/b", new FSPathChange("/branches/b", id, FSPathChangeKind.FS_PATH_CHANGE_REPLACE,
+                false, true, Boolean.TRUE, "/trunk", 4, SVNNodeKind.DIR));
+        changedPaths.put("/old", new FSPathChange("/old", id, FSPathChangeKind.FS_PATH_CHANGE_DELETE,
+                false, false, Boolean.FALSE, null, -1, SVNNodeKind.UNKNOWN));
+
+        final Map restoredPaths = FSChangedPaths.create(changedPaths).toMap();
+
+        Assert.assertEquals(changedPaths.keySet(), restoredPaths.keySet());
+        for (Object path : changedPaths.keySet()) {
+            final FSPathChange change = (FSPathChange) changedPaths.get(path);
+            final FSPathChange restoredChange = (FSPathChange) restoredPaths.get(path);
+            Assert.assertNotSame(change, restoredChange);
+            Assert.assertEquals(change, restoredChange);
+            Assert.assertEquals(change.getChangeKind(), restoredChange.getChangeKind());
+            Assert.assertEquals(change.getKind(), restoredChange.getKind());
+            Assert.assertEquals(change.isTextModified(), restoredChange.isTextModified());
+            Assert.assertEquals(change.arePropertiesModified(), restoredChange.arePropertiesModified());
+            Assert.assertEquals(change.getMergeInfoModified(), restoredChange.getMergeInfoModified());
+            Assert.assertEquals(change.getRevNodeId(), restoredChange.getRevNodeId());
+        }
+    }
+
+    @Test
+    public void testRepositoryReadsUseCachesOnlyWhenEnabled() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRepositoryReadsUseCachesOnlyWhenEnabled", options);
+        final long memoryBudget = FSCacheManager.getMemoryBudget();
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("directory/file", "contents".getBytes());
+            commitBuilder1.commit();
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("directory/file", "changed contents".getBytes());
+            commitBuilder2.commit();
+
+            final String[] cacheNames = {"revision-nodes", "dir-contents", "fulltexts"};
+            final long[] budgets = {16 * 1024 * 1024, 0};
+            for (int i = 0; i < budgets.length; i++) {
+                FSCacheManager.setMemoryBudget(budgets[i]);
+                FSCacheManager.clearAll();
+                for (FSCache<?, ?> cache : FSCacheManager.getCaches()) {
+                    cache.resetStatistics();
+                }
+                // every session opens its own FSFS, so only the JVM-wide caches are shared between them
+                for (int run = 0; run < 2; run++) {
+                    Assert.assertArrayEquals("changed contents".getBytes(), getFile(url, "directory/file", 2));
+                }
+                for (int j = 0; j < cacheNames.length; j++) {
+                    final FSCache<?, ?> cache = getCache(cacheNames[j]);
+                    final String description = cacheNames[j] + ", budget " + budgets[i];
+                    if (budgets[i] > 0) {
+                        Assert.assertTrue(description, cache.getCount() > 0);
+                        Assert.assertTrue(description, cache.getHits() > 0);
+                    } else {
+                        Assert.assertEquals(description, 0, cache.getCount());
+                        Assert.assertEquals(description, 0, cache.getHits());
+                    }
+                }
+            }
+        } finally {
+            FSCacheManager.setMemoryBudget(memoryBudget);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testDeltaAgainstPlainRepresentation() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testDeltaAgainstPlainRepresentation", options);
+        final long memoryBudget = FSCacheManager.getMemoryBudget();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+            final Random random = new Random(2);
+            final byte[] data = new byte[300 * 1024];
+            random.nextBytes(data);
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file", data);
+            commitBuilder1.commit();
+
+            // Subversion may keep file contents as they are, SVNKit always writes deltas
+            final File revisionFile = new File(repositoryRoot, "db/revs/0/1");
+            final byte[] contents = replaceWithPlainRepresentation(revisionFile, random);
+
+            final byte[] changedContents = new byte[contents.length + 1000];
+            System.arraycopy(contents, 0, changedContents, 0, contents.length);
+            changedContents[200 * 1024] ^= 1;
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("file", changedContents);
+            commitBuilder2.commit();
+            final String revision2 = new String(SVNFileUtil.readFully(new File(repositoryRoot, "db/revs/0/2")), "ISO-8859-1");
+            Assert.assertTrue(revision2.startsWith("DELTA 1 0 "));
+
+            // the base is streamed without the cache and read at once with it
+            final long[] memoryBudgets = {0, 64 * 1024 * 1024};
+            for (int i = 0; i < memoryBudgets.length; i++) {
+                FSCacheManager.setMemoryBudget(memoryBudgets[i]);
+                FSCacheManager.clearAll();
+                Assert.assertArrayEquals(contents, getFile(url, "file", 1));
+                Assert.assertArrayEquals(changedContents, getFile(url, "file", 2));
+            }
+        } finally {
+            FSCacheManager.setMemoryBudget(memoryBudget);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexReadsUseCaches() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexReadsUseCaches", options);
+        final long memoryBudget = FSCacheManager.getMemoryBudget();
+        try {
+            FSCacheManager.setMemoryBudget(16 * 1024 * 1024);
+            final SVNURL url = createLogicallyAddressedRepository(sandbox.createDirectory("svn.repo"), 3);
+
+            final String[] cacheNames = {"l2p-headers", "l2p-pages"};
+            clearCaches();
+            for (int run = 0; run < 2; run++) {
+                for (long revision = 1; revision <= 3; revision++) {
+                    Assert.assertArrayEquals(("contents " + revision).getBytes(), getFile(url, "file", revision));
+                }
+                for (int i = 0; i < cacheNames.length; i++) {
+                    final FSCache<?, ?> cache = getCache(cacheNames[i]);
+                    final String description = cacheNames[i] + ", run " + run;
+                    Assert.assertTrue(description, cache.getCount() > 0);
+                    if (run == 0) {
+                        Assert.assertTrue(description, cache.getMisses() > 0);
+                        cache.resetStatistics();
+                    } else {
+                        // every session opens its own FSFS, so only the JVM-wide caches are shared between them
+                        Assert.assertTrue(description, cache.getHits() > 0);
+                        Assert.assertEquals(description, 0, cache.getMisses());
+                    }
+                }
+            }
+        } finally {
+            FSCacheManager.setMemoryBudget(memoryBudget);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexPagesAreEvicted() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexPagesAreEvicted", options);
+        final long memoryBudget = FSCacheManager.getMemoryBudget();
+        try {
+            FSCacheManager.setMemoryBudget(16 * 1024 * 1024);
+            final int revisions = 20;
+            final SVNURL url = createLogicallyAddressedRepository(sandbox.createDirectory("svn.repo"), revisions);
+
+            // room for a few pages only
+            FSCacheManager.setMemoryBudget(10 * 1024);
+            clearCaches();
+            for (int run = 0; run < 2; run++) {
+                for (long revision = 1; revision <= revisions; revision++) {
+                    Assert.assertArrayEquals(("contents " + revision).getBytes(), getFile(url, "file", revision));
+                }
+            }
+            final FSCache<?, ?> cache = getCache("l2p-pages");
+            Assert.assertTrue(cache.getEvictions() > 0);
+            Assert.assertTrue(cache.getSize() <= cache.getCapacity());
+            Assert.assertTrue(cache.getCount() < revisions);
+        } finally {
+            FSCacheManager.setMemoryBudget(memoryBudget);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexEntriesOfRecreatedRepositoryAreNotReused() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexEntriesOfRecreatedRepositoryAreNotReused", options);
+        final long memoryBudget = FSCacheManager.getMemoryBudget();
+        try {
+            FSCacheManager.setMemoryBudget(16 * 1024 * 1024);
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNURL url = createLogicallyAddressedRepository(repositoryRoot, 2);
+            clearCaches();
+            Assert.assertArrayEquals("contents 2".getBytes(), getFile(url, "file", 2));
+            final int count = getCache("l2p-pages").getCount();
+            Assert.assertTrue(count > 0);
+
+            // packing would move revisions to other files, but logically addressed repositories can't be packed yet;
+            // a repository created anew at the same location has the same revision files with different contents
+            SVNFileUtil.deleteAll(repositoryRoot, true);
+            url = createLogicallyAddressedRepository(repositoryRoot, 1);
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("other file", "other contents".getBytes());
+            commitBuilder.changeFile("file", "changed contents".getBytes());
+            commitBuilder.commit();
+            getCache("l2p-pages").resetStatistics();
+
+            Assert.assertArrayEquals("changed contents".getBytes(), getFile(url, "file", 2));
+            Assert.assertArrayEquals("other contents".getBytes(), getFile(url, "other file", 2));
+            Assert.assertTrue(getCache("l2p-pages").getCount() > count);
+
+            FSCacheManager.clearAll();
+            Assert.assertEquals(0, getCache("l2p-pages").getCount());
+            Assert.assertEquals(0, getCache("l2p-headers").getCount());
+        } finally {
+            FSCacheManager.setMemoryBudget(memoryBudget);
+            sandbox.dispose();
+        }
+    }
+
+    private SVNURL createLogicallyAddressedRepository(File repositoryRoot, int revisions) throws SVNException {
+        final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                false, false, false, false, false, true);
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        try {
+            fsfs.open();
+            Assert.assertEquals(8, fsfs.getDBFormat());
+            Assert.assertTrue(fsfs.isUseLogAddressing());
+        } finally {
+            fsfs.close();
+        }
+        for (int revision = 1; revision <= revisions; revision++) {
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            if (revision == 1) {
+                commitBuilder.addFile("file", ("contents " + revision).getBytes());
+            } else {
+                commitBuilder.changeFile("file", ("contents " + revision).getBytes());
+            }
+            commitBuilder.commit();
+        }
+        return url;
+    }
+
+    private void clearCaches() {
+        FSCacheManager.clearAll();
+        for (FSCache<?, ?> cache : FSCacheManager.getCaches()) {
+            cache.resetStatistics();
+        }
+    }
+
+    private byte[] replaceWithPlainRepresentation(File revisionFile, Random random) throws Exception {
+        final byte[] revision = SVNFileUtil.readFully(revisionFile);
+        final String text = new String(revision, "ISO-8859-1");
+        Assert.assertTrue(text.startsWith("DELTA\n"));
+        final int end = text.indexOf("ENDREP\n");
+        final int start = "DELTA\n".length();
+
+        // the plain contents take the place of the delta, so no offset changes
+        final byte[] contents = new byte[end - start];
+        random.nextBytes(contents);
+        System.arraycopy("PLAIN\n".getBytes("US-ASCII"), 0, revision, 0, start);
+        System.arraycopy(contents, 0, revision, start, contents.length);
+
+        final int textStart = text.indexOf("\ntext: 1 0 ", end) + 1;
+        final int textEnd = text.indexOf('\n', textStart);
+        final String[] fields = text.substring(textStart, textEnd).split(" ");
+        Assert.assertEquals(fields[4].length(), String.valueOf(contents.length).length());
+        fields[4] = String.valueOf(contents.length);
+        fields[5] = SVNFileUtil.toHexDigest(MessageDigest.getInstance("MD5").digest(contents));
+        fields[6] = SVNFileUtil.toHexDigest(MessageDigest.getInstance("SHA-1").digest(contents));
+        final StringBuilder textLine = new StringBuilder(fields[0]);
+        for (int i = 1; i < fields.length; i++) {
+            textLine.append(' ').append(fields[i]);
+        }
+        Assert.assertEquals(textEnd - textStart, textLine.length());
+        System.arraycopy(textLine.toString().getBytes("US-ASCII"), 0, revision, textStart, textLine.length());
+
+        SVNFileUtil.setReadonly(revisionFile, false);
+        SVNFileUtil.writeToFile(revisionFile, revision);
+        return contents;
+    }
+
+    private byte[] getFile(SVNURL url, String path, long revision) throws SVNException {
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+        try {
+            final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            svnRepository.getFile(path, revision, null, contents);
+            return contents.toByteArray();
+        } finally {
+            svnRepository.closeSession();
+        }
+    }
+
+    private FSCache<?, ?> getCache(String name) {
+        for (FSCache<?, ?> cache : FSCacheManager.getCaches()) {
+            if (name.equals(cache.getName())) {
+                return cache;
+            }
+        }
+        Assert.fail("No cache " + name);
+        return null;
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -5,6 +5,7 @@ import org.junit.Test;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.io.fs.FSMappedFiles;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSPackedNumbersStream;
 
 import java.io.File;
@@ -53,6 +54,52 @@ public class FSFileTest {
         }
     }
 
+    @Test
+    public void testParseMemoryMappedFile() throws Exception {
+        final String content =
+                "K 7\n" +
+                        "svn:log\n" +
+                        "V 7\n" +
+                        "Trunk.\n" +
+                        "\n" +
+                        "END";
+
+        final TestOptions options = TestOptions.getInstance();
+
+        FSFile file = null;
+        FSFile anotherFile = null;
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testParseMemoryMappedFile", options);
+        try {
+            final File directory = sandbox.createDirectory("directory");
+            final File fsFile = new File(directory, "fsfile");
+            TestUtil.writeFileContentsString(fsFile, content);
+
+            file = new FSFile(fsFile, true);
+            anotherFile = new FSFile(fsFile, true);
+            anotherFile.seek(content.indexOf("Trunk."));
+            Assert.assertEquals("Trunk.", anotherFile.readLine(80));
+
+            final SVNProperties properties = file.readProperties(true, true);
+            Assert.assertEquals("Trunk.\n", properties.getStringValue(SVNRevisionProperty.LOG));
+            Assert.assertEquals(content.length(), file.size());
+
+            final byte[] tail = new byte[10];
+            file.seek(content.length() - 3);
+            Assert.assertEquals(3, file.read(tail, 0, tail.length));
+            Assert.assertEquals(-1, file.read());
+
+            FSMappedFiles.invalidate(fsFile);
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+            if (anotherFile != null) {
+                anotherFile.close();
+            }
+            sandbox.dispose();
+        }
+    }
+
     @Test
     public void testParseByteArray() throws Exception {
         final String content =
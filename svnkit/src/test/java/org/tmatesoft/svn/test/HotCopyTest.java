@@ -0,0 +1,241 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.schema.ISqlJetIndexDef;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileListUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryHotCopy;
+
+public class HotCopyTest {
+
+    @Test
+    public void testIncrementalHotCopyOnlyCopiesChanges() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIncrementalHotCopyOnlyCopiesChanges", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final File copyRoot = sandbox.createDirectory("svn.copy");
+            final SVNURL url = createRepository(repositoryRoot);
+            updateMaxFilesPerDirectory(repositoryRoot);
+            for (int revision = 1; revision <= 25; revision++) {
+                createCommitThatAddsFile(url, "file" + revision, ("contents" + revision).getBytes());
+            }
+            pack(repositoryRoot);
+
+            final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+            try {
+                hotCopy(svnOperationFactory, repositoryRoot, copyRoot, false);
+                final File firstPack = new File(copyRoot, "db/revs/0.pack/pack");
+                final long firstPackLastModified = firstPack.lastModified();
+                final Map<File, Long> unchangedRevisionProperties = getLastModifiedTimes(new File(copyRoot, "db/revprops/1.pack"));
+                Thread.sleep(1100);
+
+                for (int revision = 26; revision <= 45; revision++) {
+                    createCommitThatAddsFile(url, "file" + revision, ("contents" + revision).getBytes());
+                }
+                final FSFS fsfs = new FSFS(repositoryRoot);
+                fsfs.open();
+                try {
+                    fsfs.setRevisionProperty(3, "test", SVNPropertyValue.create("packed"));
+                    fsfs.setRevisionProperty(22, "test", SVNPropertyValue.create("unpacked"));
+                } finally {
+                    fsfs.close();
+                }
+                pack(repositoryRoot);
+
+                hotCopy(svnOperationFactory, repositoryRoot, copyRoot, true);
+
+                Assert.assertEquals(firstPackLastModified, firstPack.lastModified());
+                Assert.assertEquals(unchangedRevisionProperties, getLastModifiedTimes(new File(copyRoot, "db/revprops/1.pack")));
+                Assert.assertFalse(new File(copyRoot, "db/revs/2").exists());
+                Assert.assertFalse(new File(copyRoot, "db/revs/3").exists());
+                Assert.assertTrue(new File(copyRoot, "db/revs/3.pack/pack").isFile());
+                Assert.assertTrue(new File(copyRoot, "db/revs/4/45").isFile());
+            } finally {
+                svnOperationFactory.dispose();
+            }
+
+            final FSFS copyFSFS = new FSFS(copyRoot);
+            copyFSFS.open();
+            final FSFS sourceFSFS = new FSFS(repositoryRoot);
+            sourceFSFS.open();
+            try {
+                Assert.assertEquals(45, copyFSFS.getYoungestRevision());
+                Assert.assertEquals(40, copyFSFS.getMinUnpackedRev());
+                Assert.assertEquals("packed", copyFSFS.getRevisionProperties(3).getStringValue("test"));
+                Assert.assertEquals("unpacked", copyFSFS.getRevisionProperties(22).getStringValue("test"));
+                final int representationsCount = sourceFSFS.getRepositoryCacheManager().getRepresentationsByRevisions(0, 45).size();
+                Assert.assertTrue(representationsCount >= 45);
+                Assert.assertEquals(representationsCount, copyFSFS.getRepositoryCacheManager().getRepresentationsByRevisions(0, 45).size());
+            } finally {
+                sourceFSFS.close();
+                copyFSFS.close();
+            }
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(SVNURL.fromFile(copyRoot));
+            try {
+                for (int revision = 1; revision <= 45; revision++) {
+                    Assert.assertEquals(SVNNodeKind.FILE, svnRepository.checkPath("file" + revision, revision));
+                    Assert.assertNotNull(svnRepository.getRevisionPropertyValue(revision, SVNRevisionProperty.DATE));
+                }
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void hotCopy(SvnOperationFactory svnOperationFactory, File repositoryRoot, File copyRoot, boolean incremental) throws SVNException {
+        final SvnRepositoryHotCopy hotCopy = svnOperationFactory.createRepositoryHotCopy();
+        hotCopy.setSrcRepositoryRoot(repositoryRoot);
+        hotCopy.setNewRepositoryRoot(copyRoot);
+        hotCopy.setIncremental(incremental);
+        hotCopy.setJobs(3);
+        hotCopy.run();
+    }
+
+    private Map<File, Long> getLastModifiedTimes(File directory) {
+        final Map<File, Long> lastModifiedTimes = new HashMap<File, Long>();
+        final File[] files = SVNFileListUtil.listFiles(directory);
+        for (int i = 0; i < files.length; i++) {
+            lastModifiedTimes.put(files[i], files[i].lastModified());
+        }
+        return lastModifiedTimes;
+    }
+
+    @Test
+    public void testRepresentationsOfRevisionsAreReadThroughIndex() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRepresentationsOfRevisionsAreReadThroughIndex", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = createRepository(repositoryRoot);
+            for (int revision = 1; revision <= 10; revision++) {
+                createCommitThatAddsFile(url, "file" + revision, ("contents" + revision).getBytes());
+            }
+            // rep-cache.db of an older version has no index
+            final File repCacheFile = new File(repositoryRoot, "db/rep-cache.db");
+            Assert.assertFalse(dropIndexes(repCacheFile).isEmpty());
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+                final List<FSRepresentation> allRepresentations = manager.getRepresentationsByRevisions(0, 10);
+                Assert.assertTrue(allRepresentations.size() >= 10);
+                final List<String> representations = new ArrayList<String>();
+                for (FSRepresentation representation : manager.getRepresentationsByRevisions(3, 5)) {
+                    Assert.assertTrue(representation.getRevision() >= 3 && representation.getRevision() <= 5);
+                    representations.add(representation.getSHA1HexDigest());
+                }
+                for (FSRepresentation representation : allRepresentations) {
+                    if (representation.getRevision() >= 3 && representation.getRevision() <= 5) {
+                        Assert.assertTrue(representations.remove(representation.getSHA1HexDigest()));
+                    }
+                }
+                Assert.assertTrue(representations.isEmpty());
+
+                manager.deleteRepresentationsAfter(7);
+                for (FSRepresentation representation : manager.getRepresentationsByRevisions(0, 10)) {
+                    Assert.assertTrue(representation.getRevision() <= 7);
+                }
+                Assert.assertFalse(manager.getRepresentationsByRevisions(7, 7).isEmpty());
+            } finally {
+                fsfs.close();
+            }
+            // the index is created again when the database is opened
+            Assert.assertFalse(dropIndexes(repCacheFile).isEmpty());
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private Set<String> dropIndexes(File repCacheFile) throws SqlJetException {
+        final SqlJetDb db = SqlJetDb.open(repCacheFile, true);
+        try {
+            final Set<String> indexNames = new HashSet<String>();
+            for (ISqlJetIndexDef index : db.getSchema().getIndexes(FSRepresentationCacheManager.REP_CACHE_TABLE)) {
+                if (!index.getName().startsWith("sqlite_autoindex")) {
+                    indexNames.add(index.getName());
+                }
+            }
+            db.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    for (String indexName : indexNames) {
+                        db.dropIndex(indexName);
+                    }
+                    return null;
+                }
+            });
+            return indexNames;
+        } finally {
+            db.close();
+        }
+    }
+
+    private void pack(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            new FSPacker(null).pack(fsfs);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private SVNURL createRepository(File repositoryRoot) throws SVNException {
+        // logically addressed repositories can't be packed yet
+        final boolean useLogAddressing = FSFS.isDefaultUseLogAddressing();
+        FSFS.setDefaultUseLogAddressing(false);
+        try {
+            return SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+        } finally {
+            FSFS.setDefaultUseLogAddressing(useLogAddressing);
+        }
+    }
+
+    private void updateMaxFilesPerDirectory(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+        fsfs.close();
+    }
+
+    private void createCommitThatAddsFile(SVNURL url, String filename, byte[] contents) throws SVNException {
+        final CommitBuilder commitBuilder = new CommitBuilder(url);
+        commitBuilder.addFile(filename, contents);
+        commitBuilder.commit();
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
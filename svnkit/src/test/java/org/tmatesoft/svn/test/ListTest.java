@@ -224,11 +224,13 @@ public class ListTest {
         final TestOptions options = TestOptions.getInstance();
 
         final long oldMaxFilesPerDirectory = FSFS.getDefaultMaxFilesPerDirectory();
+        final boolean oldUseLogAddressing = FSFS.isDefaultUseLogAddressing();
 
         final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
         final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testGetDirHangsLongCommitMessage", options);
         try {
             FSFS.setDefaultMaxFilesPerDirectory(3); //3 < 5(number of revisions), so the repository will be packed
+            FSFS.setDefaultUseLogAddressing(false); //logically addressed repositories can't be packed yet
             final File repositoryDirectory = sandbox.createDirectory("svn.repo");
 
             final SVNURL url;
@@ -277,6 +279,7 @@ public class ListTest {
             }
         } finally {
             FSFS.setDefaultMaxFilesPerDirectory(oldMaxFilesPerDirectory);
+            FSFS.setDefaultUseLogAddressing(oldUseLogAddressing);
 
             svnOperationFactory.dispose();
             sandbox.dispose();
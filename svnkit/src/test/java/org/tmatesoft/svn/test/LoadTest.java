@@ -0,0 +1,246 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.io.fs.IFSSqlJetTransaction;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSDeferredRepresentationCacheManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryDump;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryLoad;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryVerify;
+
+public class LoadTest {
+
+    @Test
+    public void testBulkLoadCreatesSameRepository() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testBulkLoadCreatesSameRepository", options);
+        try {
+            final File sourceRoot = sandbox.createDirectory("source.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(sourceRoot, true, false);
+            for (int revision = 1; revision <= 12; revision++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                if (revision == 1) {
+                    commitBuilder.addFile("trunk/file", "1\n".getBytes());
+                    commitBuilder.addFile("trunk/файл", "файл\n".getBytes("UTF-8"));
+                } else if (revision == 4) {
+                    commitBuilder.addDirectoryByCopying("branches/branch", "trunk");
+                    commitBuilder.setFileProperty("trunk/file", "свойство", SVNPropertyValue.create("значение"));
+                } else if (revision == 8) {
+                    commitBuilder.delete("branches/branch/file");
+                } else {
+                    commitBuilder.changeFile("trunk/file", (revision + "\n").getBytes());
+                    // same contents as in an earlier revision, shared through the rep-cache
+                    commitBuilder.addFile("trunk/copy" + revision, ((revision - 1) + "\n").getBytes());
+                }
+                commitBuilder.commit();
+            }
+
+            final byte[] dump = dump(svnOperationFactory, sourceRoot, true);
+
+            final File normalRoot = sandbox.createDirectory("normal.repo");
+            SVNRepositoryFactory.createLocalRepository(normalRoot, true, false);
+            load(svnOperationFactory, normalRoot, dump, false, 0);
+
+            final File[] bulkRoots = new File[2];
+            final int[] flushIntervals = {0, 5};
+            for (int i = 0; i < bulkRoots.length; i++) {
+                bulkRoots[i] = sandbox.createDirectory("bulk" + flushIntervals[i] + ".repo");
+                SVNRepositoryFactory.createLocalRepository(bulkRoots[i], true, false);
+                load(svnOperationFactory, bulkRoots[i], dump, true, flushIntervals[i]);
+            }
+
+            final List<String> normalRepresentations = getCachedRepresentations(normalRoot);
+            Assert.assertFalse(normalRepresentations.isEmpty());
+            for (int i = 0; i < bulkRoots.length; i++) {
+                verify(svnOperationFactory, bulkRoots[i]);
+                for (long revision = 0; revision <= 12; revision++) {
+                    Assert.assertTrue("r" + revision, Arrays.equals(
+                            SVNFileUtil.readFully(new File(normalRoot, "db/revs/0/" + revision)),
+                            SVNFileUtil.readFully(new File(bulkRoots[i], "db/revs/0/" + revision))));
+                }
+                Assert.assertEquals(normalRepresentations, getCachedRepresentations(bulkRoots[i]));
+                Assert.assertTrue(Arrays.equals(dump(svnOperationFactory, normalRoot, false), dump(svnOperationFactory, bulkRoots[i], false)));
+            }
+        } finally {
+            svnOperationFactory.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testReopeningKeepsWriteBatch() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testReopeningKeepsWriteBatch", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                fsfs.beginWriteBatch();
+                fsfs.getRepositoryCacheManager().insert(createRepresentation("1"), false);
+                Assert.assertNull(getCachedRepresentation(repositoryRoot, "1"));
+
+                fsfs.openDB();
+                Assert.assertTrue(fsfs.isWriteBatch());
+                Assert.assertNotNull(getCachedRepresentation(repositoryRoot, "1"));
+
+                fsfs.getRepositoryCacheManager().insert(createRepresentation("2"), false);
+                Assert.assertNull(getCachedRepresentation(repositoryRoot, "2"));
+            } finally {
+                fsfs.close();
+            }
+            Assert.assertNotNull(getCachedRepresentation(repositoryRoot, "2"));
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testWriteBatchRaisesRepCacheFailures() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testWriteBatchRaisesRepCacheFailures", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            fsfs.beginWriteBatch();
+            final FSDeferredRepresentationCacheManager manager = (FSDeferredRepresentationCacheManager) fsfs.getRepositoryCacheManager();
+            manager.insert(createRepresentation("1"), false);
+            final FSRepresentation[] pendingRepresentation = new FSRepresentation[1];
+            manager.runReadTransaction(new IFSSqlJetTransaction() {
+                public void run() throws SVNException {
+                    pendingRepresentation[0] = manager.getRepresentationByHash(createRepresentation("1").getSHA1HexDigest());
+                }
+            });
+            Assert.assertNotNull(pendingRepresentation[0]);
+            Assert.assertEquals(1, pendingRepresentation[0].getItemIndex());
+            Assert.assertNull(getCachedRepresentation(repositoryRoot, "1"));
+
+            // the database can't be written any more
+            final RandomAccessFile repCacheFile = new RandomAccessFile(new File(repositoryRoot, "db/rep-cache.db"), "rw");
+            try {
+                repCacheFile.write(new byte[(int) repCacheFile.length()]);
+            } finally {
+                repCacheFile.close();
+            }
+            try {
+                fsfs.flushWriteBatch();
+                Assert.fail("rep-cache failure is not raised");
+            } catch (SVNException e) {
+                // expected
+            }
+            Assert.assertEquals(1, manager.getPendingCount());
+            try {
+                fsfs.close();
+                Assert.fail("rep-cache failure is not raised");
+            } catch (SVNException e) {
+                // expected
+            }
+            Assert.assertFalse(fsfs.isWriteBatch());
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private byte[] dump(SvnOperationFactory svnOperationFactory, File repositoryRoot, boolean useDeltas) throws SVNException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final SvnRepositoryDump dump = svnOperationFactory.createRepositoryDump();
+        dump.setRepositoryRoot(repositoryRoot);
+        dump.setOut(out);
+        dump.setUseDelta(useDeltas);
+        dump.run();
+        return out.toByteArray();
+    }
+
+    private void load(SvnOperationFactory svnOperationFactory, File repositoryRoot, byte[] dump, boolean bulkLoad, int flushInterval) throws SVNException {
+        final SvnRepositoryLoad load = svnOperationFactory.createRepositoryLoad();
+        load.setRepositoryRoot(repositoryRoot);
+        load.setDumpStream(new ByteArrayInputStream(dump));
+        load.setBulkLoad(bulkLoad);
+        load.setFlushInterval(flushInterval);
+        load.run();
+    }
+
+    private void verify(SvnOperationFactory svnOperationFactory, File repositoryRoot) throws SVNException {
+        final SvnRepositoryVerify verify = svnOperationFactory.createRepositoryVerify();
+        verify.setRepositoryRoot(repositoryRoot);
+        verify.setStartRevision(SVNRevision.create(0));
+        verify.setEndRevision(SVNRevision.HEAD);
+        verify.run();
+    }
+
+    private List<String> getCachedRepresentations(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        try {
+            fsfs.open();
+            final IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+            final List<String> representations = new ArrayList<String>();
+            for (FSRepresentation representation : manager.getRepresentationsByRevisions(0, fsfs.getYoungestRevision())) {
+                representations.add(representation.getSHA1HexDigest() + " " + representation.getRevision() + " " +
+                        representation.getItemIndex() + " " + representation.getSize() + " " + representation.getExpandedSize());
+            }
+            Collections.sort(representations);
+            return representations;
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private FSRepresentation createRepresentation(String hashSuffix) {
+        final FSRepresentation representation = new FSRepresentation();
+        representation.setSHA1HexDigest("da39a3ee5e6b4b0d3255bfef9560189" + hashSuffix + "afd8070" + hashSuffix);
+        representation.setRevision(0);
+        representation.setItemIndex(1);
+        representation.setSize(1);
+        representation.setExpandedSize(1);
+        return representation;
+    }
+
+    private FSRepresentation getCachedRepresentation(File repositoryRoot, final String hashSuffix) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        try {
+            fsfs.open();
+            final IFSRepresentationCacheManager manager = fsfs.getRepositoryCacheManager();
+            final FSRepresentation[] representation = new FSRepresentation[1];
+            manager.runReadTransaction(new IFSSqlJetTransaction() {
+                public void run() throws SVNException {
+                    representation[0] = manager.getRepresentationByHash(createRepresentation(hashSuffix).getSHA1HexDigest());
+                }
+            });
+            return representation[0];
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,183 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.wc.SVNFileListUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNEvent;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
+
+public class PackTest {
+
+    @Test
+    public void testConcurrentPackResumesAndMatchesSequentialPack() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testConcurrentPackResumesAndMatchesSequentialPack", options);
+        try {
+            final File[] repositoryRoots = new File[2];
+            for (int i = 0; i < repositoryRoots.length; i++) {
+                repositoryRoots[i] = sandbox.createDirectory("svn.repo" + i);
+                final SVNURL url = createRepository(repositoryRoots[i]);
+                updateMaxFilesPerDirectory(repositoryRoots[i]);
+                for (int revision = 1; revision <= 65; revision++) {
+                    createCommitThatAddsFile(url, "file" + revision);
+                }
+            }
+
+            final FSFS sequentialFSFS = new FSFS(repositoryRoots[0]);
+            sequentialFSFS.open();
+            new FSPacker(null).pack(sequentialFSFS);
+            sequentialFSFS.close();
+
+            final FSFS concurrentFSFS = new FSFS(repositoryRoots[1]);
+            concurrentFSFS.open();
+            try {
+                final File secondPackMarker = new File(repositoryRoots[1], "db/revs/1.pack/pack-complete");
+                final FSPacker interruptedPacker = new FSPacker(new ISVNAdminEventHandler() {
+                    private boolean myIsCancelled;
+
+                    public void handleAdminEvent(SVNAdminEvent event, double progress) {
+                        if (event.getAction() == SVNAdminEventAction.PACK_END) {
+                            // the first shard is switched, cancel once the next one is packed too
+                            for (int i = 0; i < 300 && !secondPackMarker.isFile(); i++) {
+                                sleep(100);
+                            }
+                            myIsCancelled = true;
+                        }
+                    }
+
+                    public void handleEvent(SVNEvent event, double progress) {
+                    }
+
+                    public void checkCancelled() throws SVNCancelException {
+                        if (myIsCancelled) {
+                            throw new SVNCancelException();
+                        }
+                    }
+                });
+                interruptedPacker.setThreadCount(3);
+                try {
+                    interruptedPacker.pack(concurrentFSFS);
+                    Assert.fail("Packing was expected to be cancelled");
+                } catch (SVNCancelException e) {
+                    //expected
+                }
+                Assert.assertEquals(10, concurrentFSFS.getMinUnpackedRev());
+                // shards packed completely before the cancellation are not packed again
+                final Map<File, Long> completedPacks = new HashMap<File, Long>();
+                for (int shard = 1; shard < 6; shard++) {
+                    final File packDir = new File(repositoryRoots[1], "db/revs/" + shard + ".pack");
+                    if (new File(packDir, "pack-complete").isFile()) {
+                        completedPacks.put(new File(packDir, "pack"), new File(packDir, "pack").lastModified());
+                    }
+                }
+                Assert.assertFalse(completedPacks.isEmpty());
+                Thread.sleep(1100);
+
+                final List<Long> packedShards = new ArrayList<Long>();
+                final FSPacker packer = new FSPacker(new ISVNAdminEventHandler() {
+                    public void handleAdminEvent(SVNAdminEvent event, double progress) {
+                        if (event.getAction() == SVNAdminEventAction.PACK_END) {
+                            packedShards.add(event.getShard());
+                        }
+                    }
+
+                    public void handleEvent(SVNEvent event, double progress) {
+                    }
+
+                    public void checkCancelled() {
+                    }
+                });
+                packer.setThreadCount(3);
+                packer.pack(concurrentFSFS);
+                Assert.assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L), packedShards);
+                Assert.assertEquals(60, concurrentFSFS.getMinUnpackedRev());
+                for (Map.Entry<File, Long> completedPack : completedPacks.entrySet()) {
+                    Assert.assertEquals(completedPack.getValue().longValue(), completedPack.getKey().lastModified());
+                }
+            } finally {
+                concurrentFSFS.close();
+            }
+
+            final File revisionsRoot0 = new File(repositoryRoots[0], "db/revs");
+            final File revisionsRoot1 = new File(repositoryRoots[1], "db/revs");
+            Assert.assertEquals(SVNFileListUtil.listFiles(revisionsRoot0).length, SVNFileListUtil.listFiles(revisionsRoot1).length);
+            for (int shard = 0; shard < 6; shard++) {
+                final File packDir0 = new File(revisionsRoot0, shard + ".pack");
+                final File packDir1 = new File(revisionsRoot1, shard + ".pack");
+                Assert.assertEquals(2, SVNFileListUtil.listFiles(packDir1).length);
+                Assert.assertArrayEquals(SVNFileUtil.readFully(new File(packDir0, "pack")), SVNFileUtil.readFully(new File(packDir1, "pack")));
+                Assert.assertArrayEquals(SVNFileUtil.readFully(new File(packDir0, "manifest")), SVNFileUtil.readFully(new File(packDir1, "manifest")));
+                Assert.assertFalse(new File(revisionsRoot1, String.valueOf(shard)).exists());
+            }
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(SVNURL.fromFile(repositoryRoots[1]));
+            try {
+                for (int revision = 1; revision <= 65; revision++) {
+                    Assert.assertEquals(SVNNodeKind.FILE, svnRepository.checkPath("file" + revision, revision));
+                    Assert.assertNotNull(svnRepository.getRevisionPropertyValue(revision, SVNRevisionProperty.DATE));
+                }
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private SVNURL createRepository(File repositoryRoot) throws SVNException {
+        // logically addressed repositories can't be packed yet
+        final boolean useLogAddressing = FSFS.isDefaultUseLogAddressing();
+        FSFS.setDefaultUseLogAddressing(false);
+        try {
+            return SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+        } finally {
+            FSFS.setDefaultUseLogAddressing(useLogAddressing);
+        }
+    }
+
+    private void updateMaxFilesPerDirectory(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        fsfs.writeDBFormat(fsfs.getDBFormat(), 10, true);
+        fsfs.close();
+    }
+
+    private void createCommitThatAddsFile(SVNURL url, String filename) throws SVNException {
+        final CommitBuilder commitBuilder = new CommitBuilder(url);
+        commitBuilder.addFile(filename);
+        commitBuilder.commit();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -6,10 +6,12 @@ import org.junit.Test;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.SVNURL;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
 import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
 import org.tmatesoft.svn.core.internal.wc.SVNConfigFile;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.SVNRepository;
@@ -24,6 +26,7 @@ import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
 import org.tmatesoft.svn.core.wc2.SvnTarget;
 
 import java.io.File;
+import java.util.Date;
 
 public class PackedRevPropsTest {
 
@@ -34,8 +37,7 @@ public class PackedRevPropsTest {
         final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPackFSFSRepository", options);
         try {
             final File repositoryRoot = sandbox.createDirectory("svn.repo");
-            SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
-                    false, false, false, false, false, true);
+            SVNURL url = createRepository(repositoryRoot);
 
             updateMaxFilesPerDirectory(repositoryRoot);
 
@@ -72,8 +74,7 @@ public class PackedRevPropsTest {
         final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPackAndCompressFSFSRepository", options);
         try {
             final File repositoryRoot = sandbox.createDirectory("svn.repo");
-            SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
-                    false, false, false, false, false, true);
+            SVNURL url = createRepository(repositoryRoot);
 
             updateCompressedFlag(repositoryRoot, true);
             updateMaxFilesPerDirectory(repositoryRoot);
@@ -109,6 +110,93 @@ public class PackedRevPropsTest {
         }
     }
 
+    @Test
+    public void testCachedRevisionPropertiesFollowChanges() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCachedRevisionPropertiesFollowChanges", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNURL url = createRepository(repositoryRoot);
+
+            updateMaxFilesPerDirectory(repositoryRoot);
+
+            for (int i = 0; i < 20; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            final FSFS packingFSFS = new FSFS(repositoryRoot);
+            packingFSFS.open();
+            new FSPacker(null).pack(packingFSFS);
+            packingFSFS.close();
+
+            final FSFS readingFSFS = new FSFS(repositoryRoot);
+            readingFSFS.open();
+            final FSFS writingFSFS = new FSFS(repositoryRoot);
+            writingFSFS.open();
+            try {
+                for (int i = 1; i <= 20; i++) {
+                    readingFSFS.getRevisionProperties(i).put("test", "modified copy");
+                    Assert.assertNull(readingFSFS.getRevisionProperties(i).getSVNPropertyValue("test"));
+                }
+                for (int i = 1; i <= 20; i++) {
+                    writingFSFS.setRevisionProperty(i, "test", SVNPropertyValue.create("value" + i));
+                }
+                for (int i = 1; i <= 20; i++) {
+                    final SVNPropertyValue propertyValue = readingFSFS.getRevisionProperties(i).getSVNPropertyValue("test");
+                    Assert.assertEquals("value" + i, SVNPropertyValue.getPropertyAsString(propertyValue));
+                }
+            } finally {
+                writingFSFS.close();
+                readingFSFS.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testDatedRevisionFollowsDateChanges() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testDatedRevisionFollowsDateChanges", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNURL url = createRepository(repositoryRoot);
+
+            updateMaxFilesPerDirectory(repositoryRoot);
+
+            for (int i = 0; i < 25; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            final FSFS packingFSFS = new FSFS(repositoryRoot);
+            packingFSFS.open();
+            new FSPacker(null).pack(packingFSFS);
+            packingFSFS.close();
+
+            final long baseTime = SVNDate.parseDate("2010-01-01T00:00:00.000000Z").getTime();
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                for (int i = 0; i <= 25; i++) {
+                    fsfs.setRevisionProperty(i, SVNRevisionProperty.DATE, SVNPropertyValue.create(SVNDate.formatDate(new Date(baseTime + i * 1000L))));
+                }
+                for (int i = 0; i <= 25; i++) {
+                    Assert.assertEquals(i, fsfs.getDatedRevision(new Date(baseTime + i * 1000L)));
+                    Assert.assertEquals(i, fsfs.getDatedRevision(new Date(baseTime + i * 1000L + 500)));
+                }
+                Assert.assertEquals(0, fsfs.getDatedRevision(new Date(baseTime - 1000L)));
+                Assert.assertEquals(25, fsfs.getDatedRevision(new Date(baseTime + 60 * 1000L)));
+
+                fsfs.setRevisionProperty(13, SVNRevisionProperty.DATE, SVNPropertyValue.create(SVNDate.formatDate(new Date(baseTime + 12 * 1000L + 100))));
+                Assert.assertEquals(13, fsfs.getDatedRevision(new Date(baseTime + 12 * 1000L + 500)));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
     @Test
     public void testDeltaSelfRepresentationHeader() throws Exception {
         //SVNKIT-504
@@ -206,6 +294,28 @@ public class PackedRevPropsTest {
         }
     }
 
+    private void pack(File repositoryRoot) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            new FSPacker(null).pack(fsfs);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private SVNURL createRepository(File repositoryRoot) throws SVNException {
+        // logically addressed repositories can't be packed yet
+        final boolean useLogAddressing = FSFS.isDefaultUseLogAddressing();
+        FSFS.setDefaultUseLogAddressing(false);
+        try {
+            return SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+        } finally {
+            FSFS.setDefaultUseLogAddressing(useLogAddressing);
+        }
+    }
+
     private void updateCompressedFlag(File repositoryRoot, boolean compressed) throws SVNException {
         final FSFS fsfs = new FSFS(repositoryRoot);
         fsfs.open();
@@ -0,0 +1,198 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNFileRevisionHandler;
+import org.tmatesoft.svn.core.io.SVNFileRevision;
+import org.tmatesoft.svn.core.io.SVNLocationEntry;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.core.wc.SVNClientManager;
+
+public class PathHistoryIndexTest {
+
+    private static final String[][] HISTORIES = {
+        {"trunk/file", "5"},
+        {"trunk/file", "11"},
+        {"trunk/dir", "11"},
+        {"trunk/dir/moved", "11"},
+        {"branches/branch", "11"},
+        {"branches/branch/file", "5"},
+        {"branches/branch/file", "11"},
+        {"branches/branch/dir/file", "11"},
+        {"branches/branch/moved", "11"},
+    };
+
+    @Test
+    public void testIndexedHistoryMatchesNodeHistory() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexedHistoryMatchesNodeHistory", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/file", "1".getBytes());
+            commitBuilder1.addFile("trunk/dir/file", "1".getBytes());
+            commitBuilder1.addDirectory("branches");
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("trunk/file", "2".getBytes());
+            commitBuilder2.commit();
+
+            final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+            commitBuilder3.addDirectoryByCopying("branches/branch", "trunk");
+            commitBuilder3.commit();
+
+            final CommitBuilder commitBuilder4 = new CommitBuilder(url);
+            commitBuilder4.changeFile("branches/branch/file", "4".getBytes());
+            commitBuilder4.changeFile("trunk/dir/file", "4".getBytes());
+            commitBuilder4.commit();
+
+            final CommitBuilder commitBuilder5 = new CommitBuilder(url);
+            commitBuilder5.changeFile("branches/branch/dir/file", "5".getBytes());
+            commitBuilder5.commit();
+
+            final CommitBuilder commitBuilder6 = new CommitBuilder(url);
+            commitBuilder6.replaceFileByCopying("branches/branch/file", "trunk/file", 4);
+            commitBuilder6.commit();
+
+            final CommitBuilder commitBuilder7 = new CommitBuilder(url);
+            commitBuilder7.addFileByCopying("branches/branch/moved", "branches/branch/dir/file");
+            commitBuilder7.delete("branches/branch/dir/file");
+            commitBuilder7.commit();
+
+            final CommitBuilder commitBuilder8 = new CommitBuilder(url);
+            commitBuilder8.changeFile("branches/branch/moved", "8".getBytes());
+            commitBuilder8.delete("trunk/file");
+            commitBuilder8.commit();
+
+            final CommitBuilder commitBuilder9 = new CommitBuilder(url);
+            commitBuilder9.addFile("trunk/file", "9".getBytes());
+            commitBuilder9.addFileByCopying("trunk/dir/moved", "branches/branch/file", 7);
+            commitBuilder9.addFile("branches/branch/dir/file", "9".getBytes());
+            commitBuilder9.commit();
+
+            final CommitBuilder commitBuilder10 = new CommitBuilder(url);
+            commitBuilder10.changeFile("trunk/file", "10".getBytes());
+            commitBuilder10.commit();
+
+            final String expectedHistory = describeHistories(url, 10);
+
+            final SVNClientManager clientManager = SVNClientManager.newInstance();
+            try {
+                clientManager.getAdminClient().doBuildPathIndex(repositoryRoot);
+            } finally {
+                clientManager.dispose();
+            }
+            Assert.assertEquals(expectedHistory, describeHistories(url, 10));
+
+            final CommitBuilder commitBuilder11 = new CommitBuilder(url);
+            commitBuilder11.changeFile("trunk/dir/moved", "11".getBytes());
+            commitBuilder11.commit();
+            final String indexedHistory = describeHistories(url, 11);
+
+            final File indexFile = new File(repositoryRoot, "db/path-history.db");
+            Assert.assertTrue(indexFile.isFile());
+            SVNFileUtil.deleteFile(indexFile);
+            Assert.assertEquals(describeHistories(url, 11), indexedHistory);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private String describeHistories(SVNURL url, long youngestRevision) throws SVNException {
+        final StringBuffer description = new StringBuffer();
+        final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+        try {
+            for (int i = 0; i < HISTORIES.length; i++) {
+                final String path = HISTORIES[i][0];
+                final long pegRevision = Math.min(youngestRevision, Long.parseLong(HISTORIES[i][1]));
+                if (svnRepository.checkPath(path, pegRevision) == SVNNodeKind.NONE) {
+                    continue;
+                }
+                description.append(path).append('@').append(pegRevision).append('\n');
+                describeLog(svnRepository, path, pegRevision, false, description);
+                describeLog(svnRepository, path, pegRevision, true, description);
+
+                final long[] revisions = new long[(int) pegRevision + 1];
+                for (int revision = 0; revision <= pegRevision; revision++) {
+                    revisions[revision] = revision;
+                }
+                final Map locations = new TreeMap();
+                try {
+                    final Collection entries = svnRepository.getLocations(path, (Collection) null, pegRevision, revisions);
+                    for (Iterator iterator = entries.iterator(); iterator.hasNext();) {
+                        final SVNLocationEntry entry = (SVNLocationEntry) iterator.next();
+                        locations.put(new Long(entry.getRevision()), entry.getPath());
+                    }
+                } catch (SVNException e) {
+                    locations.put(new Long(-1), e.getErrorMessage().getErrorCode().toString());
+                }
+                description.append(" locations ").append(locations).append('\n');
+
+                if (svnRepository.checkPath(path, pegRevision) == SVNNodeKind.FILE) {
+                    describeFileRevisions(svnRepository, path, pegRevision, description);
+                }
+            }
+        } finally {
+            svnRepository.closeSession();
+        }
+        return description.toString();
+    }
+
+    private void describeLog(SVNRepository svnRepository, String path, long pegRevision, boolean strictNodeHistory,
+                             final StringBuffer description) throws SVNException {
+        description.append(strictNodeHistory ? " strict log" : " log");
+        svnRepository.log(new String[] {path}, pegRevision, 0, true, strictNodeHistory, new ISVNLogEntryHandler() {
+            public void handleLogEntry(SVNLogEntry logEntry) {
+                description.append(' ').append(logEntry.getRevision()).append(new TreeMap(logEntry.getChangedPaths()).keySet());
+            }
+        });
+        description.append('\n');
+    }
+
+    private void describeFileRevisions(SVNRepository svnRepository, String path, long pegRevision,
+                                       final StringBuffer description) throws SVNException {
+        description.append(" file revisions");
+        svnRepository.getFileRevisions(path, 0, pegRevision, new ISVNFileRevisionHandler() {
+            public void openRevision(SVNFileRevision fileRevision) {
+                description.append(' ').append(fileRevision.getPath()).append('@').append(fileRevision.getRevision());
+            }
+
+            public void closeRevision(String token) {
+            }
+
+            public void applyTextDelta(String path, String baseChecksum) {
+            }
+
+            public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                return null;
+            }
+
+            public void textDeltaEnd(String path) {
+            }
+        });
+        description.append('\n');
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,103 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
+import org.tmatesoft.svn.core.wc2.ISvnObjectReceiver;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.SvnTarget;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryRecover;
+
+public class RecoverTest {
+
+    @Test
+    public void testConcurrentRecoveryRestoresNextIds() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testConcurrentRecoveryRestoresNextIds", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            // pre-1.5 repositories keep the next node and copy ids in current
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true, false, false, true);
+            for (int revision = 1; revision <= 40; revision++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                if (revision == 1) {
+                    commitBuilder.addFile("trunk/file", "1".getBytes());
+                } else if (revision % 10 == 0) {
+                    commitBuilder.addDirectoryByCopying("branches/branch" + revision, "trunk");
+                } else {
+                    commitBuilder.changeFile("trunk/file", String.valueOf(revision).getBytes());
+                }
+                // more than 36 node ids, so that they take more than one digit
+                commitBuilder.addFile("trunk/dir" + revision + "/file", String.valueOf(revision).getBytes());
+                commitBuilder.commit();
+            }
+
+            final File currentFile = new File(repositoryRoot, "db/current");
+            final String current = "40 " + getNextIds(repositoryRoot, 40) + "\n";
+            Assert.assertTrue(current, current.matches("40 [0-9a-z]{2} [0-9a-z]+\n"));
+
+            final List<Long> expectedRevisions = new ArrayList<Long>();
+            for (long revision = 0; revision <= 40; revision++) {
+                expectedRevisions.add(revision);
+            }
+            for (int jobs = 1; jobs <= 4; jobs += 3) {
+                SVNFileUtil.writeToFile(currentFile, "40 0 0\n", "US-ASCII");
+                Assert.assertEquals(expectedRevisions, recover(svnOperationFactory, repositoryRoot, jobs));
+                Assert.assertEquals("jobs=" + jobs, current, SVNFileUtil.readFile(currentFile));
+            }
+        } finally {
+            svnOperationFactory.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    private List<Long> recover(SvnOperationFactory svnOperationFactory, File repositoryRoot, int jobs) throws SVNException {
+        final List<Long> scannedRevisions = new ArrayList<Long>();
+        final SvnRepositoryRecover recover = svnOperationFactory.createRepositoryRecover();
+        recover.setRepositoryRoot(repositoryRoot);
+        recover.setJobs(jobs);
+        recover.setReceiver(new ISvnObjectReceiver<SVNAdminEvent>() {
+            public void receive(SvnTarget target, SVNAdminEvent event) {
+                if (event.getAction() == SVNAdminEventAction.RECOVERY_REVISION_SCANNED) {
+                    scannedRevisions.add(event.getRevision());
+                }
+            }
+        });
+        recover.run();
+        return scannedRevisions;
+    }
+
+    private String getNextIds(File repositoryRoot, long youngestRevision) throws SVNException {
+        final String[] maxIds = { "0", "0" };
+        for (long revision = 0; revision <= youngestRevision; revision++) {
+            final String contents = SVNFileUtil.readFile(new File(repositoryRoot, "db/revs/" + revision));
+            for (String line : contents.split("\n")) {
+                if (line.startsWith("id: ")) {
+                    final String[] id = line.substring("id: ".length()).split("\\.");
+                    for (int i = 0; i < maxIds.length; i++) {
+                        if (id[i].length() > maxIds[i].length() || (id[i].length() == maxIds[i].length() && id[i].compareTo(maxIds[i]) > 0)) {
+                            maxIds[i] = id[i];
+                        }
+                    }
+                }
+            }
+        }
+        return FSRepositoryUtil.generateNextKey(maxIds[0]) + " " + FSRepositoryUtil.generateNextKey(maxIds[1]);
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
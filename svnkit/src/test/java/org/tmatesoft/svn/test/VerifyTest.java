@@ -0,0 +1,105 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.cache.FSCacheManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc2.ISvnObjectReceiver;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.SvnTarget;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryVerify;
+
+public class VerifyTest {
+
+    @Test
+    public void testConcurrentVerificationReportsInRevisionOrder() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testConcurrentVerificationReportsInRevisionOrder", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+            for (int revision = 1; revision <= 30; revision++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                if (revision == 1) {
+                    commitBuilder.addFile("file", "1".getBytes());
+                } else {
+                    commitBuilder.changeFile("file", String.valueOf(revision).getBytes());
+                }
+                commitBuilder.addFile("file" + revision, String.valueOf(revision).getBytes());
+                commitBuilder.commit();
+            }
+
+            final List<Long> expectedRevisions = new ArrayList<Long>();
+            for (long revision = 0; revision <= 30; revision++) {
+                expectedRevisions.add(revision);
+            }
+            Assert.assertEquals(expectedRevisions, verify(svnOperationFactory, repositoryRoot, 1, null));
+            Assert.assertEquals(expectedRevisions, verify(svnOperationFactory, repositoryRoot, 4, null));
+
+            corruptRevision(repositoryRoot, 17);
+            corruptRevision(repositoryRoot, 23);
+            FSCacheManager.clearAll();
+
+            final SVNException[] sequentialError = new SVNException[1];
+            final List<Long> sequentialRevisions = verify(svnOperationFactory, repositoryRoot, 1, sequentialError);
+            final SVNException[] concurrentError = new SVNException[1];
+            final List<Long> concurrentRevisions = verify(svnOperationFactory, repositoryRoot, 4, concurrentError);
+
+            Assert.assertEquals(expectedRevisions.subList(0, 17), sequentialRevisions);
+            Assert.assertEquals(sequentialRevisions, concurrentRevisions);
+            Assert.assertNotNull(sequentialError[0]);
+            Assert.assertNotNull(concurrentError[0]);
+            Assert.assertEquals(sequentialError[0].getErrorMessage().getFullMessage(), concurrentError[0].getErrorMessage().getFullMessage());
+        } finally {
+            svnOperationFactory.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    private List<Long> verify(SvnOperationFactory svnOperationFactory, File repositoryRoot, int jobs, SVNException[] error) throws SVNException {
+        final List<Long> verifiedRevisions = new ArrayList<Long>();
+        final SvnRepositoryVerify verify = svnOperationFactory.createRepositoryVerify();
+        verify.setRepositoryRoot(repositoryRoot);
+        verify.setStartRevision(SVNRevision.create(0));
+        verify.setEndRevision(SVNRevision.HEAD);
+        verify.setJobs(jobs);
+        verify.setReceiver(new ISvnObjectReceiver<SVNAdminEvent>() {
+            public void receive(SvnTarget target, SVNAdminEvent event) {
+                verifiedRevisions.add(event.getRevision());
+            }
+        });
+        try {
+            verify.run();
+        } catch (SVNException e) {
+            if (error == null) {
+                throw e;
+            }
+            error[0] = e;
+        }
+        return verifiedRevisions;
+    }
+
+    private void corruptRevision(File repositoryRoot, long revision) throws SVNException {
+        final File revisionFile = new File(repositoryRoot, "db/revs/0/" + revision);
+        final byte[] contents = SVNFileUtil.readFully(revisionFile);
+        Arrays.fill(contents, 0, contents.length / 2, (byte) 'x');
+        SVNFileUtil.setReadonly(revisionFile, false);
+        SVNFileUtil.writeToFile(revisionFile, contents);
+    }
+
+    private String getTestName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,87 @@
+package org.tmatesoft.svn.test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNFastXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+
+public class XDeltaAlgorithmTest {
+
+    static final int WINDOW_SIZE = 100 * 1024;
+
+    @Test
+    public void testFastAlgorithmProducesSameDeltas() throws Exception {
+        final Random random = new Random(20);
+        final SVNDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+        // the same instance for all windows, so that reused tables are tested too
+        final SVNDeltaAlgorithm fastAlgorithm = new SVNFastXDeltaAlgorithm();
+        for (int i = 0; i < 500; i++) {
+            final int alphabetSize = random.nextBoolean() ? 2 + random.nextInt(4) : 256;
+            final byte[] source = createData(random, random.nextInt(4) == 0 ? random.nextInt(200) : random.nextInt(WINDOW_SIZE), alphabetSize);
+            final byte[] target = random.nextInt(10) == 0 ? createData(random, random.nextInt(300), alphabetSize) : edit(random, source, alphabetSize);
+            final int sourceLength = random.nextInt(10) == 0 ? random.nextInt(source.length + 1) : source.length;
+
+            final String description = "window " + i + ": source " + sourceLength + ", target " + target.length;
+            Assert.assertTrue(description, Arrays.equals(computeDelta(algorithm, source, sourceLength, target),
+                    computeDelta(fastAlgorithm, source, sourceLength, target)));
+        }
+    }
+
+    static byte[] computeDelta(SVNDeltaAlgorithm algorithm, byte[] source, int sourceLength, byte[] target) {
+        algorithm.computeDelta(source, sourceLength, target, target.length);
+        final ByteBuffer data = algorithm.getData();
+        final ByteBuffer delta = ByteBuffer.allocate(data.remaining() + 8);
+        delta.put(data);
+        // instructions and new data are in one buffer, make sure they are split at the same place too
+        delta.putInt(algorithm.getInstructionsLength());
+        delta.putInt(algorithm.getNewDataLength());
+        algorithm.reset();
+        return delta.array();
+    }
+
+    static byte[] createData(Random random, int length, int alphabetSize) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) random.nextInt(alphabetSize);
+        }
+        return data;
+    }
+
+    static byte[] edit(Random random, byte[] data, int alphabetSize) {
+        byte[] edited = data.clone();
+        final int edits = random.nextInt(20);
+        for (int i = 0; i < edits; i++) {
+            final int position = edited.length == 0 ? 0 : random.nextInt(edited.length);
+            final int length = Math.min(random.nextInt(random.nextBoolean() ? 10 : 500), edited.length - position);
+            final int kind = random.nextInt(3);
+            if (kind == 0) {
+                System.arraycopy(createData(random, length, alphabetSize), 0, edited, position, length);
+            } else if (kind == 1) {
+                final byte[] inserted = new byte[edited.length + length];
+                System.arraycopy(edited, 0, inserted, 0, position);
+                System.arraycopy(createData(random, length, alphabetSize), 0, inserted, position, length);
+                System.arraycopy(edited, position, inserted, position + length, edited.length - position);
+                edited = inserted;
+            } else {
+                final byte[] deleted = new byte[edited.length - length];
+                System.arraycopy(edited, 0, deleted, 0, position);
+                System.arraycopy(edited, position + length, deleted, position, edited.length - position - length);
+                edited = deleted;
+            }
+        }
+        if (random.nextInt(5) == 0) {
+            // moved blocks
+            final byte[] swapped = new byte[edited.length];
+            final int half = edited.length / 2;
+            System.arraycopy(edited, half, swapped, 0, edited.length - half);
+            System.arraycopy(edited, 0, swapped, edited.length - half, half);
+            edited = swapped;
+        }
+        return edited;
+    }
+}